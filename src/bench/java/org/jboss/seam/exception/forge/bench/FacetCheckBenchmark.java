@@ -0,0 +1,149 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.jboss.arquillian.api.Deployment;
+import org.jboss.forge.project.Project;
+import org.jboss.forge.test.AbstractShellTest;
+import org.jboss.forge.test.SingletonAbstractShellTest;
+import org.jboss.seam.exception.forge.CatchFacet;
+import org.jboss.seam.exception.forge.CatchPlugin;
+import org.jboss.seam.exception.forge.InstallationStateCache;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures the overhead {@link CatchFacet#isInstalled()} adds to every command, in a project set up by
+ * <code>seam-catch setup</code> whose pom holds <code>bench.dependencies</code> (default 2000) more dependencies.
+ * Without memoization the facet asks the project's facets and its <code>DependencyFacet</code> each time, which reads
+ * the pom; the state is forgotten before each of these checks. With it, the facet takes the stamp of the poms and
+ * looks up the remembered state.
+ * <p>
+ * Run with <code>mvn verify -Pbenchmarks</code>. The run fails if the memoized check is not at least
+ * <code>bench.minSpeedup</code> (default 10) times faster than the full check.
+ */
+public class FacetCheckBenchmark extends AbstractShellTest
+{
+   @Deployment
+   public static JavaArchive getDeployment()
+   {
+      return SingletonAbstractShellTest.getDeployment().addPackages(true, CatchPlugin.class.getPackage());
+   }
+
+   @Test
+   public void measureInstalledCheck() throws Exception
+   {
+      final int dependencies = Integer.getInteger("bench.dependencies", 2000);
+      final int warmup = Integer.getInteger("bench.warmup", 50);
+      final int iterations = Integer.getInteger("bench.iterations", 200);
+      final double minSpeedup = Double.parseDouble(System.getProperty("bench.minSpeedup", "10"));
+
+      initializeJavaProject();
+      this.queueInputLines("");
+      this.getShell().execute("seam-catch setup");
+      final Project project = this.getProject();
+      final File root = project.getProjectRoot().getUnderlyingResourceObject();
+      addDependencies(new File(root, "pom.xml"), dependencies);
+
+      final CatchFacet facet = project.getFacet(CatchFacet.class);
+      for (int w = 0; w < warmup; w++) {
+         InstallationStateCache.invalidate(root);
+         Assert.assertTrue(facet.isInstalled());
+         Assert.assertTrue(facet.isInstalled());
+      }
+
+      final long[] full = new long[iterations];
+      final long[] memoized = new long[iterations];
+      for (int n = 0; n < iterations; n++) {
+         InstallationStateCache.invalidate(root);
+         long start = System.nanoTime();
+         facet.isInstalled();
+         full[n] = System.nanoTime() - start;
+
+         start = System.nanoTime();
+         facet.isInstalled();
+         memoized[n] = System.nanoTime() - start;
+      }
+      Arrays.sort(full);
+      Arrays.sort(memoized);
+
+      System.out.println(String.format("%d more dependencies in the pom", dependencies));
+      System.out.println(String.format("%12s %14s %14s %14s", "check", "median (us)", "p99 (us)", "max (us)"));
+      print("full", full);
+      print("memoized", memoized);
+
+      final double speedup = (double) full[iterations / 2] / Math.max(1, memoized[iterations / 2]);
+      System.out.println(String.format("Speedup: %.1fx (required %.1fx)", speedup, minSpeedup));
+      Assert.assertTrue("The memoized installed check is only " + speedup + "x faster", speedup >= minSpeedup);
+   }
+
+   private static void print(final String name, final long[] samples)
+   {
+      System.out.println(String.format("%12s %14.1f %14.1f %14.1f", name, samples[samples.length / 2] / 1e3,
+               samples[(int) (samples.length * 0.99)] / 1e3, samples[samples.length - 1] / 1e3));
+   }
+
+   /**
+    * Adds the dependencies to the pom in one write, going through the facet would write the pom once per dependency.
+    */
+   private static void addDependencies(final File pom, final int dependencies) throws IOException
+   {
+      final StringBuilder added = new StringBuilder();
+      for (int i = 0; i < dependencies; i++) {
+         added.append("      <dependency>\n         <groupId>com.example.group").append(i % 50)
+                  .append("</groupId>\n         <artifactId>artifact").append(i)
+                  .append("</artifactId>\n         <version>1.0</version>\n      </dependency>\n");
+      }
+
+      final String content = read(pom);
+      final int end = content.lastIndexOf("</dependencies>");
+      Assert.assertTrue("seam-catch setup did not add a dependency", end != -1);
+      final OutputStream out = new FileOutputStream(pom);
+      try {
+         out.write((content.substring(0, end) + added + content.substring(end)).getBytes("UTF-8"));
+      }
+      finally {
+         out.close();
+      }
+   }
+
+   private static String read(final File file) throws IOException
+   {
+      final InputStream in = new FileInputStream(file);
+      try {
+         final byte[] content = new byte[(int) file.length()];
+         int offset = 0;
+         int read;
+         while ((offset < content.length) && (read = in.read(content, offset, content.length - offset)) != -1) {
+            offset += read;
+         }
+         return new String(content, 0, offset, "UTF-8");
+      }
+      finally {
+         in.close();
+      }
+   }
+}
@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.jboss.arquillian.api.Deployment;
+import org.jboss.forge.parser.JavaParser;
+import org.jboss.forge.parser.java.JavaClass;
+import org.jboss.forge.project.facets.JavaSourceFacet;
+import org.jboss.forge.resources.java.JavaResource;
+import org.jboss.forge.test.AbstractShellTest;
+import org.jboss.forge.test.SingletonAbstractShellTest;
+import org.jboss.seam.exception.forge.CatchPlugin;
+import org.jboss.seam.exception.forge.HandlerMethods;
+import org.jboss.seam.exception.forge.HandlerSpec;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.jboss.solder.exception.control.Precedence;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures the latency of <code>handler create</code>, run through the shell, on containers of 10, 1k and 10k
+ * handlers. The command reuses the cached model of the container but still saves the whole container through the
+ * {@link JavaSourceFacet}, which formats and writes every member, so its cost grows linearly with the size of the
+ * container; what it saves is the parse. Parsing the container, adding the handler and saving it through the facet, as
+ * the command used to do, is measured alongside for reference.
+ * <p>
+ * Run with <code>mvn verify -Pbenchmarks</code>. The run fails if the command on the largest container is not at
+ * least <code>bench.minSpeedup</code> (default 1.5) times faster than the reference.
+ */
+public class HandlerCreateBenchmark extends AbstractShellTest
+{
+   private static final int[] SIZES = { 10, 1000, 10000 };
+
+   @Deployment
+   public static JavaArchive getDeployment()
+   {
+      return SingletonAbstractShellTest.getDeployment().addPackages(true, CatchPlugin.class.getPackage());
+   }
+
+   @Test
+   public void measureHandlerCreate() throws Exception
+   {
+      final int warmup = Integer.getInteger("bench.warmup", 20);
+      final int iterations = Integer.getInteger("bench.iterations", 50);
+      final double minSpeedup = Double.parseDouble(System.getProperty("bench.minSpeedup", "1.5"));
+      final int referenceIterations = Integer.getInteger("bench.referenceIterations", 5);
+
+      initializeJavaProject();
+      this.queueInputLines("");
+      this.getShell().execute("seam-catch setup");
+      final JavaSourceFacet javaSourceFacet = this.getProject().getFacet(JavaSourceFacet.class);
+
+      final long[] medians = new long[SIZES.length];
+      final long[] references = new long[SIZES.length];
+      System.out.println(String.format("%10s %14s %14s %14s %18s", "handlers", "median (us)", "p99 (us)",
+               "max (us)", "reference (us)"));
+
+      for (int i = 0; i < SIZES.length; i++) {
+         final String name = "BenchContainer" + SIZES[i];
+         this.getShell().execute("seam-catch create-handler-container --named " + name
+                  + " --package com.example.bench");
+         final JavaResource resource = javaSourceFacet.getJavaResource("com.example.bench." + name);
+         write(resource.getUnderlyingResourceObject(), createContainer(name, SIZES[i]));
+
+         for (int w = 0; w < warmup; w++) {
+            this.getShell().execute("handler create --method-name warmup" + w
+                     + " --exception-type java.lang.IllegalStateException");
+         }
+
+         final long[] samples = new long[iterations];
+         for (int n = 0; n < iterations; n++) {
+            final long start = System.nanoTime();
+            this.getShell().execute("handler create --method-name measured" + n
+                     + " --exception-type java.lang.IllegalStateException");
+            samples[n] = System.nanoTime() - start;
+         }
+         Arrays.sort(samples);
+         medians[i] = samples[iterations / 2];
+         Assert.assertTrue("handler create did not add the handlers", resource.getJavaSource().toString()
+                  .contains(" measured" + (iterations - 1) + "("));
+
+         references[i] = referenceAddHandler(javaSourceFacet, resource, referenceIterations);
+
+         System.out.println(String.format("%10d %14d %14d %14d %18d", SIZES[i], medians[i] / 1000,
+                  samples[(int) (iterations * 0.99)] / 1000, samples[iterations - 1] / 1000, references[i] / 1000));
+      }
+
+      final int largest = SIZES.length - 1;
+      final double speedup = (double) references[largest] / medians[largest];
+      System.out.println(String.format("Speedup over the reference at %d handlers: %.2fx (required %.2fx)",
+               SIZES[largest], speedup, minSpeedup));
+      Assert.assertTrue("handler create is only " + speedup + "x faster than parsing the container",
+               speedup >= minSpeedup);
+   }
+
+   /**
+    * @return median latency of parsing the whole container, adding a handler and saving it through the facet
+    */
+   private static long referenceAddHandler(final JavaSourceFacet javaSourceFacet, final JavaResource resource,
+            final int iterations) throws IOException
+   {
+      final long[] samples = new long[iterations];
+      for (int n = 0; n < iterations; n++) {
+         final long start = System.nanoTime();
+         final JavaClass container = (JavaClass) JavaParser.parse(resource.getUnderlyingResourceObject());
+         HandlerMethods.addHandler(container, new HandlerSpec("reference" + n, "java.lang.IllegalStateException",
+                  false, Precedence.DEFAULT));
+         javaSourceFacet.saveJavaSource(container);
+         samples[n] = System.nanoTime() - start;
+      }
+      Arrays.sort(samples);
+      return samples[iterations / 2];
+   }
+
+   private static String createContainer(final String name, final int handlers)
+   {
+      final StringBuilder source = new StringBuilder("package com.example.bench;\n\n")
+               .append("import org.jboss.solder.exception.control.CaughtException;\n")
+               .append("import org.jboss.solder.exception.control.Handles;\n")
+               .append("import org.jboss.solder.exception.control.HandlesExceptions;\n\n")
+               .append("@HandlesExceptions\npublic class ").append(name).append("\n{\n");
+      for (int i = 0; i < handlers; i++) {
+         source.append("   public void handler").append(i)
+                  .append("(@Handles final CaughtException<RuntimeException> caughtException)\n   {\n   }\n\n");
+      }
+      return source.append("}\n").toString();
+   }
+
+   private static void write(final File file, final String content) throws IOException
+   {
+      final OutputStream out = new FileOutputStream(file);
+      try {
+         out.write(content.getBytes("UTF-8"));
+      }
+      finally {
+         out.close();
+      }
+   }
+}
@@ -0,0 +1,59 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import org.jboss.forge.parser.java.JavaClass;
+import org.jboss.forge.parser.java.Method;
+
+/**
+ * Handler counting exceptions in a generated <code>ExceptionAggregator</code> by fingerprint, the exception type plus
+ * its top stack frames. Each fingerprint is logged once per flush interval with its count and first example.
+ */
+public class AggregateTemplate implements HandlerTemplate
+{
+   @Override
+   public String getName()
+   {
+      return "aggregate";
+   }
+
+   @Override
+   public String[] getSupportClasses()
+   {
+      return new String[] { "ExceptionFingerprint", "ExceptionAggregator" };
+   }
+
+   @Override
+   public String getExtension()
+   {
+      return null;
+   }
+
+   @Override
+   public void apply(final JavaClass container, final Method<JavaClass> handler, final HandlerTemplateOptions options)
+   {
+      final int maxEntries = options.getPositiveInt("max-entries", 1000);
+      final int frames = options.getPositiveInt("frames", 5);
+      final int interval = options.getPositiveInt("flush-interval", 60);
+      final String field = handler.getName() + "Aggregator";
+
+      container.addField("private static final ExceptionAggregator " + field + " = new ExceptionAggregator("
+               + container.getName() + ".class, \"" + handler.getName() + "\", " + maxEntries + ", " + frames + ", "
+               + interval + ");");
+      handler.setBody(field + ".record(caughtException.getException());");
+   }
+}
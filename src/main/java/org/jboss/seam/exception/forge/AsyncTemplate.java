@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.util.Locale;
+
+import org.jboss.forge.parser.java.JavaClass;
+import org.jboss.forge.parser.java.Method;
+
+/**
+ * Handler copying the exception into the ring buffer of a generated <code>AsyncExceptionReporter</code> and returning
+ * at once, a background consumer writes the reports in batches to an <code>ExceptionReportSink</code>. The consumers
+ * are shut down by the generated CDI extension {@link #EXTENSION} when the application is undeployed.
+ */
+public class AsyncTemplate implements HandlerTemplate
+{
+   /**
+    * CDI extension shutting down the reporters, it must be listed in <code>META-INF/services</code>.
+    */
+   static final String EXTENSION = "AsyncExceptionReporterExtension";
+
+   private static final String[] POLICIES = { "drop", "block", "count-and-drop" };
+
+   @Override
+   public String getName()
+   {
+      return "async";
+   }
+
+   @Override
+   public String[] getSupportClasses()
+   {
+      return new String[] { "ExceptionReport", "ExceptionReportSink", "LoggingExceptionReportSink",
+               "AsyncExceptionReporter", EXTENSION };
+   }
+
+   @Override
+   public String getExtension()
+   {
+      return EXTENSION;
+   }
+
+   @Override
+   public void apply(final JavaClass container, final Method<JavaClass> handler, final HandlerTemplateOptions options)
+   {
+      final int bufferSize = options.getPositiveInt("buffer-size", 1024);
+      final int batchSize = options.getPositiveInt("batch-size", 64);
+      final String sink = options.getString("sink", "LoggingExceptionReportSink");
+      final String policy = options.getString("when-full", "count-and-drop").trim().toLowerCase(Locale.ENGLISH);
+
+      boolean known = false;
+      for (String p : POLICIES) {
+         known |= p.equals(policy);
+      }
+      if (!known)
+         throw new IllegalArgumentException("Option --when-full must be drop, block or count-and-drop, was [" + policy
+                  + "]");
+
+      final String field = handler.getName() + "Reporter";
+      container.addField("private static final AsyncExceptionReporter " + field + " = new AsyncExceptionReporter(new "
+               + sink + "(), " + bufferSize + ", " + batchSize + ", AsyncExceptionReporter.FullPolicy."
+               + policy.toUpperCase(Locale.ENGLISH).replace('-', '_') + ");");
+      handler.setBody(field + ".report(\"" + container.getName() + "#" + handler.getName()
+               + "\", caughtException.getException());");
+   }
+}
@@ -0,0 +1,74 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Edits <code>beans.xml</code> descriptors as text, so the formatting and comments of the rest of the file are kept.
+ */
+public final class BeansXml
+{
+   private static final Pattern BEANS_ROOT = Pattern.compile("<beans\\b[^>]*?(/?)>");
+   private static final Pattern INTERCEPTORS_END = Pattern.compile("</interceptors\\s*>");
+   private static final Pattern BEANS_END = Pattern.compile("</beans\\s*>");
+
+   private BeansXml()
+   {
+   }
+
+   /**
+    * Enables an interceptor, after the interceptors already enabled.
+    *
+    * @param beansXml content of the <code>beans.xml</code>, may be empty
+    * @param interceptorClass qualified name of the interceptor class
+    * @return the new content, unchanged if the interceptor is already enabled
+    */
+   public static String enableInterceptor(final String beansXml, final String interceptorClass)
+   {
+      final String content = (beansXml == null) || "".equals(beansXml.trim()) ? MultiModuleSetup.BEANS_XML
+               : beansXml;
+      if (Pattern.compile("<class>\\s*" + Pattern.quote(interceptorClass) + "\\s*</class>").matcher(content).find())
+         return content;
+
+      final Matcher interceptorsEnd = INTERCEPTORS_END.matcher(content);
+      if (interceptorsEnd.find()) {
+         // Indented like the closing tag when it is on a line of its own
+         final int lineStart = content.lastIndexOf('\n', interceptorsEnd.start() - 1) + 1;
+         final String indent = content.substring(lineStart, interceptorsEnd.start());
+         if ("".equals(indent.trim()))
+            return content.substring(0, lineStart) + indent + "   <class>" + interceptorClass + "</class>\n"
+                     + content.substring(lineStart);
+         return content.substring(0, interceptorsEnd.start()) + "<class>" + interceptorClass + "</class>"
+                  + content.substring(interceptorsEnd.start());
+      }
+
+      final String interceptors = "   <interceptors>\n      <class>" + interceptorClass
+               + "</class>\n   </interceptors>\n";
+      final Matcher beansEnd = BEANS_END.matcher(content);
+      if (beansEnd.find())
+         return content.substring(0, beansEnd.start()) + interceptors + content.substring(beansEnd.start());
+
+      final Matcher root = BEANS_ROOT.matcher(content);
+      if (!root.find() || !"/".equals(root.group(1)))
+         throw new IllegalArgumentException("No <beans> element found");
+      final String start = root.group().substring(0, root.group().length() - 2).trim();
+      return content.substring(0, root.start()) + start + ">\n" + interceptors + "</beans>"
+               + content.substring(root.end());
+   }
+}
@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.forge.project.dependencies.Dependency;
+import org.jboss.forge.project.dependencies.DependencyBuilder;
+import org.jboss.forge.project.dependencies.ScopeType;
+import org.jboss.forge.project.facets.DependencyFacet;
+import org.jboss.forge.project.facets.JavaSourceFacet;
+
+/**
+ * Adds JMH to the test scope of a project and generates one benchmark per handled exception type, each firing its
+ * exception through Seam Catch in a Weld SE container.
+ */
+public class BenchmarkGenerator
+{
+   private final JavaSourceFacet javaSourceFacet;
+   private final DependencyFacet dependencyFacet;
+
+   public BenchmarkGenerator(final JavaSourceFacet javaSourceFacet, final DependencyFacet dependencyFacet)
+   {
+      this.javaSourceFacet = javaSourceFacet;
+      this.dependencyFacet = dependencyFacet;
+   }
+
+   /**
+    * Adds the JMH and Weld SE test dependencies the benchmarks need, unless the project already has them.
+    *
+    * @param jmhVersion JMH version
+    * @param weldVersion Weld SE version
+    * @return the dependencies that were added
+    */
+   public List<Dependency> addDependencies(final String jmhVersion, final String weldVersion)
+   {
+      final List<Dependency> added = new ArrayList<Dependency>();
+      for (Dependency dependency : new Dependency[] {
+               DependencyBuilder.create("org.openjdk.jmh:jmh-core:" + jmhVersion).setScopeType(ScopeType.TEST),
+               DependencyBuilder.create("org.openjdk.jmh:jmh-generator-annprocess:" + jmhVersion).setScopeType(
+                        ScopeType.TEST),
+               DependencyBuilder.create("org.jboss.weld.se:weld-se-core:" + weldVersion).setScopeType(ScopeType.TEST) }) {
+         if (!this.dependencyFacet.hasDependency(dependency)) {
+            this.dependencyFacet.addDependency(dependency);
+            added.add(dependency);
+         }
+      }
+      return added;
+   }
+
+   /**
+    * Generates the shared benchmark classes, if missing, and one benchmark per exception type.
+    *
+    * @param packageName package of the benchmarks, in the test sources
+    * @param exceptionTypes fully qualified exception types to benchmark
+    * @return simple names of the generated benchmarks, by exception type
+    * @throws FileNotFoundException if a benchmark cannot be written
+    */
+   public Map<String, String> generate(final String packageName, final Collection<String> exceptionTypes)
+            throws FileNotFoundException
+   {
+      SourceTemplates.generateIfMissing(this.javaSourceFacet, "HandlerBenchmarkContainer", packageName, true);
+      SourceTemplates.generateIfMissing(this.javaSourceFacet, "HandlerBenchmarks", packageName, true);
+
+      final Map<String, String> generated = new HashMap<String, String>();
+      final Set<String> names = new HashSet<String>();
+      for (String exceptionType : exceptionTypes) {
+         final String simpleName = exceptionType.substring(exceptionType.lastIndexOf('.') + 1).replace('$', '_');
+
+         String className = simpleName + "HandlerBenchmark";
+         for (int i = 2; !names.add(className); i++) {
+            className = simpleName + i + "HandlerBenchmark";
+         }
+
+         final Map<String, String> values = new HashMap<String, String>();
+         values.put("className", className);
+         values.put("exceptionType", exceptionType.replace('$', '.'));
+         this.javaSourceFacet.saveTestJavaSource(SourceTemplates.load("ExceptionHandlerBenchmark", packageName,
+                  values));
+
+         generated.put(exceptionType, className);
+      }
+      return generated;
+   }
+}
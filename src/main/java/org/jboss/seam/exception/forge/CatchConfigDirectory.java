@@ -0,0 +1,55 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.File;
+
+/**
+ * Location of the files the plugin keeps between shell sessions, under the Forge configuration directory.
+ */
+public final class CatchConfigDirectory
+{
+   /**
+    * System property used to relocate the plugin's configuration directory.
+    */
+   public static final String DIRECTORY_PROPERTY = "seam.catch.config.dir";
+
+   private CatchConfigDirectory()
+   {
+   }
+
+   /**
+    * @return the plugin's configuration directory, which may not exist yet
+    */
+   public static File get()
+   {
+      final String override = System.getProperty(DIRECTORY_PROPERTY);
+      if ((override != null) && !"".equals(override))
+         return new File(override);
+
+      return new File(new File(System.getProperty("user.home"), ".forge"), "seam-catch");
+   }
+
+   /**
+    * @param child name of the sub directory
+    * @return the sub directory of the configuration directory, which may not exist yet
+    */
+   public static File get(final String child)
+   {
+      return new File(get(), child);
+   }
+}
@@ -16,6 +16,7 @@
  */
 package org.jboss.seam.exception.forge;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.List;
 
@@ -43,7 +44,7 @@ import org.jboss.forge.spec.javaee.CDIFacet;
 @RequiresFacet(CDIFacet.class)
 public class CatchFacet extends BaseFacet
 {
-   private static final Dependency SEAM_CATCH_DEPENDENCY = DependencyBuilder.create("org.jboss.solder:solder");
+   static final Dependency SEAM_CATCH_DEPENDENCY = DependencyBuilder.create("org.jboss.solder:solder");
 
    @Inject
    private ShellPrompt prompt;
@@ -65,7 +66,8 @@ public class CatchFacet extends BaseFacet
          deps.addRepository(DependencyFacet.KnownRepository.JBOSS_NEXUS);
       }
 
-      final List<Dependency> versions = deps.resolveAvailableVersions(
+      // Cached (or offline) resolution, the remote repository is only consulted when the cache is cold
+      final List<Dependency> versions = SolderVersionResolver.forDependency(SEAM_CATCH_DEPENDENCY).resolve(deps,
                SEAM_CATCH_DEPENDENCY);
 
       final Dependency dependency;
@@ -87,17 +89,41 @@ public class CatchFacet extends BaseFacet
       deps.addDependency(dependency);
 
       this.getProject().registerFacet(this);
+      InstallationStateCache.invalidate(this.getProject().getProjectRoot().getUnderlyingResourceObject());
 
       return true;
    }
 
+   /**
+    * Runs before every command of the plugin, so the answer is remembered until the pom changes, see
+    * {@link InstallationStateCache}. Its time is recorded for the next command timed by {@link CommandTiming}.
+    */
    @Override
    public boolean isInstalled()
    {
+      final long start = System.nanoTime();
+      try {
+         return this.checkInstalled();
+      }
+      finally {
+         CommandTiming.recordFacetCheck(System.nanoTime() - start);
+      }
+   }
+
+   private boolean checkInstalled()
+   {
+      final File projectRoot = this.getProject().getProjectRoot().getUnderlyingResourceObject();
+      final String stamp = InstallationStateCache.stampOf(projectRoot);
+      final Boolean cached = InstallationStateCache.get(projectRoot, stamp);
+      if (cached != null)
+         return cached.booleanValue();
+
       final DependencyFacet allDependencies = this.getProject().getFacet(DependencyFacet.class);
 
-      return this.getProject().hasAllFacets(Arrays.<Class<? extends Facet>> asList(CDIFacet.class, CatchFacet.class))
+      final boolean installed = this.getProject().hasAllFacets(
+               Arrays.<Class<? extends Facet>> asList(CDIFacet.class, CatchFacet.class))
                && allDependencies.hasDependency(SEAM_CATCH_DEPENDENCY);
-
+      InstallationStateCache.put(projectRoot, stamp, installed);
+      return installed;
    }
 }
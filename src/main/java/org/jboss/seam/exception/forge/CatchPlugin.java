@@ -16,15 +16,31 @@
  */
 package org.jboss.seam.exception.forge;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
 import javax.enterprise.event.Event;
 import javax.inject.Inject;
 
 import org.jboss.forge.parser.JavaParser;
 import org.jboss.forge.parser.java.JavaClass;
+import org.jboss.forge.parser.java.JavaSource;
 import org.jboss.forge.project.Project;
+import org.jboss.forge.project.dependencies.Dependency;
+import org.jboss.forge.project.dependencies.DependencyBuilder;
+import org.jboss.forge.project.facets.DependencyFacet;
 import org.jboss.forge.project.facets.JavaSourceFacet;
 import org.jboss.forge.project.facets.events.InstallFacets;
 import org.jboss.forge.resources.DirectoryResource;
+import org.jboss.forge.resources.FileResource;
+import org.jboss.forge.resources.Resource;
 import org.jboss.forge.resources.java.JavaResource;
 import org.jboss.forge.shell.PromptType;
 import org.jboss.forge.shell.Shell;
@@ -39,7 +55,9 @@ import org.jboss.forge.shell.plugins.PipeOut;
 import org.jboss.forge.shell.plugins.RequiresFacet;
 import org.jboss.forge.shell.plugins.SetupCommand;
 import org.jboss.forge.shell.util.ResourceUtil;
+import org.jboss.forge.spec.javaee.CDIFacet;
 import org.jboss.solder.exception.control.HandlesExceptions;
+import org.jboss.solder.exception.control.Precedence;
 
 public @Alias("seam-catch")
 @RequiresFacet(CatchFacet.class)
@@ -47,11 +65,20 @@ public @Alias("seam-catch")
 class CatchPlugin implements org.jboss.forge.shell.plugins.Plugin
 {
 
+   /**
+    * Changed files above which watch refreshes the whole index in parallel rather than file by file.
+    */
+   private static final int WATCH_REFRESH_THRESHOLD = 64;
+
    private final Project project;
    private final Event<InstallFacets> installFacetsEvent;
    private final ShellPrintWriter writer;
    private final ShellPrompt prompt;
    private final Shell shell;
+   private final ParsedSourceCache sources;
+   private final HandlerContainerEditor editor;
+   private final CommandTiming timing;
+   private final ThrowableIndex throwables;
 
    /**
     * Injection Constructor
@@ -60,26 +87,52 @@ class CatchPlugin implements org.jboss.forge.shell.plugins.Plugin
     * @param event
     * @param writer
     * @param prompt
+    * @param shell
+    * @param sources
+    * @param editor
+    * @param timing
+    * @param throwables
     */
    @Inject
    public CatchPlugin(final Project project, final Event<InstallFacets> event, final ShellPrintWriter writer,
-            final ShellPrompt prompt, final Shell shell)
+            final ShellPrompt prompt, final Shell shell, final ParsedSourceCache sources,
+            final HandlerContainerEditor editor, final CommandTiming timing, final ThrowableIndex throwables)
    {
       this.project = project;
       this.installFacetsEvent = event;
       this.writer = writer;
       this.prompt = prompt;
       this.shell = shell;
+      this.sources = sources;
+      this.editor = editor;
+      this.timing = timing;
+      this.throwables = throwables;
    }
 
    /**
     * Setup Command.
     * 
+    * @param allModules install into every module of the build instead of the current project only
+    * @param version Solder version to install, all modules only
+    * @param yes do not prompt, all modules only
     * @param out output pipe
+    * @throws Exception
     */
    @SetupCommand(help = "Install Seam Catch into the current project.")
-   public void run(final PipeOut out)
+   public void run(
+            @Option(required = false, name = "all-modules", defaultValue = "false",
+                     description = "Install into every module of the multi-module build") final boolean allModules,
+            @Option(required = false, name = "version",
+                     description = "Solder version to install, the latest known version by default") final String version,
+            @Option(required = false, name = "yes", defaultValue = "false",
+                     description = "Do not prompt, replace existing Solder dependencies") final boolean yes,
+            final PipeOut out) throws Exception
    {
+      if (allModules) {
+         this.setupAllModules(version, yes, out);
+         return;
+      }
+
       if (!this.project.hasFacet(CatchFacet.class))
          installFacetsEvent.fire(new InstallFacets(CatchFacet.class));
 
@@ -87,11 +140,62 @@ class CatchPlugin implements org.jboss.forge.shell.plugins.Plugin
          ShellMessages.success(out, "Seam Catch Installed");
    }
 
+   /**
+    * Resolves the Solder version once, then sets up every module of the build in parallel and prints what was done to
+    * each module.
+    */
+   private void setupAllModules(final String version, final boolean yes, final PipeOut out) throws Exception
+   {
+      final Dependency dependency;
+      if ((version != null) && !"".equals(version)) {
+         dependency = DependencyBuilder.create(CatchFacet.SEAM_CATCH_DEPENDENCY).setVersion(version);
+      }
+      else {
+         final List<Dependency> versions = SolderVersionResolver.forDependency(CatchFacet.SEAM_CATCH_DEPENDENCY)
+                  .resolve(this.project.getFacet(DependencyFacet.class), CatchFacet.SEAM_CATCH_DEPENDENCY);
+         if (versions.isEmpty()) {
+            ShellMessages.error(out, "No Solder version could be resolved, give one with --version");
+            return;
+         }
+         dependency = yes ? versions.get(versions.size() - 1) : prompt.promptChoiceTyped(
+                  "Install Seam Catch version", versions, versions.get(versions.size() - 1));
+      }
+
+      final File root = this.project.getProjectRoot().getUnderlyingResourceObject();
+      final MultiModuleSetup setup = new MultiModuleSetup(dependency, true);
+      final List<File> modules = setup.findModules(root);
+
+      if (!yes && !prompt.promptBoolean("Install [" + dependency + "] into " + modules.size()
+               + " module(s) and replace existing Solder dependencies?"))
+         return;
+
+      final long start = System.nanoTime();
+      int failed = 0;
+      for (MultiModuleSetup.ModuleResult result : setup.apply(modules)) {
+         if (result.getError() != null) {
+            ShellMessages.error(out, result.getModule() + ": " + result.getError());
+            failed++;
+         }
+         else {
+            out.println(String.format("%-40s %s", result.getModule(), result.getChanges().isEmpty() ? "unchanged"
+                     : result.getChanges().toString()));
+         }
+      }
+
+      final String summary = "Seam Catch set up in " + (modules.size() - failed) + " of " + modules.size()
+               + " module(s) in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms";
+      if (failed == 0)
+         ShellMessages.success(out, summary);
+      else
+         ShellMessages.warn(out, summary);
+   }
+
    /**
     * Creates a class to holder Exception Handlers.
     * 
     * @param className Name of the class to create.
     * @param packageName Name of the package to create the class.
+    * @param timing Print the time spent in each phase of the command.
     * @throws Exception
     */
    @Command(value = "create-handler-container", help = "Create a Seam Catch Exception Handler container class.")
@@ -99,33 +203,761 @@ class CatchPlugin implements org.jboss.forge.shell.plugins.Plugin
             @Option(required = true, name = "named",
                      description = "The name of the containing class to create") final String className,
             @Option(required = false, name = "package", type = PromptType.JAVA_PACKAGE,
-                     description = "Containing package name") final String packageName) throws Exception
+                     description = "Containing package name") final String packageName,
+            @Option(required = false, name = "timing", defaultValue = "false",
+                     description = "Print the time spent in each phase of the command") final boolean timing)
+            throws Exception
+   {
+      final PhaseTimer timer = this.timing.start("seam-catch create-handler-container");
+      try {
+         final JavaSourceFacet javaSourceFacet = this.project.getFacet(JavaSourceFacet.class);
+
+         // The package may be prompted for, the time spent waiting on the user is not counted
+         final String containerPackage = this.resolvePackage(packageName,
+                  "In which package would you like to create this Exception Handler container:");
+         timer.skip();
+
+         final JavaClass handlerContainerClass = JavaParser.create(JavaClass.class)
+                  .setPackage(containerPackage)
+                  .setName(className)
+                  .setPublic()
+                  .addAnnotation(HandlesExceptions.class).getOrigin();
+         timer.lap(CommandTiming.MODEL_MUTATION);
+
+         final JavaResource handlerContainerFileLocation = javaSourceFacet.saveJavaSource(handlerContainerClass);
+         timer.lap(CommandTiming.FORMAT_AND_WRITE);
+
+         writer.println("Created Exception Handler Container [" + handlerContainerClass.getQualifiedName() + "]");
+
+         // pick up the generated class so they can then add handlers
+         shell.execute("pick-up " + handlerContainerFileLocation.getFullyQualifiedName());
+         timer.lap(CommandTiming.PICK_UP);
+      }
+      finally {
+         this.timing.finish(timer, timing, writer);
+      }
+   }
+
+   /**
+    * Creates an exception class, optionally one that skips capturing its stack trace, and a handler for it.
+    * 
+    * @param className Name of the exception to create.
+    * @param packageName Name of the package to create the exception.
+    * @param superType Exception type to extend.
+    * @param lightweight If the exception should skip capturing its stack trace.
+    * @param singleton If a shared instance of the exception should be declared.
+    * @param handlerContainer Optional Exception Handler container to add a handler of the exception to.
+    * @param handlerMethod Name of the handler method.
+    * @param out output pipe
+    * @throws Exception
+    */
+   @Command(value = "create-exception", help = "Create an exception class, optionally without stack trace capture.")
+   public void newException(
+            @Option(required = true, name = "named",
+                     description = "The name of the exception to create") final String className,
+            @Option(required = false, name = "package", type = PromptType.JAVA_PACKAGE,
+                     description = "Containing package name") final String packageName,
+            @Option(required = false, name = "extends", type = PromptType.JAVA_CLASS,
+                     defaultValue = "java.lang.RuntimeException",
+                     description = "The exception type to extend") final String superType,
+            @Option(required = false, name = "lightweight", defaultValue = "false",
+                     description = "Skip filling in the stack trace") final boolean lightweight,
+            @Option(required = false, name = "singleton", defaultValue = "false",
+                     description = "Declare a shared INSTANCE, requires --lightweight") final boolean singleton,
+            @Option(required = false, name = "handler-container", type = PromptType.JAVA_CLASS,
+                     description = "Exception Handler container to add a handler of the exception to") final String handlerContainer,
+            @Option(required = false, name = "handler-method", type = PromptType.JAVA_VARIABLE_NAME,
+                     description = "Name of the handler method, defaults to handle<named>") final String handlerMethod,
+            final PipeOut out) throws Exception
    {
       final JavaSourceFacet javaSourceFacet = this.project.getFacet(JavaSourceFacet.class);
 
-      String containerPackage;
+      JavaClass container = null;
+      File containerFile = null;
+      if (handlerContainer != null) {
+         final JavaResource containerResource = javaSourceFacet.getJavaResource(handlerContainer);
+         final JavaSource<?> containerSource = (containerResource == null) || !containerResource.exists() ? null
+                  : this.sources.get(containerResource);
+         if (!(containerSource instanceof JavaClass) || !containerSource.hasAnnotation(HandlesExceptions.class)) {
+            ShellMessages.error(out, "[" + handlerContainer + "] is not an Exception Handler container");
+            return;
+         }
+         container = (JavaClass) containerSource;
+         containerFile = containerResource.getUnderlyingResourceObject();
+      }
 
-      if ((packageName != null) && !"".equals(packageName))
-         containerPackage = packageName;
-      else if (this.getPackagePortionOfCurrentDirectory() != null)
-         containerPackage = this.getPackagePortionOfCurrentDirectory();
+      final String exceptionPackage = this.resolvePackage(packageName,
+               "In which package would you like to create this exception:");
+
+      final JavaSource<?> exception;
+      try {
+         exception = ExceptionClasses.create(exceptionPackage, className, superType, lightweight, singleton);
+      }
+      catch (IllegalArgumentException e) {
+         ShellMessages.error(out, e.getMessage());
+         return;
+      }
+
+      final JavaResource exceptionFileLocation = javaSourceFacet.saveJavaSource(exception);
+      writer.println("Created " + (lightweight ? "lightweight " : "") + "exception [" + exception.getQualifiedName()
+               + "]");
+
+      if (container != null) {
+         final String methodName = (handlerMethod != null) && !"".equals(handlerMethod) ? handlerMethod : "handle"
+                  + className;
+         try {
+            HandlerMethods.addHandler(container, new HandlerSpec(methodName, exception.getQualifiedName(), false,
+                     Precedence.DEFAULT));
+            javaSourceFacet.saveJavaSource(container);
+         }
+         catch (Exception e) {
+            // The cached model holds a handler that was not written
+            this.editor.invalidate(containerFile);
+            throw e;
+         }
+         this.sources.put(containerFile, container);
+         writer.println("Added Handler [" + methodName + "] to container [" + container.getQualifiedName() + "]");
+      }
+
+      shell.execute("pick-up " + exceptionFileLocation.getFullyQualifiedName());
+   }
+
+   /**
+    * Lists the handlers of the project keyed by the exception type they handle. The handler index is persisted
+    * between sessions, only source files changed since the last run are parsed again.
+    * 
+    * @param exceptionType optional exception type to restrict the listing to
+    * @param out output pipe
+    */
+   @Command(value = "list-handlers", help = "List the Exception Handlers of the project by exception type.")
+   public void listHandlers(
+            @Option(required = false, name = "exception-type", type = PromptType.JAVA_CLASS,
+                     description = "Only list handlers of this exception type") final String exceptionType,
+            final PipeOut out)
+   {
+      final HandlerIndex index = HandlerIndex.forProject(this.project, this.sources);
+      final SortedMap<String, List<HandlerDescriptor>> byType = index.byExceptionType();
+
+      int handlerCount = 0;
+      for (Map.Entry<String, List<HandlerDescriptor>> entry : byType.entrySet()) {
+         if ((exceptionType != null) && !entry.getKey().equals(exceptionType)
+                  && !entry.getKey().endsWith("." + exceptionType))
+            continue;
+
+         out.println(entry.getKey());
+         for (HandlerDescriptor handler : entry.getValue()) {
+            out.println("   " + handler + " [" + handler.getTraversalMode() + ", precedence "
+                     + handler.getPrecedence() + "]");
+            handlerCount++;
+         }
+      }
+
+      final HandlerIndex.RefreshResult refresh = index.getLastRefresh();
+      out.println();
+      ShellMessages.info(out, handlerCount + " handler(s) found, " + refresh.getReparsed() + " of "
+               + refresh.getScanned() + " source file(s) parsed");
+   }
+
+   /**
+    * Generates a class holding the precomputed, ordered handler chain of every exception type handled in the project.
+    * 
+    * @param className Name of the class to create.
+    * @param packageName Name of the package to create the class.
+    * @param out output pipe
+    * @throws Exception
+    */
+   @Command(value = "generate-dispatch-table", help = "Generate a class mapping each handled exception type to its ordered handler chain.")
+   public void generateDispatchTable(
+            @Option(required = false, name = "named", defaultValue = "HandlerDispatchTable",
+                     description = "The name of the class to create") final String className,
+            @Option(required = false, name = "package", type = PromptType.JAVA_PACKAGE,
+                     description = "Containing package name") final String packageName,
+            final PipeOut out) throws Exception
+   {
+      final JavaSourceFacet javaSourceFacet = this.project.getFacet(JavaSourceFacet.class);
+      final String tablePackage = this.resolvePackage(packageName,
+               "In which package would you like to create the dispatch table:");
+
+      final SortedMap<String, List<HandlerDescriptor>> byType = HandlerIndex
+               .forProject(this.project, this.sources).byExceptionType();
+      if (byType.isEmpty()) {
+         ShellMessages.info(out, "No Exception Handlers found, nothing to generate");
+         return;
+      }
+
+      final JavaClass table = new DispatchTableGenerator(byType, new ExceptionHierarchy(
+               this.throwables.getSuperclasses(this.project))).generate(tablePackage, className);
+      javaSourceFacet.saveJavaSource(table);
+
+      ShellMessages.success(out, "Generated dispatch table [" + table.getQualifiedName() + "] for " + byType.size()
+               + " exception type(s)");
+   }
+
+   /**
+    * Reports the cost of the handler chain of every handled exception type and flags shadowed, unreachable and
+    * ambiguously ordered handlers.
+    * 
+    * @param sortBy ordering of the report
+    * @param format report format
+    * @param output optional file to write the report to
+    * @param maxChain maximum chain length, the command fails if a chain is longer
+    * @param causeChain comma separated exception types of a cause chain to report as a whole
+    * @param out output pipe
+    * @throws IllegalStateException if a chain is longer than the maximum, after the report is written
+    */
+   @Command(value = "analyze", help = "Report the handler chain cost of each handled exception type.")
+   public void analyze(
+            @Option(required = false, name = "sort-by", defaultValue = "chain",
+                     description = "Row order: type, chain, breadth-first or depth-first") final String sortBy,
+            @Option(required = false, name = "format", defaultValue = "text",
+                     description = "Report format: text, csv or json") final String format,
+            @Option(required = false, name = "output", type = PromptType.FILE_PATH,
+                     description = "File to write the report to") final Resource<?> output,
+            @Option(required = false, name = "max-chain", defaultValue = "-1",
+                     description = "Fail if an exception type notifies more handlers than this") final int maxChain,
+            @Option(required = false, name = "cause-chain",
+                     description = "Comma separated exception types, outermost first, to analyze as one cause chain") final String causeChain,
+            final PipeOut out)
+   {
+      if (!"text".equalsIgnoreCase(format) && !"csv".equalsIgnoreCase(format) && !"json".equalsIgnoreCase(format)) {
+         ShellMessages.error(out, "Unknown report format [" + format + "], use text, csv or json");
+         return;
+      }
+
+      final HandlerChainAnalysis.SortOrder order;
+      try {
+         order = HandlerChainAnalysis.SortOrder.valueOf(sortBy.trim().toUpperCase().replace('-', '_'));
+      }
+      catch (IllegalArgumentException e) {
+         ShellMessages.error(out, "Unknown sort order [" + sortBy + "]");
+         return;
+      }
+
+      final List<String> causes = new ArrayList<String>();
+      if (causeChain != null) {
+         for (String cause : causeChain.split(",")) {
+            if (!"".equals(cause.trim()))
+               causes.add(cause.trim());
+         }
+      }
+
+      final HandlerChainAnalysis analysis = new HandlerChainAnalysis(HandlerIndex.forProject(this.project,
+               this.sources).byExceptionType(), new ExceptionHierarchy(this.throwables.getSuperclasses(this.project)),
+               causes);
+
+      final String report;
+      if ("json".equalsIgnoreCase(format))
+         report = analysis.toJson(order, maxChain);
+      else if ("csv".equalsIgnoreCase(format))
+         report = analysis.toCsv(order, maxChain);
       else
-         containerPackage = prompt.promptCommon(
-                  "In which package would you like to create this Exception Handler container:",
-                  PromptType.JAVA_PACKAGE);
+         report = analysis.toText(order, maxChain);
+
+      if (output != null) {
+         ((FileResource<?>) output).setContents(report);
+         ShellMessages.success(out, "Wrote handler chain report to [" + output.getFullyQualifiedName() + "]");
+      }
+      else if (!"text".equalsIgnoreCase(format)) {
+         out.print(report);
+      }
+      else {
+         for (HandlerChainAnalysis.Row row : analysis.getRows(order)) {
+            out.println(row.toString());
+         }
+         for (HandlerChainAnalysis.Finding finding : analysis.getFindings()) {
+            ShellMessages.warn(out, finding.toString());
+         }
+      }
+
+      if (maxChain >= 0) {
+         final List<HandlerChainAnalysis.Row> exceeding = analysis.getRowsExceeding(maxChain);
+         if (!exceeding.isEmpty()) {
+            throw new IllegalStateException(exceeding.size() + " exception type(s) notify more than " + maxChain
+                     + " handlers, the longest is [" + exceeding.get(0).getExceptionType() + "] with "
+                     + exceeding.get(0).getChainLength());
+         }
+      }
+   }
+
+   /**
+    * Reports the Exception Handler containers of the project by package and optionally merges the containers of each
+    * package into the one holding the most handlers, so fewer beans are deployed.
+    * 
+    * @param merge merge the containers instead of only reporting them
+    * @param out output pipe
+    * @throws Exception
+    */
+   @Command(value = "consolidate", help = "Report the Exception Handler containers and merge them into fewer containers.")
+   public void consolidate(
+            @Option(required = false, name = "merge", defaultValue = "false",
+                     description = "Merge the containers of each package into the one with the most handlers") final boolean merge,
+            final PipeOut out) throws Exception
+   {
+      final ContainerConsolidator consolidator = new ContainerConsolidator(this.sources, this.editor,
+               this.project.getFacet(JavaSourceFacet.class));
+      // Only the main sources are deployed, test containers are left alone
+      final SortedMap<String, List<ContainerConsolidator.ContainerSummary>> byPackage = consolidator
+               .findContainers(Collections.singletonList(this.project.getFacet(JavaSourceFacet.class)
+                        .getSourceFolder().getUnderlyingResourceObject()));
+
+      int containerCount = 0;
+      int handlerCount = 0;
+      for (Map.Entry<String, List<ContainerConsolidator.ContainerSummary>> entry : byPackage.entrySet()) {
+         out.println("".equals(entry.getKey()) ? "(default package)" : entry.getKey());
+         for (ContainerConsolidator.ContainerSummary container : entry.getValue()) {
+            out.println(String.format("%5d  %s", container.getHandlers(), container.getQualifiedName()));
+            containerCount++;
+            handlerCount += container.getHandlers();
+         }
+      }
+      out.println();
+      ShellMessages.info(out, containerCount + " container(s) holding " + handlerCount + " handler(s) in "
+               + byPackage.size() + " package(s)");
+
+      if (!merge) {
+         if (containerCount > byPackage.size())
+            ShellMessages.info(out, "Run with --merge true to merge them into " + byPackage.size() + " container(s)");
+         return;
+      }
+
+      // Tests compile against the main sources, a container they refer to is kept as well
+      final JavaSourceFacet javaSourceFacet = this.project.getFacet(JavaSourceFacet.class);
+      final List<ContainerConsolidator.ContainerSummary> all = new ArrayList<ContainerConsolidator.ContainerSummary>();
+      for (List<ContainerConsolidator.ContainerSummary> containers : byPackage.values()) {
+         all.addAll(containers);
+      }
+      final Map<String, File> references = consolidator.findReferences(Arrays.asList(javaSourceFacet
+               .getSourceFolder().getUnderlyingResourceObject(), javaSourceFacet.getTestSourceFolder()
+               .getUnderlyingResourceObject()), all);
+
+      int remaining = containerCount;
+      for (List<ContainerConsolidator.ContainerSummary> containers : byPackage.values()) {
+         for (ContainerConsolidator.MergeResult result : consolidator.merge(containers, references)) {
+            if (result.getSkipReason() == null) {
+               out.println("Merged [" + result.getContainer().getQualifiedName() + "] into ["
+                        + result.getTarget().getQualifiedName() + "]");
+               remaining--;
+            }
+            else {
+               ShellMessages.warn(out, "Kept [" + result.getContainer().getQualifiedName() + "]: "
+                        + result.getSkipReason());
+            }
+         }
+      }
+      ShellMessages.success(out, containerCount + " container(s) consolidated into " + remaining);
+   }
+
+   /**
+    * Restricts CDI discovery to the packages the Exception Handler containers need, by writing Weld exclude filters for
+    * every other package of the project to its <code>beans.xml</code>.
+    * 
+    * @param keep comma separated packages to keep scanning
+    * @param dryRun only report the filters
+    * @param out output pipe
+    * @throws Exception
+    */
+   @Command(value = "optimize-discovery", help = "Exclude the packages the Exception Handlers do not need from CDI discovery.")
+   public void optimizeDiscovery(
+            @Option(required = false, name = "keep",
+                     description = "Comma separated packages to keep scanning, with their sub packages") final String keep,
+            @Option(required = false, name = "dry-run", defaultValue = "false",
+                     description = "Only report the filters, do not change beans.xml") final boolean dryRun,
+            final PipeOut out) throws Exception
+   {
+      final JavaSourceFacet javaSourceFacet = this.project.getFacet(JavaSourceFacet.class);
+      final File sourceRoot = javaSourceFacet.getSourceFolder().getUnderlyingResourceObject();
+      final SortedMap<String, List<ContainerConsolidator.ContainerSummary>> containers = new ContainerConsolidator(
+               this.sources, this.editor, javaSourceFacet).findContainers(Collections.singletonList(sourceRoot));
+      if (containers.isEmpty()) {
+         ShellMessages.info(out, "No Exception Handler containers found, nothing to optimize");
+         return;
+      }
+
+      final List<String> keptPackages = new ArrayList<String>();
+      if (keep != null) {
+         for (String packageName : keep.split(",")) {
+            if (!"".equals(packageName.trim()))
+               keptPackages.add(packageName.trim());
+         }
+      }
+
+      final DiscoveryFilter.Result result = new DiscoveryFilter(sourceRoot).compute(containers.keySet(),
+               keptPackages);
+      for (String packageName : result.getKeptPackages()) {
+         out.println("   scanned   " + packageName);
+      }
+      for (String exclude : result.getExcludes()) {
+         out.println("   excluded  " + exclude);
+      }
+      for (String candidate : result.getBeanCandidates()) {
+         ShellMessages.warn(out, "[" + candidate + "] declares CDI annotations and will no longer be discovered,"
+                  + " use --keep if it is needed");
+      }
+
+      out.println();
+      final int percent = result.getClasses() == 0 ? 0 : 100 * result.getExcludedClasses() / result.getClasses();
+      ShellMessages.info(out, result.getExcludedClasses() + " of " + result.getClasses()
+               + " project class(es) excluded from discovery (" + percent + "%)");
+
+      if (dryRun || result.getExcludes().isEmpty())
+         return;
+
+      final FileResource<?> beansXml = this.project.getFacet(CDIFacet.class).getConfigFile();
+      final String current = beansXml.exists() ? HandlerScanner.read(beansXml.getUnderlyingResourceObject()) : null;
+      beansXml.setContents(DiscoveryFilter.apply(current, result.getExcludes()));
+      ShellMessages.success(out, "Wrote " + result.getExcludes().size() + " exclude filter(s) to ["
+               + beansXml.getFullyQualifiedName() + "]");
+   }
+
+   /**
+    * Generates the <code>@ProfiledHandler</code> interceptor binding and its interceptor, enables the interceptor in
+    * <code>beans.xml</code> and annotates the given Exception Handler containers, or all of them, with the binding.
+    * Profiled handlers record their invocation count and latency percentiles in the <code>HandlerMetrics</code>
+    * registry of the project, published over JMX, the one handlers created with <code>--metrics</code> record to.
+    * 
+    * @param packageName package of the interceptor and its support classes
+    * @param containers comma separated containers to profile, simple or qualified names, all if not given
+    * @param out output pipe
+    * @throws Exception
+    */
+   @Command(value = "enable-profiling", help = "Profile Exception Handlers with an interceptor publishing their latencies over JMX.")
+   public void enableProfiling(
+            @Option(required = false, name = "package", type = PromptType.JAVA_PACKAGE,
+                     description = "Package of the interceptor") final String packageName,
+            @Option(required = false, name = "containers",
+                     description = "Comma separated containers to profile, all containers by default") final String containers,
+            final PipeOut out) throws Exception
+   {
+      final JavaSourceFacet javaSourceFacet = this.project.getFacet(JavaSourceFacet.class);
+      final String profilingPackage = (packageName != null) && !"".equals(packageName) ? packageName
+               : javaSourceFacet.getBasePackage() + ".profiling";
+
+      final List<String> selected = new ArrayList<String>();
+      if (containers != null) {
+         for (String container : containers.split(",")) {
+            if (!"".equals(container.trim()))
+               selected.add(container.trim());
+         }
+      }
+
+      final List<ContainerConsolidator.ContainerSummary> profiled =
+               new ArrayList<ContainerConsolidator.ContainerSummary>();
+      for (List<ContainerConsolidator.ContainerSummary> inPackage : new ContainerConsolidator(this.sources,
+               this.editor, javaSourceFacet).findContainers(Collections.singletonList(javaSourceFacet.getSourceFolder()
+               .getUnderlyingResourceObject())).values()) {
+         for (ContainerConsolidator.ContainerSummary container : inPackage) {
+            final String qualifiedName = container.getQualifiedName();
+            final String simpleName = qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+            if (selected.isEmpty() || selected.contains(qualifiedName) || selected.contains(simpleName))
+               profiled.add(container);
+         }
+      }
+      if (profiled.isEmpty()) {
+         ShellMessages.error(out, "No Exception Handler containers found"
+                  + (selected.isEmpty() ? "" : " matching " + selected));
+         return;
+      }
+
+      final String metricsPackage = HandlerMethods.metricsPackage(javaSourceFacet);
+      this.generateSupportClasses(javaSourceFacet, metricsPackage, HandlerMethods.METRICS_SUPPORT_CLASSES, out);
+      if (SourceTemplates.generateIfMissing(javaSourceFacet, "ProfiledHandler", profilingPackage, false))
+         out.println("Created [" + profilingPackage + ".ProfiledHandler]");
+      if (SourceTemplates.generateIfMissing(javaSourceFacet, "ProfiledHandlerInterceptor", profilingPackage, false,
+               Collections.singletonMap("metricsPackage", metricsPackage)))
+         out.println("Created [" + profilingPackage + ".ProfiledHandlerInterceptor]");
+
+      final String interceptor = profilingPackage + ".ProfiledHandlerInterceptor";
+      final FileResource<?> beansXml = this.project.getFacet(CDIFacet.class).getConfigFile();
+      final String current = beansXml.exists() ? HandlerScanner.read(beansXml.getUnderlyingResourceObject()) : null;
+      final String enabled = BeansXml.enableInterceptor(current, interceptor);
+      if (!enabled.equals(current)) {
+         beansXml.setContents(enabled);
+         out.println("Enabled interceptor [" + interceptor + "] in [" + beansXml.getFullyQualifiedName() + "]");
+      }
+
+      final String binding = profilingPackage + ".ProfiledHandler";
+      for (ContainerConsolidator.ContainerSummary container : profiled) {
+         final JavaClass javaClass = (JavaClass) this.sources.get(container.getFile());
+         if (javaClass.hasAnnotation(binding)) {
+            out.println("[" + container.getQualifiedName() + "] is already profiled");
+            continue;
+         }
+
+         try {
+            javaClass.addAnnotation(binding);
+            javaSourceFacet.saveJavaSource(javaClass);
+         }
+         finally {
+            // Saved or not, the cached model no longer matches what the editor last read
+            this.editor.invalidate(container.getFile());
+         }
+         out.println("Profiling [" + container.getQualifiedName() + "]");
+      }
+
+      ShellMessages.success(out, "Handler latencies are published over JMX as [" + metricsPackage
+               + ":type=HandlerMetrics]");
+   }
+
+   /**
+    * Generates the classes from their templates unless the project already has them.
+    */
+   private void generateSupportClasses(final JavaSourceFacet javaSourceFacet, final String packageName,
+            final String[] templates, final PipeOut out)
+   {
+      for (String template : templates) {
+         if (SourceTemplates.generateIfMissing(javaSourceFacet, template, packageName, false))
+            out.println("Created [" + packageName + "." + template + "]");
+      }
+   }
+
+   /**
+    * Watches the source folders and re-validates the handlers of every changed file: handler methods sharing a name,
+    * exception types that are not imported and handlers whose order is undefined. Changes are collected until the
+    * folders are quiet, so a burst of changes is validated once; large bursts refresh the whole index in parallel.
+    * 
+    * @param pollInterval milliseconds between two checks of the source folders
+    * @param quietPeriod milliseconds without changes before a batch of changes is validated
+    * @param duration seconds to watch for, 0 to watch until interrupted
+    * @param out output pipe
+    * @throws Exception
+    */
+   @Command(value = "watch", help = "Re-validate the Exception Handlers of changed source files until interrupted.")
+   public void watch(
+            @Option(required = false, name = "poll-interval", defaultValue = "250",
+                     description = "Milliseconds between two checks of the source folders") final int pollInterval,
+            @Option(required = false, name = "quiet-period", defaultValue = "300",
+                     description = "Milliseconds without changes before a batch of changes is validated") final int quietPeriod,
+            @Option(required = false, name = "duration", defaultValue = "0",
+                     description = "Seconds to watch for, 0 to watch until interrupted") final int duration,
+            final PipeOut out) throws Exception
+   {
+      final List<File> roots = new ArrayList<File>();
+      for (DirectoryResource folder : this.project.getFacet(JavaSourceFacet.class).getSourceFolders()) {
+         roots.add(folder.getUnderlyingResourceObject());
+      }
 
-      final JavaClass handlerContainerClass = JavaParser.create(JavaClass.class)
-               .setPackage(containerPackage)
-               .setName(className)
-               .setPublic()
-               .addAnnotation(HandlesExceptions.class).getOrigin();
+      final HandlerIndex index = HandlerIndex.forProject(this.project, this.sources);
+      final SourceWatcher watcher = new SourceWatcher(roots);
+      final HandlerValidator validator = new HandlerValidator(roots, this.sources);
+      final long deadline = duration > 0 ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(duration) : 0;
 
-      final JavaResource handlerContainerFileLocation = javaSourceFacet.saveJavaSource(handlerContainerClass);
+      ShellMessages.info(out, "Watching " + index.getLastRefresh().getScanned() + " source file(s) for changes");
+      try {
+         while ((deadline == 0) || (System.currentTimeMillis() < deadline)) {
+            final Set<File> batch = watcher.awaitBatch(pollInterval, quietPeriod, deadline);
+            if (batch.isEmpty())
+               break;
 
-      writer.println("Created Exception Handler Container [" + handlerContainerClass.getQualifiedName() + "]");
+            final long start = System.nanoTime();
+            for (File file : batch) {
+               this.editor.invalidate(file);
+            }
+            if (batch.size() > WATCH_REFRESH_THRESHOLD)
+               index.refresh(roots);
+            else
+               index.update(batch);
+            final List<HandlerChainAnalysis.Finding> findings = validator.validate(batch, index);
+            final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
 
-      // pick up the generated class so they can then add handlers
-      shell.execute("pick-up " + handlerContainerFileLocation.getFullyQualifiedName());
+            for (HandlerChainAnalysis.Finding finding : findings) {
+               ShellMessages.warn(out, finding.getKind() + " " + finding.getHandler() + ": " + finding.getDetail());
+            }
+            ShellMessages.info(out, batch.size() + " changed file(s) validated in " + millis + " ms, "
+                     + findings.size() + " problem(s)");
+         }
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      finally {
+         index.save();
+      }
+   }
+
+   /**
+    * Adds JMH to the project's test dependencies and generates a benchmark for every handled exception type.
+    * 
+    * @param packageName package of the benchmarks
+    * @param jmhVersion JMH version to depend on
+    * @param weldVersion Weld SE version to boot the benchmarks with
+    * @param out output pipe
+    * @throws Exception
+    */
+   @Command(value = "create-benchmarks", help = "Generate JMH benchmarks firing each handled exception type through its handlers.")
+   public void createBenchmarks(
+            @Option(required = false, name = "package", type = PromptType.JAVA_PACKAGE,
+                     description = "Package of the benchmarks") final String packageName,
+            @Option(required = false, name = "jmh-version", defaultValue = "1.37",
+                     description = "JMH version") final String jmhVersion,
+            @Option(required = false, name = "weld-version", defaultValue = "1.1.10.Final",
+                     description = "Weld SE version used to boot the CDI container") final String weldVersion,
+            final PipeOut out) throws Exception
+   {
+      final JavaSourceFacet javaSourceFacet = this.project.getFacet(JavaSourceFacet.class);
+      final ExceptionHierarchy hierarchy = new ExceptionHierarchy(this.throwables.getSuperclasses(this.project));
+
+      final List<String> exceptionTypes = new ArrayList<String>();
+      for (String type : HandlerIndex.forProject(this.project, this.sources).byExceptionType().keySet()) {
+         if (hierarchy.isThrowable(type))
+            exceptionTypes.add(type);
+      }
+      if (exceptionTypes.isEmpty()) {
+         ShellMessages.info(out, "No handled exception types found, nothing to benchmark");
+         return;
+      }
+
+      final String benchmarkPackage = (packageName != null) && !"".equals(packageName) ? packageName
+               : javaSourceFacet.getBasePackage() + ".benchmark";
+
+      final BenchmarkGenerator generator = new BenchmarkGenerator(javaSourceFacet,
+               this.project.getFacet(DependencyFacet.class));
+      for (Dependency dependency : generator.addDependencies(jmhVersion, weldVersion)) {
+         out.println("Added test dependency [" + dependency + "]");
+      }
+
+      final Map<String, String> benchmarks = generator.generate(benchmarkPackage, exceptionTypes);
+      for (Map.Entry<String, String> benchmark : benchmarks.entrySet()) {
+         out.println("Created benchmark [" + benchmarkPackage + "." + benchmark.getValue() + "] for ["
+                  + benchmark.getKey() + "]");
+      }
+
+      ShellMessages.success(out, "Run them with: mvn test-compile exec:java -Dexec.classpathScope=test"
+               + " -Dexec.mainClass=" + benchmarkPackage + ".HandlerBenchmarks");
+   }
+
+   /**
+    * Generates an exception storm harness firing the handled exception types, or the given ones, through Seam Catch
+    * from several threads at a target rate and printing the percentiles of their handling latency.
+    * 
+    * @param packageName package of the harness
+    * @param className name of the harness
+    * @param exceptionTypes comma separated exception types to fire, all handled types if not given
+    * @param threads number of firing threads
+    * @param rate exceptions fired per second
+    * @param duration seconds to measure for
+    * @param warmup seconds to warm up for
+    * @param weldVersion Weld SE version to boot the CDI container with
+    * @param out output pipe
+    * @throws Exception
+    */
+   @Command(value = "create-load-test", help = "Generate a harness firing exceptions at a target rate and reporting handling latency percentiles.")
+   public void createLoadTest(
+            @Option(required = false, name = "package", type = PromptType.JAVA_PACKAGE,
+                     description = "Package of the harness") final String packageName,
+            @Option(required = false, name = "named", defaultValue = "HandlerLoadTest",
+                     description = "The name of the class to create") final String className,
+            @Option(required = false, name = "exception-types",
+                     description = "Comma separated exception types to fire, all handled types by default") final String exceptionTypes,
+            @Option(required = false, name = "threads", defaultValue = "8",
+                     description = "Number of threads firing exceptions") final int threads,
+            @Option(required = false, name = "rate", defaultValue = "1000",
+                     description = "Exceptions fired per second, all threads together") final int rate,
+            @Option(required = false, name = "duration", defaultValue = "30",
+                     description = "Seconds to measure for") final int duration,
+            @Option(required = false, name = "warmup", defaultValue = "10",
+                     description = "Seconds to warm up for before measuring") final int warmup,
+            @Option(required = false, name = "weld-version", defaultValue = "1.1.10.Final",
+                     description = "Weld SE version used to boot the CDI container") final String weldVersion,
+            final PipeOut out) throws Exception
+   {
+      if ((threads < 1) || (rate < 1) || (duration < 1) || (warmup < 0)) {
+         ShellMessages.error(out, "--threads, --rate and --duration must be positive, --warmup must not be negative");
+         return;
+      }
+
+      final JavaSourceFacet javaSourceFacet = this.project.getFacet(JavaSourceFacet.class);
+      final ExceptionHierarchy hierarchy = new ExceptionHierarchy(this.throwables.getSuperclasses(this.project));
+
+      final List<String> types = new ArrayList<String>();
+      if (exceptionTypes != null) {
+         for (String type : exceptionTypes.split(",")) {
+            if (!"".equals(type.trim()))
+               types.add(type.trim());
+         }
+      }
+      else {
+         for (String type : HandlerIndex.forProject(this.project, this.sources).byExceptionType().keySet()) {
+            if (hierarchy.isThrowable(type))
+               types.add(type);
+         }
+      }
+      if (types.isEmpty()) {
+         ShellMessages.info(out, "No exception types to fire, pass --exception-types or add handlers");
+         return;
+      }
+
+      final String harnessPackage = (packageName != null) && !"".equals(packageName) ? packageName
+               : javaSourceFacet.getBasePackage() + ".load";
+
+      final LoadTestGenerator generator = new LoadTestGenerator(javaSourceFacet,
+               this.project.getFacet(DependencyFacet.class));
+      for (Dependency dependency : generator.addDependencies(weldVersion)) {
+         out.println("Added test dependency [" + dependency + "]");
+      }
+
+      final JavaSource<?> harness = generator.generate(harnessPackage, className, types, threads, rate, duration,
+               warmup);
+      out.println("Created load test [" + harness.getQualifiedName() + "] firing " + types);
+
+      ShellMessages.success(out, "Run it with: mvn test-compile exec:java -Dexec.classpathScope=test"
+               + " -Dexec.mainClass=" + harness.getQualifiedName() + " [-Dload.threads=N] [-Dload.rate=N]");
+   }
+
+   /**
+    * Turns the phase timing of the commands supporting <code>--timing</code> on or off for the rest of the session,
+    * and sets the file the timings are appended to.
+    * 
+    * @param enable time every command
+    * @param disable stop timing commands not given --timing, and stop writing the dump file
+    * @param dump file the timings are appended to, as CSV if its name ends in .csv and as JSON lines otherwise
+    * @param out output pipe
+    */
+   @Command(value = "timing", help = "Time the phases of every command of the session and optionally dump them to a file.")
+   public void timing(
+            @Option(required = false, name = "enable", defaultValue = "false",
+                     description = "Time every command until disabled") final boolean enable,
+            @Option(required = false, name = "disable", defaultValue = "false",
+                     description = "Stop timing commands and writing the dump file") final boolean disable,
+            @Option(required = false, name = "dump", type = PromptType.FILE_PATH,
+                     description = "File the timings are appended to, CSV if it ends in .csv, JSON lines otherwise") final Resource<?> dump,
+            final PipeOut out)
+   {
+      if (enable && disable) {
+         ShellMessages.error(out, "--enable cannot be combined with --disable");
+         return;
+      }
+
+      if (disable) {
+         this.timing.setEnabled(false);
+         this.timing.setDump(null);
+      }
+      else {
+         if (enable)
+            this.timing.setEnabled(true);
+         if (dump != null)
+            this.timing.setDump(((FileResource<?>) dump).getUnderlyingResourceObject());
+      }
+
+      out.println("Timing is " + (this.timing.isEnabled() ? "on for every command" : "off, unless --timing is given")
+               + (this.timing.getDump() == null ? "" : ", timings are appended to [" + this.timing.getDump() + "]"));
+   }
+
+   /**
+    * Resolves the package to create a class in: the given package, the package of the current directory, or the one
+    * the user is prompted for.
+    * 
+    * @param packageName package given as an option, may be null
+    * @param promptMessage message to prompt with
+    * @return the package name
+    */
+   private String resolvePackage(final String packageName, final String promptMessage)
+   {
+      if ((packageName != null) && !"".equals(packageName))
+         return packageName;
+      else if (this.getPackagePortionOfCurrentDirectory() != null)
+         return this.getPackagePortionOfCurrentDirectory();
+      else
+         return prompt.promptCommon(promptMessage, PromptType.JAVA_PACKAGE);
    }
 
    /**
@@ -0,0 +1,169 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Singleton;
+
+import org.jboss.forge.shell.ShellMessages;
+import org.jboss.forge.shell.ShellPrintWriter;
+import org.jboss.forge.shell.events.CommandExecuted;
+
+/**
+ * Timing settings of a shell session. Commands supporting <code>--timing</code> time their phases with a
+ * {@link PhaseTimer} from {@link #start(String)} and hand it back to {@link #finish}. The breakdown is printed when it
+ * was asked for on the command or timing is on for the session, see <code>seam-catch timing</code>, and appended to
+ * the dump file whenever one is set. A dump file ending in <code>.csv</code> gets one line per phase, see {@link PhaseTimer#CSV_HEADER}, any other gets one JSON object per
+ * command, so runs of scripted sessions can be concatenated and aggregated.
+ * <p>
+ * The facet check runs before the command is invoked, outside of its reach: {@link CatchFacet} records the time of
+ * each check and the first phase of a timed command is the time of the checks made since the previous command, timed
+ * or not, was executed.
+ */
+@Singleton
+public class CommandTiming
+{
+   public static final String FACET_CHECK = "facet check";
+   public static final String SOURCE_PARSE = "source parse";
+   public static final String VALIDATION = "validation";
+   public static final String MODEL_MUTATION = "model mutation";
+   public static final String IMPORT_RESOLUTION = "import resolution";
+   public static final String FORMAT_AND_WRITE = "format and write";
+   public static final String PICK_UP = "pick-up";
+
+   private static final AtomicLong FACET_CHECK_NANOS = new AtomicLong();
+
+   private volatile boolean enabled;
+   private volatile File dump;
+
+   /**
+    * @param nanos time of a facet check, attributed to the next timed command
+    */
+   static void recordFacetCheck(final long nanos)
+   {
+      FACET_CHECK_NANOS.addAndGet(nanos);
+   }
+
+   /**
+    * Forgets the facet checks of the command just executed, so they are not attributed to the next timed command.
+    */
+   void reset(@Observes final CommandExecuted event)
+   {
+      FACET_CHECK_NANOS.set(0);
+   }
+
+   /**
+    * @param command name of the command
+    * @return a timer whose first phase is the facet check
+    */
+   public PhaseTimer start(final String command)
+   {
+      final PhaseTimer timer = new PhaseTimer(command);
+      timer.add(FACET_CHECK, FACET_CHECK_NANOS.getAndSet(0));
+      return timer;
+   }
+
+   /**
+    * Prints the timer if timing was asked for on the command or is on for the session, and appends it to the dump
+    * file if one is set.
+    *
+    * @param timer timer of the command
+    * @param requested if <code>--timing</code> was given on the command
+    * @param writer shell writer to print the breakdown to
+    */
+   public void finish(final PhaseTimer timer, final boolean requested, final ShellPrintWriter writer)
+   {
+      if (requested || this.enabled) {
+         writer.println("Timing of [" + timer.getCommand() + "]:");
+         for (Map.Entry<String, Long> phase : timer.getPhases().entrySet()) {
+            writer.println(String.format(Locale.ROOT, "   %-20s %10.3f ms", phase.getKey(), phase.getValue() / 1e6));
+         }
+         writer.println(String.format(Locale.ROOT, "   %-20s %10.3f ms", "total", timer.getTotal() / 1e6));
+      }
+
+      final File file = this.dump;
+      if (file != null) {
+         try {
+            append(file, timer);
+         }
+         catch (IOException e) {
+            ShellMessages.warn(writer, "Could not write the timing to [" + file + "]: " + e.getMessage());
+         }
+      }
+   }
+
+   public boolean isEnabled()
+   {
+      return enabled;
+   }
+
+   public void setEnabled(final boolean enabled)
+   {
+      this.enabled = enabled;
+   }
+
+   /**
+    * @return file the timings are appended to, or null
+    */
+   public File getDump()
+   {
+      return dump;
+   }
+
+   public void setDump(final File dump)
+   {
+      this.dump = dump;
+   }
+
+   /**
+    * Appends the timer to the file, as CSV if its name ends in <code>.csv</code> and as a JSON line otherwise.
+    *
+    * @param file dump file, created with a header if it is a new CSV file
+    * @param timer timer to write
+    * @throws IOException if the file cannot be written
+    */
+   public static void append(final File file, final PhaseTimer timer) throws IOException
+   {
+      final boolean csv = file.getName().toLowerCase(Locale.ROOT).endsWith(".csv");
+      final StringBuilder content = new StringBuilder();
+      if (csv) {
+         if (!file.exists() || (file.length() == 0))
+            content.append(PhaseTimer.CSV_HEADER).append('\n');
+         content.append(timer.toCsv());
+      }
+      else
+         content.append(timer.toJson()).append('\n');
+
+      if (file.getParentFile() != null)
+         file.getParentFile().mkdirs();
+      final OutputStream out = new FileOutputStream(file, true);
+      try {
+         out.write(content.toString().getBytes("UTF-8"));
+      }
+      finally {
+         out.close();
+      }
+   }
+}
@@ -0,0 +1,525 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jboss.forge.parser.JavaParser;
+import org.jboss.forge.parser.java.Annotation;
+import org.jboss.forge.parser.java.Field;
+import org.jboss.forge.parser.java.Import;
+import org.jboss.forge.parser.java.JavaClass;
+import org.jboss.forge.parser.java.JavaSource;
+import org.jboss.forge.parser.java.Method;
+import org.jboss.forge.project.facets.JavaSourceFacet;
+import org.jboss.forge.resources.java.JavaResource;
+import org.jboss.solder.exception.control.HandlesExceptions;
+
+/**
+ * Finds the Exception Handler containers of a project and merges the containers of a package into the one holding the
+ * most handlers. Every container is a bean Weld discovers, validates and proxies when the application starts, so fewer
+ * containers start faster while the handlers, their <code>@Handles</code> parameters and the imports they need are
+ * moved unchanged. A container is only merged when moving its members cannot change their meaning: it must be a plain
+ * class with the same annotations as the target, without nested types or class javadoc, whose members do not refer to
+ * the class by name and that no other source of the project refers to by name, and none of its member or import names
+ * may clash with the target's. Members are moved as they are written, comments included.
+ */
+public class ContainerConsolidator
+{
+   private static final String CONTAINER_MARKER = "HandlesExceptions";
+   private static final Pattern TYPE_DECLARATION = Pattern
+            .compile("(?<![.\\w$])(?:class|interface|enum)\\s+([\\w$]+)");
+   private static final Pattern PACKAGE = Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;", Pattern.MULTILINE);
+   private static final Pattern IMPORT_ANCHOR = Pattern.compile("^\\s*(?:package|import)\\s[^;]*;",
+            Pattern.MULTILINE);
+
+   private final ParsedSourceCache sources;
+   private final HandlerContainerEditor editor;
+   private final JavaSourceFacet javaSourceFacet;
+
+   /**
+    * @param sources parsed sources of the session
+    * @param editor editor the handlers are appended to the target containers with
+    * @param javaSourceFacet facet the containers are saved and deleted through
+    */
+   public ContainerConsolidator(final ParsedSourceCache sources, final HandlerContainerEditor editor,
+            final JavaSourceFacet javaSourceFacet)
+   {
+      this.sources = sources;
+      this.editor = editor;
+      this.javaSourceFacet = javaSourceFacet;
+   }
+
+   /**
+    * @param roots source folders to search
+    * @return the containers found, grouped by package and sorted by decreasing number of handlers
+    * @throws IOException if a source file cannot be read
+    */
+   public SortedMap<String, List<ContainerSummary>> findContainers(final List<File> roots) throws IOException
+   {
+      final SortedMap<String, List<ContainerSummary>> byPackage = new TreeMap<String, List<ContainerSummary>>();
+      for (File root : roots) {
+         this.collect(root, byPackage);
+      }
+      for (List<ContainerSummary> containers : byPackage.values()) {
+         Collections.sort(containers, new Comparator<ContainerSummary>()
+         {
+            @Override
+            public int compare(final ContainerSummary left, final ContainerSummary right)
+            {
+               if (left.handlers != right.handlers)
+                  return left.handlers > right.handlers ? -1 : 1;
+               return left.qualifiedName.compareTo(right.qualifiedName);
+            }
+         });
+      }
+      return byPackage;
+   }
+
+   private void collect(final File directory, final Map<String, List<ContainerSummary>> byPackage)
+            throws IOException
+   {
+      final File[] children = directory.listFiles();
+      if (children == null)
+         return;
+
+      for (File child : children) {
+         if (child.isDirectory()) {
+            this.collect(child, byPackage);
+            continue;
+         }
+         // Only files mentioning the annotation are parsed
+         if (!child.getName().endsWith(".java") || !HandlerScanner.read(child).contains(CONTAINER_MARKER))
+            continue;
+
+         final JavaSource<?> source = this.sources.get(child);
+         if (!source.isClass())
+            continue;
+
+         final JavaClass javaClass = (JavaClass) source;
+         if (!javaClass.hasAnnotation(HandlesExceptions.class))
+            continue;
+
+         final String packageName = javaClass.getPackage() == null ? "" : javaClass.getPackage();
+         List<ContainerSummary> containers = byPackage.get(packageName);
+         if (containers == null) {
+            containers = new ArrayList<ContainerSummary>();
+            byPackage.put(packageName, containers);
+         }
+         containers.add(new ContainerSummary(child, javaClass.getQualifiedName(), HandlerScanner.scan(javaClass)
+                  .size()));
+      }
+   }
+
+   /**
+    * Finds the source files referring to the containers by name, such as an <code>@Inject OldContainer</code> field,
+    * a static member or <code>OldContainer.class</code>, which would no longer compile once the container is merged
+    * and deleted. A file refers to a container when it names it qualified, or by its simple name from the same
+    * package or with a wildcard import of the package; references from the container itself are not counted.
+    *
+    * @param roots source folders to search, all the sources compiled with the containers
+    * @param containers containers that may be merged
+    * @return qualified name of each referenced container to the first file found referring to it
+    * @throws IOException if a source file cannot be read
+    */
+   public Map<String, File> findReferences(final List<File> roots, final Collection<ContainerSummary> containers)
+            throws IOException
+   {
+      final Map<String, File> references = new HashMap<String, File>();
+      for (File root : roots) {
+         this.collectReferences(root, containers, references);
+      }
+      return references;
+   }
+
+   private void collectReferences(final File directory, final Collection<ContainerSummary> containers,
+            final Map<String, File> references) throws IOException
+   {
+      final File[] children = directory.listFiles();
+      if (children == null)
+         return;
+
+      for (File child : children) {
+         if (child.isDirectory()) {
+            this.collectReferences(child, containers, references);
+            continue;
+         }
+         if (!child.getName().endsWith(".java"))
+            continue;
+
+         final String text = HandlerScanner.read(child);
+         final Matcher packageMatcher = PACKAGE.matcher(text);
+         final String packageName = packageMatcher.find() ? packageMatcher.group(1) : "";
+         for (ContainerSummary container : containers) {
+            if (references.containsKey(container.qualifiedName) || child.equals(container.file))
+               continue;
+            if (refersTo(text, packageName, container.qualifiedName))
+               references.put(container.qualifiedName, child);
+         }
+      }
+   }
+
+   static boolean refersTo(final String text, final String packageName, final String qualifiedName)
+   {
+      final String simpleName = simpleName(qualifiedName);
+      if (!text.contains(simpleName))
+         return false;
+      if (Pattern.compile("(?<![\\w$.])" + Pattern.quote(qualifiedName) + "(?![\\w$])").matcher(text).find())
+         return true;
+      if (!Pattern.compile("(?<![\\w$.])" + Pattern.quote(simpleName) + "(?![\\w$])").matcher(text).find())
+         return false;
+
+      final String containerPackage = qualifiedName.length() == simpleName.length() ? "" : qualifiedName.substring(0,
+               qualifiedName.length() - simpleName.length() - 1);
+      return containerPackage.equals(packageName)
+               || Pattern.compile("\\bimport\\s+" + Pattern.quote(containerPackage) + "\\s*\\.\\s*\\*\\s*;")
+                        .matcher(text).find();
+   }
+
+   /**
+    * Merges the containers of a package into the first one, which holds the most handlers. The bodies of the merged
+    * containers are copied as they are written, comments included, to the end of the target, which is saved once;
+    * merged containers are deleted once the target was written.
+    *
+    * @param containers containers of one package, as returned by {@link #findContainers(List)}
+    * @param references files referring to containers by name, as returned by {@link #findReferences(List, Collection)}
+    * @return the outcome for each container but the target
+    * @throws IOException if the target cannot be written
+    */
+   public List<MergeResult> merge(final List<ContainerSummary> containers, final Map<String, File> references)
+            throws IOException
+   {
+      final List<MergeResult> results = new ArrayList<MergeResult>();
+      if (containers.size() < 2)
+         return results;
+
+      final ContainerSummary target = containers.get(0);
+      final JavaClass targetClass = (JavaClass) this.sources.get(target.file);
+      final String targetText = HandlerScanner.read(target.file);
+
+      final Set<String> memberNames = memberNamesOf(targetClass);
+      final Map<String, String> imports = HandlerMethods.importsOf(targetClass);
+      final Set<String> annotations = annotationsOf(targetClass);
+
+      final Set<String> requiredImports = new LinkedHashSet<String>();
+      final StringBuilder members = new StringBuilder();
+      final List<ContainerSummary> merged = new ArrayList<ContainerSummary>();
+
+      for (ContainerSummary container : containers.subList(1, containers.size())) {
+         final File referrer = references.get(container.qualifiedName);
+         if (referrer != null) {
+            results.add(new MergeResult(container, target, "referred to by " + referrer));
+            continue;
+         }
+
+         final JavaClass source;
+         final String text;
+         try {
+            source = (JavaClass) this.sources.get(container.file);
+            text = HandlerScanner.read(container.file);
+         }
+         catch (FileNotFoundException e) {
+            results.add(new MergeResult(container, target, "source file is gone"));
+            continue;
+         }
+
+         String reason = checkDeclaration(source, text);
+         if (reason == null)
+            reason = checkMovable(source, annotations, memberNames, imports);
+         final String body = reason == null ? bodyOf(source, text) : null;
+         if ((reason == null) && (body == null))
+            reason = "body of the class not found";
+         if (reason != null) {
+            results.add(new MergeResult(container, target, reason));
+            continue;
+         }
+
+         for (Import i : source.getImports()) {
+            if (!i.getQualifiedName().equals(imports.get(simpleName(i.getQualifiedName()))))
+               requiredImports.add(i.getQualifiedName());
+            imports.put(simpleName(i.getQualifiedName()), i.getQualifiedName());
+         }
+         for (Field<JavaClass> field : source.getFields()) {
+            memberNames.add(field.getName());
+         }
+         for (Method<JavaClass> method : source.getMethods()) {
+            memberNames.add(method.getName());
+         }
+         members.append('\n').append(body).append('\n');
+         merged.add(container);
+      }
+
+      if (merged.isEmpty())
+         return results;
+
+      final JavaSource<?> mergedTarget = JavaParser.parse(appendMembers(targetClass.getName(), targetText,
+               requiredImports, members.toString()));
+      try {
+         this.javaSourceFacet.saveJavaSource(mergedTarget);
+      }
+      finally {
+         this.editor.invalidate(target.file);
+      }
+      for (ContainerSummary container : merged) {
+         this.editor.invalidate(container.file);
+         final JavaResource resource = this.javaSourceFacet.getJavaResource(container.qualifiedName);
+         if (!resource.delete())
+            throw new IOException("Merged [" + container.qualifiedName + "] into [" + target.qualifiedName
+                     + "] but could not delete " + container.file);
+         results.add(new MergeResult(container, target, null));
+      }
+      return results;
+   }
+
+   /**
+    * @return the text between the braces of the class, trimmed of blank lines, or null if it cannot be told apart
+    */
+   static String bodyOf(final JavaClass source, final String text)
+   {
+      final Matcher declaration = TYPE_DECLARATION.matcher(text);
+      while (declaration.find()) {
+         if (!source.getName().equals(declaration.group(1)))
+            continue;
+         final int open = text.indexOf('{', declaration.end());
+         final int close = text.lastIndexOf('}');
+         if ((open < 0) || (close < open))
+            return null;
+         return text.substring(open + 1, close).replaceAll("^\\s*\\n|\\s+$", "");
+      }
+      return null;
+   }
+
+   /**
+    * Adds the imports after the last import, or the package, of the target and the members before its closing brace,
+    * leaving the rest of its text alone.
+    */
+   static String appendMembers(final String targetName, final String targetText, final Set<String> requiredImports,
+            final String members)
+   {
+      final StringBuilder result = new StringBuilder(targetText);
+      result.insert(targetText.lastIndexOf('}'), members);
+
+      if (!requiredImports.isEmpty()) {
+         final StringBuilder importLines = new StringBuilder();
+         for (String qualifiedName : requiredImports) {
+            importLines.append("\nimport ").append(qualifiedName).append(';');
+         }
+         // Only the head of the file, before the declaration, holds the package and the imports
+         final Matcher declaration = TYPE_DECLARATION.matcher(targetText);
+         int head = targetText.length();
+         while (declaration.find()) {
+            if (targetName.equals(declaration.group(1))) {
+               head = declaration.start();
+               break;
+            }
+         }
+         final Matcher anchor = IMPORT_ANCHOR.matcher(targetText).region(0, head);
+         int position = 0;
+         while (anchor.find()) {
+            position = anchor.end();
+         }
+         result.insert(position, position == 0 ? importLines.substring(1) + "\n" : importLines.toString());
+      }
+      return result.toString();
+   }
+
+   /**
+    * Checks what moving the members would lose or break: class javadoc and nested types are not moved, and references
+    * to the class by name, such as <code>OldContainer.class</code> in the fields the aggregate and sampled-log templates
+    * generate, would no longer compile once the class is deleted.
+    *
+    * @param source parsed container
+    * @param text source of the container
+    * @return why the members of the class cannot be moved, or null if nothing prevents it
+    */
+   static String checkDeclaration(final JavaClass source, final String text)
+   {
+      final Matcher declaration = TYPE_DECLARATION.matcher(text);
+      boolean declared = false;
+      while (declaration.find()) {
+         if (declared)
+            return "declares nested type " + declaration.group(1);
+         if (!source.getName().equals(declaration.group(1)))
+            continue;
+
+         // The javadoc of the class sits between the last import and the declaration
+         final String head = text.substring(0, declaration.start());
+         if (head.substring(head.lastIndexOf(';') + 1).contains("/**"))
+            return "has class javadoc";
+         declared = true;
+      }
+
+      final Pattern selfReference = Pattern.compile("\\b" + Pattern.quote(source.getName()) + "\\b");
+      for (Field<JavaClass> field : source.getFields()) {
+         if (selfReference.matcher(field.toString()).find())
+            return "field " + field.getName() + " refers to " + source.getName();
+      }
+      for (Method<JavaClass> method : source.getMethods()) {
+         if (!method.isConstructor() && selfReference.matcher(method.toString()).find())
+            return "method " + method.getName() + " refers to " + source.getName();
+      }
+      return null;
+   }
+
+   /**
+    * @return why the members of the class cannot be moved to the target, or null if they can
+    */
+   private static String checkMovable(final JavaClass source, final Set<String> annotations,
+            final Set<String> memberNames, final Map<String, String> imports)
+   {
+      if (!annotationsOf(source).equals(annotations))
+         return "annotations differ from the target";
+      if ((source.getSuperType() != null) && !"java.lang.Object".equals(source.getSuperType())
+               && !"Object".equals(source.getSuperType()))
+         return "extends " + source.getSuperType();
+      if (!source.getInterfaces().isEmpty())
+         return "implements " + source.getInterfaces();
+      if (source.isAbstract())
+         return "abstract class";
+
+      for (Import i : source.getImports()) {
+         if (i.isStatic() || i.getQualifiedName().endsWith("*"))
+            return "static or wildcard import " + i.getQualifiedName();
+         final String existing = imports.get(simpleName(i.getQualifiedName()));
+         if ((existing != null) && !existing.equals(i.getQualifiedName()))
+            return "import " + i.getQualifiedName() + " clashes with " + existing;
+      }
+      for (Field<JavaClass> field : source.getFields()) {
+         if (memberNames.contains(field.getName()))
+            return "field " + field.getName() + " already exists in the target";
+      }
+      for (Method<JavaClass> method : source.getMethods()) {
+         if (method.isConstructor())
+            return "declares a constructor";
+         if (memberNames.contains(method.getName()))
+            return "method " + method.getName() + " already exists in the target";
+      }
+      return null;
+   }
+
+   private static Set<String> memberNamesOf(final JavaClass javaClass)
+   {
+      final Set<String> names = new HashSet<String>();
+      for (Field<JavaClass> field : javaClass.getFields()) {
+         names.add(field.getName());
+      }
+      for (Method<JavaClass> method : javaClass.getMethods()) {
+         names.add(method.getName());
+      }
+      return names;
+   }
+
+   private static Set<String> annotationsOf(final JavaClass javaClass)
+   {
+      final Set<String> annotations = new HashSet<String>();
+      for (Annotation<JavaClass> annotation : javaClass.getAnnotations()) {
+         annotations.add(annotation.toString());
+      }
+      return annotations;
+   }
+
+   private static String simpleName(final String qualifiedName)
+   {
+      return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+   }
+
+   /**
+    * An Exception Handler container of the project.
+    */
+   public static class ContainerSummary
+   {
+      private final File file;
+      private final String qualifiedName;
+      private final int handlers;
+
+      ContainerSummary(final File file, final String qualifiedName, final int handlers)
+      {
+         this.file = file;
+         this.qualifiedName = qualifiedName;
+         this.handlers = handlers;
+      }
+
+      public File getFile()
+      {
+         return file;
+      }
+
+      public String getQualifiedName()
+      {
+         return qualifiedName;
+      }
+
+      /**
+       * @return number of handler methods the container declares
+       */
+      public int getHandlers()
+      {
+         return handlers;
+      }
+   }
+
+   /**
+    * Outcome of merging a container into the target of its package.
+    */
+   public static class MergeResult
+   {
+      private final ContainerSummary container;
+      private final ContainerSummary target;
+      private final String skipReason;
+
+      MergeResult(final ContainerSummary container, final ContainerSummary target, final String skipReason)
+      {
+         this.container = container;
+         this.target = target;
+         this.skipReason = skipReason;
+      }
+
+      public ContainerSummary getContainer()
+      {
+         return container;
+      }
+
+      public ContainerSummary getTarget()
+      {
+         return target;
+      }
+
+      /**
+       * @return why the container was left alone, or null if it was merged
+       */
+      public String getSkipReason()
+      {
+         return skipReason;
+      }
+   }
+}
@@ -0,0 +1,414 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Computes the packages of a project the CDI container has to scan for the Exception Handler containers to work: the
+ * packages of the containers and, transitively, the project packages their classes reference, through imports or
+ * fully qualified names, and the packages of the classes extending or implementing a type of a kept package, which
+ * may be injected without ever being referenced. Every other package is written to <code>beans.xml</code> as a Weld
+ * <code>&lt;weld:scan&gt;</code> exclude filter, so discovery skips it. Packages are compared by name only, sources
+ * are matched with regular expressions rather than parsed.
+ */
+public class DiscoveryFilter
+{
+   static final String WELD_NAMESPACE = "http://jboss.org/schema/weld/beans";
+
+   private static final Pattern IMPORT = Pattern.compile("^\\s*import\\s+(?:static\\s+)?([\\w.]+)(\\.\\*)?\\s*;",
+            Pattern.MULTILINE);
+   private static final Pattern QUALIFIED_NAME = Pattern.compile("(?<![\\w.])(?:[a-z_]\\w*\\.)+[A-Z]\\w*");
+   private static final Pattern DECLARATION = Pattern.compile("\\b(?:class|interface|enum)\\s+\\w+([^{;]*)\\{");
+   private static final Pattern TYPE_ARGUMENTS = Pattern.compile("<[^<>]*>");
+   private static final Pattern BEAN_ANNOTATION = Pattern
+            .compile("@(?:Inject|Produces|Observes|Disposes|Named|Model|Alternative|Stereotype|Interceptor|Decorator"
+                     + "|ApplicationScoped|SessionScoped|RequestScoped|ConversationScoped|Dependent|Singleton)\\b");
+   /**
+    * Marks the <code>&lt;weld:scan&gt;</code> element written here, the scan elements of the user are left alone.
+    */
+   static final String GENERATED_MARKER = "<!-- Exclude filters of seam-catch optimize-discovery, "
+            + "replaced when it runs again -->";
+
+   private static final Pattern GENERATED_SCAN = Pattern.compile("\\s*" + Pattern.quote(GENERATED_MARKER)
+            + "\\s*<([\\w.-]+):scan\\b.*?</\\1:scan>", Pattern.DOTALL);
+   private static final Pattern WELD_PREFIX = Pattern.compile("xmlns:([\\w.-]+)\\s*=\\s*[\"']"
+            + Pattern.quote(WELD_NAMESPACE) + "[\"']");
+   private static final Pattern BEANS_ROOT = Pattern.compile("<beans\\b[^>]*?(/?)>");
+
+   private final File sourceRoot;
+
+   /**
+    * @param sourceRoot main source folder of the project
+    */
+   public DiscoveryFilter(final File sourceRoot)
+   {
+      this.sourceRoot = sourceRoot;
+   }
+
+   /**
+    * @param containerPackages packages of the Exception Handler containers
+    * @param keep other packages to keep scanning, with their sub packages
+    * @return the packages to keep and the exclude filters of the others
+    * @throws IOException if a source file cannot be read
+    */
+   public Result compute(final Collection<String> containerPackages, final Collection<String> keep)
+            throws IOException
+   {
+      final Map<String, List<File>> packages = new TreeMap<String, List<File>>();
+      this.collect(this.sourceRoot, "", packages);
+
+      final SortedSet<String> kept = new TreeSet<String>();
+      final LinkedList<String> pending = new LinkedList<String>(containerPackages);
+      for (String packageName : packages.keySet()) {
+         for (String prefix : keep) {
+            if (packageName.equals(prefix) || packageName.startsWith(prefix + "."))
+               pending.add(packageName);
+         }
+      }
+
+      final Map<String, String> importCache = new HashMap<String, String>();
+      final Map<String, Set<String>> subtypes = this.subtypes(packages, importCache);
+      while (!pending.isEmpty()) {
+         final String packageName = pending.removeFirst();
+         if (!packages.containsKey(packageName) || !kept.add(packageName))
+            continue;
+
+         for (File file : packages.get(packageName)) {
+            final String source = HandlerScanner.read(file);
+            final Matcher imports = IMPORT.matcher(source);
+            while (imports.find()) {
+               final String imported = imports.group(2) != null ? imports.group(1) : packageOf(imports.group(1),
+                        packages.keySet(), importCache);
+               if ((imported != null) && !kept.contains(imported))
+                  pending.add(imported);
+            }
+            final Matcher qualified = QUALIFIED_NAME.matcher(source);
+            while (qualified.find()) {
+               final String referenced = packageOf(qualified.group(), packages.keySet(), importCache);
+               if ((referenced != null) && !kept.contains(referenced))
+                  pending.add(referenced);
+            }
+         }
+         if (subtypes.containsKey(packageName))
+            pending.addAll(subtypes.get(packageName));
+      }
+
+      final SortedSet<String> excludes = new TreeSet<String>();
+      final List<String> beanCandidates = new ArrayList<String>();
+      int classes = 0;
+      int excludedClasses = 0;
+      for (Map.Entry<String, List<File>> entry : packages.entrySet()) {
+         classes += entry.getValue().size();
+         if (kept.contains(entry.getKey()))
+            continue;
+
+         excludes.add(widest(entry.getKey(), kept) + ".**");
+         excludedClasses += entry.getValue().size();
+         for (File file : entry.getValue()) {
+            if (BEAN_ANNOTATION.matcher(HandlerScanner.read(file)).find())
+               beanCandidates.add(qualify(entry.getKey(), file));
+         }
+      }
+
+      // A wider filter covers the narrower ones below it
+      final List<String> filters = new ArrayList<String>();
+      for (String exclude : excludes) {
+         if (filters.isEmpty() || !exclude.startsWith(filters.get(filters.size() - 1).replace("**", "")))
+            filters.add(exclude);
+      }
+      return new Result(kept, filters, classes, excludedClasses, beanCandidates);
+   }
+
+   private void collect(final File directory, final String packageName, final Map<String, List<File>> packages)
+   {
+      final File[] children = directory.listFiles();
+      if (children == null)
+         return;
+
+      for (File child : children) {
+         if (child.isDirectory()) {
+            this.collect(child, "".equals(packageName) ? child.getName() : packageName + "." + child.getName(),
+                     packages);
+         }
+         else if (child.getName().endsWith(".java") && !"package-info.java".equals(child.getName())
+                  && !"".equals(packageName)) {
+            List<File> files = packages.get(packageName);
+            if (files == null) {
+               files = new ArrayList<File>();
+               packages.put(packageName, files);
+            }
+            files.add(child);
+         }
+      }
+   }
+
+   /**
+    * @return the packages declaring subtypes of the types of a package, by package, other than the package itself
+    */
+   private Map<String, Set<String>> subtypes(final Map<String, List<File>> packages,
+            final Map<String, String> importCache) throws IOException
+   {
+      final Map<String, Set<String>> types = new HashMap<String, Set<String>>();
+      for (Map.Entry<String, List<File>> entry : packages.entrySet()) {
+         final Set<String> names = new HashSet<String>();
+         for (File file : entry.getValue()) {
+            names.add(file.getName().substring(0, file.getName().length() - ".java".length()));
+         }
+         types.put(entry.getKey(), names);
+      }
+
+      final Map<String, Set<String>> subtypes = new HashMap<String, Set<String>>();
+      for (Map.Entry<String, List<File>> entry : packages.entrySet()) {
+         for (File file : entry.getValue()) {
+            final String source = HandlerScanner.read(file);
+            final Map<String, String> imported = new HashMap<String, String>();
+            final List<String> wildcards = new ArrayList<String>();
+            final Matcher imports = IMPORT.matcher(source);
+            while (imports.find()) {
+               if (imports.group(2) != null) {
+                  wildcards.add(imports.group(1));
+               }
+               else {
+                  final String name = imports.group(1);
+                  imported.put(name.substring(name.lastIndexOf('.') + 1),
+                           packageOf(name, packages.keySet(), importCache));
+               }
+            }
+
+            final Matcher declaration = DECLARATION.matcher(source);
+            while (declaration.find()) {
+               String header = declaration.group(1);
+               for (String previous = null; !header.equals(previous);) {
+                  previous = header;
+                  header = TYPE_ARGUMENTS.matcher(header).replaceAll(" ");
+               }
+               for (String supertype : header.trim().split("[\\s,]+")) {
+                  if ("extends".equals(supertype) || "implements".equals(supertype) || "".equals(supertype))
+                     continue;
+
+                  final String declaring = declaringPackage(supertype, entry.getKey(), imported, wildcards, types,
+                           importCache);
+                  if ((declaring != null) && !declaring.equals(entry.getKey())) {
+                     Set<String> packageNames = subtypes.get(declaring);
+                     if (packageNames == null) {
+                        packageNames = new TreeSet<String>();
+                        subtypes.put(declaring, packageNames);
+                     }
+                     packageNames.add(entry.getKey());
+                  }
+               }
+            }
+         }
+      }
+      return subtypes;
+   }
+
+   /**
+    * @return the project package declaring a type named in a source file, which may be qualified or nested, or null
+    *         if it is not a project type
+    */
+   private static String declaringPackage(final String name, final String packageName,
+            final Map<String, String> imported, final List<String> wildcards, final Map<String, Set<String>> types,
+            final Map<String, String> importCache)
+   {
+      if (Character.isLowerCase(name.charAt(0)) && (name.indexOf('.') != -1))
+         return packageOf(name, types.keySet(), importCache);
+
+      final String simpleName = name.indexOf('.') == -1 ? name : name.substring(0, name.indexOf('.'));
+      if (imported.containsKey(simpleName))
+         return imported.get(simpleName);
+      if (types.get(packageName).contains(simpleName))
+         return packageName;
+      for (String wildcard : wildcards) {
+         if (types.containsKey(wildcard) && types.get(wildcard).contains(simpleName))
+            return wildcard;
+      }
+      return null;
+   }
+
+   /**
+    * @return the project package of an imported type, which may be nested, or null if it is not a project type
+    */
+   private static String packageOf(final String imported, final Set<String> packages,
+            final Map<String, String> cache)
+   {
+      if (cache.containsKey(imported))
+         return cache.get(imported);
+
+      String candidate = imported;
+      String result = null;
+      int dot;
+      while ((dot = candidate.lastIndexOf('.')) != -1) {
+         candidate = candidate.substring(0, dot);
+         if (packages.contains(candidate)) {
+            result = candidate;
+            break;
+         }
+      }
+      cache.put(imported, result);
+      return result;
+   }
+
+   /**
+    * @return the shortest prefix of the package that is neither a kept package nor the parent of one
+    */
+   private static String widest(final String packageName, final Set<String> kept)
+   {
+      final String[] segments = packageName.split("\\.");
+      final StringBuilder prefix = new StringBuilder();
+      for (String segment : segments) {
+         if (prefix.length() > 0)
+            prefix.append('.');
+         prefix.append(segment);
+
+         boolean holdsKept = false;
+         for (String keptPackage : kept) {
+            if (keptPackage.equals(prefix.toString()) || keptPackage.startsWith(prefix + ".")) {
+               holdsKept = true;
+               break;
+            }
+         }
+         // Top level prefixes are never excluded, they are likely shared with other archives of the deployment
+         if (!holdsKept && (prefix.indexOf(".") != -1))
+            return prefix.toString();
+      }
+      return packageName;
+   }
+
+   private static String qualify(final String packageName, final File file)
+   {
+      return packageName + "." + file.getName().substring(0, file.getName().length() - ".java".length());
+   }
+
+   /**
+    * Writes the exclude filters into a <code>&lt;weld:scan&gt;</code> element of a <code>beans.xml</code>, marked
+    * with {@link #GENERATED_MARKER}. The marked element written before is replaced, scan elements without the marker
+    * are kept as they are. The prefix the document binds to the Weld namespace is used, <code>weld</code> is declared
+    * if it binds none.
+    *
+    * @param beansXml content of the <code>beans.xml</code>, may be empty
+    * @param excludes exclude filters
+    * @return the new content
+    */
+   public static String apply(final String beansXml, final List<String> excludes)
+   {
+      String content = (beansXml == null) || "".equals(beansXml.trim()) ? MultiModuleSetup.BEANS_XML : beansXml;
+      content = GENERATED_SCAN.matcher(content).replaceAll("");
+
+      final Matcher root = BEANS_ROOT.matcher(content);
+      if (!root.find())
+         throw new IllegalArgumentException("No <beans> element found");
+
+      final boolean empty = "/".equals(root.group(1));
+      String start = root.group().substring(0, root.group().length() - (empty ? 2 : 1)).trim();
+      final Matcher declared = WELD_PREFIX.matcher(start);
+      final String prefix;
+      if (declared.find()) {
+         prefix = declared.group(1);
+      }
+      else {
+         prefix = "weld";
+         start += " xmlns:weld=\"" + WELD_NAMESPACE + "\"";
+      }
+
+      final StringBuilder scan = new StringBuilder(start).append(">\n   ").append(GENERATED_MARKER).append("\n   <")
+               .append(prefix).append(":scan>\n");
+      for (String exclude : excludes) {
+         scan.append("      <").append(prefix).append(":exclude name=\"").append(exclude).append("\"/>\n");
+      }
+      scan.append("   </").append(prefix).append(":scan>");
+      if (empty)
+         scan.append("\n</beans>");
+
+      return content.substring(0, root.start()) + scan + content.substring(root.end());
+   }
+
+   /**
+    * Packages kept and excluded from discovery.
+    */
+   public static class Result
+   {
+      private final SortedSet<String> keptPackages;
+      private final List<String> excludes;
+      private final int classes;
+      private final int excludedClasses;
+      private final List<String> beanCandidates;
+
+      Result(final SortedSet<String> keptPackages, final List<String> excludes, final int classes,
+               final int excludedClasses, final List<String> beanCandidates)
+      {
+         this.keptPackages = Collections.unmodifiableSortedSet(keptPackages);
+         this.excludes = Collections.unmodifiableList(excludes);
+         this.classes = classes;
+         this.excludedClasses = excludedClasses;
+         this.beanCandidates = Collections.unmodifiableList(beanCandidates);
+      }
+
+      public SortedSet<String> getKeptPackages()
+      {
+         return keptPackages;
+      }
+
+      /**
+       * @return Weld exclude filters, such as <code>com.example.web.**</code>
+       */
+      public List<String> getExcludes()
+      {
+         return excludes;
+      }
+
+      /**
+       * @return number of classes in the source folder
+       */
+      public int getClasses()
+      {
+         return classes;
+      }
+
+      /**
+       * @return number of classes the filters exclude from discovery
+       */
+      public int getExcludedClasses()
+      {
+         return excludedClasses;
+      }
+
+      /**
+       * @return excluded classes declaring CDI annotations, which will no longer be beans
+       */
+      public List<String> getBeanCandidates()
+      {
+         return beanCandidates;
+      }
+   }
+}
@@ -0,0 +1,167 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.forge.parser.JavaParser;
+import org.jboss.forge.parser.java.JavaClass;
+
+/**
+ * Generates a class holding the precomputed handler chain of every handled exception type. Chains are stored as
+ * <code>container#method</code> names, BREADTH_FIRST handlers first, each traversal ordered by precedence, and keyed by
+ * canonical type name. The chain and the BREADTH_FIRST count of a type are both those of its closest handled
+ * superclass, and chains are shared unmodifiable lists, so a dispatch allocates nothing. The handled superclass found
+ * for a type is remembered per table instance, so a table held by a deployment does not pin the classes of another one.
+ */
+public class DispatchTableGenerator
+{
+   /**
+    * Types registered per generated fill method, keeps the methods well under the class file method size limit.
+    */
+   private static final int TYPES_PER_METHOD = 100;
+
+   private final Map<String, List<HandlerDescriptor>> byType;
+   private final ExceptionHierarchy hierarchy;
+
+   /**
+    * @param byType handlers keyed by the exception type they handle
+    * @param hierarchy resolver of the handled types' superclasses
+    */
+   public DispatchTableGenerator(final Map<String, List<HandlerDescriptor>> byType, final ExceptionHierarchy hierarchy)
+   {
+      this.byType = byType;
+      this.hierarchy = hierarchy;
+   }
+
+   /**
+    * @param packageName package of the generated class
+    * @param className simple name of the generated class
+    * @return the generated class
+    */
+   public JavaClass generate(final String packageName, final String className)
+   {
+      final JavaClass table = JavaParser.create(JavaClass.class)
+               .setPackage(packageName)
+               .setName(className)
+               .setPublic();
+      table.setFinal(true);
+
+      table.addImport("java.util.Arrays");
+      table.addImport("java.util.Collections");
+      table.addImport("java.util.HashMap");
+      table.addImport("java.util.List");
+      table.addImport("java.util.Map");
+      table.addImport("java.util.concurrent.ConcurrentHashMap");
+      table.addImport("java.util.concurrent.ConcurrentMap");
+
+      table.addField("private static final List<String> NONE = Collections.emptyList();");
+      table.addField("private static final Map<String, List<String>> TABLE = createTable();");
+      table.addField("private static final Map<String, Integer> BREADTH_FIRST_COUNTS = createBreadthFirstCounts();");
+      table.addField("private final ConcurrentMap<Class<?>, String> resolved = new ConcurrentHashMap<Class<?>, String>();");
+
+      table.addMethod("/**\n"
+               + " * Returns the handlers notified for the exception type, in order. Types without handlers of their own\n"
+               + " * share the chain of their closest handled superclass. The list is shared and unmodifiable.\n"
+               + " */\n"
+               + "public List<String> handlersFor(final Class<? extends Throwable> type) {\n"
+               + "   final List<String> handlers = TABLE.get(handledTypeOf(type));\n"
+               + "   return handlers == null ? NONE : handlers;\n"
+               + "}");
+
+      table.addMethod("/**\n"
+               + " * Returns the number of leading BREADTH_FIRST handlers in the chain {@link #handlersFor(Class)} returns\n"
+               + " * for the exception type.\n"
+               + " */\n"
+               + "public int breadthFirstCount(final Class<? extends Throwable> type) {\n"
+               + "   final Integer count = BREADTH_FIRST_COUNTS.get(handledTypeOf(type));\n"
+               + "   return count == null ? 0 : count;\n"
+               + "}");
+
+      table.addMethod("/**\n"
+               + " * Returns the canonical name of the closest handled class of the type, or an empty string if none is\n"
+               + " * handled, the result is remembered per type.\n"
+               + " */\n"
+               + "private String handledTypeOf(final Class<?> type) {\n"
+               + "   String handled = resolved.get(type);\n"
+               + "   if (handled == null) {\n"
+               + "      handled = \"\";\n"
+               + "      for (Class<?> current = type; current != null; current = current.getSuperclass()) {\n"
+               + "         // Anonymous and local classes have no canonical name and are never handled themselves\n"
+               + "         final String name = current.getCanonicalName();\n"
+               + "         if ((name != null) && TABLE.containsKey(name)) {\n"
+               + "            handled = name;\n"
+               + "            break;\n"
+               + "         }\n"
+               + "      }\n"
+               + "      resolved.putIfAbsent(type, handled);\n"
+               + "   }\n"
+               + "   return handled;\n"
+               + "}");
+
+      final List<HandlerChain> chains = new ArrayList<HandlerChain>(this.byType.size());
+      for (String type : this.byType.keySet()) {
+         chains.add(HandlerChain.of(type, this.byType, this.hierarchy));
+      }
+
+      final StringBuilder createTable = new StringBuilder(
+               "private static Map<String, List<String>> createTable() {\n"
+                        + "   final Map<String, List<String>> table = new HashMap<String, List<String>>("
+                        + (chains.size() * 2)
+                        + ");\n");
+      final StringBuilder createCounts = new StringBuilder(
+               "private static Map<String, Integer> createBreadthFirstCounts() {\n"
+                        + "   final Map<String, Integer> counts = new HashMap<String, Integer>(" + (chains.size() * 2)
+                        + ");\n");
+
+      for (int start = 0, part = 0; start < chains.size(); start += TYPES_PER_METHOD, part++) {
+         final List<HandlerChain> slice = chains.subList(start, Math.min(start + TYPES_PER_METHOD, chains.size()));
+
+         createTable.append("   fillTable").append(part).append("(table);\n");
+         createCounts.append("   fillCounts").append(part).append("(counts);\n");
+
+         final StringBuilder fillTable = new StringBuilder("private static void fillTable").append(part)
+                  .append("(final Map<String, List<String>> table) {\n");
+         final StringBuilder fillCounts = new StringBuilder("private static void fillCounts").append(part)
+                  .append("(final Map<String, Integer> counts) {\n");
+
+         for (HandlerChain chain : slice) {
+            fillTable.append("   table.put(\"").append(chain.getExceptionType().replace('$', '.'))
+                     .append("\", Collections.unmodifiableList(Arrays.asList(");
+            boolean first = true;
+            for (HandlerDescriptor handler : chain.getHandlers()) {
+               fillTable.append(first ? "\"" : ", \"").append(handler).append('"');
+               first = false;
+            }
+            fillTable.append(")));\n");
+
+            fillCounts.append("   counts.put(\"").append(chain.getExceptionType().replace('$', '.'))
+                     .append("\", ").append(chain.getBreadthFirst().size()).append(");\n");
+         }
+
+         table.addMethod(fillTable.append("}").toString());
+         table.addMethod(fillCounts.append("}").toString());
+      }
+
+      table.addMethod(createTable.append("   return Collections.unmodifiableMap(table);\n}").toString());
+      table.addMethod(createCounts.append("   return Collections.unmodifiableMap(counts);\n}").toString());
+
+      return table;
+   }
+}
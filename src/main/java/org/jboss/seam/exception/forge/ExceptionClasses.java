@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jboss.forge.parser.java.JavaSource;
+
+/**
+ * Generates exception classes. Lightweight exceptions skip capturing their stack trace, which is most of the cost of
+ * creating an exception, and suit exceptions used for control flow whose stack trace nobody reads.
+ */
+public final class ExceptionClasses
+{
+   private ExceptionClasses()
+   {
+   }
+
+   /**
+    * @param packageName package of the exception
+    * @param className simple name of the exception
+    * @param superType exception type to extend, it must have the (), (String) and (String, Throwable) constructors
+    * @param lightweight if the exception should not capture its stack trace
+    * @param instance if a shared <code>INSTANCE</code> should be declared, only allowed for lightweight exceptions;
+    *           its cause and stack trace cannot be changed
+    * @return the exception source
+    */
+   public static JavaSource<?> create(final String packageName, final String className, final String superType,
+            final boolean lightweight, final boolean instance)
+   {
+      if (instance && !lightweight)
+         throw new IllegalArgumentException("Only lightweight exceptions can have a shared instance, the stack trace"
+                  + " of a shared instance would point to wherever it was created");
+
+      final Map<String, String> values = new LinkedHashMap<String, String>();
+      values.put("instance", instance ? "\n"
+               + "   /**\n"
+               + "    * Shared instance, it carries no stack trace so it is as meaningful thrown from anywhere.\n"
+               + "    * Chaining a cause to it is refused and stack traces set on it are ignored.\n"
+               + "    * <code>addSuppressed</code>, final since Java 7, cannot be refused: do not close\n"
+               + "    * resources with it in flight.\n"
+               + "    */\n"
+               + "   public static final " + className + " INSTANCE = new " + className + "(\"" + className + "\");\n"
+               : "");
+      values.put("instanceGuards", instance ? "\n"
+               + "   /**\n"
+               + "    * Refuses a cause for the shared instance, every throw site would report it.\n"
+               + "    */\n"
+               + "   @Override\n"
+               + "   public synchronized Throwable initCause(final Throwable cause)\n"
+               + "   {\n"
+               + "      if (this == INSTANCE)\n"
+               + "         throw new IllegalStateException(\"The shared instance cannot have a cause\");\n"
+               + "      return super.initCause(cause);\n"
+               + "   }\n"
+               + "\n"
+               + "   /**\n"
+               + "    * Ignores the stack trace set on the shared instance, every throw site would report it.\n"
+               + "    */\n"
+               + "   @Override\n"
+               + "   public void setStackTrace(final StackTraceElement[] stackTrace)\n"
+               + "   {\n"
+               + "      if (this != INSTANCE)\n"
+               + "         super.setStackTrace(stackTrace);\n"
+               + "   }\n"
+               : "");
+      values.put("fillInStackTrace", lightweight ? "\n"
+               + "   /**\n"
+               + "    * Skips capturing the stack trace.\n"
+               + "    */\n"
+               + "   @Override\n"
+               + "   public synchronized Throwable fillInStackTrace()\n"
+               + "   {\n"
+               + "      return this;\n"
+               + "   }\n"
+               : "");
+      values.put("description", lightweight ? "Lightweight exception, it does not capture a stack trace."
+               : "Exception generated by Seam Catch.");
+      values.put("className", className);
+      values.put("superType", superType);
+
+      return SourceTemplates.load("Exception", packageName, values);
+   }
+}
@@ -0,0 +1,86 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the superclass chain of exception types from the superclasses of the Throwables known to a project, as
+ * indexed by {@link ThrowableIndex} from its sources and the jars of its class path. Types that cannot be resolved end
+ * the chain.
+ */
+public class ExceptionHierarchy
+{
+   private final Map<String, String> superclasses;
+
+   /**
+    * @param superclasses qualified names of Throwables, nested types separated by a dot, to the qualified name of their
+    *           superclass, null for {@link Throwable}
+    */
+   public ExceptionHierarchy(final Map<String, String> superclasses)
+   {
+      this.superclasses = superclasses;
+   }
+
+   /**
+    * @param type fully qualified type name
+    * @return the type followed by its superclasses, up to {@link Throwable} when the chain can be resolved
+    */
+   public List<String> getAncestors(final String type)
+   {
+      final List<String> ancestors = new ArrayList<String>();
+      String current = type;
+      while ((current != null) && !Object.class.getName().equals(current) && !ancestors.contains(current)) {
+         ancestors.add(current);
+         current = this.getSuperType(current);
+      }
+      return ancestors;
+   }
+
+   /**
+    * @param type fully qualified type name
+    * @return true if the type is known to extend {@link Throwable}
+    */
+   public boolean isThrowable(final String type)
+   {
+      final List<String> ancestors = this.getAncestors(type);
+      return !ancestors.isEmpty() && Throwable.class.getName().equals(ancestors.get(ancestors.size() - 1));
+   }
+
+   /**
+    * @param type fully qualified type name
+    * @return the ancestors of the type, furthest first, ending with the type itself
+    */
+   public List<String> getAncestorsFromRoot(final String type)
+   {
+      final List<String> ancestors = this.getAncestors(type);
+      Collections.reverse(ancestors);
+      return ancestors;
+   }
+
+   /**
+    * @param type fully qualified type name
+    * @return fully qualified name of the superclass, or null if it cannot be resolved
+    */
+   public String getSuperType(final String type)
+   {
+      return this.superclasses.get(type.replace('$', '.'));
+   }
+}
@@ -0,0 +1,64 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import org.jboss.forge.parser.java.JavaClass;
+import org.jboss.forge.parser.java.Method;
+
+/**
+ * Handler keeping the last exceptions in the preallocated ring of a generated <code>ExceptionFlightRecorder</code>,
+ * which is dumped on demand through its MBean.
+ */
+public class FlightRecorderTemplate implements HandlerTemplate
+{
+   /**
+    * Largest ring, the slots are allocated when the container is loaded.
+    */
+   private static final int MAX_CAPACITY = 1 << 20;
+
+   @Override
+   public String getName()
+   {
+      return "flight-recorder";
+   }
+
+   @Override
+   public String[] getSupportClasses()
+   {
+      return new String[] { "ExceptionFlightRecorderMBean", "ExceptionFlightRecorder" };
+   }
+
+   @Override
+   public String getExtension()
+   {
+      return null;
+   }
+
+   @Override
+   public void apply(final JavaClass container, final Method<JavaClass> handler, final HandlerTemplateOptions options)
+   {
+      final int capacity = options.getPositiveInt("capacity", 1024);
+      if (capacity > MAX_CAPACITY)
+         throw new IllegalArgumentException("Option --capacity must be at most " + MAX_CAPACITY + ", was ["
+                  + capacity + "]");
+
+      final String field = handler.getName() + "Recorder";
+      container.addField("private static final ExceptionFlightRecorder " + field + " = new ExceptionFlightRecorder(\""
+               + container.getName() + "." + handler.getName() + "\", " + capacity + ");");
+      handler.setBody(field + ".record(caughtException.getException());");
+   }
+}
@@ -0,0 +1,127 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ordered handlers Seam Catch notifies for a single exception type: the BREADTH_FIRST handlers from
+ * {@link Throwable} down to the type, then the DEPTH_FIRST handlers from the type back up to {@link Throwable}. Handlers
+ * of the same type are ordered by descending precedence.
+ */
+public class HandlerChain
+{
+   private static final Comparator<HandlerDescriptor> BY_PRECEDENCE = new Comparator<HandlerDescriptor>()
+   {
+      @Override
+      public int compare(final HandlerDescriptor left, final HandlerDescriptor right)
+      {
+         if (left.getPrecedence() != right.getPrecedence())
+            return left.getPrecedence() > right.getPrecedence() ? -1 : 1;
+         return left.toString().compareTo(right.toString());
+      }
+   };
+
+   private final String exceptionType;
+   private final List<HandlerDescriptor> breadthFirst;
+   private final List<HandlerDescriptor> depthFirst;
+
+   private HandlerChain(final String exceptionType, final List<HandlerDescriptor> breadthFirst,
+            final List<HandlerDescriptor> depthFirst)
+   {
+      this.exceptionType = exceptionType;
+      this.breadthFirst = breadthFirst;
+      this.depthFirst = depthFirst;
+   }
+
+   /**
+    * Computes the chain of an exception type.
+    *
+    * @param exceptionType fully qualified name of the thrown type
+    * @param byType handlers keyed by the exception type they handle
+    * @param hierarchy resolver of the type's superclasses
+    * @return the chain
+    */
+   public static HandlerChain of(final String exceptionType, final Map<String, List<HandlerDescriptor>> byType,
+            final ExceptionHierarchy hierarchy)
+   {
+      final List<String> fromRoot = hierarchy.getAncestorsFromRoot(exceptionType);
+
+      final List<HandlerDescriptor> breadthFirst = new ArrayList<HandlerDescriptor>();
+      for (String type : fromRoot) {
+         breadthFirst.addAll(sorted(byType.get(type), true));
+      }
+
+      final List<HandlerDescriptor> depthFirst = new ArrayList<HandlerDescriptor>();
+      for (int i = fromRoot.size() - 1; i >= 0; i--) {
+         depthFirst.addAll(sorted(byType.get(fromRoot.get(i)), false));
+      }
+
+      return new HandlerChain(exceptionType, breadthFirst, depthFirst);
+   }
+
+   private static List<HandlerDescriptor> sorted(final List<HandlerDescriptor> handlers, final boolean breadthFirst)
+   {
+      if (handlers == null)
+         return Collections.emptyList();
+
+      final List<HandlerDescriptor> selected = new ArrayList<HandlerDescriptor>();
+      for (HandlerDescriptor handler : handlers) {
+         if (handler.isBreadthFirst() == breadthFirst)
+            selected.add(handler);
+      }
+      Collections.sort(selected, BY_PRECEDENCE);
+      return selected;
+   }
+
+   public String getExceptionType()
+   {
+      return exceptionType;
+   }
+
+   public List<HandlerDescriptor> getBreadthFirst()
+   {
+      return breadthFirst;
+   }
+
+   public List<HandlerDescriptor> getDepthFirst()
+   {
+      return depthFirst;
+   }
+
+   /**
+    * @return all handlers in notification order
+    */
+   public List<HandlerDescriptor> getHandlers()
+   {
+      final List<HandlerDescriptor> handlers = new ArrayList<HandlerDescriptor>(breadthFirst);
+      handlers.addAll(depthFirst);
+      return handlers;
+   }
+
+   /**
+    * @return number of handlers notified for the type
+    */
+   public int size()
+   {
+      return breadthFirst.size() + depthFirst.size();
+   }
+}
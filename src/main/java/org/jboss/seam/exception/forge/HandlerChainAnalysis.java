@@ -0,0 +1,414 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cost report of the handler chains of a project: how many handlers each exception type notifies per traversal mode,
+ * plus the handlers that are shadowed, never reached, or ordered ambiguously.
+ */
+public class HandlerChainAnalysis
+{
+   /**
+    * Orderings of the report rows.
+    */
+   public enum SortOrder
+   {
+      TYPE, CHAIN, BREADTH_FIRST, DEPTH_FIRST
+   }
+
+   private final List<Row> rows = new ArrayList<Row>();
+   private final List<Finding> findings = new ArrayList<Finding>();
+
+   /**
+    * Analyzes the chain of every handled exception type.
+    *
+    * @param byType handlers keyed by the exception type they handle
+    * @param hierarchy resolver of the handled types' superclasses
+    * @param causeChain exception types, outermost first, to report as one additional combined row; may be empty
+    */
+   public HandlerChainAnalysis(final Map<String, List<HandlerDescriptor>> byType, final ExceptionHierarchy hierarchy,
+            final List<String> causeChain)
+   {
+      for (Map.Entry<String, List<HandlerDescriptor>> entry : byType.entrySet()) {
+         final String type = entry.getKey();
+
+         if (!hierarchy.isThrowable(type)) {
+            for (HandlerDescriptor handler : entry.getValue()) {
+               this.findings.add(new Finding(Finding.Kind.UNREACHABLE, handler, "[" + type
+                        + "] cannot be resolved to a Throwable"));
+            }
+            continue;
+         }
+
+         final HandlerChain chain = HandlerChain.of(type, byType, hierarchy);
+         this.rows.add(new Row(type, chain.getBreadthFirst().size(), chain.getDepthFirst().size()));
+
+         this.findShadowed(chain, entry.getValue());
+         this.findSharedPrecedence(entry.getValue());
+      }
+
+      if (!causeChain.isEmpty()) {
+         int breadthFirst = 0;
+         int depthFirst = 0;
+         // Seam Catch notifies the handlers of the innermost cause first, each cause with its own full chain
+         for (String cause : causeChain) {
+            final HandlerChain chain = HandlerChain.of(cause, byType, hierarchy);
+            breadthFirst += chain.getBreadthFirst().size();
+            depthFirst += chain.getDepthFirst().size();
+         }
+
+         final StringBuilder name = new StringBuilder();
+         for (String cause : causeChain) {
+            if (name.length() > 0)
+               name.append(" <- ");
+            name.append(cause);
+         }
+         this.rows.add(new Row(name.toString(), breadthFirst, depthFirst));
+      }
+   }
+
+   /**
+    * A handler is shadowed when a handler ahead of it in its own type's chain always ends the notification.
+    */
+   private void findShadowed(final HandlerChain chain, final List<HandlerDescriptor> ownHandlers)
+   {
+      HandlerDescriptor terminal = null;
+      for (HandlerDescriptor handler : chain.getHandlers()) {
+         if ((terminal != null) && ownHandlers.contains(handler))
+            this.findings.add(new Finding(Finding.Kind.SHADOWED, handler, "always preceded by [" + terminal
+                     + "], which ends the handler chain"));
+
+         if ((terminal == null) && handler.isTerminal())
+            terminal = handler;
+      }
+   }
+
+   private void findSharedPrecedence(final List<HandlerDescriptor> handlers)
+   {
+      final Map<String, List<HandlerDescriptor>> byOrdering = new LinkedHashMap<String, List<HandlerDescriptor>>();
+      for (HandlerDescriptor handler : handlers) {
+         final String key = handler.getTraversalMode() + ":" + handler.getPrecedence();
+         if (!byOrdering.containsKey(key))
+            byOrdering.put(key, new ArrayList<HandlerDescriptor>());
+         byOrdering.get(key).add(handler);
+      }
+
+      for (List<HandlerDescriptor> sameOrdering : byOrdering.values()) {
+         if (sameOrdering.size() < 2)
+            continue;
+
+         for (HandlerDescriptor handler : sameOrdering) {
+            this.findings.add(new Finding(Finding.Kind.SHARED_PRECEDENCE, handler, sameOrdering.size()
+                     + " " + handler.getTraversalMode() + " handlers of [" + handler.getExceptionType()
+                     + "] share precedence " + handler.getPrecedence() + ", their order is undefined"));
+         }
+      }
+   }
+
+   /**
+    * @param order ordering of the rows, the chain based orderings are descending
+    * @return the rows in the given order
+    */
+   public List<Row> getRows(final SortOrder order)
+   {
+      final List<Row> sorted = new ArrayList<Row>(this.rows);
+      Collections.sort(sorted, new Comparator<Row>()
+      {
+         @Override
+         public int compare(final Row left, final Row right)
+         {
+            int result;
+            switch (order)
+            {
+            case CHAIN:
+               result = right.getChainLength() - left.getChainLength();
+               break;
+            case BREADTH_FIRST:
+               result = right.getBreadthFirst() - left.getBreadthFirst();
+               break;
+            case DEPTH_FIRST:
+               result = right.getDepthFirst() - left.getDepthFirst();
+               break;
+            default:
+               result = 0;
+            }
+            return result != 0 ? result : left.getExceptionType().compareTo(right.getExceptionType());
+         }
+      });
+      return sorted;
+   }
+
+   public List<Finding> getFindings()
+   {
+      return findings;
+   }
+
+   /**
+    * @param maxChainLength maximum allowed chain length
+    * @return rows whose chain is longer than allowed
+    */
+   public List<Row> getRowsExceeding(final int maxChainLength)
+   {
+      final List<Row> exceeding = new ArrayList<Row>();
+      for (Row row : this.getRows(SortOrder.CHAIN)) {
+         if (row.getChainLength() > maxChainLength)
+            exceeding.add(row);
+      }
+      return exceeding;
+   }
+
+   /**
+    * @param order ordering of the rows
+    * @return the report as a plain text table, one line per exception type followed by one line per finding
+    */
+   public String toText(final SortOrder order)
+   {
+      return this.toText(order, -1);
+   }
+
+   /**
+    * @param order ordering of the rows
+    * @param maxChainLength maximum allowed chain length, negative if there is none
+    * @return the report as a plain text table, one line per exception type followed by one line per finding and one
+    *         per exception type whose chain is longer than allowed
+    */
+   public String toText(final SortOrder order, final int maxChainLength)
+   {
+      final StringBuilder text = new StringBuilder();
+      for (Row row : this.getRows(order)) {
+         text.append(row).append('\n');
+      }
+      for (Finding finding : this.findings) {
+         text.append(finding).append('\n');
+      }
+      if (maxChainLength >= 0) {
+         for (Row row : this.getRowsExceeding(maxChainLength)) {
+            text.append("VIOLATION [").append(row.getExceptionType()).append("] notifies ")
+                     .append(row.getChainLength()).append(" handlers, more than the maximum of ")
+                     .append(maxChainLength).append('\n');
+         }
+      }
+      return text.toString();
+   }
+
+   /**
+    * @param order ordering of the rows
+    * @return the report as CSV, one row per exception type followed by one row per finding
+    */
+   public String toCsv(final SortOrder order)
+   {
+      return this.toCsv(order, -1);
+   }
+
+   /**
+    * @param order ordering of the rows
+    * @param maxChainLength maximum allowed chain length, negative if there is none
+    * @return the report as CSV, one row per exception type followed by one row per finding and one
+    *         <code>violation</code> row, holding the maximum as detail, per exception type whose chain is longer
+    */
+   public String toCsv(final SortOrder order, final int maxChainLength)
+   {
+      final StringBuilder csv = new StringBuilder("kind,exceptionType,handler,breadthFirst,depthFirst,chain,detail\n");
+      for (Row row : this.getRows(order)) {
+         appendCsv(csv, "chain", row, "");
+      }
+      for (Finding finding : this.findings) {
+         csv.append(finding.getKind()).append(',').append(finding.getHandler().getExceptionType()).append(',')
+                  .append(finding.getHandler()).append(",,,,\"").append(finding.getDetail().replace("\"", "\"\""))
+                  .append("\"\n");
+      }
+      if (maxChainLength >= 0) {
+         for (Row row : this.getRowsExceeding(maxChainLength)) {
+            appendCsv(csv, "violation", row, "max-chain " + maxChainLength);
+         }
+      }
+      return csv.toString();
+   }
+
+   private static void appendCsv(final StringBuilder csv, final String kind, final Row row, final String detail)
+   {
+      csv.append(kind).append(',').append(row.getExceptionType()).append(",,").append(row.getBreadthFirst())
+               .append(',').append(row.getDepthFirst()).append(',').append(row.getChainLength()).append(',')
+               .append(detail).append('\n');
+   }
+
+   /**
+    * @param order ordering of the rows
+    * @return the report as a JSON document with a <code>chains</code> and a <code>findings</code> array
+    */
+   public String toJson(final SortOrder order)
+   {
+      return this.toJson(order, -1);
+   }
+
+   /**
+    * @param order ordering of the rows
+    * @param maxChainLength maximum allowed chain length, negative if there is none
+    * @return the report as a JSON document with a <code>chains</code> and a <code>findings</code> array, and the
+    *         <code>maxChain</code> and the <code>violations</code> exceeding it if there is a maximum
+    */
+   public String toJson(final SortOrder order, final int maxChainLength)
+   {
+      final StringBuilder json = new StringBuilder("{\n  \"chains\": [");
+      appendJson(json, this.getRows(order));
+      json.append("\n  ],\n  \"findings\": [");
+      boolean first = true;
+      for (Finding finding : this.findings) {
+         json.append(first ? "\n" : ",\n");
+         json.append("    {\"kind\": \"").append(finding.getKind())
+                  .append("\", \"exceptionType\": \"").append(escape(finding.getHandler().getExceptionType()))
+                  .append("\", \"handler\": \"").append(escape(finding.getHandler().toString()))
+                  .append("\", \"detail\": \"").append(escape(finding.getDetail())).append("\"}");
+         first = false;
+      }
+      json.append("\n  ]");
+      if (maxChainLength >= 0) {
+         json.append(",\n  \"maxChain\": ").append(maxChainLength).append(",\n  \"violations\": [");
+         appendJson(json, this.getRowsExceeding(maxChainLength));
+         json.append("\n  ]");
+      }
+      json.append("\n}\n");
+      return json.toString();
+   }
+
+   private static void appendJson(final StringBuilder json, final List<Row> rows)
+   {
+      boolean first = true;
+      for (Row row : rows) {
+         json.append(first ? "\n" : ",\n");
+         json.append("    {\"exceptionType\": \"").append(escape(row.getExceptionType()))
+                  .append("\", \"breadthFirst\": ").append(row.getBreadthFirst())
+                  .append(", \"depthFirst\": ").append(row.getDepthFirst())
+                  .append(", \"chain\": ").append(row.getChainLength()).append('}');
+         first = false;
+      }
+   }
+
+   private static String escape(final String value)
+   {
+      return value.replace("\\", "\\\\").replace("\"", "\\\"");
+   }
+
+   /**
+    * Chain cost of a single exception type.
+    */
+   public static class Row
+   {
+      private final String exceptionType;
+      private final int breadthFirst;
+      private final int depthFirst;
+
+      Row(final String exceptionType, final int breadthFirst, final int depthFirst)
+      {
+         this.exceptionType = exceptionType;
+         this.breadthFirst = breadthFirst;
+         this.depthFirst = depthFirst;
+      }
+
+      public String getExceptionType()
+      {
+         return exceptionType;
+      }
+
+      /**
+       * @return number of handlers notified during the BREADTH_FIRST traversal
+       */
+      public int getBreadthFirst()
+      {
+         return breadthFirst;
+      }
+
+      /**
+       * @return number of handlers notified during the DEPTH_FIRST traversal
+       */
+      public int getDepthFirst()
+      {
+         return depthFirst;
+      }
+
+      public int getChainLength()
+      {
+         return breadthFirst + depthFirst;
+      }
+
+      /**
+       * @return the row as a line of the text report
+       */
+      @Override
+      public String toString()
+      {
+         return String.format("%5d  (%d breadth first, %d depth first)  %s", this.getChainLength(), breadthFirst,
+                  depthFirst, exceptionType);
+      }
+   }
+
+   /**
+    * A problem found with a handler.
+    */
+   public static class Finding
+   {
+      /**
+       * Kinds of problems.
+       */
+      public enum Kind
+      {
+         SHADOWED, UNREACHABLE, SHARED_PRECEDENCE, DUPLICATE_NAME, MISSING_IMPORT
+      }
+
+      private final Kind kind;
+      private final HandlerDescriptor handler;
+      private final String detail;
+
+      Finding(final Kind kind, final HandlerDescriptor handler, final String detail)
+      {
+         this.kind = kind;
+         this.handler = handler;
+         this.detail = detail;
+      }
+
+      public Kind getKind()
+      {
+         return kind;
+      }
+
+      public HandlerDescriptor getHandler()
+      {
+         return handler;
+      }
+
+      public String getDetail()
+      {
+         return detail;
+      }
+
+      /**
+       * @return the finding as a line of the text report
+       */
+      @Override
+      public String toString()
+      {
+         return kind + " " + handler + ": " + detail;
+      }
+   }
+}
@@ -0,0 +1,355 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.jboss.forge.parser.JavaParser;
+import org.jboss.forge.parser.java.Field;
+import org.jboss.forge.parser.java.Import;
+import org.jboss.forge.parser.java.JavaClass;
+import org.jboss.forge.parser.java.JavaSource;
+import org.jboss.forge.parser.java.Method;
+import org.jboss.forge.project.facets.JavaSourceFacet;
+import org.jboss.forge.resources.java.JavaResource;
+import org.jboss.solder.exception.control.HandlesExceptions;
+
+/**
+ * Adds members to Exception Handler containers without parsing the container again for every command. A container is
+ * parsed once, through the {@link ParsedSourceCache}, into a {@link Container} that is reused for as long as the
+ * content of the file is unchanged. New members are built in an empty fragment of the container class, copied into the
+ * cached model of the container and saved through the {@link JavaSourceFacet}, so the project's resources see the
+ * change; the saved model is handed back to the cache for the next command. A container is kept only while the cache
+ * holds its model, so containers are bounded by the cache, and one whose save fails is forgotten with its model.
+ * <p>
+ * Adding members is not independent of the size of the container: the facet formats and writes the whole container,
+ * and {@link #open(File)} reads it to tell whether it changed, both linear in its size. What is saved is the parse of
+ * the container, by far the larger cost.
+ */
+@Singleton
+public class HandlerContainerEditor
+{
+   private final Map<String, Container> containers = new ConcurrentHashMap<String, Container>();
+   private final ParsedSourceCache sources;
+
+   /**
+    * @param sources parsed sources of the session, containers are parsed through it
+    */
+   @Inject
+   public HandlerContainerEditor(final ParsedSourceCache sources)
+   {
+      this.sources = sources;
+   }
+
+   /**
+    * Creates an editor with a cache of its own.
+    */
+   public HandlerContainerEditor()
+   {
+      this(new ParsedSourceCache());
+   }
+
+   /**
+    * Opens a container of the project, saved through the facet when members are added.
+    *
+    * @param resource source of the container
+    * @param javaSourceFacet facet of the project the container belongs to
+    * @return the model of the container, parsed again only if the file changed
+    * @throws FileNotFoundException if the file does not exist
+    * @throws IllegalStateException if the file does not hold a class
+    */
+   public Container open(final JavaResource resource, final JavaSourceFacet javaSourceFacet)
+            throws FileNotFoundException
+   {
+      final Container container = this.open(resource.getUnderlyingResourceObject());
+      container.javaSourceFacet = javaSourceFacet;
+      return container;
+   }
+
+   /**
+    * Opens a container outside of a project, written to its file directly when members are added.
+    *
+    * @param file source file of the container
+    * @return the model of the container, parsed again only if the file changed
+    * @throws FileNotFoundException if the file does not exist
+    * @throws IllegalStateException if the file does not hold a class
+    */
+   public Container open(final File file) throws FileNotFoundException
+   {
+      if (!file.isFile())
+         throw new FileNotFoundException(file.getAbsolutePath());
+
+      final String path = file.getAbsolutePath();
+      final String content;
+      try {
+         content = HandlerScanner.read(file);
+      }
+      catch (IOException e) {
+         throw new IllegalStateException("Could not read [" + path + "]", e);
+      }
+
+      this.evictReleased();
+
+      // Compared on content, an edit keeping the size within the resolution of the modification time is still seen
+      final Container cached = this.containers.get(path);
+      if ((cached != null) && (cached.checksum == content.hashCode()) && (cached.length == content.length()))
+         return cached;
+      if (cached != null)
+         this.sources.invalidate(file);
+
+      final JavaSource<?> source = this.sources.get(file, content);
+      if (!source.isClass())
+         throw new IllegalStateException("[" + path + "] is not a JavaClass!");
+
+      final Container container = new Container(file, (JavaClass) source, content);
+      this.containers.put(path, container);
+      return container;
+   }
+
+   /**
+    * Forgets the containers whose model the {@link ParsedSourceCache} evicted or replaced, so the containers kept here
+    * stay within the entry and byte bounds of the cache.
+    */
+   private void evictReleased()
+   {
+      final Iterator<Container> cached = this.containers.values().iterator();
+      while (cached.hasNext()) {
+         final Container container = cached.next();
+         if (!this.sources.holds(container.file, container.source))
+            cached.remove();
+      }
+   }
+
+   /**
+    * Adds the fields and methods of the fragment to the end of the container and the imports, and saves it.
+    *
+    * @param container container to change
+    * @param fragment class created by {@link Container#newFragment()} holding the new members
+    * @param requiredImports qualified names of the imports to add, imports of the fragment are added as well
+    * @throws IOException if the container cannot be written
+    */
+   public void append(final Container container, final JavaClass fragment, final Set<String> requiredImports)
+            throws IOException
+   {
+      this.append(container, fragment, requiredImports, null);
+   }
+
+   /**
+    * Adds the fields and methods of the fragment to the end of the container and the imports, and saves it, timing
+    * the import resolution and the formatting and write.
+    *
+    * @param container container to change
+    * @param fragment class created by {@link Container#newFragment()} holding the new members
+    * @param requiredImports qualified names of the imports to add, imports of the fragment are added as well
+    * @param timer timer of the command, may be null
+    * @throws IOException if the container cannot be written
+    */
+   public void append(final Container container, final JavaClass fragment, final Set<String> requiredImports,
+            final PhaseTimer timer) throws IOException
+   {
+      synchronized (container) {
+         final Set<String> imports = new LinkedHashSet<String>(requiredImports);
+         for (Import i : fragment.getImports()) {
+            imports.add(i.getQualifiedName());
+         }
+         imports.removeAll(container.imports.values());
+         if (timer != null)
+            timer.lap(CommandTiming.IMPORT_RESOLUTION);
+
+         final JavaClass model = container.source;
+         try {
+            for (String qualifiedName : imports) {
+               model.addImport(qualifiedName);
+            }
+            for (Field<JavaClass> field : fragment.getFields()) {
+               model.addField(field.toString());
+            }
+            for (Method<JavaClass> method : fragment.getMethods()) {
+               model.addMethod(method.toString());
+            }
+            this.save(container);
+         }
+         catch (RuntimeException e) {
+            // The cached model holds members that were not written
+            this.invalidate(container.file);
+            throw e;
+         }
+         catch (IOException e) {
+            this.invalidate(container.file);
+            throw e;
+         }
+
+         for (Method<JavaClass> method : fragment.getMethods()) {
+            container.methodNames.add(method.getName());
+         }
+         for (String qualifiedName : imports) {
+            container.imports.put(qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1), qualifiedName);
+         }
+         final String content = HandlerScanner.read(container.file);
+         container.checksum = content.hashCode();
+         container.length = content.length();
+         this.sources.put(container.file, model);
+      }
+      if (timer != null)
+         timer.lap(CommandTiming.FORMAT_AND_WRITE);
+   }
+
+   /**
+    * Forgets the cached model of a container, to be called when it is changed by other means.
+    *
+    * @param file source file of the container
+    */
+   public void invalidate(final File file)
+   {
+      this.containers.remove(file.getAbsolutePath());
+      this.sources.invalidate(file);
+   }
+
+   /**
+    * Saves the container through the facet of its project, or to a temporary file renamed over the container when it
+    * was opened outside of a project, so the container is never left half written.
+    */
+   private void save(final Container container) throws IOException
+   {
+      final JavaSourceFacet facet = container.javaSourceFacet;
+      if (facet != null) {
+         final String testFolder = facet.getTestSourceFolder().getUnderlyingResourceObject().getAbsolutePath();
+         if (container.file.getAbsolutePath().startsWith(testFolder + File.separator))
+            facet.saveTestJavaSource(container.source);
+         else
+            facet.saveJavaSource(container.source);
+         return;
+      }
+
+      final File temporary = File.createTempFile(container.file.getName(), ".tmp", container.file.getParentFile());
+      try {
+         final OutputStream out = new FileOutputStream(temporary);
+         try {
+            out.write(container.source.toString().getBytes("UTF-8"));
+         }
+         finally {
+            out.close();
+         }
+         if (!temporary.renameTo(container.file)) {
+            // Windows does not rename over an existing file
+            if (!container.file.delete() || !temporary.renameTo(container.file))
+               throw new IOException("Could not replace " + container.file + " with " + temporary);
+         }
+      }
+      finally {
+         temporary.delete();
+      }
+   }
+
+   /**
+    * What the plugin needs to know about a container to add handlers to it.
+    */
+   public static class Container
+   {
+      private final File file;
+      private final JavaClass source;
+      private final String packageName;
+      private final String name;
+      private final boolean handlerContainer;
+      private final Set<String> methodNames = Collections.synchronizedSet(new HashSet<String>());
+      private final Map<String, String> imports;
+      private volatile JavaSourceFacet javaSourceFacet;
+      private volatile int checksum;
+      private volatile int length;
+
+      Container(final File file, final JavaClass source, final String content)
+      {
+         this.file = file;
+         this.source = source;
+         this.packageName = source.getPackage();
+         this.name = source.getName();
+         this.handlerContainer = source.hasAnnotation(HandlesExceptions.class);
+         for (Method<JavaClass> method : source.getMethods()) {
+            this.methodNames.add(method.getName());
+         }
+         this.imports = Collections.synchronizedMap(HandlerMethods.importsOf(source));
+         this.checksum = content.hashCode();
+         this.length = content.length();
+      }
+
+      /**
+       * @return an empty class with the name and package of the container, to add new members to
+       */
+      public JavaClass newFragment()
+      {
+         final JavaClass fragment = JavaParser.create(JavaClass.class).setName(this.name).setPublic();
+         if (this.packageName != null)
+            fragment.setPackage(this.packageName);
+         return fragment;
+      }
+
+      public boolean isHandlerContainer()
+      {
+         return handlerContainer;
+      }
+
+      public String getName()
+      {
+         return name;
+      }
+
+      public String getPackage()
+      {
+         return packageName;
+      }
+
+      public String getQualifiedName()
+      {
+         return this.packageName == null ? this.name : this.packageName + "." + this.name;
+      }
+
+      public boolean hasMethod(final String methodName)
+      {
+         return this.methodNames.contains(methodName);
+      }
+
+      /**
+       * @return simple name to qualified name of the imports of the container, a copy
+       */
+      public Map<String, String> getImports()
+      {
+         synchronized (this.imports) {
+            return new HashMap<String, String>(this.imports);
+         }
+      }
+
+      public File getFile()
+      {
+         return file;
+      }
+   }
+}
@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import org.jboss.solder.exception.control.TraversalMode;
+
+/**
+ * A handler method found in an Exception Handler container.
+ */
+public class HandlerDescriptor
+{
+   private final String container;
+   private final String methodName;
+   private final String exceptionType;
+   private final int precedence;
+   private final TraversalMode traversalMode;
+   private final boolean terminal;
+
+   public HandlerDescriptor(final String container, final String methodName, final String exceptionType,
+            final int precedence, final TraversalMode traversalMode, final boolean terminal)
+   {
+      this.container = container;
+      this.methodName = methodName;
+      this.exceptionType = exceptionType;
+      this.precedence = precedence;
+      this.traversalMode = traversalMode;
+      this.terminal = terminal;
+   }
+
+   public HandlerDescriptor(final String container, final String methodName, final String exceptionType,
+            final int precedence, final TraversalMode traversalMode)
+   {
+      this(container, methodName, exceptionType, precedence, traversalMode, false);
+   }
+
+   /**
+    * @return fully qualified name of the container declaring the handler
+    */
+   public String getContainer()
+   {
+      return container;
+   }
+
+   public String getMethodName()
+   {
+      return methodName;
+   }
+
+   /**
+    * @return fully qualified name of the handled exception type, as far as it could be resolved from the source
+    */
+   public String getExceptionType()
+   {
+      return exceptionType;
+   }
+
+   public int getPrecedence()
+   {
+      return precedence;
+   }
+
+   public TraversalMode getTraversalMode()
+   {
+      return traversalMode;
+   }
+
+   public boolean isBreadthFirst()
+   {
+      return traversalMode == TraversalMode.BREADTH_FIRST;
+   }
+
+   /**
+    * @return true if the handler unconditionally ends the notification of later handlers (it marks the exception
+    *         handled, aborts, rethrows or proceeds to the cause)
+    */
+   public boolean isTerminal()
+   {
+      return terminal;
+   }
+
+   @Override
+   public String toString()
+   {
+      return container + "#" + methodName;
+   }
+}
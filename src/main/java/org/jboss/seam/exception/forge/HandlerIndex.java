@@ -0,0 +1,469 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jboss.forge.project.Project;
+import org.jboss.forge.project.facets.JavaSourceFacet;
+import org.jboss.forge.resources.DirectoryResource;
+import org.jboss.solder.exception.control.TraversalMode;
+
+/**
+ * Index of the handler methods of a project, persisted between shell sessions. Each source file is recorded with its
+ * modification time and size so a refresh only re-parses the files that changed.
+ */
+public class HandlerIndex
+{
+   private static final int FORMAT_VERSION = 2;
+
+   private final File storage;
+   private final ParsedSourceCache cache;
+   private final Map<String, FileEntry> files = new ConcurrentHashMap<String, FileEntry>();
+   private RefreshResult lastRefresh = new RefreshResult(0, 0, 0);
+
+   /**
+    * @param storage file the index is persisted to
+    */
+   public HandlerIndex(final File storage)
+   {
+      this(storage, null);
+   }
+
+   /**
+    * @param storage file the index is persisted to
+    * @param cache parsed sources of the session, shared with the other commands; may be null
+    */
+   public HandlerIndex(final File storage, final ParsedSourceCache cache)
+   {
+      this.storage = storage;
+      this.cache = cache;
+   }
+
+   /**
+    * Loads the persisted index of the project, refreshes it against the source folders and persists it again.
+    *
+    * @param project project to index
+    * @return the up to date index
+    */
+   public static HandlerIndex forProject(final Project project)
+   {
+      return forProject(project, null);
+   }
+
+   /**
+    * Loads the persisted index of the project, refreshes it against the source folders and persists it again.
+    *
+    * @param project project to index
+    * @param cache parsed sources of the session, changed containers are parsed through it; may be null
+    * @return the up to date index
+    */
+   public static HandlerIndex forProject(final Project project, final ParsedSourceCache cache)
+   {
+      final HandlerIndex index = new HandlerIndex(storageFor(project.getProjectRoot().getUnderlyingResourceObject()),
+               cache);
+      index.load();
+
+      final List<File> roots = new ArrayList<File>();
+      for (DirectoryResource folder : project.getFacet(JavaSourceFacet.class).getSourceFolders()) {
+         roots.add(folder.getUnderlyingResourceObject());
+      }
+
+      final RefreshResult result = index.refresh(roots);
+      if ((result.getReparsed() > 0) || (result.getRemoved() > 0))
+         index.save();
+      return index;
+   }
+
+   /**
+    * @param projectRoot root directory of the project
+    * @return the file the index of the project is persisted to
+    */
+   public static File storageFor(final File projectRoot)
+   {
+      final String path = projectRoot.getAbsolutePath();
+      return new File(CatchConfigDirectory.get("index"), projectRoot.getName() + "-"
+               + Integer.toHexString(path.hashCode()) + ".idx");
+   }
+
+   /**
+    * Re-parses the source files that were added or changed since the last refresh, in parallel, and forgets the
+    * files that no longer exist.
+    *
+    * @param roots source folders to scan
+    * @return statistics of the refresh
+    */
+   public RefreshResult refresh(final List<File> roots)
+   {
+      final List<File> sources = new ArrayList<File>();
+      for (File root : roots) {
+         collectSources(root, sources);
+      }
+
+      final Set<String> present = new HashSet<String>(sources.size());
+      final List<File> changed = new ArrayList<File>();
+      for (File source : sources) {
+         final String path = source.getAbsolutePath();
+         present.add(path);
+
+         final FileEntry entry = this.files.get(path);
+         if ((entry == null) || (entry.lastModified != source.lastModified()) || (entry.length != source.length()))
+            changed.add(source);
+      }
+
+      int removed = 0;
+      for (String path : new ArrayList<String>(this.files.keySet())) {
+         if (!present.contains(path)) {
+            this.files.remove(path);
+            removed++;
+         }
+      }
+
+      this.parse(changed);
+
+      this.lastRefresh = new RefreshResult(sources.size(), changed.size(), removed);
+      return this.lastRefresh;
+   }
+
+   /**
+    * @return statistics of the most recent refresh
+    */
+   public RefreshResult getLastRefresh()
+   {
+      return lastRefresh;
+   }
+
+   /**
+    * Re-parses a single source file, or forgets it if it no longer exists.
+    *
+    * @param source file to update
+    */
+   public void update(final File source)
+   {
+      if (!source.isFile())
+         this.files.remove(source.getAbsolutePath());
+      else
+         this.parse(Collections.singletonList(source));
+   }
+
+   /**
+    * Re-parses the given source files in parallel, forgetting the ones that no longer exist.
+    *
+    * @param sources files to update
+    */
+   public void update(final Collection<File> sources)
+   {
+      final List<File> existing = new ArrayList<File>(sources.size());
+      for (File source : sources) {
+         if (source.isFile())
+            existing.add(source);
+         else
+            this.files.remove(source.getAbsolutePath());
+      }
+      this.parse(existing);
+   }
+
+   /**
+    * @return all handlers in the index
+    */
+   public List<HandlerDescriptor> getHandlers()
+   {
+      final List<HandlerDescriptor> handlers = new ArrayList<HandlerDescriptor>();
+      for (FileEntry entry : this.files.values()) {
+         handlers.addAll(entry.handlers);
+      }
+      return handlers;
+   }
+
+   /**
+    * @return handlers keyed by handled exception type, in order of type name
+    */
+   public SortedMap<String, List<HandlerDescriptor>> byExceptionType()
+   {
+      final SortedMap<String, List<HandlerDescriptor>> byType = new TreeMap<String, List<HandlerDescriptor>>();
+      for (HandlerDescriptor handler : this.getHandlers()) {
+         List<HandlerDescriptor> handlers = byType.get(handler.getExceptionType());
+         if (handlers == null) {
+            handlers = new ArrayList<HandlerDescriptor>();
+            byType.put(handler.getExceptionType(), handlers);
+         }
+         handlers.add(handler);
+      }
+      return byType;
+   }
+
+   /**
+    * @return source file to the handlers it declares, for the files that declare at least one handler
+    */
+   public Map<String, List<HandlerDescriptor>> byFile()
+   {
+      final Map<String, List<HandlerDescriptor>> byFile = new TreeMap<String, List<HandlerDescriptor>>();
+      for (Map.Entry<String, FileEntry> entry : this.files.entrySet()) {
+         if (!entry.getValue().handlers.isEmpty())
+            byFile.put(entry.getKey(), entry.getValue().handlers);
+      }
+      return byFile;
+   }
+
+   /**
+    * Reads the persisted index. A missing or unreadable index leaves this index empty.
+    */
+   public void load()
+   {
+      if (!this.storage.isFile())
+         return;
+
+      DataInputStream in = null;
+      try {
+         in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.storage)));
+         if (in.readInt() != FORMAT_VERSION)
+            return;
+
+         final int fileCount = in.readInt();
+         for (int i = 0; i < fileCount; i++) {
+            final String path = in.readUTF();
+            final long lastModified = in.readLong();
+            final long length = in.readLong();
+            final int handlerCount = in.readInt();
+
+            final List<HandlerDescriptor> handlers = new ArrayList<HandlerDescriptor>(handlerCount);
+            for (int j = 0; j < handlerCount; j++) {
+               handlers.add(new HandlerDescriptor(in.readUTF(), in.readUTF(), in.readUTF(), in.readInt(),
+                        in.readBoolean() ? TraversalMode.BREADTH_FIRST : TraversalMode.DEPTH_FIRST, in.readBoolean()));
+            }
+            this.files.put(path, new FileEntry(lastModified, length, handlers));
+         }
+      }
+      catch (IOException e) {
+         // a damaged index is rebuilt by the next refresh
+         this.files.clear();
+      }
+      finally {
+         closeQuietly(in);
+      }
+   }
+
+   /**
+    * Persists the index.
+    */
+   public void save()
+   {
+      final File parent = this.storage.getParentFile();
+      if ((parent != null) && !parent.isDirectory() && !parent.mkdirs())
+         return;
+
+      DataOutputStream out = null;
+      try {
+         out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.storage)));
+         out.writeInt(FORMAT_VERSION);
+
+         final Map<String, FileEntry> snapshot = new TreeMap<String, FileEntry>(this.files);
+         out.writeInt(snapshot.size());
+         for (Map.Entry<String, FileEntry> entry : snapshot.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().lastModified);
+            out.writeLong(entry.getValue().length);
+            out.writeInt(entry.getValue().handlers.size());
+            for (HandlerDescriptor handler : entry.getValue().handlers) {
+               out.writeUTF(handler.getContainer());
+               out.writeUTF(handler.getMethodName());
+               out.writeUTF(handler.getExceptionType());
+               out.writeInt(handler.getPrecedence());
+               out.writeBoolean(handler.isBreadthFirst());
+               out.writeBoolean(handler.isTerminal());
+            }
+         }
+      }
+      catch (IOException e) {
+         // the index is rebuilt from the sources when it cannot be persisted
+      }
+      finally {
+         closeQuietly(out);
+      }
+   }
+
+   /**
+    * Parses the given files on a pool sized to the available processors, each task taking an even share of the files.
+    */
+   private void parse(final List<File> sources)
+   {
+      if (sources.isEmpty())
+         return;
+
+      final int threads = Math.min(Runtime.getRuntime().availableProcessors(), sources.size());
+      if (threads <= 1) {
+         new ParseTask(sources).call();
+         return;
+      }
+
+      final ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+         final List<Future<Void>> results = new ArrayList<Future<Void>>(threads);
+         final int share = (sources.size() + threads - 1) / threads;
+         for (int from = 0; from < sources.size(); from += share) {
+            results.add(executor.submit(new ParseTask(sources.subList(from, Math.min(from + share, sources.size())))));
+         }
+
+         for (Future<Void> result : results) {
+            result.get();
+         }
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      catch (ExecutionException e) {
+         throw new IllegalStateException("Could not index the project's handlers", e.getCause());
+      }
+      finally {
+         executor.shutdownNow();
+      }
+   }
+
+   private static void collectSources(final File directory, final List<File> sources)
+   {
+      final File[] children = directory.listFiles();
+      if (children == null)
+         return;
+
+      for (File child : children) {
+         if (child.isDirectory())
+            collectSources(child, sources);
+         else if (child.getName().endsWith(".java"))
+            sources.add(child);
+      }
+   }
+
+   private static void closeQuietly(final Closeable closeable)
+   {
+      if (closeable != null) {
+         try {
+            closeable.close();
+         }
+         catch (IOException e) {
+            // ignore
+         }
+      }
+   }
+
+   private class ParseTask implements Callable<Void>
+   {
+      private final List<File> sources;
+
+      ParseTask(final List<File> sources)
+      {
+         this.sources = sources;
+      }
+
+      @Override
+      public Void call()
+      {
+         for (File source : this.sources) {
+            // Stamp taken before reading so a concurrent edit is picked up by the next refresh
+            final long lastModified = source.lastModified();
+            final long length = source.length();
+
+            List<HandlerDescriptor> handlers;
+            try {
+               handlers = HandlerScanner.scan(source, cache);
+            }
+            catch (IOException e) {
+               handlers = Collections.emptyList();
+            }
+            files.put(source.getAbsolutePath(), new FileEntry(lastModified, length, handlers));
+         }
+         return null;
+      }
+   }
+
+   private static class FileEntry
+   {
+      private final long lastModified;
+      private final long length;
+      private final List<HandlerDescriptor> handlers;
+
+      FileEntry(final long lastModified, final long length, final List<HandlerDescriptor> handlers)
+      {
+         this.lastModified = lastModified;
+         this.length = length;
+         this.handlers = handlers;
+      }
+   }
+
+   /**
+    * Statistics of a {@link HandlerIndex#refresh(List)}.
+    */
+   public static class RefreshResult
+   {
+      private final int scanned;
+      private final int reparsed;
+      private final int removed;
+
+      RefreshResult(final int scanned, final int reparsed, final int removed)
+      {
+         this.scanned = scanned;
+         this.reparsed = reparsed;
+         this.removed = removed;
+      }
+
+      /**
+       * @return number of source files found
+       */
+      public int getScanned()
+      {
+         return scanned;
+      }
+
+      /**
+       * @return number of source files that were parsed again
+       */
+      public int getReparsed()
+      {
+         return reparsed;
+      }
+
+      /**
+       * @return number of source files that were removed since the last refresh
+       */
+      public int getRemoved()
+      {
+         return removed;
+      }
+   }
+}
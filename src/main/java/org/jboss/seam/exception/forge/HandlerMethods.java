@@ -0,0 +1,264 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.forge.parser.java.Import;
+import org.jboss.forge.parser.java.JavaClass;
+import org.jboss.forge.parser.java.Method;
+import org.jboss.forge.project.facets.JavaSourceFacet;
+import org.jboss.solder.exception.control.CaughtException;
+import org.jboss.solder.exception.control.Handles;
+import org.jboss.solder.exception.control.Precedence;
+import org.jboss.solder.exception.control.TraversalMode;
+
+/**
+ * Adds handler methods to an Exception Handler container. Imports required by the new methods are collected and
+ * applied in one go, so many handlers can be added to a container with a single pass over its imports.
+ */
+public final class HandlerMethods
+{
+   /**
+    * Generated classes instrumented handlers record to, in the {@link #metricsPackage(JavaSourceFacet) metrics package}
+    * of the project.
+    */
+   public static final String[] METRICS_SUPPORT_CLASSES = { "StripedCounter", "LatencyHistogram",
+            "HandlerMetricsMBean", "HandlerMetrics" };
+
+   private HandlerMethods()
+   {
+   }
+
+   /**
+    * Adds a handler method to the container. Imports needed by the method are added to <code>requiredImports</code>
+    * instead of the container, see {@link #addImports(JavaClass, Set)}.
+    *
+    * @param container Exception Handler container
+    * @param spec handler to create
+    * @param imports simple name to qualified name of the imports the container has, or will have
+    * @param requiredImports qualified names of the imports to add to the container
+    * @return the new method
+    */
+   public static Method<JavaClass> addHandler(final JavaClass container, final HandlerSpec spec,
+            final Map<String, String> imports, final Set<String> requiredImports)
+   {
+      final StringBuilder parameterBuilder = new StringBuilder(handlesAnnotation(spec.isBreadthFirst(),
+               spec.getPrecedence()));
+
+      if (spec.isBreadthFirst())
+         requireImport(TraversalMode.class.getName(), imports, requiredImports);
+
+      if (spec.getPrecedence() != Precedence.DEFAULT && precedenceConstant(spec.getPrecedence()) != null)
+         requireImport(Precedence.class.getName(), imports, requiredImports);
+
+      requireImport(Handles.class.getName(), imports, requiredImports);
+      requireImport(CaughtException.class.getName(), imports, requiredImports);
+
+      parameterBuilder.append(" final CaughtException<")
+               .append(typeReference(spec.getExceptionType(), imports, requiredImports))
+               .append("> caughtException");
+
+      final Method<JavaClass> handlerMethod = container.addMethod();
+      handlerMethod.setPublic().setReturnTypeVoid().setName(spec.getMethodName())
+               .setParameters(parameterBuilder.toString());
+
+      return handlerMethod;
+   }
+
+   /**
+    * Builds the <code>@Handles</code> annotation for the given traversal mode and precedence.
+    *
+    * @param breadthFirst if the handler is a BREADTH_FIRST handler
+    * @param precedence precedence of the handler
+    * @return annotation source
+    */
+   public static String handlesAnnotation(final boolean breadthFirst, final int precedence)
+   {
+      final StringBuilder annotation = new StringBuilder("@Handles");
+
+      if (breadthFirst) {
+         annotation.append("(during = TraversalMode.BREADTH_FIRST");
+
+         if (precedence == Precedence.DEFAULT)
+            annotation.append(")");
+      }
+
+      if (precedence != Precedence.DEFAULT) {
+         // setup the parameter string correctly if this is the first param to the annotation
+         if (!breadthFirst)
+            annotation.append("(");
+         else
+            annotation.append(", ");
+
+         annotation.append("precedence = ");
+
+         final String constant = precedenceConstant(precedence);
+         annotation.append(constant != null ? constant : String.valueOf(precedence));
+         annotation.append(")");
+      }
+
+      return annotation.toString();
+   }
+
+   /**
+    * @param precedence precedence value
+    * @return the matching {@link Precedence} constant reference, or null if there is none
+    */
+   public static String precedenceConstant(final int precedence)
+   {
+      switch (precedence)
+      {
+      case Precedence.BUILT_IN:
+         return "Precedence.BUILT_IN";
+      case Precedence.FRAMEWORK:
+         return "Precedence.FRAMEWORK";
+      case Precedence.DEFAULT:
+         return "Precedence.DEFAULT";
+      case Precedence.HIGH:
+         return "Precedence.HIGH";
+      case Precedence.LOW:
+         return "Precedence.LOW";
+      default:
+         return null;
+      }
+   }
+
+   /**
+    * Indexes the imports of a container by simple name.
+    *
+    * @param container class to read the imports from
+    * @return simple name to qualified name
+    */
+   public static Map<String, String> importsOf(final JavaClass container)
+   {
+      final Map<String, String> imports = new HashMap<String, String>();
+      for (Import i : container.getImports()) {
+         final String qualifiedName = i.getQualifiedName();
+         imports.put(qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1), qualifiedName);
+      }
+      return imports;
+   }
+
+   /**
+    * Adds the given imports to the container.
+    *
+    * @param container class to add the imports to
+    * @param requiredImports qualified names of the imports to add
+    */
+   public static void addImports(final JavaClass container, final Set<String> requiredImports)
+   {
+      for (String qualifiedName : requiredImports) {
+         container.addImport(qualifiedName);
+      }
+   }
+
+   /**
+    * Adds a single handler to the container, including its imports.
+    *
+    * @param container Exception Handler container
+    * @param spec handler to create
+    * @return the new method
+    */
+   public static Method<JavaClass> addHandler(final JavaClass container, final HandlerSpec spec)
+   {
+      final Set<String> requiredImports = new LinkedHashSet<String>();
+      final Method<JavaClass> method = addHandler(container, spec, importsOf(container), requiredImports);
+      addImports(container, requiredImports);
+      return method;
+   }
+
+   /**
+    * The project has a single <code>HandlerMetrics</code> registry, published under a single JMX name, whichever
+    * containers record to it.
+    *
+    * @param javaSourceFacet facet of the project
+    * @return the package of the generated metrics classes
+    */
+   public static String metricsPackage(final JavaSourceFacet javaSourceFacet)
+   {
+      return javaSourceFacet.getBasePackage() + ".metrics";
+   }
+
+   /**
+    * Wraps the body of the handler so every invocation is counted and timed in the generated
+    * <code>HandlerMetrics</code> registry, see {@link #METRICS_SUPPORT_CLASSES}.
+    *
+    * @param handlerMethod handler to instrument
+    * @param metricName name the handler is recorded under
+    * @param metricsPackage package of the registry, see {@link #metricsPackage(JavaSourceFacet)}
+    * @param requiredImports qualified names of the imports to add to the container
+    */
+   public static void instrument(final Method<JavaClass> handlerMethod, final String metricName,
+            final String metricsPackage, final Set<String> requiredImports)
+   {
+      if (!metricsPackage.equals(handlerMethod.getOrigin().getPackage()))
+         requiredImports.add(metricsPackage + ".HandlerMetrics");
+
+      final String body = handlerMethod.getBody() == null ? "" : handlerMethod.getBody();
+      handlerMethod.setBody("final long start = System.nanoTime();\n"
+               + "try {\n"
+               + body + "\n"
+               + "}\n"
+               + "finally {\n"
+               + "HandlerMetrics.record(\"" + metricName + "\", System.nanoTime() - start);\n"
+               + "}");
+   }
+
+   /**
+    * Returns how the exception type should be referenced in the source, importing it when that is possible.
+    */
+   private static String typeReference(final String exceptionType, final Map<String, String> imports,
+            final Set<String> requiredImports)
+   {
+      final int lastDot = exceptionType.lastIndexOf('.');
+      if (lastDot == -1)
+         return exceptionType;
+
+      final String packageName = exceptionType.substring(0, lastDot);
+      final String simpleName = exceptionType.substring(lastDot + 1);
+
+      if ("java.lang".equals(packageName))
+         return simpleName;
+
+      if (requireImport(exceptionType, imports, requiredImports))
+         return simpleName;
+
+      // Another type with the same simple name is already imported
+      return exceptionType;
+   }
+
+   /**
+    * @return true if the type is (or will be) imported, false if the simple name is taken by another import
+    */
+   private static boolean requireImport(final String qualifiedName, final Map<String, String> imports,
+            final Set<String> requiredImports)
+   {
+      final String simpleName = qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+      final String existing = imports.get(simpleName);
+
+      if (existing == null) {
+         imports.put(simpleName, qualifiedName);
+         requiredImports.add(qualifiedName);
+         return true;
+      }
+      return existing.equals(qualifiedName);
+   }
+}
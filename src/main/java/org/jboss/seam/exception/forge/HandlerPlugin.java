@@ -17,19 +17,33 @@
 package org.jboss.seam.exception.forge;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
 import org.jboss.forge.parser.java.JavaClass;
-import org.jboss.forge.parser.java.JavaSource;
 import org.jboss.forge.parser.java.Method;
 import org.jboss.forge.project.Project;
 import org.jboss.forge.project.facets.JavaSourceFacet;
+import org.jboss.forge.project.facets.ResourceFacet;
+import org.jboss.forge.resources.FileResource;
 import org.jboss.forge.resources.Resource;
 import org.jboss.forge.resources.java.JavaResource;
 import org.jboss.forge.shell.PromptType;
 import org.jboss.forge.shell.Shell;
 import org.jboss.forge.shell.ShellColor;
+import org.jboss.forge.shell.ShellMessages;
 import org.jboss.forge.shell.ShellPrintWriter;
 import org.jboss.forge.shell.ShellPrompt;
 import org.jboss.forge.shell.plugins.Alias;
@@ -39,10 +53,6 @@ import org.jboss.forge.shell.plugins.Option;
 import org.jboss.forge.shell.plugins.Plugin;
 import org.jboss.forge.shell.plugins.RequiresFacet;
 import org.jboss.forge.shell.plugins.RequiresResource;
-import org.jboss.solder.exception.control.Handles;
-import org.jboss.solder.exception.control.HandlesExceptions;
-import org.jboss.solder.exception.control.Precedence;
-import org.jboss.solder.exception.control.TraversalMode;
 
 /**
  * @author <a href="http://community.jboss.org/people/LightGuard">Jason Porter</a>
@@ -53,11 +63,15 @@ import org.jboss.solder.exception.control.TraversalMode;
 @Help("A plugin to setup and manage Seam Catch Exception Handlers.")
 public class HandlerPlugin implements Plugin
 {
+   private static final String EXTENSION_SERVICES = "META-INF/services/javax.enterprise.inject.spi.Extension";
 
    private final Project project;
    private final Shell shell;
    private final ShellPrintWriter writer;
    private final ShellPrompt prompt;
+   private final HandlerContainerEditor editor;
+   private final ThrowableIndex throwables;
+   private final CommandTiming timing;
 
    /**
     * Injection constructor
@@ -66,15 +80,22 @@ public class HandlerPlugin implements Plugin
     * @param shell current shell
     * @param writer current shell writer
     * @param prompt current shell prompt
+    * @param editor session wide editor of the handler containers
+    * @param throwables session wide index of the Throwable types of the project
+    * @param timing timing settings of the session
     */
    @Inject
    public HandlerPlugin(final Project project, final Shell shell, final ShellPrintWriter writer,
-            final ShellPrompt prompt)
+            final ShellPrompt prompt, final HandlerContainerEditor editor, final ThrowableIndex throwables,
+            final CommandTiming timing)
    {
       this.project = project;
       this.shell = shell;
       this.writer = writer;
       this.prompt = prompt;
+      this.editor = editor;
+      this.throwables = throwables;
+      this.timing = timing;
    }
 
    /**
@@ -82,117 +103,422 @@ public class HandlerPlugin implements Plugin
     * 
     * @param methodName
     * @param exceptionType
+    * @param breadthFirst
+    * @param precedence
+    * @param metrics
+    * @param template
+    * @param sampleSize
+    * @param flushInterval
+    * @param maxEntries
+    * @param frames
+    * @param async
+    * @param bufferSize
+    * @param batchSize
+    * @param whenFull
+    * @param sink
+    * @param journalDir
+    * @param segmentSize
+    * @param maxSegments
+    * @param capacity
+    * @param timing
     */
    @Command(value = "create", help = "Create a Seam Catch Exception Handler method.")
    public void handlerCommand(
             @Option(name = "method-name", required = true, type = PromptType.JAVA_VARIABLE_NAME,
                      help = "Name of the handler method to create") final String methodName,
             @Option(name = "exception-type", required = true, type = PromptType.JAVA_CLASS,
+                     completer = ThrowableTypeCompleter.class,
                      help = "Type of the exception the handler will handle") final String exceptionType,
             @Option(name = "breadthFirst", required = false, defaultValue = "false",
                      help = "Should the handler be a BREADTH_FIRST handler") final boolean breadthFirst,
             @Option(name = "precedence", required = false, defaultValue = "0",
-                     help = "Precedence level relative to other handlers for the same exception type") final int precedence)
+                     help = "Precedence level relative to other handlers for the same exception type") final int precedence,
+            @Option(name = "metrics", required = false, defaultValue = "false",
+                     help = "Record invocation counts and latencies of the handler in the generated HandlerMetrics registry") final boolean metrics,
+            @Option(name = "template", required = false, completer = HandlerTemplateCompleter.class,
+                     help = "Template generating the body of the handler, such as sampled-log, aggregate, async, journal or flight-recorder") final String template,
+            @Option(name = "sample-size", required = false,
+                     help = "sampled-log: occurrences of an exception type logged per interval") final Integer sampleSize,
+            @Option(name = "flush-interval", required = false,
+                     help = "Seconds between the summaries of the sampled-log and aggregate templates") final Integer flushInterval,
+            @Option(name = "max-entries", required = false,
+                     help = "aggregate: maximum number of exception fingerprints tracked") final Integer maxEntries,
+            @Option(name = "frames", required = false,
+                     help = "aggregate and journal: number of top stack frames recorded for an exception") final Integer frames,
+            @Option(name = "async", required = false, defaultValue = "false",
+                     help = "Report the exception from a background thread, same as --template async") final boolean async,
+            @Option(name = "buffer-size", required = false,
+                     help = "async: number of reports the ring buffer holds") final Integer bufferSize,
+            @Option(name = "batch-size", required = false,
+                     help = "async: maximum number of reports written to the sink at once") final Integer batchSize,
+            @Option(name = "when-full", required = false,
+                     help = "async: drop, block or count-and-drop when the buffer is full") final String whenFull,
+            @Option(name = "sink", required = false, type = PromptType.JAVA_CLASS,
+                     help = "async: ExceptionReportSink implementation the reports are written to") final String sink,
+            @Option(name = "journal-dir", required = false,
+                     help = "journal: directory of the journal files, overridden by -Dexception.journal.dir") final String journalDir,
+            @Option(name = "segment-size", required = false,
+                     help = "journal: size in MB of a journal file before the next one is started") final Integer segmentSize,
+            @Option(name = "max-segments", required = false,
+                     help = "journal: number of journal files kept, the oldest are deleted") final Integer maxSegments,
+            @Option(name = "capacity", required = false,
+                     help = "flight-recorder: number of most recent exceptions kept") final Integer capacity,
+            @Option(name = "timing", required = false, defaultValue = "false",
+                     help = "Print the time spent in each phase of the command") final boolean timing)
    {
+      final PhaseTimer timer = this.timing.start("handler create");
       try {
-         final JavaClass handlerContainerClass = this.getJavaClass();
          final JavaSourceFacet javaSourceFacet = this.project.getFacet(JavaSourceFacet.class);
+         final HandlerContainerEditor.Container container = this.editor.open(this.getContainerResource(shell
+                  .getCurrentResource()), javaSourceFacet);
+         timer.lap(CommandTiming.SOURCE_PARSE);
 
-         if (!handlerContainerClass.hasAnnotation(HandlesExceptions.class)) {
+         if (!container.isHandlerContainer()) {
             writer.renderColor(ShellColor.RED,
                      "This class is not an Exception Handler Container (it must be annotated with @HandlesExceptions)");
             return;
          }
 
-         String cleanedExceptionType = exceptionType;
+         // Only types known not to be Throwables are rejected, types missing from the index may not be built yet
+         if (Boolean.FALSE.equals(this.throwables.isThrowable(this.project, exceptionType))) {
+            ShellMessages.error(writer, "[" + exceptionType + "] is not a Throwable");
+            return;
+         }
+
+         if (async && (template != null) && !"async".equals(template)) {
+            ShellMessages.error(writer, "--async cannot be combined with --template " + template);
+            return;
+         }
+
+         final String templateName = async ? "async" : template;
+         HandlerTemplate handlerTemplate = null;
+         if (templateName != null) {
+            handlerTemplate = HandlerTemplates.get(templateName);
+            if (handlerTemplate == null) {
+               ShellMessages.error(writer, "Unknown handler template [" + templateName + "]");
+               return;
+            }
+         }
 
-         if (exceptionType.startsWith("java.lang"))
-            cleanedExceptionType = exceptionType.replace("java.lang", "");
+         timer.lap(CommandTiming.VALIDATION);
 
-         Method<JavaClass> handlerMethod = handlerContainerClass.addMethod();
+         // The handler is built in an empty fragment of the container, only the save goes over all of its members
+         final JavaClass fragment = container.newFragment();
+         final Set<String> requiredImports = new LinkedHashSet<String>();
+         final Method<JavaClass> handlerMethod = HandlerMethods.addHandler(fragment, new HandlerSpec(methodName,
+                  exceptionType, breadthFirst, precedence), container.getImports(), requiredImports);
 
-         StringBuilder parameterBuilder = new StringBuilder("@Handles");
+         if (handlerTemplate != null) {
+            final HandlerTemplateOptions options = new HandlerTemplateOptions()
+                     .set("sample-size", sampleSize)
+                     .set("flush-interval", flushInterval)
+                     .set("max-entries", maxEntries)
+                     .set("frames", frames)
+                     .set("buffer-size", bufferSize)
+                     .set("batch-size", batchSize)
+                     .set("when-full", whenFull)
+                     .set("sink", sink)
+                     .set("journal-dir", journalDir)
+                     .set("segment-size", segmentSize)
+                     .set("max-segments", maxSegments)
+                     .set("capacity", capacity);
+            try {
+               handlerTemplate.apply(fragment, handlerMethod, options);
+            }
+            catch (IllegalArgumentException e) {
+               ShellMessages.error(writer, e.getMessage());
+               return;
+            }
+         }
 
-         if (breadthFirst) {
-            parameterBuilder.append("(during = TraversalMode.BREADTH_FIRST");
+         final String metricsPackage = metrics ? HandlerMethods.metricsPackage(javaSourceFacet) : null;
+         if (metrics)
+            HandlerMethods.instrument(handlerMethod, container.getQualifiedName() + "#" + methodName, metricsPackage,
+                     requiredImports);
 
-            if (!handlerContainerClass.hasImport(TraversalMode.class))
-               handlerContainerClass.addImport(TraversalMode.class);
+         timer.lap(CommandTiming.MODEL_MUTATION);
+
+         this.editor.append(container, fragment, requiredImports, timer);
+
+         // Written once the handler is, so a container that cannot be written leaves no files behind
+         if (handlerTemplate != null) {
+            this.generateSupportClasses(javaSourceFacet, container.getPackage(), handlerTemplate.getSupportClasses());
+            if (handlerTemplate.getExtension() != null)
+               this.registerExtension(container.getPackage() + "." + handlerTemplate.getExtension());
+         }
+         if (metrics)
+            this.generateSupportClasses(javaSourceFacet, metricsPackage, HandlerMethods.METRICS_SUPPORT_CLASSES);
+
+         this.writer.println("Added Handler [" + methodName + "] to container [" + container.getQualifiedName() + "]");
+      }
+      catch (FileNotFoundException e) {
+         this.writer.println("Error finding the class source file");
+      }
+      catch (IOException e) {
+         ShellMessages.error(writer, "Could not write the container: " + e.getMessage());
+      }
+      finally {
+         this.timing.finish(timer, timing, writer);
+      }
+   }
 
-            if (precedence == Precedence.DEFAULT)
-               parameterBuilder.append(")");
+   /**
+    * Command to create many handlers from a spec file, see {@link HandlerSpec#read(Reader)} for the format. Handlers
+    * are grouped by container so each container is written exactly once.
+    * 
+    * @param specFile file listing the handlers to create
+    */
+   @Command(value = "create-batch", help = "Create Seam Catch Exception Handler methods listed in a spec file.")
+   public void batchCommand(
+            @Option(name = "from", required = true, type = PromptType.FILE_PATH,
+                     help = "File listing one handler per line: method-name exception-type [breadthFirst] [precedence] [container]") final Resource<?> specFile)
+   {
+      final List<HandlerSpec> specs;
+      Reader reader = null;
+      try {
+         reader = new InputStreamReader(((FileResource<?>) specFile).getResourceInputStream(), "UTF-8");
+         specs = HandlerSpec.read(reader);
+      }
+      catch (IOException e) {
+         ShellMessages.error(writer, "Could not read handler spec file [" + specFile + "]: " + e.getMessage());
+         return;
+      }
+      catch (IllegalArgumentException e) {
+         ShellMessages.error(writer, "Invalid handler spec file [" + specFile + "]: " + e.getMessage());
+         return;
+      }
+      finally {
+         if (reader != null) {
+            try {
+               reader.close();
+            }
+            catch (IOException e) {
+               // ignore
+            }
          }
+      }
 
-         if (precedence != Precedence.DEFAULT) {
-            // Import for Precedence
-            if (!handlerContainerClass.hasImport(Precedence.class))
-               handlerContainerClass.addImport(Precedence.class);
+      // Group by container, keeping file order
+      final Map<String, List<HandlerSpec>> byContainer = new LinkedHashMap<String, List<HandlerSpec>>();
+      for (HandlerSpec spec : specs) {
+         final String key = spec.getContainer() == null ? "" : spec.getContainer();
+         if (!byContainer.containsKey(key))
+            byContainer.put(key, new ArrayList<HandlerSpec>());
+         byContainer.get(key).add(spec);
+      }
 
-            // setup the parameter string correctly if this is the first param to the annotation
-            if (!breadthFirst)
-               parameterBuilder.append("(");
-            else
-               parameterBuilder.append(", ");
+      final JavaSourceFacet javaSourceFacet = this.project.getFacet(JavaSourceFacet.class);
+      final long batchStart = System.nanoTime();
+      int created = 0;
 
-            parameterBuilder.append("precedence = ");
+      for (Map.Entry<String, List<HandlerSpec>> entry : byContainer.entrySet()) {
+         try {
+            final Resource<?> resource = "".equals(entry.getKey()) ? shell.getCurrentResource() : javaSourceFacet
+                     .getJavaResource(entry.getKey());
+            final HandlerContainerEditor.Container container = this.editor.open(this.getContainerResource(resource),
+                     javaSourceFacet);
 
-            switch (precedence)
-            {
-            case Precedence.BUILT_IN:
-               parameterBuilder.append("Precedence.BUILT_IN");
-               break;
-            case Precedence.FRAMEWORK:
-               parameterBuilder.append("Precedence.FRAMEWORK");
-               break;
-            case Precedence.HIGH:
-               parameterBuilder.append("Precedence.HIGH");
-               break;
-            case Precedence.LOW:
-               parameterBuilder.append("Precedence.LOW");
-               break;
+            if (!container.isHandlerContainer()) {
+               ShellMessages.error(writer, "[" + container.getQualifiedName()
+                        + "] is not an Exception Handler Container (it must be annotated with @HandlesExceptions)");
+               continue;
             }
 
-            parameterBuilder.append(")");
+            final JavaClass fragment = container.newFragment();
+            final Set<String> newMethods = new HashSet<String>();
+            final Map<String, String> imports = container.getImports();
+            final Set<String> requiredImports = new LinkedHashSet<String>();
+            int added = 0;
+
+            for (HandlerSpec spec : entry.getValue()) {
+               // Only types known not to be Throwables are rejected, as handler create does
+               if (Boolean.FALSE.equals(this.throwables.isThrowable(this.project, spec.getExceptionType()))) {
+                  ShellMessages.error(writer, "Skipping [" + spec.getMethodName() + "], [" + spec.getExceptionType()
+                           + "] is not a Throwable");
+                  continue;
+               }
+               if (container.hasMethod(spec.getMethodName()) || !newMethods.add(spec.getMethodName())) {
+                  ShellMessages.info(writer, "Skipping [" + spec.getMethodName() + "], container ["
+                           + container.getQualifiedName() + "] already has a method with that name");
+                  continue;
+               }
+               HandlerMethods.addHandler(fragment, spec, imports, requiredImports);
+               added++;
+            }
+
+            if (added == 0)
+               continue;
+
+            this.editor.append(container, fragment, requiredImports);
+            created += added;
+
+            writer.println("Added " + added + " handler(s) to container [" + container.getQualifiedName() + "]");
+         }
+         catch (FileNotFoundException e) {
+            ShellMessages.error(writer, "Error finding the class source file for container [" + entry.getKey() + "]");
+         }
+         catch (IOException e) {
+            ShellMessages.error(writer, "Could not write container [" + entry.getKey() + "]: " + e.getMessage());
+         }
+      }
+
+      final long batchTime = System.nanoTime() - batchStart;
+      writer.println("Created " + created + " handler(s) in " + byContainer.size() + " container(s) in "
+               + TimeUnit.NANOSECONDS.toMillis(batchTime) + " ms");
+   }
+
+   /**
+    * Command to create a handler for each subtype of an exception type, found in the project's sources and class
+    * path. The handlers are named <code>handle</code> followed by the simple name of the type and written to the
+    * current container in one go; types the container already has a handler for are skipped, so the command can be
+    * run again as the hierarchy grows.
+    * 
+    * @param base exception type whose public subtypes get a handler
+    * @param includeBase also create a handler for the base type
+    * @param breadthFirst create BREADTH_FIRST handlers
+    * @param precedence precedence of the handlers
+    */
+   @Command(value = "create-for-hierarchy", help = "Create a Seam Catch Exception Handler method for every subtype of an exception type.")
+   public void hierarchyCommand(
+            @Option(name = "base", required = true, type = PromptType.JAVA_CLASS,
+                     completer = ThrowableTypeCompleter.class,
+                     help = "Exception type whose public subtypes get a handler") final String base,
+            @Option(name = "include-base", required = false, defaultValue = "false",
+                     help = "Also create a handler for the base type") final boolean includeBase,
+            @Option(name = "breadthFirst", required = false, defaultValue = "false",
+                     help = "Should the handlers be BREADTH_FIRST handlers") final boolean breadthFirst,
+            @Option(name = "precedence", required = false, defaultValue = "0",
+                     help = "Precedence level relative to other handlers for the same exception type") final int precedence)
+   {
+      try {
+         final HandlerContainerEditor.Container container = this.editor.open(this.getContainerResource(shell
+                  .getCurrentResource()), this.project.getFacet(JavaSourceFacet.class));
+
+         if (!container.isHandlerContainer()) {
+            writer.renderColor(ShellColor.RED,
+                     "This class is not an Exception Handler Container (it must be annotated with @HandlesExceptions)");
+            return;
+         }
+
+         final String baseType = HandlerScanner.resolveType(base, null, Collections.<String, String> emptyMap());
+         final Boolean throwable = this.throwables.isThrowable(this.project, baseType);
+         if (throwable == null) {
+            ShellMessages.error(writer, "[" + base + "] is not a known type, build the project or check its name");
+            return;
+         }
+         if (!throwable.booleanValue()) {
+            ShellMessages.error(writer, "[" + base + "] is not a Throwable");
+            return;
+         }
+
+         final Set<String> types = new LinkedHashSet<String>();
+         if (includeBase)
+            types.add(baseType);
+         types.addAll(this.throwables.getSubtypes(this.project, baseType));
+         if (types.isEmpty()) {
+            ShellMessages.info(writer, "No subtypes of [" + baseType + "] found");
+            return;
+         }
+
+         final Set<String> handled = new HashSet<String>();
+         for (HandlerDescriptor handler : HandlerScanner.scan(container.getFile())) {
+            handled.add(handler.getExceptionType());
          }
 
-         parameterBuilder.append(" final CaughtException<")
-                  .append(cleanedExceptionType).append("> caughtException");
+         final JavaClass fragment = container.newFragment();
+         final Map<String, String> imports = container.getImports();
+         final Set<String> requiredImports = new LinkedHashSet<String>();
+         final Set<String> newMethods = new HashSet<String>();
+         int skipped = 0;
 
-         handlerMethod.setPublic().setReturnTypeVoid().setName(methodName).setParameters(parameterBuilder.toString());
+         for (String type : types) {
+            if (handled.contains(type)) {
+               skipped++;
+               continue;
+            }
+
+            String methodName = "handle" + type.substring(type.lastIndexOf('.') + 1);
+            if (container.hasMethod(methodName) || newMethods.contains(methodName))
+               // Same simple name in another package, named after the qualified name instead
+               methodName = "handle" + camelCase(type);
+            if (container.hasMethod(methodName) || !newMethods.add(methodName)) {
+               ShellMessages.info(writer, "Skipping [" + type + "], container [" + container.getQualifiedName()
+                        + "] already has a method named [" + methodName + "]");
+               continue;
+            }
 
-         // Setup the imports for annotations and exception type
-         if (!handlerContainerClass.hasImport(Handles.class))
-            handlerContainerClass.addImport(Handles.class);
+            HandlerMethods.addHandler(fragment, new HandlerSpec(methodName, type, breadthFirst, precedence), imports,
+                     requiredImports);
+         }
 
-         if (!handlerContainerClass.hasImport(exceptionType) && !exceptionType.startsWith("java.lang"))
-            handlerContainerClass.addImport(exceptionType);
+         if (newMethods.isEmpty()) {
+            ShellMessages.info(writer, "Container [" + container.getQualifiedName()
+                     + "] already has a handler method for every type of the hierarchy");
+            return;
+         }
 
-         javaSourceFacet.saveJavaSource(handlerContainerClass);
+         this.editor.append(container, fragment, requiredImports);
 
-         this.writer.println("Added Handler [" + methodName + "] to container [" + handlerContainerClass + "]");
+         writer.println("Added " + newMethods.size() + " handler(s) for the hierarchy of [" + baseType
+                  + "] to container [" + container.getQualifiedName() + "]"
+                  + (skipped == 0 ? "" : ", skipped " + skipped + " type(s) the container already handles"));
       }
       catch (FileNotFoundException e) {
          this.writer.println("Error finding the class source file");
       }
+      catch (IOException e) {
+         ShellMessages.error(writer, "Could not write the container: " + e.getMessage());
+      }
    }
 
-   private JavaClass getJavaClass() throws FileNotFoundException
+   /**
+    * @return the qualified name with the dots removed and each segment capitalized
+    */
+   private static String camelCase(final String qualifiedName)
    {
-      Resource<?> resource = shell.getCurrentResource();
-      if (resource instanceof JavaResource) {
-         return getJavaClassFrom(resource);
+      final StringBuilder name = new StringBuilder();
+      for (String segment : qualifiedName.split("\\.")) {
+         if (segment.length() > 0)
+            name.append(Character.toUpperCase(segment.charAt(0))).append(segment.substring(1));
       }
-      else {
-         throw new RuntimeException("Current resource is not a JavaResource!");
+      return name.toString();
+   }
+
+   private void generateSupportClasses(final JavaSourceFacet javaSourceFacet, final String packageName,
+            final String[] supportClasses)
+   {
+      for (String supportClass : supportClasses) {
+         if (SourceTemplates.generateIfMissing(javaSourceFacet, supportClass, packageName, false))
+            this.writer.println("Created [" + packageName + "." + supportClass + "]");
       }
    }
 
-   private JavaClass getJavaClassFrom(final Resource<?> resource) throws FileNotFoundException
+   /**
+    * Lists the CDI extension in <code>META-INF/services</code> unless it is already listed.
+    */
+   private void registerExtension(final String extension) throws IOException
    {
-      JavaSource<?> source = ((JavaResource) resource).getJavaSource();
-      if (!source.isClass()) {
-         throw new IllegalStateException("Current resource is not a JavaClass!");
+      final FileResource<?> services = this.project.getFacet(ResourceFacet.class).getResource(EXTENSION_SERVICES);
+      String content = services.exists() ? HandlerScanner.read(services.getUnderlyingResourceObject()) : "";
+      for (String line : content.split("\r?\n")) {
+         if (line.trim().equals(extension))
+            return;
+      }
+
+      if ((content.length() > 0) && !content.endsWith("\n"))
+         content += "\n";
+      services.setContents(content + extension + "\n");
+      this.writer.println("Registered CDI extension [" + extension + "]");
+   }
+
+   private JavaResource getContainerResource(final Resource<?> resource) throws FileNotFoundException
+   {
+      if (!(resource instanceof JavaResource)) {
+         throw new RuntimeException("Current resource is not a JavaResource!");
+      }
+      else if (!resource.exists()) {
+         throw new FileNotFoundException(resource.getFullyQualifiedName());
       }
-      return (JavaClass) source;
+      return (JavaResource) resource;
    }
 }
@@ -0,0 +1,230 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jboss.forge.parser.JavaParser;
+import org.jboss.forge.parser.java.JavaClass;
+import org.jboss.forge.parser.java.JavaSource;
+import org.jboss.forge.parser.java.Method;
+import org.jboss.forge.parser.java.Parameter;
+import org.jboss.solder.exception.control.HandlesExceptions;
+import org.jboss.solder.exception.control.Precedence;
+import org.jboss.solder.exception.control.TraversalMode;
+
+/**
+ * Finds the handler methods of Exception Handler containers.
+ */
+public final class HandlerScanner
+{
+   static final Pattern CAUGHT_TYPE = Pattern
+            .compile("CaughtException\\s*<\\s*(?:\\?\\s*extends\\s+)?([\\w.$]+)\\s*>");
+   private static final Pattern DURING = Pattern.compile("during\\s*=\\s*(?:[\\w.]*\\.)?(BREADTH_FIRST|DEPTH_FIRST)");
+   private static final Pattern PRECEDENCE = Pattern.compile("precedence\\s*=\\s*([\\w.+\\-]+)");
+   private static final Pattern TERMINAL_CALL = Pattern
+            .compile("\\.\\s*(handled|markHandled|abort|rethrow|proceedToCause)\\s*\\(");
+   private static final Pattern CONDITIONAL = Pattern.compile("\\b(if|switch|while|for|catch|case)\\b|\\?");
+
+   private HandlerScanner()
+   {
+   }
+
+   /**
+    * Reads and scans a source file. Files that do not mention <code>@HandlesExceptions</code> are skipped without
+    * being parsed.
+    *
+    * @param file Java source file
+    * @return handlers declared in the file, empty if it is not a container
+    * @throws IOException if the file cannot be read
+    */
+   public static List<HandlerDescriptor> scan(final File file) throws IOException
+   {
+      return scan(file, null);
+   }
+
+   /**
+    * Reads and scans a source file, parsing it through the given cache.
+    *
+    * @param file Java source file
+    * @param cache parsed sources of the session, may be null
+    * @return handlers declared in the file, empty if it is not a container
+    * @throws IOException if the file cannot be read
+    */
+   public static List<HandlerDescriptor> scan(final File file, final ParsedSourceCache cache) throws IOException
+   {
+      final String source = read(file);
+      if (!source.contains(HandlesExceptions.class.getSimpleName()))
+         return Collections.emptyList();
+
+      final JavaSource<?> parsed;
+      try {
+         parsed = cache == null ? JavaParser.parse(source) : cache.get(file, source);
+      }
+      catch (RuntimeException e) {
+         // Sources that do not parse contribute no handlers
+         return Collections.emptyList();
+      }
+
+      if (!parsed.isClass())
+         return Collections.emptyList();
+
+      return scan((JavaClass) parsed);
+   }
+
+   /**
+    * @param container parsed class
+    * @return handlers declared by the class, empty if it is not a container
+    */
+   public static List<HandlerDescriptor> scan(final JavaClass container)
+   {
+      if (!container.hasAnnotation(HandlesExceptions.class))
+         return Collections.emptyList();
+
+      final Map<String, String> imports = HandlerMethods.importsOf(container);
+      final List<HandlerDescriptor> handlers = new ArrayList<HandlerDescriptor>();
+
+      for (Method<JavaClass> method : container.getMethods()) {
+         for (Parameter parameter : method.getParameters()) {
+            final String declaration = parameter.toString();
+            if (!declaration.contains("@Handles"))
+               continue;
+
+            final Matcher type = CAUGHT_TYPE.matcher(declaration);
+            if (!type.find())
+               continue;
+
+            final Matcher during = DURING.matcher(declaration);
+            final TraversalMode mode = during.find() ? TraversalMode.valueOf(during.group(1))
+                     : TraversalMode.DEPTH_FIRST;
+
+            final Matcher precedence = PRECEDENCE.matcher(declaration);
+            final int precedenceValue = precedence.find() ? parsePrecedence(precedence.group(1))
+                     : Precedence.DEFAULT;
+
+            handlers.add(new HandlerDescriptor(container.getQualifiedName(), method.getName(), resolveType(
+                     type.group(1), container.getPackage(), imports), precedenceValue, mode,
+                     isTerminal(method.getBody())));
+            break;
+         }
+      }
+      return handlers;
+   }
+
+   /**
+    * A handler body is considered terminal when it ends the handler chain without any branching, so the call is
+    * always made.
+    *
+    * @param body handler method body
+    * @return true if the body unconditionally ends the notification of later handlers
+    */
+   public static boolean isTerminal(final String body)
+   {
+      if (body == null)
+         return false;
+      return TERMINAL_CALL.matcher(body).find() && !CONDITIONAL.matcher(body).find();
+   }
+
+   /**
+    * Resolves a type reference as written in a container to a fully qualified name.
+    *
+    * @param type type as written in the source
+    * @param packageName package of the container
+    * @param imports simple name to qualified name of the container's imports
+    * @return the qualified name
+    */
+   public static String resolveType(final String type, final String packageName, final Map<String, String> imports)
+   {
+      if (type.indexOf('.') != -1)
+         return type;
+
+      final String imported = imports.get(type);
+      if (imported != null)
+         return imported;
+
+      try {
+         Class.forName("java.lang." + type, false, HandlerScanner.class.getClassLoader());
+         return "java.lang." + type;
+      }
+      catch (ClassNotFoundException e) {
+         return (packageName == null) || "".equals(packageName) ? type : packageName + "." + type;
+      }
+   }
+
+   /**
+    * @param value precedence as written in the annotation
+    * @return the precedence value, {@link Precedence#DEFAULT} if it cannot be determined
+    */
+   public static int parsePrecedence(final String value)
+   {
+      final Integer precedence = precedenceOf(value);
+      return precedence == null ? Precedence.DEFAULT : precedence.intValue();
+   }
+
+   /**
+    * @param value a {@link Precedence} constant, qualified or not, or a number
+    * @return the precedence value, or null if the value is neither
+    */
+   static Integer precedenceOf(final String value)
+   {
+      final String name = value.substring(value.lastIndexOf('.') + 1);
+
+      if ("BUILT_IN".equals(name))
+         return Precedence.BUILT_IN;
+      if ("FRAMEWORK".equals(name))
+         return Precedence.FRAMEWORK;
+      if ("DEFAULT".equals(name))
+         return Precedence.DEFAULT;
+      if ("LOW".equals(name))
+         return Precedence.LOW;
+      if ("HIGH".equals(name))
+         return Precedence.HIGH;
+
+      try {
+         return Integer.valueOf(value);
+      }
+      catch (NumberFormatException e) {
+         return null;
+      }
+   }
+
+   static String read(final File file) throws IOException
+   {
+      final InputStream in = new FileInputStream(file);
+      try {
+         final byte[] content = new byte[(int) file.length()];
+         int offset = 0;
+         int read;
+         while ((offset < content.length) && (read = in.read(content, offset, content.length - offset)) != -1) {
+            offset += read;
+         }
+         return new String(content, 0, offset, "UTF-8");
+      }
+      finally {
+         in.close();
+      }
+   }
+}
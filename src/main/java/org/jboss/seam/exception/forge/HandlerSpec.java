@@ -0,0 +1,138 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.solder.exception.control.Precedence;
+
+/**
+ * Description of a handler method to create: the method name, the handled exception type, the traversal mode and the
+ * precedence. An optional container names the class the handler should be added to.
+ */
+public class HandlerSpec
+{
+   private final String methodName;
+   private final String exceptionType;
+   private final boolean breadthFirst;
+   private final int precedence;
+   private final String container;
+
+   public HandlerSpec(final String methodName, final String exceptionType, final boolean breadthFirst,
+            final int precedence, final String container)
+   {
+      this.methodName = methodName;
+      this.exceptionType = exceptionType;
+      this.breadthFirst = breadthFirst;
+      this.precedence = precedence;
+      this.container = container;
+   }
+
+   public HandlerSpec(final String methodName, final String exceptionType, final boolean breadthFirst,
+            final int precedence)
+   {
+      this(methodName, exceptionType, breadthFirst, precedence, null);
+   }
+
+   public String getMethodName()
+   {
+      return methodName;
+   }
+
+   public String getExceptionType()
+   {
+      return exceptionType;
+   }
+
+   public boolean isBreadthFirst()
+   {
+      return breadthFirst;
+   }
+
+   public int getPrecedence()
+   {
+      return precedence;
+   }
+
+   /**
+    * @return fully qualified name of the target container, or null for the current resource
+    */
+   public String getContainer()
+   {
+      return container;
+   }
+
+   /**
+    * Reads handler specs, one per line. Each line holds, separated by whitespace or commas:
+    *
+    * <pre>
+    * method-name exception-type [breadthFirst] [precedence] [container]
+    * </pre>
+    *
+    * Blank lines and lines starting with <code>#</code> are ignored. Precedence may be a number or one of the
+    * {@link Precedence} constant names; a container of <code>-</code> stands for the current resource.
+    *
+    * @param reader source of the specs
+    * @return specs in file order
+    * @throws IOException if the reader fails
+    * @throws IllegalArgumentException if a line is malformed
+    */
+   public static List<HandlerSpec> read(final Reader reader) throws IOException
+   {
+      final List<HandlerSpec> specs = new ArrayList<HandlerSpec>();
+      final BufferedReader lines = new BufferedReader(reader);
+
+      String line;
+      int lineNumber = 0;
+      while ((line = lines.readLine()) != null) {
+         lineNumber++;
+         final String trimmed = line.trim();
+         if ("".equals(trimmed) || trimmed.startsWith("#"))
+            continue;
+
+         final String[] fields = trimmed.split("[\\s,]+");
+         if (fields.length < 2)
+            throw new IllegalArgumentException("Line " + lineNumber
+                     + ": expected at least a method name and an exception type");
+
+         final boolean breadthFirst = fields.length > 2 && Boolean.parseBoolean(fields[2]);
+         final int precedence = fields.length > 3 ? parsePrecedence(fields[3], lineNumber) : Precedence.DEFAULT;
+         final String container = fields.length > 4 && !"-".equals(fields[4]) ? fields[4] : null;
+
+         specs.add(new HandlerSpec(fields[0], fields[1], breadthFirst, precedence, container));
+      }
+      return specs;
+   }
+
+   private static int parsePrecedence(final String value, final int lineNumber)
+   {
+      final Integer precedence = HandlerScanner.precedenceOf(value);
+      if (precedence == null)
+         throw new IllegalArgumentException("Line " + lineNumber + ": invalid precedence [" + value + "]");
+      return precedence.intValue();
+   }
+
+   @Override
+   public String toString()
+   {
+      return methodName + "(" + exceptionType + ")";
+   }
+}
@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import org.jboss.forge.parser.java.JavaClass;
+import org.jboss.forge.parser.java.Method;
+
+/**
+ * Generates the body of a new handler, selected with the <code>--template</code> option of <code>handler create</code>.
+ * The handler method itself, with its annotation, precedence and traversal mode, is created by {@link HandlerMethods}
+ * before the template is applied.
+ */
+public interface HandlerTemplate
+{
+   /**
+    * @return name of the template, as given to <code>--template</code>
+    */
+   String getName();
+
+   /**
+    * @return names of the source templates of the classes the generated handler needs, generated into the container's
+    *         package if it does not have them yet
+    */
+   String[] getSupportClasses();
+
+   /**
+    * @return name of the support class that is a CDI extension releasing what the generated handlers hold when the
+    *         application is undeployed, listed in <code>META-INF/services</code>, or null if there is none
+    */
+   String getExtension();
+
+   /**
+    * Fills in the new handler. Templates may add fields and imports to the container.
+    *
+    * @param container Exception Handler container
+    * @param handler the new handler method
+    * @param options template options given on the command line
+    */
+   void apply(JavaClass container, Method<JavaClass> handler, HandlerTemplateOptions options);
+}
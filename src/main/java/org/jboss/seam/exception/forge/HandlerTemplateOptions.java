@@ -0,0 +1,74 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Options of the handler templates, as given on the <code>handler create</code> command line. Options that were not
+ * given fall back to the default of the template reading them.
+ */
+public class HandlerTemplateOptions
+{
+   private final Map<String, String> values = new HashMap<String, String>();
+
+   /**
+    * @param name option name, without the leading dashes
+    * @param value option value, ignored if null
+    * @return this
+    */
+   public HandlerTemplateOptions set(final String name, final Object value)
+   {
+      if (value != null)
+         this.values.put(name, String.valueOf(value));
+      return this;
+   }
+
+   public String getString(final String name, final String defaultValue)
+   {
+      final String value = this.values.get(name);
+      return value == null ? defaultValue : value;
+   }
+
+   public int getInt(final String name, final int defaultValue)
+   {
+      final String value = this.values.get(name);
+      if (value == null)
+         return defaultValue;
+
+      try {
+         return Integer.parseInt(value.trim());
+      }
+      catch (NumberFormatException e) {
+         throw new IllegalArgumentException("Option --" + name + " must be a number, was [" + value + "]");
+      }
+   }
+
+   /**
+    * @param name option name
+    * @param defaultValue value when the option is missing
+    * @return the value, which must be greater than zero
+    */
+   public int getPositiveInt(final String name, final int defaultValue)
+   {
+      final int value = this.getInt(name, defaultValue);
+      if (value <= 0)
+         throw new IllegalArgumentException("Option --" + name + " must be greater than zero, was [" + value + "]");
+      return value;
+   }
+}
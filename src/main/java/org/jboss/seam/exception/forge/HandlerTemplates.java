@@ -0,0 +1,59 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The handler templates known to the plugin, by name.
+ */
+public final class HandlerTemplates
+{
+   private static final Map<String, HandlerTemplate> TEMPLATES;
+
+   static {
+      final Map<String, HandlerTemplate> templates = new TreeMap<String, HandlerTemplate>();
+      for (HandlerTemplate template : new HandlerTemplate[] { new AggregateTemplate(), new AsyncTemplate(),
+               new FlightRecorderTemplate(), new JournalTemplate(), new SampledLogTemplate() }) {
+         templates.put(template.getName(), template);
+      }
+      TEMPLATES = Collections.unmodifiableMap(templates);
+   }
+
+   private HandlerTemplates()
+   {
+   }
+
+   /**
+    * @param name template name
+    * @return the template, or null if there is no template with that name
+    */
+   public static HandlerTemplate get(final String name)
+   {
+      return TEMPLATES.get(name);
+   }
+
+   /**
+    * @return names of all templates, in alphabetical order
+    */
+   public static Iterable<String> getNames()
+   {
+      return TEMPLATES.keySet();
+   }
+}
@@ -0,0 +1,195 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+
+import org.jboss.forge.parser.java.JavaClass;
+import org.jboss.forge.parser.java.JavaSource;
+import org.jboss.forge.parser.java.Method;
+import org.jboss.forge.parser.java.Parameter;
+import org.jboss.solder.exception.control.CaughtException;
+
+/**
+ * Checks the handlers of changed source files: handler methods sharing a name in their container, exception types of
+ * <code>CaughtException</code> parameters that are not imported, and handlers of the same exception type whose order
+ * is undefined because they share traversal mode and precedence with a handler elsewhere in the project. Only the
+ * changed files are parsed, the other handlers come from the {@link HandlerIndex}.
+ */
+public class HandlerValidator
+{
+   private final List<File> roots;
+   private final ParsedSourceCache sources;
+
+   /**
+    * @param roots source folders, to find the classes of a container's package
+    * @param sources parsed sources of the session
+    */
+   public HandlerValidator(final List<File> roots, final ParsedSourceCache sources)
+   {
+      this.roots = roots;
+      this.sources = sources;
+   }
+
+   /**
+    * @param changed changed source files, already updated in the index
+    * @param index handler index of the project
+    * @return problems of the handlers declared in the changed files
+    */
+   public List<HandlerChainAnalysis.Finding> validate(final Collection<File> changed, final HandlerIndex index)
+   {
+      final List<HandlerChainAnalysis.Finding> findings = new ArrayList<HandlerChainAnalysis.Finding>();
+      final Set<String> changedHandlers = new HashSet<String>();
+      final Set<String> changedTypes = new HashSet<String>();
+
+      for (File file : changed) {
+         if (!file.isFile())
+            continue;
+
+         final JavaSource<?> source;
+         try {
+            source = this.sources.get(file);
+         }
+         catch (IOException e) {
+            continue;
+         }
+         if (!source.isClass())
+            continue;
+
+         final JavaClass container = (JavaClass) source;
+         final List<HandlerDescriptor> handlers = HandlerScanner.scan(container);
+         for (HandlerDescriptor handler : handlers) {
+            changedHandlers.add(handler.getContainer() + "#" + handler.getMethodName());
+            changedTypes.add(handler.getExceptionType());
+         }
+         this.findDuplicateNames(handlers, findings);
+         this.findMissingImports(container, handlers, findings);
+      }
+
+      if (!changedHandlers.isEmpty())
+         this.findConflictingPrecedence(changedHandlers, changedTypes, index, findings);
+      return findings;
+   }
+
+   private void findDuplicateNames(final List<HandlerDescriptor> handlers,
+            final List<HandlerChainAnalysis.Finding> findings)
+   {
+      final Set<String> names = new HashSet<String>();
+      for (HandlerDescriptor handler : handlers) {
+         if (!names.add(handler.getMethodName()))
+            findings.add(new HandlerChainAnalysis.Finding(HandlerChainAnalysis.Finding.Kind.DUPLICATE_NAME, handler,
+                     "another handler of [" + handler.getContainer() + "] is named " + handler.getMethodName()));
+      }
+   }
+
+   private void findMissingImports(final JavaClass container, final List<HandlerDescriptor> handlers,
+            final List<HandlerChainAnalysis.Finding> findings)
+   {
+      final Map<String, String> imports = HandlerMethods.importsOf(container);
+      final boolean caughtExceptionImported = CaughtException.class.getName().equals(
+               imports.get(CaughtException.class.getSimpleName()));
+
+      for (HandlerDescriptor handler : handlers) {
+         for (Method<JavaClass> method : container.getMethods()) {
+            if (!method.getName().equals(handler.getMethodName()))
+               continue;
+
+            for (Parameter parameter : method.getParameters()) {
+               final String declaration = parameter.toString();
+               final Matcher type = HandlerScanner.CAUGHT_TYPE.matcher(declaration);
+               if (!declaration.contains("@Handles") || !type.find())
+                  continue;
+
+               if (!caughtExceptionImported && !declaration.contains(CaughtException.class.getName()))
+                  findings.add(new HandlerChainAnalysis.Finding(HandlerChainAnalysis.Finding.Kind.MISSING_IMPORT,
+                           handler, "[" + CaughtException.class.getName() + "] is not imported"));
+
+               final String simpleName = type.group(1);
+               if (!this.isVisible(simpleName, container, imports))
+                  findings.add(new HandlerChainAnalysis.Finding(HandlerChainAnalysis.Finding.Kind.MISSING_IMPORT,
+                           handler, "[" + simpleName + "] is neither imported nor in package ["
+                                    + container.getPackage() + "]"));
+            }
+         }
+      }
+   }
+
+   /**
+    * @return true if the type, as written in the container, resolves without an import
+    */
+   private boolean isVisible(final String type, final JavaClass container, final Map<String, String> imports)
+   {
+      if ((type.indexOf('.') != -1) || imports.containsKey(type))
+         return true;
+      if (!HandlerScanner.resolveType(type, null, imports).equals(type))
+         return true; // java.lang
+      if (container.toString().matches("(?s).*\\b(class|interface|enum)\\s+" + type + "\\b.*"))
+         return true; // nested type
+
+      final String directory = container.getPackage() == null ? "" : container.getPackage().replace('.', '/') + "/";
+      for (File root : this.roots) {
+         if (new File(root, directory + type + ".java").isFile())
+            return true;
+      }
+      return false;
+   }
+
+   /**
+    * Handlers are matched by container and method name, those of the index are parsed separately.
+    */
+   private void findConflictingPrecedence(final Set<String> changedHandlers, final Set<String> changedTypes,
+            final HandlerIndex index, final List<HandlerChainAnalysis.Finding> findings)
+   {
+      for (Map.Entry<String, List<HandlerDescriptor>> entry : index.byExceptionType().entrySet()) {
+         if (!changedTypes.contains(entry.getKey()))
+            continue;
+
+         final Map<String, List<HandlerDescriptor>> byOrdering = new LinkedHashMap<String, List<HandlerDescriptor>>();
+         for (HandlerDescriptor handler : entry.getValue()) {
+            final String key = handler.getTraversalMode() + ":" + handler.getPrecedence();
+            if (!byOrdering.containsKey(key))
+               byOrdering.put(key, new ArrayList<HandlerDescriptor>());
+            byOrdering.get(key).add(handler);
+         }
+
+         for (List<HandlerDescriptor> sameOrdering : byOrdering.values()) {
+            if (sameOrdering.size() < 2)
+               continue;
+
+            for (HandlerDescriptor handler : sameOrdering) {
+               if (!changedHandlers.contains(handler.getContainer() + "#" + handler.getMethodName()))
+                  continue;
+
+               final List<HandlerDescriptor> others = new ArrayList<HandlerDescriptor>(sameOrdering);
+               others.remove(handler);
+               findings.add(new HandlerChainAnalysis.Finding(HandlerChainAnalysis.Finding.Kind.SHARED_PRECEDENCE,
+                        handler, "shares " + handler.getTraversalMode() + " precedence " + handler.getPrecedence()
+                                 + " with " + others + ", their order is undefined"));
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,155 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Remembers whether Seam Catch is installed in a project for as long as the project's pom is unchanged.
+ * {@link CatchFacet#isInstalled()} runs before every command of the plugin, and answering it from the dependencies
+ * means reading and parsing the pom again each time. The state is keyed on the modification time and size of the pom
+ * and of the parent poms found on disk, which the project inherits dependencies from, and on the presence of a
+ * <code>beans.xml</code>, which the CDI facet requires, so editing a pom outside of Forge or removing
+ * <code>beans.xml</code> is noticed on the next command. The parent of a pom is only looked up again when the pom
+ * changes.
+ */
+public final class InstallationStateCache
+{
+   private static final Pattern PARENT = Pattern.compile("<parent>(.*?)</parent>", Pattern.DOTALL);
+   private static final Pattern RELATIVE_PATH = Pattern.compile("<relativePath>\\s*([^<]*?)\\s*</relativePath>");
+
+   private static final ConcurrentMap<String, State> STATES = new ConcurrentHashMap<String, State>();
+   private static final ConcurrentMap<String, Parent> PARENTS = new ConcurrentHashMap<String, Parent>();
+
+   private InstallationStateCache()
+   {
+   }
+
+   /**
+    * Takes the stamp of the project, to be taken before the state is computed so a concurrent change is not missed.
+    *
+    * @param projectRoot root directory of the project
+    * @return the current stamp of the files the installed state depends on
+    */
+   public static String stampOf(final File projectRoot)
+   {
+      final StringBuilder stamp = new StringBuilder();
+      final Set<File> visited = new HashSet<File>();
+      File pom = new File(projectRoot, "pom.xml");
+      while ((pom != null) && pom.isFile() && visited.add(pom)) {
+         final String pomStamp = pom.lastModified() + ":" + pom.length();
+         stamp.append(pomStamp).append(':');
+         pom = parentOf(pom, pomStamp);
+      }
+      return stamp.append(new File(projectRoot, "src/main/resources/META-INF/beans.xml").isFile()).append(':')
+               .append(new File(projectRoot, "src/main/webapp/WEB-INF/beans.xml").isFile()).toString();
+   }
+
+   /**
+    * @return the parent pom declared by the pom, <code>../pom.xml</code> unless a relative path is given, or null if
+    *         it has none
+    */
+   private static File parentOf(final File pom, final String pomStamp)
+   {
+      final String path = pom.getAbsolutePath();
+      final Parent cached = PARENTS.get(path);
+      if ((cached != null) && cached.stamp.equals(pomStamp))
+         return cached.pom;
+
+      File parent = null;
+      try {
+         final Matcher declaration = PARENT.matcher(HandlerScanner.read(pom));
+         if (declaration.find()) {
+            final Matcher relativePath = RELATIVE_PATH.matcher(declaration.group(1));
+            final String relative = relativePath.find() ? relativePath.group(1) : "../pom.xml";
+            if (!"".equals(relative)) {
+               parent = new File(pom.getParentFile(), relative).getCanonicalFile();
+               if (parent.isDirectory())
+                  parent = new File(parent, "pom.xml");
+            }
+         }
+      }
+      catch (IOException e) {
+         parent = null;
+      }
+      PARENTS.put(path, new Parent(pomStamp, parent));
+      return parent;
+   }
+
+   /**
+    * @param projectRoot root directory of the project
+    * @param stamp current stamp, see {@link #stampOf(File)}
+    * @return the remembered state, or null if it is unknown or the project changed since
+    */
+   public static Boolean get(final File projectRoot, final String stamp)
+   {
+      final State state = STATES.get(projectRoot.getAbsolutePath());
+      return (state != null) && state.stamp.equals(stamp) ? state.installed : null;
+   }
+
+   /**
+    * @param projectRoot root directory of the project
+    * @param stamp stamp taken before the state was computed
+    * @param installed the state
+    */
+   public static void put(final File projectRoot, final String stamp, final boolean installed)
+   {
+      STATES.put(projectRoot.getAbsolutePath(), new State(stamp, installed));
+   }
+
+   /**
+    * Forgets the state of a project, to be called when the plugin changes the project within the resolution of the
+    * file system's modification times.
+    *
+    * @param projectRoot root directory of the project
+    */
+   public static void invalidate(final File projectRoot)
+   {
+      STATES.remove(projectRoot.getAbsolutePath());
+   }
+
+   private static final class Parent
+   {
+      private final String stamp;
+      private final File pom;
+
+      Parent(final String stamp, final File pom)
+      {
+         this.stamp = stamp;
+         this.pom = pom;
+      }
+   }
+
+   private static final class State
+   {
+      private final String stamp;
+      private final Boolean installed;
+
+      State(final String stamp, final boolean installed)
+      {
+         this.stamp = stamp;
+         this.installed = Boolean.valueOf(installed);
+      }
+   }
+}
@@ -0,0 +1,315 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the superclass and access of the classes of a jar without a class loader. The central directory of the jar is
+ * memory mapped and walked directly, and only the header of each class file is decoded, up to its
+ * <code>super_class</code>. The JDK modules of Java 9 and later, <code>.jmod</code> files, are read the same way: they
+ * are zip files behind a short header, with their classes under <code>classes/</code>.
+ */
+public final class JarSuperclassReader
+{
+   private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+   private static final int CENTRAL_DIRECTORY_ENTRY = 0x02014b50;
+   private static final int END_RECORD_SIZE = 22;
+   private static final int MAX_COMMENT_SIZE = 0xffff;
+   private static final int ACC_PUBLIC = 0x0001;
+   private static final String JMOD_CLASSES = "classes/";
+
+   private JarSuperclassReader()
+   {
+   }
+
+   /**
+    * Checksum of the central directory of the jar. The central directory holds the CRC of every entry, so its checksum
+    * identifies the content of the jar while only reading a small part of it.
+    *
+    * @param jar jar file
+    * @return checksum, as hex
+    * @throws IOException if the jar cannot be read or is not a zip file
+    */
+   public static String checksum(final File jar) throws IOException
+   {
+      final RandomAccessFile file = new RandomAccessFile(jar, "r");
+      try {
+         final ByteBuffer directory = centralDirectory(file.getChannel(), jar, new long[1]);
+         final CRC32 crc = new CRC32();
+         final byte[] chunk = new byte[8192];
+         while (directory.hasRemaining()) {
+            final int length = Math.min(chunk.length, directory.remaining());
+            directory.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+         }
+         return Long.toHexString(crc.getValue()) + "-" + Long.toHexString(directory.capacity());
+      }
+      finally {
+         file.close();
+      }
+   }
+
+   /**
+    * @param jar jar file
+    * @return internal name (<code>a/b/C</code>) to internal name of the superclass, of every class whose superclass is
+    *         not <code>java/lang/Object</code>
+    * @throws IOException if the jar cannot be read or is not a zip file
+    */
+   public static Map<String, String> readSuperclasses(final File jar) throws IOException
+   {
+      return readSuperclasses(jar, new HashSet<String>());
+   }
+
+   /**
+    * @param jar jar file
+    * @param hidden filled with the internal names of the returned classes that cannot be referenced from another
+    *           package: classes that are not public, and classes nested in a class of the jar that is not public
+    * @return internal name (<code>a/b/C</code>) to internal name of the superclass, of every class whose superclass is
+    *         not <code>java/lang/Object</code>
+    * @throws IOException if the jar cannot be read or is not a zip file
+    */
+   public static Map<String, String> readSuperclasses(final File jar, final Set<String> hidden) throws IOException
+   {
+      final Map<String, String> superclasses = new HashMap<String, String>();
+      final Set<String> notPublic = new HashSet<String>();
+      final RandomAccessFile file = new RandomAccessFile(jar, "r");
+      try {
+         final FileChannel channel = file.getChannel();
+         final long[] start = new long[1];
+         final ByteBuffer directory = centralDirectory(channel, jar, start);
+         final boolean jmod = jar.getName().endsWith(".jmod");
+         final MappedByteBuffer content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+         content.order(ByteOrder.LITTLE_ENDIAN);
+         final Inflater inflater = new Inflater(true);
+         try {
+            while ((directory.remaining() >= 46)
+                     && (directory.getInt(directory.position()) == CENTRAL_DIRECTORY_ENTRY)) {
+               final int entry = directory.position();
+               final int method = directory.getShort(entry + 10) & 0xffff;
+               final int compressedSize = directory.getInt(entry + 20);
+               final int size = directory.getInt(entry + 24);
+               final int nameLength = directory.getShort(entry + 28) & 0xffff;
+               final int extraLength = directory.getShort(entry + 30) & 0xffff;
+               final int commentLength = directory.getShort(entry + 32) & 0xffff;
+               final int localHeader = (int) (start[0] + directory.getInt(entry + 42));
+
+               final byte[] nameBytes = new byte[nameLength];
+               directory.position(entry + 46);
+               directory.get(nameBytes);
+               directory.position(entry + 46 + nameLength + extraLength + commentLength);
+
+               String name = new String(nameBytes, "UTF-8");
+               if (jmod) {
+                  if (!name.startsWith(JMOD_CLASSES))
+                     continue;
+                  name = name.substring(JMOD_CLASSES.length());
+               }
+               if (!name.endsWith(".class") || name.startsWith("META-INF/") || name.endsWith("module-info.class")
+                        || name.endsWith("package-info.class"))
+                  continue;
+
+               final byte[] classFile = read(content, localHeader, method, compressedSize, size, inflater);
+               final int[] access = new int[1];
+               final String superclass = classFile == null ? null : superclassOf(classFile, access);
+               final String className = name.substring(0, name.length() - ".class".length());
+               if ((classFile != null) && ((access[0] & ACC_PUBLIC) == 0))
+                  notPublic.add(className);
+               if ((superclass != null) && !"java/lang/Object".equals(superclass))
+                  superclasses.put(className, superclass);
+            }
+         }
+         finally {
+            inflater.end();
+         }
+      }
+      finally {
+         file.close();
+      }
+
+      for (String className : superclasses.keySet()) {
+         // A nested class is only as visible as the classes it is nested in
+         for (int end = className.length(); end != -1; end = className.lastIndexOf('$', end - 1)) {
+            if (notPublic.contains(className.substring(0, end))) {
+               hidden.add(className);
+               break;
+            }
+         }
+      }
+      return superclasses;
+   }
+
+   /**
+    * Maps the central directory, found through the end of central directory record at the end of the file.
+    *
+    * @param start receives the position in the file of the start of the zip, which offsets are relative to, 0 unless
+    *           the zip follows a header
+    */
+   private static ByteBuffer centralDirectory(final FileChannel channel, final File jar, final long[] start)
+            throws IOException
+   {
+      final long size = channel.size();
+      final int tailSize = (int) Math.min(size, END_RECORD_SIZE + MAX_COMMENT_SIZE);
+      final MappedByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, size - tailSize, tailSize);
+      tail.order(ByteOrder.LITTLE_ENDIAN);
+
+      for (int position = tailSize - END_RECORD_SIZE; position >= 0; position--) {
+         if (tail.getInt(position) == END_OF_CENTRAL_DIRECTORY) {
+            final long directorySize = tail.getInt(position + 12) & 0xffffffffL;
+            final long directoryOffset = tail.getInt(position + 16) & 0xffffffffL;
+            // The central directory ends where the end record starts
+            start[0] = size - tailSize + position - directorySize - directoryOffset;
+            if ((start[0] < 0) || (start[0] + directoryOffset + directorySize > size))
+               break;
+
+            final MappedByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, start[0] + directoryOffset,
+                     directorySize);
+            directory.order(ByteOrder.LITTLE_ENDIAN);
+            return directory;
+         }
+      }
+      throw new IOException("[" + jar + "] is not a zip file");
+   }
+
+   /**
+    * @return the content of the entry, or null if it is compressed with an unsupported method
+    */
+   private static byte[] read(final MappedByteBuffer content, final int localHeader, final int method,
+            final int compressedSize, final int size, final Inflater inflater) throws IOException
+   {
+      final int nameLength = content.getShort(localHeader + 26) & 0xffff;
+      final int extraLength = content.getShort(localHeader + 28) & 0xffff;
+      final int dataStart = localHeader + 30 + nameLength + extraLength;
+
+      final byte[] compressed = new byte[compressedSize];
+      final ByteBuffer data = content.duplicate();
+      data.position(dataStart);
+      data.get(compressed);
+
+      if (method == 0)
+         return compressed;
+      if (method != 8)
+         return null;
+
+      final byte[] result = new byte[size];
+      inflater.reset();
+      inflater.setInput(compressed);
+      try {
+         int offset = 0;
+         while ((offset < size) && !inflater.finished()) {
+            final int inflated = inflater.inflate(result, offset, size - offset);
+            if ((inflated == 0) && (inflater.needsInput() || inflater.needsDictionary()))
+               break;
+            offset += inflated;
+         }
+         return result;
+      }
+      catch (DataFormatException e) {
+         throw new IOException("Corrupt class file entry: " + e.getMessage());
+      }
+   }
+
+   /**
+    * Walks the constant pool of the class file up to the <code>super_class</code> index.
+    *
+    * @param classFile content of a class file
+    * @param access receives the access flags of the class as its first element
+    * @return internal name of the superclass, or null for <code>java/lang/Object</code> itself and malformed files
+    */
+   static String superclassOf(final byte[] classFile, final int[] access)
+   {
+      final ByteBuffer buffer = ByteBuffer.wrap(classFile);
+      try {
+         if (buffer.getInt() != 0xcafebabe)
+            return null;
+         buffer.position(8);
+
+         final int count = buffer.getShort() & 0xffff;
+         final int[] utf8Offsets = new int[count];
+         final int[] classNames = new int[count];
+         for (int i = 1; i < count; i++) {
+            final int tag = buffer.get();
+            switch (tag)
+            {
+            case 1: // Utf8
+               utf8Offsets[i] = buffer.position();
+               buffer.position(buffer.position() + 2 + (buffer.getShort() & 0xffff));
+               break;
+            case 7: // Class
+               classNames[i] = buffer.getShort() & 0xffff;
+               break;
+            case 8: // String
+            case 16: // MethodType
+            case 19: // Module
+            case 20: // Package
+               buffer.position(buffer.position() + 2);
+               break;
+            case 15: // MethodHandle
+               buffer.position(buffer.position() + 3);
+               break;
+            case 3: // Integer
+            case 4: // Float
+            case 9: // Fieldref
+            case 10: // Methodref
+            case 11: // InterfaceMethodref
+            case 12: // NameAndType
+            case 17: // Dynamic
+            case 18: // InvokeDynamic
+               buffer.position(buffer.position() + 4);
+               break;
+            case 5: // Long
+            case 6: // Double, both take two slots
+               buffer.position(buffer.position() + 8);
+               i++;
+               break;
+            default:
+               return null;
+            }
+         }
+
+         access[0] = buffer.getShort() & 0xffff;
+         buffer.position(buffer.position() + 2); // this_class
+         final int superIndex = buffer.getShort() & 0xffff;
+         if (superIndex == 0)
+            return null;
+
+         final int utf8 = utf8Offsets[classNames[superIndex]];
+         final int length = ((classFile[utf8] & 0xff) << 8) | (classFile[utf8 + 1] & 0xff);
+         return new String(classFile, utf8 + 2, length, "UTF-8");
+      }
+      catch (RuntimeException e) {
+         // truncated or malformed class file
+         return null;
+      }
+      catch (IOException e) {
+         return null;
+      }
+   }
+}
@@ -0,0 +1,73 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import org.jboss.forge.parser.java.JavaClass;
+import org.jboss.forge.parser.java.Method;
+
+/**
+ * Handler appending each exception as a binary record to a generated <code>ExceptionJournal</code>, a segmented,
+ * memory-mapped log file, instead of formatting it as text. The generated <code>ExceptionJournalReader</code> decodes
+ * the journal.
+ */
+public class JournalTemplate implements HandlerTemplate
+{
+   /**
+    * Largest segment, in MB, a single mapping can hold.
+    */
+   private static final int MAX_SEGMENT_SIZE = 1024;
+
+   @Override
+   public String getName()
+   {
+      return "journal";
+   }
+
+   @Override
+   public String[] getSupportClasses()
+   {
+      return new String[] { "ExceptionFingerprint", "ExceptionJournal", "ExceptionJournalReader" };
+   }
+
+   @Override
+   public String getExtension()
+   {
+      return null;
+   }
+
+   @Override
+   public void apply(final JavaClass container, final Method<JavaClass> handler, final HandlerTemplateOptions options)
+   {
+      final String directory = options.getString("journal-dir", "exception-journal");
+      final int segmentSize = options.getPositiveInt("segment-size", 64);
+      final int maxSegments = options.getPositiveInt("max-segments", 16);
+      final int frames = options.getPositiveInt("frames", 8);
+
+      if (segmentSize > MAX_SEGMENT_SIZE)
+         throw new IllegalArgumentException("Option --segment-size must be at most " + MAX_SEGMENT_SIZE
+                  + " (MB), was [" + segmentSize + "]");
+      if (frames > Byte.MAX_VALUE)
+         throw new IllegalArgumentException("Option --frames must be at most " + Byte.MAX_VALUE + ", was [" + frames
+                  + "]");
+
+      final String field = handler.getName() + "Journal";
+      container.addField("private static final ExceptionJournal " + field + " = new ExceptionJournal(\""
+               + directory.replace("\\", "\\\\").replace("\"", "\\\"") + "\", \"" + container.getName() + "."
+               + handler.getName() + "\", " + segmentSize * 1024 * 1024 + ", " + maxSegments + ", " + frames + ");");
+      handler.setBody(field + ".append(caughtException.getException());");
+   }
+}
@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.forge.parser.java.JavaSource;
+import org.jboss.forge.project.dependencies.Dependency;
+import org.jboss.forge.project.dependencies.DependencyBuilder;
+import org.jboss.forge.project.dependencies.ScopeType;
+import org.jboss.forge.project.facets.DependencyFacet;
+import org.jboss.forge.project.facets.JavaSourceFacet;
+
+/**
+ * Generates an exception storm harness into the test sources of a project: a main class firing the chosen exception
+ * types through Seam Catch in a Weld SE container from several threads at a fixed rate, recording the handling latency
+ * of each type in a log-linear <code>LatencyHistogram</code>.
+ */
+public class LoadTestGenerator
+{
+   private final JavaSourceFacet javaSourceFacet;
+   private final DependencyFacet dependencyFacet;
+
+   public LoadTestGenerator(final JavaSourceFacet javaSourceFacet, final DependencyFacet dependencyFacet)
+   {
+      this.javaSourceFacet = javaSourceFacet;
+      this.dependencyFacet = dependencyFacet;
+   }
+
+   /**
+    * Adds the Weld SE test dependency the harness boots the application with, unless the project already has it.
+    *
+    * @param weldVersion Weld SE version
+    * @return the dependencies that were added
+    */
+   public List<Dependency> addDependencies(final String weldVersion)
+   {
+      final List<Dependency> added = new ArrayList<Dependency>();
+      final Dependency weld = DependencyBuilder.create("org.jboss.weld.se:weld-se-core:" + weldVersion).setScopeType(
+               ScopeType.TEST);
+      if (!this.dependencyFacet.hasDependency(weld)) {
+         this.dependencyFacet.addDependency(weld);
+         added.add(weld);
+      }
+      return added;
+   }
+
+   /**
+    * Generates the shared container and histogram classes, if missing, and the harness.
+    *
+    * @param packageName package of the harness, in the test sources
+    * @param className simple name of the harness
+    * @param exceptionTypes fully qualified exception types to fire, in turn
+    * @param threads default number of firing threads
+    * @param rate default number of exceptions fired per second
+    * @param duration default duration of the measurement, in seconds
+    * @param warmup default duration of the warm up, in seconds
+    * @return the generated harness
+    * @throws FileNotFoundException if the harness cannot be written
+    */
+   public JavaSource<?> generate(final String packageName, final String className,
+            final Collection<String> exceptionTypes, final int threads, final int rate, final int duration,
+            final int warmup) throws FileNotFoundException
+   {
+      SourceTemplates.generateIfMissing(this.javaSourceFacet, "HandlerBenchmarkContainer", packageName, true);
+      SourceTemplates.generateIfMissing(this.javaSourceFacet, "LatencyHistogram", packageName, true);
+
+      final StringBuilder types = new StringBuilder();
+      for (String exceptionType : exceptionTypes) {
+         if (types.length() > 0)
+            types.append(", ");
+         types.append(exceptionType.replace('$', '.')).append(".class");
+      }
+
+      final Map<String, String> values = new HashMap<String, String>();
+      values.put("className", className);
+      values.put("exceptionTypes", types.toString());
+      values.put("threads", String.valueOf(threads));
+      values.put("rate", String.valueOf(rate));
+      values.put("duration", String.valueOf(duration));
+      values.put("warmup", String.valueOf(warmup));
+
+      final JavaSource<?> harness = SourceTemplates.load("HandlerLoadTest", packageName, values);
+      this.javaSourceFacet.saveTestJavaSource(harness);
+      return harness;
+   }
+}
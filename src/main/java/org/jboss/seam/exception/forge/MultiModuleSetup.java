@@ -0,0 +1,303 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.Repository;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.jboss.forge.project.dependencies.Dependency;
+import org.jboss.forge.project.facets.DependencyFacet;
+
+/**
+ * Installs Seam Catch into every module of a multi-module build without prompting: the JBoss repository and the Solder
+ * dependency are added to each pom and a <code>beans.xml</code> is created where it is missing. The poms are edited
+ * through a {@link PomEditor}, keeping their comments and formatting. Each module only touches its own files, so
+ * modules are set up in parallel.
+ */
+public class MultiModuleSetup
+{
+   static final String BEANS_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<beans xmlns=\"http://java.sun.com/xml/ns/javaee\"\n"
+            + "   xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n"
+            + "   xsi:schemaLocation=\"http://java.sun.com/xml/ns/javaee http://java.sun.com/xml/ns/javaee/beans_1_0.xsd\">\n"
+            + "</beans>\n";
+
+   private final Dependency dependency;
+   private final boolean replaceExisting;
+
+   /**
+    * @param dependency Solder dependency, with its version, to add to the modules
+    * @param replaceExisting if a Solder dependency with another version should be replaced, it is kept otherwise
+    */
+   public MultiModuleSetup(final Dependency dependency, final boolean replaceExisting)
+   {
+      this.dependency = dependency;
+      this.replaceExisting = replaceExisting;
+   }
+
+   /**
+    * Lists the directories of the build rooted at the given directory, the root first and every module after its
+    * parent. Modules declared in profiles are included, whether the profile is active or not.
+    *
+    * @param root directory of the root pom
+    * @return module directories
+    * @throws IOException if a pom cannot be read
+    */
+   public List<File> findModules(final File root) throws IOException
+   {
+      final Set<File> modules = new LinkedHashSet<File>();
+      this.collectModules(root.getCanonicalFile(), modules);
+      return new ArrayList<File>(modules);
+   }
+
+   private void collectModules(final File directory, final Set<File> modules) throws IOException
+   {
+      final File pom = new File(directory, "pom.xml");
+      if (!pom.isFile() || !modules.add(directory))
+         return;
+
+      final Model model = readModel(pom);
+      final Set<String> declared = new LinkedHashSet<String>(model.getModules());
+      for (Profile profile : model.getProfiles()) {
+         declared.addAll(profile.getModules());
+      }
+      for (String module : declared) {
+         File moduleDirectory = new File(directory, module).getCanonicalFile();
+         // modules may point at a pom file rather than at its directory
+         if (moduleDirectory.isFile())
+            moduleDirectory = moduleDirectory.getParentFile();
+         this.collectModules(moduleDirectory, modules);
+      }
+   }
+
+   /**
+    * Sets up the modules in parallel.
+    *
+    * @param modules module directories, see {@link #findModules(File)}
+    * @return the outcome of each module, in the order of the modules
+    */
+   public List<ModuleResult> apply(final List<File> modules)
+   {
+      if (modules.isEmpty())
+         return Collections.emptyList();
+
+      final int threads = Math.min(modules.size(), Runtime.getRuntime().availableProcessors());
+      final ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+         final List<Future<ModuleResult>> futures = new ArrayList<Future<ModuleResult>>(modules.size());
+         for (final File module : modules) {
+            futures.add(executor.submit(new Callable<ModuleResult>()
+            {
+               @Override
+               public ModuleResult call()
+               {
+                  return applyTo(module);
+               }
+            }));
+         }
+
+         final List<ModuleResult> results = new ArrayList<ModuleResult>(modules.size());
+         for (int i = 0; i < modules.size(); i++) {
+            try {
+               results.add(futures.get(i).get());
+            }
+            catch (ExecutionException e) {
+               results.add(new ModuleResult(modules.get(i).getName(), Collections.<String> emptyList(), e.getCause()
+                        .toString()));
+            }
+            catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               results.add(new ModuleResult(modules.get(i).getName(), Collections.<String> emptyList(),
+                        "interrupted"));
+            }
+         }
+         return results;
+      }
+      finally {
+         executor.shutdownNow();
+      }
+   }
+
+   /**
+    * Sets up a single module.
+    *
+    * @param module directory of the module
+    * @return what was changed
+    */
+   public ModuleResult applyTo(final File module)
+   {
+      final File pom = new File(module, "pom.xml");
+      final List<String> changes = new ArrayList<String>();
+      String name = module.getName();
+      try {
+         final Model model = readModel(pom);
+         final PomEditor editor = PomEditor.read(pom);
+         name = model.getArtifactId() != null ? model.getArtifactId() : name;
+         boolean modified = false;
+
+         final DependencyFacet.KnownRepository nexus = DependencyFacet.KnownRepository.JBOSS_NEXUS;
+         boolean hasRepository = false;
+         for (Repository repository : model.getRepositories()) {
+            hasRepository |= nexus.getUrl().equals(repository.getUrl()) || nexus.getId().equals(repository.getId());
+         }
+         if (!hasRepository) {
+            editor.addRepository(nexus.getId(), nexus.getUrl());
+            changes.add("added repository " + nexus.getId());
+            modified = true;
+         }
+
+         // aggregators only get the repository, their modules get the dependency
+         if (!"pom".equals(model.getPackaging())) {
+            modified |= this.applyDependency(model, editor, changes);
+            if (this.createBeansXml(module, model.getPackaging()))
+               changes.add("created beans.xml");
+         }
+
+         if (modified)
+            editor.write(pom);
+         return new ModuleResult(name, changes, null);
+      }
+      catch (IOException e) {
+         return new ModuleResult(name, changes, e.getMessage());
+      }
+   }
+
+   private boolean applyDependency(final Model model, final PomEditor editor, final List<String> changes)
+   {
+      org.apache.maven.model.Dependency existing = null;
+      for (org.apache.maven.model.Dependency candidate : model.getDependencies()) {
+         if (this.dependency.getGroupId().equals(candidate.getGroupId())
+                  && this.dependency.getArtifactId().equals(candidate.getArtifactId()))
+            existing = candidate;
+      }
+
+      if (existing != null) {
+         if ((existing.getVersion() == null) || existing.getVersion().equals(this.dependency.getVersion())) {
+            changes.add("dependency already present");
+            return false;
+         }
+         if (!this.replaceExisting) {
+            changes.add("kept existing " + existing.getArtifactId() + ":" + existing.getVersion());
+            return false;
+         }
+         if (!editor.setDependencyVersion(existing.getGroupId(), existing.getArtifactId(),
+                  this.dependency.getVersion())) {
+            changes.add("could not replace " + existing.getArtifactId() + ":" + existing.getVersion());
+            return false;
+         }
+         changes.add("replaced " + existing.getArtifactId() + ":" + existing.getVersion());
+         return true;
+      }
+
+      editor.addDependency(this.dependency.getGroupId(), this.dependency.getArtifactId(),
+               this.dependency.getVersion());
+      changes.add("added " + this.dependency.getArtifactId() + ":" + this.dependency.getVersion());
+      return true;
+   }
+
+   /**
+    * @return true if the beans.xml was created
+    */
+   private boolean createBeansXml(final File module, final String packaging) throws IOException
+   {
+      final File beansXml = "war".equals(packaging) ? new File(module, "src/main/webapp/WEB-INF/beans.xml")
+               : new File(module, "src/main/resources/META-INF/beans.xml");
+      if (beansXml.exists())
+         return false;
+
+      beansXml.getParentFile().mkdirs();
+      final OutputStream out = new FileOutputStream(beansXml);
+      try {
+         out.write(BEANS_XML.getBytes("UTF-8"));
+      }
+      finally {
+         out.close();
+      }
+      return true;
+   }
+
+   /**
+    * Reads the model from the bytes of the pom, so the encoding declared by the pom is used.
+    */
+   private static Model readModel(final File pom) throws IOException
+   {
+      final InputStream in = new FileInputStream(pom);
+      try {
+         return new MavenXpp3Reader().read(in);
+      }
+      catch (XmlPullParserException e) {
+         throw new IOException("Could not parse [" + pom + "]: " + e.getMessage());
+      }
+      finally {
+         in.close();
+      }
+   }
+
+   /**
+    * Outcome of the setup of a module.
+    */
+   public static class ModuleResult
+   {
+      private final String module;
+      private final List<String> changes;
+      private final String error;
+
+      ModuleResult(final String module, final List<String> changes, final String error)
+      {
+         this.module = module;
+         this.changes = changes;
+         this.error = error;
+      }
+
+      public String getModule()
+      {
+         return module;
+      }
+
+      public List<String> getChanges()
+      {
+         return changes;
+      }
+
+      /**
+       * @return why the module could not be set up, or null if it was
+       */
+      public String getError()
+      {
+         return error;
+      }
+   }
+}
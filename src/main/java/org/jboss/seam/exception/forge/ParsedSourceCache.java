@@ -0,0 +1,243 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.inject.Singleton;
+
+import org.jboss.forge.parser.JavaParser;
+import org.jboss.forge.parser.java.JavaSource;
+import org.jboss.forge.resources.java.JavaResource;
+
+/**
+ * Parsed Java sources shared by the commands of a shell session, so running several commands against the same file
+ * parses it once. Entries are keyed by path and only used while the file's modification time and size are unchanged.
+ * The least recently used entries are evicted once the cache holds more than <code>seam.catch.sourceCache.maxEntries
+ * </code> sources (default 1000) or more than <code>seam.catch.sourceCache.maxBytes</code> bytes of source (default
+ * 8 MB), the parsed form of a source taking many times its size.
+ * <p>
+ * Cached sources are shared: a command modifying one must write it and hand it back with
+ * {@link #put(File, JavaSource)}, or {@link #invalidate(File)} it.
+ */
+@Singleton
+public class ParsedSourceCache
+{
+   public static final String MAX_ENTRIES_PROPERTY = "seam.catch.sourceCache.maxEntries";
+   public static final String MAX_BYTES_PROPERTY = "seam.catch.sourceCache.maxBytes";
+
+   private final int maxEntries;
+   private final long maxBytes;
+   private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+   private long bytes;
+   private long hits;
+   private long misses;
+
+   public ParsedSourceCache()
+   {
+      this(Integer.getInteger(MAX_ENTRIES_PROPERTY, 1000), Long.getLong(MAX_BYTES_PROPERTY, 8L * 1024 * 1024));
+   }
+
+   /**
+    * @param maxEntries maximum number of cached sources
+    * @param maxBytes maximum total size, in bytes, of the cached source files
+    */
+   public ParsedSourceCache(final int maxEntries, final long maxBytes)
+   {
+      this.maxEntries = maxEntries;
+      this.maxBytes = maxBytes;
+   }
+
+   /**
+    * @param resource Java source file
+    * @return the parsed source, from the cache if the file did not change since it was cached
+    * @throws FileNotFoundException if the file does not exist
+    */
+   public JavaSource<?> get(final JavaResource resource) throws FileNotFoundException
+   {
+      return this.get(resource.getUnderlyingResourceObject());
+   }
+
+   /**
+    * @param file Java source file
+    * @return the parsed source, from the cache if the file did not change since it was cached
+    * @throws FileNotFoundException if the file does not exist
+    */
+   public JavaSource<?> get(final File file) throws FileNotFoundException
+   {
+      final JavaSource<?> cached = this.lookup(file);
+      if (cached != null)
+         return cached;
+
+      if (!file.isFile())
+         throw new FileNotFoundException(file.getAbsolutePath());
+
+      final String content;
+      try {
+         content = read(file);
+      }
+      catch (IOException e) {
+         throw new IllegalStateException("Could not read [" + file.getAbsolutePath() + "]", e);
+      }
+      return this.parse(file, content);
+   }
+
+   /**
+    * Returns the cached source, or parses the given content when there is none.
+    *
+    * @param file Java source file
+    * @param content current content of the file, already read by the caller
+    * @return the parsed source
+    */
+   public JavaSource<?> get(final File file, final String content)
+   {
+      final JavaSource<?> cached = this.lookup(file);
+      return cached != null ? cached : this.parse(file, content);
+   }
+
+   /**
+    * Records the source of a file that was just written.
+    *
+    * @param file Java source file
+    * @param source parsed content of the file
+    */
+   public void put(final File file, final JavaSource<?> source)
+   {
+      this.store(file.getAbsolutePath(), new Entry(source, file.lastModified(), file.length()));
+   }
+
+   /**
+    * @param file Java source file to forget
+    */
+   public synchronized void invalidate(final File file)
+   {
+      final Entry removed = this.entries.remove(file.getAbsolutePath());
+      if (removed != null)
+         this.bytes -= removed.length;
+   }
+
+   /**
+    * Tells whether the given source is still the cached one, without counting a hit or a miss.
+    *
+    * @param file Java source file
+    * @param source parsed source previously returned for the file
+    * @return true unless the source was evicted, invalidated or replaced since
+    */
+   public synchronized boolean holds(final File file, final JavaSource<?> source)
+   {
+      final Entry entry = this.entries.get(file.getAbsolutePath());
+      return (entry != null) && (entry.source == source);
+   }
+
+   public synchronized void clear()
+   {
+      this.entries.clear();
+      this.bytes = 0;
+   }
+
+   public synchronized int size()
+   {
+      return this.entries.size();
+   }
+
+   public synchronized long getHits()
+   {
+      return hits;
+   }
+
+   public synchronized long getMisses()
+   {
+      return misses;
+   }
+
+   private synchronized JavaSource<?> lookup(final File file)
+   {
+      final Entry entry = this.entries.get(file.getAbsolutePath());
+      if ((entry != null) && (entry.lastModified == file.lastModified()) && (entry.length == file.length())) {
+         this.hits++;
+         return entry.source;
+      }
+      this.misses++;
+      return null;
+   }
+
+   /**
+    * Parses outside of the lock, so sources can be parsed in parallel.
+    */
+   private JavaSource<?> parse(final File file, final String content)
+   {
+      final long lastModified = file.lastModified();
+      final long length = file.length();
+      final JavaSource<?> source = JavaParser.parse(content);
+      this.store(file.getAbsolutePath(), new Entry(source, lastModified, length));
+      return source;
+   }
+
+   private synchronized void store(final String path, final Entry entry)
+   {
+      final Entry previous = this.entries.put(path, entry);
+      if (previous != null)
+         this.bytes -= previous.length;
+      this.bytes += entry.length;
+
+      // eldest first, but never the entry just stored
+      final Iterator<Entry> eldest = this.entries.values().iterator();
+      while (((this.entries.size() > this.maxEntries) || (this.bytes > this.maxBytes)) && (this.entries.size() > 1)) {
+         final Entry evicted = eldest.next();
+         eldest.remove();
+         this.bytes -= evicted.length;
+      }
+   }
+
+   private static String read(final File file) throws IOException
+   {
+      final InputStream in = new FileInputStream(file);
+      try {
+         final byte[] content = new byte[(int) file.length()];
+         int offset = 0;
+         int read;
+         while ((offset < content.length) && (read = in.read(content, offset, content.length - offset)) != -1) {
+            offset += read;
+         }
+         return new String(content, 0, offset, "UTF-8");
+      }
+      finally {
+         in.close();
+      }
+   }
+
+   private static final class Entry
+   {
+      private final JavaSource<?> source;
+      private final long lastModified;
+      private final long length;
+
+      Entry(final JavaSource<?> source, final long lastModified, final long length)
+      {
+         this.source = source;
+         this.lastModified = lastModified;
+         this.length = length;
+      }
+   }
+}
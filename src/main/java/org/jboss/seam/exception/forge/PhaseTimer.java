@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Breaks the time of a command down into phases. Each {@link #lap(String)} attributes the time since the previous
+ * lap to a phase, so a command only marks the end of each of its phases; time spent waiting on the user can be left
+ * out with {@link #skip()}. Phases lapped more than once add up.
+ */
+public final class PhaseTimer
+{
+   /**
+    * Header of the lines written by {@link #toCsv()}.
+    */
+   public static final String CSV_HEADER = "timestamp,command,phase,millis";
+
+   private final String command;
+   private final long timestamp = System.currentTimeMillis();
+   private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+   private long mark = System.nanoTime();
+
+   /**
+    * @param command name of the timed command, such as <code>handler create</code>
+    */
+   public PhaseTimer(final String command)
+   {
+      this.command = command;
+   }
+
+   /**
+    * Attributes the time since the previous lap, or since the timer was created, to the phase.
+    *
+    * @param phase name of the phase that just ended
+    */
+   public void lap(final String phase)
+   {
+      final long now = System.nanoTime();
+      this.add(phase, now - this.mark);
+      this.mark = now;
+   }
+
+   /**
+    * Leaves the time since the previous lap out of the breakdown.
+    */
+   public void skip()
+   {
+      this.mark = System.nanoTime();
+   }
+
+   /**
+    * @param phase name of the phase
+    * @param nanos time measured elsewhere to add to the phase
+    */
+   public void add(final String phase, final long nanos)
+   {
+      final Long previous = this.phases.get(phase);
+      this.phases.put(phase, previous == null ? nanos : previous + nanos);
+   }
+
+   public String getCommand()
+   {
+      return command;
+   }
+
+   /**
+    * @return milliseconds since the epoch at which the timer was created
+    */
+   public long getTimestamp()
+   {
+      return timestamp;
+   }
+
+   /**
+    * @return phase name to nanoseconds, in the order the phases first ended
+    */
+   public Map<String, Long> getPhases()
+   {
+      return Collections.unmodifiableMap(this.phases);
+   }
+
+   /**
+    * @return nanoseconds of all phases together
+    */
+   public long getTotal()
+   {
+      long total = 0;
+      for (Long nanos : this.phases.values()) {
+         total += nanos;
+      }
+      return total;
+   }
+
+   /**
+    * @return one JSON object on a single line, with the times in milliseconds
+    */
+   public String toJson()
+   {
+      final StringBuilder json = new StringBuilder("{\"timestamp\":").append(this.timestamp)
+               .append(",\"command\":\"").append(escape(this.command)).append("\",\"total_ms\":")
+               .append(millis(this.getTotal())).append(",\"phases\":{");
+      boolean first = true;
+      for (Map.Entry<String, Long> phase : this.phases.entrySet()) {
+         if (!first)
+            json.append(',');
+         json.append('"').append(escape(phase.getKey())).append("\":").append(millis(phase.getValue()));
+         first = false;
+      }
+      return json.append("}}").toString();
+   }
+
+   /**
+    * @return one <code>timestamp,command,phase,millis</code> line per phase and one for the total, see
+    *         {@link #CSV_HEADER}
+    */
+   public String toCsv()
+   {
+      final StringBuilder csv = new StringBuilder();
+      for (Map.Entry<String, Long> phase : this.phases.entrySet()) {
+         this.appendCsvLine(csv, phase.getKey(), phase.getValue());
+      }
+      this.appendCsvLine(csv, "total", this.getTotal());
+      return csv.toString();
+   }
+
+   private void appendCsvLine(final StringBuilder csv, final String phase, final long nanos)
+   {
+      csv.append(this.timestamp).append(",\"").append(this.command.replace("\"", "\"\"")).append("\",\"")
+               .append(phase.replace("\"", "\"\"")).append("\",").append(millis(nanos)).append('\n');
+   }
+
+   private static String millis(final long nanos)
+   {
+      return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+   }
+
+   private static String escape(final String value)
+   {
+      return value.replace("\\", "\\\\").replace("\"", "\\\"");
+   }
+}
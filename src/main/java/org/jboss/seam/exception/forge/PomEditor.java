@@ -0,0 +1,324 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Edits the text of a pom in place, so everything it does not touch, comments and formatting included, is kept as
+ * written. Only the elements that are direct children of <code>project</code> are looked at, the ones nested in
+ * profiles or in the dependency management are left alone. New elements follow the indentation of the pom.
+ */
+public final class PomEditor
+{
+   private static final String DEFAULT_INDENT = "   ";
+
+   private String text;
+
+   /**
+    * @param text content of the pom
+    */
+   public PomEditor(final String text)
+   {
+      this.text = text;
+   }
+
+   /**
+    * @param pom pom file, read as UTF-8
+    * @return an editor of its content
+    * @throws IOException if the file cannot be read
+    */
+   public static PomEditor read(final File pom) throws IOException
+   {
+      return new PomEditor(HandlerScanner.read(pom));
+   }
+
+   /**
+    * Writes the content back as UTF-8.
+    *
+    * @param pom pom file
+    * @throws IOException if the file cannot be written
+    */
+   public void write(final File pom) throws IOException
+   {
+      final OutputStream out = new FileOutputStream(pom);
+      try {
+         out.write(this.text.getBytes("UTF-8"));
+      }
+      finally {
+         out.close();
+      }
+   }
+
+   /**
+    * Adds a repository, creating the <code>repositories</code> element if the pom has none.
+    */
+   public void addRepository(final String id, final String url)
+   {
+      this.addToSection("repositories", "<repository>", "\t<id>" + id + "</id>", "\t<url>" + url + "</url>",
+               "</repository>");
+   }
+
+   /**
+    * Adds a dependency, creating the <code>dependencies</code> element if the pom has none.
+    */
+   public void addDependency(final String groupId, final String artifactId, final String version)
+   {
+      this.addToSection("dependencies", "<dependency>", "\t<groupId>" + groupId + "</groupId>", "\t<artifactId>"
+               + artifactId + "</artifactId>", "\t<version>" + version + "</version>", "</dependency>");
+   }
+
+   /**
+    * Changes the version of a dependency that declares one.
+    *
+    * @return true if the dependency was found with a version
+    */
+   public boolean setDependencyVersion(final String groupId, final String artifactId, final String version)
+   {
+      final Element dependencies = child(this.project(), "dependencies");
+      if (dependencies == null)
+         return false;
+
+      for (Element dependency : this.children(dependencies)) {
+         if (!"dependency".equals(dependency.name) || !groupId.equals(this.textOf(child(dependency, "groupId")))
+                  || !artifactId.equals(this.textOf(child(dependency, "artifactId"))))
+            continue;
+
+         final Element versionElement = child(dependency, "version");
+         if (versionElement == null)
+            return false;
+         this.text = this.text.substring(0, versionElement.contentStart) + version
+                  + this.text.substring(versionElement.contentEnd);
+         return true;
+      }
+      return false;
+   }
+
+   @Override
+   public String toString()
+   {
+      return this.text;
+   }
+
+   /**
+    * Adds the lines, each leading tab standing for one level of indentation, to the section, creating the section
+    * before the end of the project if it is missing.
+    */
+   private void addToSection(final String section, final String... lines)
+   {
+      final Element project = this.project();
+      final Element existing = child(project, section);
+      final String unit = this.indentUnit(project);
+      if (existing != null) {
+         this.insert(existing, this.indentOf(existing.start) + unit, unit, lines);
+         return;
+      }
+
+      final String[] wrapped = new String[lines.length + 2];
+      wrapped[0] = "<" + section + ">";
+      for (int i = 0; i < lines.length; i++) {
+         wrapped[i + 1] = "\t" + lines[i];
+      }
+      wrapped[wrapped.length - 1] = "</" + section + ">";
+      this.insert(project, this.indentOf(project.start) + unit, unit, wrapped);
+   }
+
+   /**
+    * Inserts the lines as the last children of the parent, on lines of their own.
+    */
+   private void insert(final Element parent, final String indent, final String unit, final String... lines)
+   {
+      final String newline = this.text.indexOf("\r\n") != -1 ? "\r\n" : "\n";
+      final StringBuilder block = new StringBuilder();
+      for (String line : lines) {
+         int depth = 0;
+         while (line.charAt(depth) == '\t') {
+            depth++;
+         }
+         block.append(indent);
+         for (int i = 0; i < depth; i++) {
+            block.append(unit);
+         }
+         block.append(line.substring(depth)).append(newline);
+      }
+
+      if (parent.selfClosing) {
+         final String name = "<" + parent.name + ">";
+         this.text = this.text.substring(0, parent.start) + name + newline + block + this.indentOf(parent.start)
+                  + "</" + parent.name + ">" + this.text.substring(parent.end);
+         return;
+      }
+
+      // The closing tag keeps its line, or gets one of its own when it shares it with other content
+      final int lineStart = this.text.lastIndexOf('\n', parent.contentEnd - 1) + 1;
+      if ((lineStart > parent.contentStart) && "".equals(this.text.substring(lineStart, parent.contentEnd).trim()))
+         this.text = this.text.substring(0, lineStart) + block + this.text.substring(lineStart);
+      else
+         this.text = this.text.substring(0, parent.contentEnd) + newline + block + this.indentOf(parent.start)
+                  + this.text.substring(parent.contentEnd);
+   }
+
+   private Element project()
+   {
+      for (Element element : this.children(0, this.text.length())) {
+         if ("project".equals(element.name))
+            return element;
+      }
+      throw new IllegalStateException("The pom has no project element");
+   }
+
+   /**
+    * @return the indentation of the children of the project, or three spaces if they do not start their lines
+    */
+   private String indentUnit(final Element project)
+   {
+      final List<Element> children = this.children(project);
+      if (!children.isEmpty()) {
+         final String indent = this.indentOf(children.get(0).start);
+         final String projectIndent = this.indentOf(project.start);
+         if (indent.length() > projectIndent.length())
+            return indent.substring(projectIndent.length());
+      }
+      return DEFAULT_INDENT;
+   }
+
+   /**
+    * @return the white space before the position on its line, empty if the line has other content before it
+    */
+   private String indentOf(final int position)
+   {
+      final int lineStart = this.text.lastIndexOf('\n', position - 1) + 1;
+      final String indent = this.text.substring(lineStart, position);
+      return "".equals(indent.trim()) ? indent : "";
+   }
+
+   private String textOf(final Element element)
+   {
+      return element == null ? null : this.text.substring(element.contentStart, element.contentEnd).trim();
+   }
+
+   private Element child(final Element parent, final String name)
+   {
+      for (Element element : this.children(parent)) {
+         if (name.equals(element.name))
+            return element;
+      }
+      return null;
+   }
+
+   private List<Element> children(final Element parent)
+   {
+      return this.children(parent.contentStart, parent.contentEnd);
+   }
+
+   /**
+    * Scans the elements directly contained in the range, skipping comments, CDATA sections, processing instructions
+    * and declarations.
+    */
+   private List<Element> children(final int from, final int to)
+   {
+      final List<Element> children = new ArrayList<Element>();
+      Element current = null;
+      int depth = 0;
+      int position = from;
+      while (position < to) {
+         final int open = this.text.indexOf('<', position);
+         if ((open == -1) || (open >= to))
+            break;
+
+         if (this.text.startsWith("<!--", open)) {
+            position = this.skip(open, "-->");
+            continue;
+         }
+         if (this.text.startsWith("<![CDATA[", open)) {
+            position = this.skip(open, "]]>");
+            continue;
+         }
+         if (this.text.startsWith("<?", open) || this.text.startsWith("<!", open)) {
+            position = this.skip(open, ">");
+            continue;
+         }
+
+         final int close = this.text.indexOf('>', open);
+         if (close == -1)
+            break;
+
+         if (this.text.charAt(open + 1) == '/') {
+            depth--;
+            if ((depth == 0) && (current != null)) {
+               current.contentEnd = open;
+               current.end = close + 1;
+               children.add(current);
+               current = null;
+            }
+         }
+         else {
+            final boolean selfClosing = this.text.charAt(close - 1) == '/';
+            if (depth == 0) {
+               int nameEnd = open + 1;
+               while ((nameEnd < close) && !Character.isWhitespace(this.text.charAt(nameEnd))
+                        && (this.text.charAt(nameEnd) != '/')) {
+                  nameEnd++;
+               }
+               current = new Element(this.text.substring(open + 1, nameEnd), open, close + 1, selfClosing);
+               if (selfClosing) {
+                  current.contentEnd = close + 1;
+                  current.end = close + 1;
+                  children.add(current);
+                  current = null;
+               }
+            }
+            if (!selfClosing)
+               depth++;
+         }
+         position = close + 1;
+      }
+      return children;
+   }
+
+   private int skip(final int from, final String terminator)
+   {
+      final int end = this.text.indexOf(terminator, from);
+      return end == -1 ? this.text.length() : end + terminator.length();
+   }
+
+   /**
+    * Position of an element in the text.
+    */
+   private static final class Element
+   {
+      private final String name;
+      private final int start;
+      private final int contentStart;
+      private final boolean selfClosing;
+      private int contentEnd;
+      private int end;
+
+      Element(final String name, final int start, final int contentStart, final boolean selfClosing)
+      {
+         this.name = name;
+         this.start = start;
+         this.contentStart = contentStart;
+         this.selfClosing = selfClosing;
+      }
+   }
+}
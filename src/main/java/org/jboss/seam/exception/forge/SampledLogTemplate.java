@@ -0,0 +1,64 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import org.jboss.forge.parser.java.JavaClass;
+import org.jboss.forge.parser.java.Method;
+
+/**
+ * Handler logging through a generated <code>SampledExceptionLogger</code>: only the first occurrences of each
+ * exception type per interval are logged, the others are counted and reported in a periodic summary line. The loggers
+ * are closed by the generated CDI extension {@link #EXTENSION} when the application is undeployed.
+ */
+public class SampledLogTemplate implements HandlerTemplate
+{
+   /**
+    * CDI extension closing the loggers, it must be listed in <code>META-INF/services</code>.
+    */
+   static final String EXTENSION = "SampledExceptionLoggerExtension";
+
+   @Override
+   public String getName()
+   {
+      return "sampled-log";
+   }
+
+   @Override
+   public String[] getSupportClasses()
+   {
+      return new String[] { "SampledExceptionLogger", EXTENSION };
+   }
+
+   @Override
+   public String getExtension()
+   {
+      return EXTENSION;
+   }
+
+   @Override
+   public void apply(final JavaClass container, final Method<JavaClass> handler, final HandlerTemplateOptions options)
+   {
+      final int sampleSize = options.getPositiveInt("sample-size", 10);
+      final int interval = options.getPositiveInt("flush-interval", 60);
+      final String field = handler.getName() + "Log";
+
+      container.addField("private static final SampledExceptionLogger " + field + " = new SampledExceptionLogger("
+               + container.getName() + ".class, \"" + handler.getName() + "\", " + sampleSize + ", " + interval
+               + ");");
+      handler.setBody(field + ".log(caughtException.getException());");
+   }
+}
@@ -0,0 +1,409 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jboss.forge.project.dependencies.Dependency;
+import org.jboss.forge.project.dependencies.DependencyBuilder;
+import org.jboss.forge.project.facets.DependencyFacet;
+
+/**
+ * Resolves the available versions of a dependency without hitting the remote repository on every setup. Versions are
+ * looked up in a persistent cache first, then remotely, and finally in the local Maven repository so resolution still
+ * works without a network connection; what the local repository holds is cached as well, so an offline agent waits
+ * for the remote repository once per time-to-live only.
+ */
+public class SolderVersionResolver
+{
+   /**
+    * System property used to override the time-to-live (in minutes) of the version cache.
+    */
+   public static final String TTL_PROPERTY = "seam.catch.versions.ttl";
+
+   private static final long DEFAULT_TTL = TimeUnit.HOURS.toMillis(24);
+
+   private static final String TIMESTAMP_KEY = "timestamp";
+   private static final String VERSIONS_KEY = "versions";
+
+   private static final Pattern METADATA_VERSION = Pattern.compile("<version>\\s*([^<\\s]+)\\s*</version>");
+
+   private final File cacheFile;
+   private final File localRepository;
+   private final long ttl;
+
+   /**
+    * @param cacheFile file the resolved versions are persisted to
+    * @param localRepository root of the local Maven repository
+    * @param ttl time, in milliseconds, a cached result is considered fresh
+    */
+   public SolderVersionResolver(final File cacheFile, final File localRepository, final long ttl)
+   {
+      this.cacheFile = cacheFile;
+      this.localRepository = localRepository;
+      this.ttl = ttl;
+   }
+
+   /**
+    * Creates a resolver caching under the Forge configuration directory and reading the default local Maven
+    * repository.
+    *
+    * @param dependency dependency the resolver will be used for, used to name the cache file
+    */
+   public static SolderVersionResolver forDependency(final Dependency dependency)
+   {
+      final File cacheFile = new File(CatchConfigDirectory.get("versions"), dependency.getGroupId() + "_"
+               + dependency.getArtifactId() + ".properties");
+
+      long ttl = DEFAULT_TTL;
+      final String ttlOverride = System.getProperty(TTL_PROPERTY);
+      if (ttlOverride != null) {
+         try {
+            ttl = TimeUnit.MINUTES.toMillis(Long.parseLong(ttlOverride.trim()));
+         }
+         catch (NumberFormatException e) {
+            // keep the default
+         }
+      }
+
+      return new SolderVersionResolver(cacheFile, defaultLocalRepository(), ttl);
+   }
+
+   /**
+    * @return the local Maven repository, <code>maven.repo.local</code> or the default one in the user's home
+    */
+   static File defaultLocalRepository()
+   {
+      final String localRepository = System.getProperty("maven.repo.local");
+      if ((localRepository != null) && !"".equals(localRepository))
+         return new File(localRepository);
+      return new File(new File(System.getProperty("user.home"), ".m2"), "repository");
+   }
+
+   /**
+    * Resolves the available versions of the dependency, oldest first. When the remote repository cannot be reached,
+    * the versions of the local repository and of the stale cache are cached in its place, so the following setups do
+    * not wait for the remote repository again until the time-to-live has passed.
+    *
+    * @param deps facet used for remote resolution when the cache is cold, may be null to stay offline
+    * @param dependency dependency to resolve
+    * @return list of versions, never null
+    */
+   public List<Dependency> resolve(final DependencyFacet deps, final Dependency dependency)
+   {
+      List<String> versions = this.readCache(false);
+
+      if (versions.isEmpty() && (deps != null)) {
+         versions = this.resolveRemote(deps, dependency);
+         if (!versions.isEmpty())
+            this.writeCache(versions);
+      }
+
+      if (versions.isEmpty()) {
+         final Set<String> offline = new LinkedHashSet<String>(this.readLocalRepository(dependency));
+         offline.addAll(this.readCache(true));
+         versions = new ArrayList<String>(offline);
+         Collections.sort(versions, VERSION_ORDER);
+         if (!versions.isEmpty())
+            this.writeCache(versions);
+      }
+
+      final List<Dependency> result = new ArrayList<Dependency>(versions.size());
+      for (String version : versions) {
+         result.add(DependencyBuilder.create(dependency).setVersion(version));
+      }
+      return result;
+   }
+
+   /**
+    * Reads the cached versions.
+    *
+    * @param allowStale if entries older than the time-to-live should be returned
+    * @return cached versions or an empty list if there are none (or they are stale)
+    */
+   public List<String> readCache(final boolean allowStale)
+   {
+      if (!this.cacheFile.isFile())
+         return Collections.emptyList();
+
+      final Properties properties = new Properties();
+      InputStream in = null;
+      try {
+         in = new FileInputStream(this.cacheFile);
+         properties.load(in);
+      }
+      catch (IOException e) {
+         return Collections.emptyList();
+      }
+      finally {
+         closeQuietly(in);
+      }
+
+      long timestamp;
+      try {
+         timestamp = Long.parseLong(properties.getProperty(TIMESTAMP_KEY, "0"));
+      }
+      catch (NumberFormatException e) {
+         timestamp = 0;
+      }
+
+      if (!allowStale && (System.currentTimeMillis() - timestamp > this.ttl))
+         return Collections.emptyList();
+
+      return splitVersions(properties.getProperty(VERSIONS_KEY, ""));
+   }
+
+   /**
+    * Persists the given versions, stamped with the current time.
+    *
+    * @param versions versions to store
+    */
+   public void writeCache(final List<String> versions)
+   {
+      final StringBuilder joined = new StringBuilder();
+      for (String version : versions) {
+         if (joined.length() > 0)
+            joined.append(',');
+         joined.append(version);
+      }
+
+      final Properties properties = new Properties();
+      properties.setProperty(TIMESTAMP_KEY, String.valueOf(System.currentTimeMillis()));
+      properties.setProperty(VERSIONS_KEY, joined.toString());
+
+      final File parent = this.cacheFile.getParentFile();
+      if ((parent != null) && !parent.isDirectory() && !parent.mkdirs())
+         return;
+
+      OutputStream out = null;
+      try {
+         out = new FileOutputStream(this.cacheFile);
+         properties.store(out, "Seam Catch resolved versions");
+      }
+      catch (IOException e) {
+         // the cache is an optimization only
+      }
+      finally {
+         closeQuietly(out);
+      }
+   }
+
+   /**
+    * Reads the versions installed in, or advertised by the metadata of, the local Maven repository.
+    *
+    * @param dependency dependency to look up
+    * @return versions sorted oldest first
+    */
+   public List<String> readLocalRepository(final Dependency dependency)
+   {
+      final File artifactDir = new File(this.localRepository, dependency.getGroupId().replace('.', File.separatorChar)
+               + File.separator + dependency.getArtifactId());
+
+      final File[] children = artifactDir.listFiles();
+      if (children == null)
+         return Collections.emptyList();
+
+      final Set<String> versions = new LinkedHashSet<String>();
+      for (File child : children) {
+         if (child.isDirectory()) {
+            if (new File(child, dependency.getArtifactId() + "-" + child.getName() + ".pom").isFile())
+               versions.add(child.getName());
+         }
+         else if (child.getName().startsWith("maven-metadata") && child.getName().endsWith(".xml")) {
+            versions.addAll(readMetadataVersions(child));
+         }
+      }
+
+      final List<String> sorted = new ArrayList<String>(versions);
+      Collections.sort(sorted, VERSION_ORDER);
+      return sorted;
+   }
+
+   private List<String> resolveRemote(final DependencyFacet deps, final Dependency dependency)
+   {
+      final List<Dependency> resolved;
+      try {
+         resolved = deps.resolveAvailableVersions(dependency);
+      }
+      catch (RuntimeException e) {
+         // Offline, or the repository timed out
+         return Collections.emptyList();
+      }
+
+      final List<String> versions = new ArrayList<String>(resolved.size());
+      for (Dependency d : resolved) {
+         versions.add(d.getVersion());
+      }
+      return versions;
+   }
+
+   private static List<String> readMetadataVersions(final File metadata)
+   {
+      final List<String> versions = new ArrayList<String>();
+      InputStream in = null;
+      try {
+         in = new FileInputStream(metadata);
+         final StringBuilder content = new StringBuilder((int) metadata.length());
+         final byte[] buffer = new byte[4096];
+         int read;
+         while ((read = in.read(buffer)) != -1) {
+            content.append(new String(buffer, 0, read, "UTF-8"));
+         }
+
+         final Matcher matcher = METADATA_VERSION.matcher(content);
+         while (matcher.find()) {
+            versions.add(matcher.group(1));
+         }
+      }
+      catch (IOException e) {
+         // unreadable metadata contributes nothing
+      }
+      finally {
+         closeQuietly(in);
+      }
+      return versions;
+   }
+
+   private static List<String> splitVersions(final String joined)
+   {
+      final List<String> versions = new ArrayList<String>();
+      for (String version : joined.split(",")) {
+         if (!"".equals(version.trim()))
+            versions.add(version.trim());
+      }
+      return versions;
+   }
+
+   private static void closeQuietly(final Closeable closeable)
+   {
+      if (closeable != null) {
+         try {
+            closeable.close();
+         }
+         catch (IOException e) {
+            // ignore
+         }
+      }
+   }
+
+   /**
+    * Orders versions by their numeric segments, a missing segment counting as 0, placing qualified versions (SNAPSHOT,
+    * Beta, CR...) before the release with the same numbers. Qualifiers of the same kind are ordered by their number, so
+    * Beta2 comes before Beta10.
+    */
+   static final Comparator<String> VERSION_ORDER = new Comparator<String>()
+   {
+      private final Pattern qualifierNumber = Pattern.compile("(\\D*)(\\d*)(.*)");
+
+      @Override
+      public int compare(final String left, final String right)
+      {
+         final String[] l = left.split("[.\\-]");
+         final String[] r = right.split("[.\\-]");
+
+         for (int i = 0; i < Math.max(l.length, r.length); i++) {
+            String a = i < l.length ? l[i] : null;
+            String b = i < r.length ? r[i] : null;
+
+            if ((a == null) && b.matches("\\d+"))
+               a = "0";
+            if ((b == null) && a.matches("\\d+"))
+               b = "0";
+            if (a == null)
+               return isRelease(b) ? -1 : 1;
+            if (b == null)
+               return isRelease(a) ? 1 : -1;
+
+            final boolean aNumeric = a.matches("\\d+");
+            final boolean bNumeric = b.matches("\\d+");
+            int result;
+            if (aNumeric && bNumeric)
+               result = Long.valueOf(a).compareTo(Long.valueOf(b));
+            else if (aNumeric)
+               result = 1;
+            else if (bNumeric)
+               result = -1;
+            else
+               result = qualifierRank(a) - qualifierRank(b);
+
+            if (result == 0 && !aNumeric && !bNumeric)
+               result = this.compareQualifiers(a, b);
+
+            if (result != 0)
+               return result;
+         }
+         return 0;
+      }
+
+      /**
+       * Compares the names of qualifiers, then their numbers as numbers, then what follows
+       */
+      private int compareQualifiers(final String a, final String b)
+      {
+         final Matcher l = this.qualifierNumber.matcher(a);
+         final Matcher r = this.qualifierNumber.matcher(b);
+         l.matches();
+         r.matches();
+
+         int result = l.group(1).compareToIgnoreCase(r.group(1));
+         if (result == 0) {
+            result = Long.valueOf("".equals(l.group(2)) ? "0" : l.group(2)).compareTo(
+                     Long.valueOf("".equals(r.group(2)) ? "0" : r.group(2)));
+         }
+         if (result == 0)
+            result = l.group(3).compareToIgnoreCase(r.group(3));
+         return result;
+      }
+
+      private boolean isRelease(final String qualifier)
+      {
+         return "Final".equalsIgnoreCase(qualifier) || "GA".equalsIgnoreCase(qualifier);
+      }
+
+      private int qualifierRank(final String qualifier)
+      {
+         final String q = qualifier.toUpperCase();
+         if (q.startsWith("SNAPSHOT"))
+            return 0;
+         if (q.startsWith("ALPHA"))
+            return 1;
+         if (q.startsWith("BETA"))
+            return 2;
+         if (q.startsWith("CR"))
+            return 3;
+         if (isRelease(qualifier))
+            return 5;
+         return 4;
+      }
+   };
+}
@@ -0,0 +1,144 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.Map;
+
+import org.jboss.forge.parser.JavaParser;
+import org.jboss.forge.parser.java.JavaSource;
+import org.jboss.forge.project.facets.JavaSourceFacet;
+import org.jboss.forge.resources.java.JavaResource;
+
+/**
+ * Loads the source templates of the classes the plugin generates into projects. Templates live next to this class
+ * under <code>templates/</code> and use <code>${name}</code> placeholders, <code>${package}</code> being the package
+ * of the generated class.
+ */
+public final class SourceTemplates
+{
+   private SourceTemplates()
+   {
+   }
+
+   /**
+    * @param template template name, without the <code>.java.tpl</code> extension
+    * @param packageName package of the generated class
+    * @return the parsed source
+    */
+   public static JavaSource<?> load(final String template, final String packageName)
+   {
+      return load(template, packageName, Collections.<String, String> emptyMap());
+   }
+
+   /**
+    * @param template template name, without the <code>.java.tpl</code> extension
+    * @param packageName package of the generated class
+    * @param values values of the other placeholders
+    * @return the parsed source
+    */
+   public static JavaSource<?> load(final String template, final String packageName, final Map<String, String> values)
+   {
+      String source = read(template).replace("${package}", packageName);
+      for (Map.Entry<String, String> value : values.entrySet()) {
+         source = source.replace("${" + value.getKey() + "}", value.getValue());
+      }
+      return JavaParser.parse(source);
+   }
+
+   /**
+    * Generates the class from its template unless the project already has it, so generated support classes are only
+    * written once and later edits are kept.
+    *
+    * @param javaSourceFacet facet of the project
+    * @param template template name, which is also the simple name of the generated class
+    * @param packageName package of the generated class
+    * @param test if the class belongs in the test sources
+    * @return true if the class was generated
+    */
+   public static boolean generateIfMissing(final JavaSourceFacet javaSourceFacet, final String template,
+            final String packageName, final boolean test)
+   {
+      return generateIfMissing(javaSourceFacet, template, packageName, test, Collections.<String, String> emptyMap());
+   }
+
+   /**
+    * Generates the class from its template unless the project already has it.
+    *
+    * @param javaSourceFacet facet of the project
+    * @param template template name, which is also the simple name of the generated class
+    * @param packageName package of the generated class
+    * @param test if the class belongs in the test sources
+    * @param values values of the other placeholders
+    * @return true if the class was generated
+    */
+   public static boolean generateIfMissing(final JavaSourceFacet javaSourceFacet, final String template,
+            final String packageName, final boolean test, final Map<String, String> values)
+   {
+      final String qualifiedName = packageName + "." + template;
+      try {
+         final JavaResource existing = test ? javaSourceFacet.getTestJavaResource(qualifiedName) : javaSourceFacet
+                  .getJavaResource(qualifiedName);
+         if ((existing != null) && existing.exists())
+            return false;
+
+         final JavaSource<?> source = load(template, packageName, values);
+         if (test)
+            javaSourceFacet.saveTestJavaSource(source);
+         else
+            javaSourceFacet.saveJavaSource(source);
+         return true;
+      }
+      catch (FileNotFoundException e) {
+         throw new IllegalStateException("Could not generate [" + qualifiedName + "]", e);
+      }
+   }
+
+   private static String read(final String template)
+   {
+      final InputStream in = SourceTemplates.class.getResourceAsStream("templates/" + template + ".java.tpl");
+      if (in == null)
+         throw new IllegalArgumentException("Unknown source template [" + template + "]");
+
+      try {
+         final Reader reader = new InputStreamReader(in, "UTF-8");
+         final StringBuilder content = new StringBuilder();
+         final char[] buffer = new char[4096];
+         int read;
+         while ((read = reader.read(buffer)) != -1) {
+            content.append(buffer, 0, read);
+         }
+         return content.toString();
+      }
+      catch (IOException e) {
+         throw new IllegalStateException("Could not read source template [" + template + "]", e);
+      }
+      finally {
+         try {
+            in.close();
+         }
+         catch (IOException e) {
+            // ignore
+         }
+      }
+   }
+}
@@ -0,0 +1,176 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Watches source folders for added, changed and deleted Java files by comparing snapshots of their modification time
+ * and size. Changes are handed out in batches once the folders have been quiet for a while, so a burst of changes,
+ * like a <code>git checkout</code>, is processed once rather than file by file.
+ * <p>
+ * Adding, removing or renaming an entry changes the modification time of its directory, so the listing of a directory
+ * is reused while its modification time is unchanged: a poll lists only the directories that changed, and otherwise
+ * only reads the modification time and size of the Java files already known, which in-place edits still change.
+ */
+public class SourceWatcher
+{
+   /**
+    * Coarsest resolution of directory modification times among the common file systems, FAT's two seconds.
+    */
+   private static final long MODIFICATION_TIME_RESOLUTION_MILLIS = 2000;
+
+   private final List<File> roots;
+   private final Map<String, Listing> directories = new HashMap<String, Listing>();
+   private Map<String, long[]> snapshot;
+
+   /**
+    * Takes the initial snapshot, changes are reported relative to it.
+    *
+    * @param roots source folders to watch
+    */
+   public SourceWatcher(final List<File> roots)
+   {
+      this.roots = roots;
+      this.snapshot = this.takeSnapshot();
+   }
+
+   /**
+    * @return the files added, changed or deleted since the previous poll
+    */
+   public Set<File> poll()
+   {
+      final Map<String, long[]> current = this.takeSnapshot();
+      final Set<File> changed = new LinkedHashSet<File>();
+      for (Map.Entry<String, long[]> entry : current.entrySet()) {
+         final long[] previous = this.snapshot.get(entry.getKey());
+         if ((previous == null) || (previous[0] != entry.getValue()[0]) || (previous[1] != entry.getValue()[1]))
+            changed.add(new File(entry.getKey()));
+      }
+      for (String path : this.snapshot.keySet()) {
+         if (!current.containsKey(path))
+            changed.add(new File(path));
+      }
+      this.snapshot = current;
+      return changed;
+   }
+
+   /**
+    * Waits for changes and returns them once no further change was seen for the quiet period.
+    *
+    * @param pollMillis time between two polls
+    * @param quietMillis time without changes that ends a batch
+    * @param deadline time, in milliseconds since the epoch, to stop waiting at; 0 to wait until interrupted
+    * @return the changed files, empty if the deadline passed without changes
+    * @throws InterruptedException if the thread is interrupted while waiting
+    */
+   public Set<File> awaitBatch(final long pollMillis, final long quietMillis, final long deadline)
+            throws InterruptedException
+   {
+      final Set<File> batch = new LinkedHashSet<File>();
+      long lastChange = 0;
+      while (true) {
+         final long now = System.currentTimeMillis();
+         if (!batch.isEmpty() && (now - lastChange >= quietMillis))
+            return batch;
+         if (batch.isEmpty() && (deadline > 0) && (now >= deadline))
+            return batch;
+
+         Thread.sleep(pollMillis);
+         final Set<File> changed = this.poll();
+         if (!changed.isEmpty()) {
+            batch.addAll(changed);
+            lastChange = System.currentTimeMillis();
+         }
+      }
+   }
+
+   private Map<String, long[]> takeSnapshot()
+   {
+      final Map<String, long[]> files = new HashMap<String, long[]>();
+      final Set<String> seen = new HashSet<String>();
+      for (File root : this.roots) {
+         this.collect(root, files, seen);
+      }
+      this.directories.keySet().retainAll(seen);
+      return files;
+   }
+
+   private void collect(final File directory, final Map<String, long[]> files, final Set<String> seen)
+   {
+      final String path = directory.getAbsolutePath();
+      final long lastModified = directory.lastModified();
+      Listing listing = this.directories.get(path);
+      if ((listing == null) || !listing.isCurrent(lastModified)) {
+         final File[] children = directory.listFiles();
+         if (children == null)
+            return;
+         listing = new Listing(lastModified, children);
+         this.directories.put(path, listing);
+      }
+      seen.add(path);
+
+      for (File source : listing.sources) {
+         final long modified = source.lastModified();
+         // 0 once deleted, reported as such
+         if (modified != 0)
+            files.put(source.getAbsolutePath(), new long[] { modified, source.length() });
+      }
+      for (File subdirectory : listing.subdirectories) {
+         this.collect(subdirectory, files, seen);
+      }
+   }
+
+   /**
+    * Java files and subdirectories of a directory, valid while the modification time of the directory is unchanged.
+    */
+   private static final class Listing
+   {
+      private final long lastModified;
+      private final long listedAt;
+      private final List<File> sources = new ArrayList<File>();
+      private final List<File> subdirectories = new ArrayList<File>();
+
+      Listing(final long lastModified, final File[] children)
+      {
+         this.lastModified = lastModified;
+         this.listedAt = System.currentTimeMillis();
+         for (File child : children) {
+            if (child.isDirectory())
+               this.subdirectories.add(child);
+            else if (child.getName().endsWith(".java"))
+               this.sources.add(child);
+         }
+      }
+
+      /**
+       * A directory listed within the resolution of its modification time may have changed again since, unseen.
+       */
+      boolean isCurrent(final long currentLastModified)
+      {
+         return (currentLastModified == this.lastModified)
+                  && (this.listedAt - this.lastModified >= MODIFICATION_TIME_RESOLUTION_MILLIS);
+      }
+   }
+}
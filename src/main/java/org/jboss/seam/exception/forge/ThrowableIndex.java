@@ -0,0 +1,829 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipFile;
+
+import javax.inject.Singleton;
+
+import org.jboss.forge.project.Project;
+import org.jboss.forge.project.dependencies.Dependency;
+import org.jboss.forge.project.facets.DependencyFacet;
+import org.jboss.forge.project.facets.JavaSourceFacet;
+import org.jboss.forge.resources.DirectoryResource;
+
+/**
+ * Index of the {@link Throwable} subtypes of a project, from its sources and the jars of its class path (the JDK and
+ * the project's dependencies). Jars are read with {@link JarSuperclassReader} and their superclasses cached under
+ * {@link CatchConfigDirectory} per jar checksum; the resolved Throwables and their superclass are cached per class path
+ * as well, so a class path that was indexed once is loaded from a single file. The index of a session is kept in
+ * memory: the class path is only resolved again when a pom of the project changes, and the sources are checked for
+ * changes every few seconds, so repeated completions cost a set lookup. The JDK is read from the boot class path, or
+ * from the <code>.jmod</code> files of Java 9 and later, and JDK types are looked up with the class loader of the JDK
+ * when neither is found. Types that cannot be referenced from another package, and JDK internals, are indexed to
+ * resolve hierarchies but are never returned as subtypes.
+ */
+@Singleton
+public class ThrowableIndex
+{
+   private static final String THROWABLE = "java.lang.Throwable";
+   private static final long SOURCE_REVALIDATE_MILLIS = 5000;
+   /**
+    * Part of the key of the class path cache files, changed whenever their format changes.
+    */
+   private static final String CACHE_FORMAT = "hierarchy-2";
+   private static final String HIDDEN = "hidden";
+   private static final String[] INTERNAL_PACKAGES = { "sun.", "com.sun.", "jdk.internal." };
+   /**
+    * Parent of the application class loader, which loads the JDK types but not those of the plugin or of Forge.
+    */
+   private static final ClassLoader JDK_CLASS_LOADER = ClassLoader.getSystemClassLoader().getParent();
+
+   private static final Pattern PACKAGE = Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;", Pattern.MULTILINE);
+   private static final Pattern IMPORT = Pattern.compile("^\\s*import\\s+([\\w.]+)\\s*;", Pattern.MULTILINE);
+   private static final Pattern PUBLIC = Pattern.compile("\\bpublic\\b");
+   private static final Pattern CLASS = Pattern
+            .compile("\\bclass\\s+(\\w+)\\s*(?:<[^{]*?>\\s*)?(?:extends\\s+([\\w.]+))?");
+
+   private final File cacheDirectory;
+   private final Map<String, String> checksums = new ConcurrentHashMap<String, String>();
+   private final Map<String, SourceEntry> sources = new ConcurrentHashMap<String, SourceEntry>();
+   private ClassPathEntry classPath;
+   /**
+    * Types looked up in the jars of the class path by {@link #isThrowable(Project, String)}, null if they are in none.
+    */
+   private final Map<String, Boolean> jarLookups = new HashMap<String, Boolean>();
+   private List<File> lastJars = Collections.emptyList();
+   private String lastStamp;
+   private SortedSet<String> lastThrowables;
+   private Map<String, String> lastSuperclasses;
+   private Set<String> lastHidden = Collections.emptySet();
+   private long lastValidated;
+
+   public ThrowableIndex()
+   {
+      this(CatchConfigDirectory.get("throwables"));
+   }
+
+   /**
+    * @param cacheDirectory directory the jar and class path indexes are cached in
+    */
+   public ThrowableIndex(final File cacheDirectory)
+   {
+      this.cacheDirectory = cacheDirectory;
+   }
+
+   /**
+    * @param project current project
+    * @return qualified names, nested types separated by a dot, of the Throwables known to the project
+    */
+   public synchronized SortedSet<String> getThrowables(final Project project)
+   {
+      final String stamp = InstallationStateCache.stampOf(project.getProjectRoot().getUnderlyingResourceObject());
+      if ((this.lastThrowables != null) && stamp.equals(this.lastStamp)) {
+         if (System.currentTimeMillis() - this.lastValidated < SOURCE_REVALIDATE_MILLIS)
+            return this.lastThrowables;
+         // The class path only changes with the poms, only the sources are checked again
+         return this.index(this.classPath.superclasses, sourceRootsOf(project));
+      }
+
+      final SortedSet<String> throwables = this.getThrowables(classPathOf(project), sourceRootsOf(project));
+      this.lastStamp = stamp;
+      return throwables;
+   }
+
+   /**
+    * @param jars jars of the class path
+    * @param sourceRoots source folders of the project
+    * @return qualified names, nested types separated by a dot, of the Throwables
+    */
+   public synchronized SortedSet<String> getThrowables(final List<File> jars, final List<File> sourceRoots)
+   {
+      if (!jars.equals(this.lastJars))
+         this.jarLookups.clear();
+      this.lastJars = jars;
+      this.lastStamp = null;
+      return this.index(this.classPathThrowables(jars), sourceRoots);
+   }
+
+   private SortedSet<String> index(final Map<String, String> fromClassPath, final List<File> sourceRoots)
+   {
+      final Map<String, String> sourceSupers = this.scanSources(sourceRoots);
+
+      final Map<String, String> superclasses = new HashMap<String, String>(fromClassPath);
+      for (String type : sourceSupers.keySet()) {
+         final Set<String> visited = new HashSet<String>();
+         String current = type;
+         while ((current != null) && visited.add(current)) {
+            if (fromClassPath.containsKey(current)) {
+               superclasses.put(type, sourceSupers.get(type));
+               break;
+            }
+            current = sourceSupers.get(current);
+         }
+      }
+
+      final Set<String> hidden = new HashSet<String>(this.classPath.hidden);
+      for (SourceEntry entry : this.sources.values()) {
+         if ((entry.type != null) && !entry.visible)
+            hidden.add(entry.type);
+      }
+
+      this.lastSuperclasses = superclasses;
+      this.lastHidden = hidden;
+      this.lastThrowables = Collections.unmodifiableSortedSet(new TreeSet<String>(superclasses.keySet()));
+      this.lastValidated = System.currentTimeMillis();
+      return this.lastThrowables;
+   }
+
+   /**
+    * @param project current project
+    * @return qualified names of the Throwables known to the project, nested types separated by a dot, to the qualified
+    *         name of their superclass, null for {@link Throwable}
+    */
+   public synchronized Map<String, String> getSuperclasses(final Project project)
+   {
+      this.getThrowables(project);
+      return Collections.unmodifiableMap(this.lastSuperclasses);
+   }
+
+   /**
+    * @param project current project
+    * @param base qualified type name, or a simple name of a <code>java.lang</code> type
+    * @return qualified names of the Throwables known to the project extending the base type, directly or not, that can
+    *         be referenced from another package
+    */
+   public synchronized SortedSet<String> getSubtypes(final Project project, final String base)
+   {
+      this.getThrowables(project);
+      return this.subtypesOf(base);
+   }
+
+   /**
+    * @param jars jars of the class path
+    * @param sourceRoots source folders of the project
+    * @param base qualified type name, or a simple name of a <code>java.lang</code> type
+    * @return qualified names of the Throwables extending the base type, directly or not, that can be referenced from
+    *         another package
+    */
+   public synchronized SortedSet<String> getSubtypes(final List<File> jars, final List<File> sourceRoots,
+            final String base)
+   {
+      this.getThrowables(jars, sourceRoots);
+      return this.subtypesOf(base);
+   }
+
+   private SortedSet<String> subtypesOf(final String base)
+   {
+      final boolean javaLang = (base.indexOf('.') == -1) && this.lastSuperclasses.containsKey("java.lang." + base);
+      final String type = javaLang ? "java.lang." + base : base;
+
+      final Map<String, List<String>> subclasses = new HashMap<String, List<String>>();
+      for (Map.Entry<String, String> entry : this.lastSuperclasses.entrySet()) {
+         if (entry.getValue() == null)
+            continue;
+         if (!subclasses.containsKey(entry.getValue()))
+            subclasses.put(entry.getValue(), new ArrayList<String>());
+         subclasses.get(entry.getValue()).add(entry.getKey());
+      }
+
+      // Hidden types are walked through, their public subclasses can still be referenced
+      final Set<String> visited = new HashSet<String>();
+      final SortedSet<String> subtypes = new TreeSet<String>();
+      final List<String> pending = new ArrayList<String>(Collections.singletonList(type));
+      while (!pending.isEmpty()) {
+         final List<String> direct = subclasses.get(pending.remove(pending.size() - 1));
+         if (direct == null)
+            continue;
+         for (String subtype : direct) {
+            if (!visited.add(subtype))
+               continue;
+            pending.add(subtype);
+            if (!this.lastHidden.contains(subtype) && !isInternal(subtype))
+               subtypes.add(subtype);
+         }
+      }
+      return subtypes;
+   }
+
+   private static boolean isInternal(final String type)
+   {
+      for (String internal : INTERNAL_PACKAGES) {
+         if (type.startsWith(internal))
+            return true;
+      }
+      return false;
+   }
+
+   /**
+    * @param project current project
+    * @param type qualified type name, or a simple name of a <code>java.lang</code> type
+    * @return TRUE if the type is a known Throwable, FALSE if the type is known and is not a Throwable, null if the type
+    *         is unknown
+    */
+   public synchronized Boolean isThrowable(final Project project, final String type)
+   {
+      return this.lookup(this.getThrowables(project), type);
+   }
+
+   /**
+    * @param jars jars of the class path
+    * @param sourceRoots source folders of the project
+    * @param type qualified type name, or a simple name of a <code>java.lang</code> type
+    * @return TRUE if the type is a known Throwable, FALSE if the type is known and is not a Throwable, null if the type
+    *         is unknown
+    */
+   public synchronized Boolean isThrowable(final List<File> jars, final List<File> sourceRoots, final String type)
+   {
+      return this.lookup(this.getThrowables(jars, sourceRoots), type);
+   }
+
+   private Boolean lookup(final SortedSet<String> throwables, final String type)
+   {
+      if (throwables.contains(type) || ((type.indexOf('.') == -1) && throwables.contains("java.lang." + type)))
+         return Boolean.TRUE;
+
+      // A source class is only known not to be a Throwable when its superclasses end in an implicit Object
+      final Map<String, String> sourceSupers = new HashMap<String, String>();
+      for (SourceEntry entry : this.sources.values()) {
+         if (entry.type != null)
+            sourceSupers.put(entry.type, entry.superType);
+      }
+      if (sourceSupers.containsKey(type)) {
+         final Set<String> visited = new HashSet<String>();
+         String current = type;
+         while (sourceSupers.containsKey(current) && visited.add(current)) {
+            current = sourceSupers.get(current);
+            if (current == null)
+               return Boolean.FALSE;
+         }
+         return null;
+      }
+
+      final Boolean jdkType = jdkLookup(type);
+      if (jdkType != null)
+         return jdkType;
+
+      if (!this.jarLookups.containsKey(type))
+         this.jarLookups.put(type, this.findInJars(type));
+      return this.jarLookups.get(type);
+   }
+
+   /**
+    * @return FALSE if a jar of the class path holds the type, which is not a Throwable as it is not indexed, null if
+    *         none does
+    */
+   private Boolean findInJars(final String type)
+   {
+      final String path = type.replace('.', '/');
+      final int lastSlash = path.lastIndexOf('/');
+      final String nestedPath = lastSlash == -1 ? path : path.substring(0, lastSlash) + "$"
+               + path.substring(lastSlash + 1);
+      for (File jar : this.lastJars) {
+         try {
+            final ZipFile zip = new ZipFile(jar);
+            try {
+               if ((zip.getEntry(path + ".class") != null) || (zip.getEntry(nestedPath + ".class") != null))
+                  return Boolean.FALSE;
+            }
+            finally {
+               zip.close();
+            }
+         }
+         catch (IOException e) {
+            // unreadable jar, it has no types
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Looks a type up with the class loader of the JDK, which knows the JDK types whether or not its jars were indexed.
+    *
+    * @return TRUE if the type is a JDK Throwable, FALSE if it is another JDK type, null if it is not a JDK type
+    */
+   private static Boolean jdkLookup(final String type)
+   {
+      final String name = type.indexOf('.') == -1 ? "java.lang." + type : type;
+      final int lastDot = name.lastIndexOf('.');
+      for (String candidate : new String[] { name, name.substring(0, lastDot) + "$" + name.substring(lastDot + 1) }) {
+         try {
+            return Throwable.class.isAssignableFrom(Class.forName(candidate, false, JDK_CLASS_LOADER));
+         }
+         catch (ClassNotFoundException e) {
+            // not a JDK type, or not with this name
+         }
+         catch (LinkageError e) {
+            return null;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * @param project current project
+    * @return the JDK jars and the jars of the project's dependencies found in the local repository
+    */
+   public static List<File> classPathOf(final Project project)
+   {
+      final List<File> jars = jdkJars();
+
+      final File repository = SolderVersionResolver.defaultLocalRepository();
+      for (Dependency dependency : project.getFacet(DependencyFacet.class).getEffectiveDependencies()) {
+         if ((dependency.getPackagingType() != null) && !"jar".equals(dependency.getPackagingType()))
+            continue;
+
+         final String classifier = (dependency.getClassifier() == null) || "".equals(dependency.getClassifier()) ? ""
+                  : "-" + dependency.getClassifier();
+         final File jar = new File(repository, dependency.getGroupId().replace('.', '/') + "/"
+                  + dependency.getArtifactId() + "/" + dependency.getVersion() + "/" + dependency.getArtifactId() + "-"
+                  + dependency.getVersion() + classifier + ".jar");
+         if (jar.isFile())
+            jars.add(jar);
+      }
+      return jars;
+   }
+
+   /**
+    * @return the jars of the boot class path, or the modules of the JDK on Java 9 and later, which has no boot class
+    *         path; empty for a runtime without <code>.jmod</code> files, whose types are then looked up with the class
+    *         loader of the JDK only
+    */
+   static List<File> jdkJars()
+   {
+      final List<File> jars = new ArrayList<File>();
+      final String bootClassPath = System.getProperty("sun.boot.class.path");
+      if (bootClassPath != null) {
+         for (String path : bootClassPath.split(File.pathSeparator)) {
+            final File jar = new File(path);
+            if (jar.isFile() && path.endsWith(".jar"))
+               jars.add(jar);
+         }
+         return jars;
+      }
+
+      final File[] modules = new File(System.getProperty("java.home"), "jmods").listFiles();
+      if (modules != null) {
+         for (File module : modules) {
+            if (module.isFile() && module.getName().endsWith(".jmod"))
+               jars.add(module);
+         }
+         Collections.sort(jars);
+      }
+      return jars;
+   }
+
+   private static List<File> sourceRootsOf(final Project project)
+   {
+      final List<File> roots = new ArrayList<File>();
+      for (DirectoryResource folder : project.getFacet(JavaSourceFacet.class).getSourceFolders()) {
+         roots.add(folder.getUnderlyingResourceObject());
+      }
+      return roots;
+   }
+
+   /**
+    * Throwables of the class path and their superclass, from memory, the class path cache file, or the jar indexes.
+    */
+   private Map<String, String> classPathThrowables(final List<File> jars)
+   {
+      final List<String> jarChecksums = new ArrayList<String>(jars.size() + 1);
+      final Map<File, String> checksumOf = new HashMap<File, String>();
+      for (File jar : jars) {
+         final String checksum = this.checksumOf(jar);
+         if (checksum != null) {
+            jarChecksums.add(checksum);
+            checksumOf.put(jar, checksum);
+         }
+      }
+      Collections.sort(jarChecksums);
+      jarChecksums.add(CACHE_FORMAT);
+      final String key = digest(jarChecksums);
+
+      if ((this.classPath != null) && this.classPath.key.equals(key))
+         return this.classPath.superclasses;
+
+      // One line per Throwable: its name, its superclass unless it is Throwable, and the hidden marker
+      final File cacheFile = new File(this.cacheDirectory, "classpath-" + key + ".idx");
+      final Set<String> lines = readLines(cacheFile);
+      final Map<String, String> superclasses;
+      final Set<String> hidden = new HashSet<String>();
+      if (lines != null) {
+         superclasses = new HashMap<String, String>();
+         for (String line : lines) {
+            final String[] tokens = line.split(" ");
+            superclasses.put(tokens[0], tokens.length > 1 ? tokens[1] : null);
+            if ((tokens.length > 2) && HIDDEN.equals(tokens[2]))
+               hidden.add(tokens[0]);
+         }
+      }
+      else {
+         final Set<String> hiddenClasses = Collections.synchronizedSet(new HashSet<String>());
+         superclasses = resolve(this.readJars(checksumOf, hiddenClasses));
+         for (String hiddenClass : hiddenClasses) {
+            final String type = hiddenClass.replace('/', '.').replace('$', '.');
+            if (superclasses.containsKey(type))
+               hidden.add(type);
+         }
+
+         final Set<String> entries = new TreeSet<String>();
+         for (Map.Entry<String, String> entry : superclasses.entrySet()) {
+            final String line = entry.getValue() == null ? entry.getKey() : entry.getKey() + " " + entry.getValue();
+            entries.add(hidden.contains(entry.getKey()) ? line + " " + HIDDEN : line);
+         }
+         writeLines(cacheFile, entries);
+      }
+
+      this.classPath = new ClassPathEntry(key, superclasses, hidden);
+      return superclasses;
+   }
+
+   /**
+    * @return the checksum of the jar, computed once per modification of the jar, or null if it cannot be read
+    */
+   private String checksumOf(final File jar)
+   {
+      final String stamp = jar.getAbsolutePath() + "|" + jar.lastModified() + "|" + jar.length();
+      String checksum = this.checksums.get(stamp);
+      if (checksum == null) {
+         try {
+            checksum = JarSuperclassReader.checksum(jar);
+            this.checksums.put(stamp, checksum);
+         }
+         catch (IOException e) {
+            return null;
+         }
+      }
+      return checksum;
+   }
+
+   /**
+    * Reads the superclasses of the jars, from their cache file or, in parallel, from the jars themselves.
+    */
+   private Map<String, String> readJars(final Map<File, String> checksumOf, final Set<String> hidden)
+   {
+      final Map<String, String> superclasses = new HashMap<String, String>();
+      if (checksumOf.isEmpty())
+         return superclasses;
+
+      final ExecutorService executor = Executors.newFixedThreadPool(Math.min(checksumOf.size(), Runtime
+               .getRuntime().availableProcessors()));
+      try {
+         final List<Future<Map<String, String>>> results = new ArrayList<Future<Map<String, String>>>();
+         for (final Map.Entry<File, String> jar : checksumOf.entrySet()) {
+            results.add(executor.submit(new Callable<Map<String, String>>()
+            {
+               @Override
+               public Map<String, String> call() throws IOException
+               {
+                  return readJar(jar.getKey(), jar.getValue(), hidden);
+               }
+            }));
+         }
+         for (Future<Map<String, String>> result : results) {
+            try {
+               superclasses.putAll(result.get());
+            }
+            catch (ExecutionException e) {
+               // unreadable jar, it contributes no types
+            }
+         }
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      finally {
+         executor.shutdownNow();
+      }
+      return superclasses;
+   }
+
+   /**
+    * Reads the superclasses of a jar, adding its classes that cannot be referenced from another package to the hidden
+    * internal names.
+    */
+   private Map<String, String> readJar(final File jar, final String checksum, final Set<String> hidden)
+            throws IOException
+   {
+      final File cacheFile = new File(this.cacheDirectory, "jar-" + CACHE_FORMAT + "-" + checksum + ".idx");
+      final Set<String> lines = readLines(cacheFile);
+      final Map<String, String> superclasses = new HashMap<String, String>();
+      if (lines != null) {
+         for (String line : lines) {
+            final String[] tokens = line.split(" ");
+            if (tokens.length > 1)
+               superclasses.put(tokens[0], tokens[1]);
+            if ((tokens.length > 2) && HIDDEN.equals(tokens[2]))
+               hidden.add(tokens[0]);
+         }
+         return superclasses;
+      }
+
+      final Set<String> hiddenClasses = new HashSet<String>();
+      superclasses.putAll(JarSuperclassReader.readSuperclasses(jar, hiddenClasses));
+      hidden.addAll(hiddenClasses);
+      final Set<String> entries = new TreeSet<String>();
+      for (Map.Entry<String, String> entry : superclasses.entrySet()) {
+         final String line = entry.getKey() + " " + entry.getValue();
+         entries.add(hiddenClasses.contains(entry.getKey()) ? line + " " + HIDDEN : line);
+      }
+      writeLines(cacheFile, entries);
+      return superclasses;
+   }
+
+   /**
+    * @param superclasses internal class names to the internal name of their superclass
+    * @return qualified names of the classes extending Throwable to the qualified name of their superclass, null for
+    *         Throwable itself
+    */
+   static Map<String, String> resolve(final Map<String, String> superclasses)
+   {
+      final String throwable = THROWABLE.replace('.', '/');
+      final Map<String, Boolean> resolved = new HashMap<String, Boolean>();
+      resolved.put(throwable, Boolean.TRUE);
+
+      final Map<String, String> throwables = new HashMap<String, String>();
+      for (String type : superclasses.keySet()) {
+         final List<String> chain = new ArrayList<String>();
+         String current = type;
+         Boolean result = null;
+         while (result == null) {
+            result = resolved.get(current);
+            if (result != null)
+               break;
+            if (chain.contains(current) || !superclasses.containsKey(current)) {
+               result = Boolean.FALSE;
+               break;
+            }
+            chain.add(current);
+            current = superclasses.get(current);
+         }
+         for (String link : chain) {
+            resolved.put(link, result);
+         }
+         if (result.booleanValue() && !isAnonymous(type))
+            throwables.put(type.replace('/', '.').replace('$', '.'),
+                     superclasses.get(type).replace('/', '.').replace('$', '.'));
+      }
+      throwables.put(THROWABLE, null);
+      return throwables;
+   }
+
+   private static boolean isAnonymous(final String internalName)
+   {
+      final int dollar = internalName.lastIndexOf('$');
+      return (dollar != -1) && (dollar + 1 < internalName.length())
+               && Character.isDigit(internalName.charAt(dollar + 1));
+   }
+
+   /**
+    * Scans the source folders for classes and their superclass, re-reading only the files that changed.
+    *
+    * @return qualified name of each source class to the qualified name of its superclass
+    */
+   private Map<String, String> scanSources(final List<File> roots)
+   {
+      final Set<String> present = new HashSet<String>();
+      final Map<String, String> supers = new HashMap<String, String>();
+      for (File root : roots) {
+         this.scanDirectory(root, present);
+      }
+      for (String path : new ArrayList<String>(this.sources.keySet())) {
+         if (!present.contains(path))
+            this.sources.remove(path);
+      }
+      for (SourceEntry entry : this.sources.values()) {
+         if ((entry.type != null) && (entry.superType != null))
+            supers.put(entry.type, entry.superType);
+      }
+      return supers;
+   }
+
+   private void scanDirectory(final File directory, final Set<String> present)
+   {
+      final File[] children = directory.listFiles();
+      if (children == null)
+         return;
+
+      for (File child : children) {
+         if (child.isDirectory()) {
+            this.scanDirectory(child, present);
+            continue;
+         }
+         if (!child.getName().endsWith(".java"))
+            continue;
+
+         final String path = child.getAbsolutePath();
+         present.add(path);
+         final SourceEntry entry = this.sources.get(path);
+         if ((entry != null) && (entry.lastModified == child.lastModified()) && (entry.length == child.length()))
+            continue;
+
+         try {
+            this.sources.put(path, parseSource(child));
+         }
+         catch (IOException e) {
+            this.sources.remove(path);
+         }
+      }
+   }
+
+   /**
+    * Reads the package, imports, superclass and visibility of the top level class with a regular expression, which is
+    * enough to resolve the superclass and much cheaper than parsing the source.
+    */
+   private static SourceEntry parseSource(final File file) throws IOException
+   {
+      final long lastModified = file.lastModified();
+      final long length = file.length();
+      final String source = HandlerScanner.read(file);
+
+      final Matcher declaration = CLASS.matcher(source);
+      final String simpleName = file.getName().substring(0, file.getName().length() - ".java".length());
+      while (declaration.find()) {
+         if (!simpleName.equals(declaration.group(1)))
+            continue;
+
+         final Matcher packageMatcher = PACKAGE.matcher(source);
+         final String packageName = packageMatcher.find() ? packageMatcher.group(1) : null;
+         final String type = packageName == null ? simpleName : packageName + "." + simpleName;
+
+         final String superName = declaration.group(2);
+         String superType = null;
+         if (superName != null) {
+            final Map<String, String> imports = new HashMap<String, String>();
+            final Matcher importMatcher = IMPORT.matcher(source);
+            while (importMatcher.find()) {
+               final String qualifiedName = importMatcher.group(1);
+               imports.put(qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1), qualifiedName);
+            }
+
+            superType = HandlerScanner.resolveType(superName, packageName, imports);
+         }
+
+         // The modifiers follow the end of the previous declaration, comment or annotation
+         int modifiers = declaration.start();
+         while ((modifiers > 0) && (";})/".indexOf(source.charAt(modifiers - 1)) == -1)) {
+            modifiers--;
+         }
+         final boolean visible = PUBLIC.matcher(source.substring(modifiers, declaration.start())).find();
+         return new SourceEntry(lastModified, length, type, superType, visible);
+      }
+      return new SourceEntry(lastModified, length, null, null, false);
+   }
+
+   private static String digest(final List<String> values)
+   {
+      try {
+         final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+         for (String value : values) {
+            digest.update(value.getBytes("UTF-8"));
+            digest.update((byte) '\n');
+         }
+         final StringBuilder hex = new StringBuilder();
+         for (byte b : digest.digest()) {
+            hex.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+         }
+         return hex.toString();
+      }
+      catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(e);
+      }
+      catch (UnsupportedEncodingException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   /**
+    * @return the lines of the file, or null if it does not exist or cannot be read
+    */
+   private static Set<String> readLines(final File file)
+   {
+      if (!file.isFile())
+         return null;
+
+      try {
+         final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+         try {
+            final Set<String> lines = new HashSet<String>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+               if (line.length() > 0)
+                  lines.add(line);
+            }
+            return lines;
+         }
+         finally {
+            reader.close();
+         }
+      }
+      catch (IOException e) {
+         return null;
+      }
+   }
+
+   /**
+    * Writes the lines to a temporary file renamed into place, so concurrent sessions never read a partial file.
+    */
+   private static void writeLines(final File file, final Set<String> lines)
+   {
+      file.getParentFile().mkdirs();
+      final File temporary = new File(file.getParentFile(), file.getName() + "." + Thread.currentThread().getId()
+               + ".tmp");
+      try {
+         final Writer writer = new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8");
+         try {
+            for (String line : lines) {
+               writer.write(line);
+               writer.write('\n');
+            }
+         }
+         finally {
+            writer.close();
+         }
+         if (!temporary.renameTo(file)) {
+            file.delete();
+            temporary.renameTo(file);
+         }
+      }
+      catch (IOException e) {
+         // the index is only a cache, it is rebuilt next time
+         temporary.delete();
+      }
+   }
+
+   private static final class ClassPathEntry
+   {
+      private final String key;
+      private final Map<String, String> superclasses;
+      private final Set<String> hidden;
+
+      ClassPathEntry(final String key, final Map<String, String> superclasses, final Set<String> hidden)
+      {
+         this.key = key;
+         this.superclasses = superclasses;
+         this.hidden = hidden;
+      }
+   }
+
+   private static final class SourceEntry
+   {
+      private final long lastModified;
+      private final long length;
+      private final String type;
+      private final String superType;
+      private final boolean visible;
+
+      SourceEntry(final long lastModified, final long length, final String type, final String superType,
+               final boolean visible)
+      {
+         this.lastModified = lastModified;
+         this.length = length;
+         this.type = type;
+         this.superType = superType;
+         this.visible = visible;
+      }
+   }
+}
@@ -0,0 +1,40 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge;
+
+import javax.inject.Inject;
+
+import org.jboss.forge.project.Project;
+import org.jboss.forge.shell.completer.SimpleTokenCompleter;
+
+/**
+ * Completes the names of the {@link Throwable} types known to the project, from the {@link ThrowableIndex}.
+ */
+public class ThrowableTypeCompleter extends SimpleTokenCompleter
+{
+   @Inject
+   private Project project;
+
+   @Inject
+   private ThrowableIndex index;
+
+   @Override
+   public Iterable<?> getCompletionTokens()
+   {
+      return this.index.getThrowables(this.project);
+   }
+}
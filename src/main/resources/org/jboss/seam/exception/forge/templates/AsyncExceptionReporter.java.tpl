@@ -0,0 +1,239 @@
+package ${package};
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves exception reporting off the handler thread. Handlers copy the minimal exception data into a preallocated,
+ * bounded ring buffer and return; a single daemon consumer drains the buffer in batches into an
+ * {@link ExceptionReportSink}. The ring is a bounded multi-producer queue with one sequence per slot, producers claim
+ * a slot with a single CAS and never take a lock.
+ * <p>
+ * The generated <code>AsyncExceptionReporterExtension</code> calls {@link #shutdownAll()} when the application is
+ * undeployed, so the reports still queued are written and the consumer threads do not outlive the deployment.
+ */
+public final class AsyncExceptionReporter
+{
+   /**
+    * What {@link AsyncExceptionReporter#report(String, Throwable)} does when the buffer is full.
+    */
+   public enum FullPolicy
+   {
+      /**
+       * Discard the report.
+       */
+      DROP,
+      /**
+       * Wait for the consumer to free a slot.
+       */
+      BLOCK,
+      /**
+       * Discard the report and count it, the count is logged by the consumer.
+       */
+      COUNT_AND_DROP
+   }
+
+   private static final Logger LOG = Logger.getLogger(AsyncExceptionReporter.class.getName());
+
+   private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+   private static final long DROPPED_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+   /**
+    * Time {@link #shutdown()} waits for the consumer to write the queued reports.
+    */
+   private static final long SHUTDOWN_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+   private static final Set<AsyncExceptionReporter> RUNNING = Collections
+            .newSetFromMap(new ConcurrentHashMap<AsyncExceptionReporter, Boolean>());
+
+   private final ExceptionReport[] slots;
+   private final AtomicLongArray sequences;
+   private final int mask;
+   private final AtomicLong tail = new AtomicLong();
+   private final AtomicLong dropped = new AtomicLong();
+   private final ExceptionReportSink sink;
+   private final int batchSize;
+   private final FullPolicy policy;
+   private volatile Thread consumer;
+
+   /**
+    * @param sink destination of the reports
+    * @param capacity number of slots, rounded up to a power of two
+    * @param batchSize maximum number of reports per write to the sink
+    * @param policy what to do when the buffer is full
+    */
+   public AsyncExceptionReporter(final ExceptionReportSink sink, final int capacity, final int batchSize,
+            final FullPolicy policy)
+   {
+      int size = 1;
+      while (size < capacity) {
+         size <<= 1;
+      }
+
+      this.slots = new ExceptionReport[size];
+      this.sequences = new AtomicLongArray(size);
+      for (int i = 0; i < size; i++) {
+         this.slots[i] = new ExceptionReport();
+         this.sequences.set(i, i);
+      }
+      this.mask = size - 1;
+      this.sink = sink;
+      this.batchSize = batchSize;
+      this.policy = policy;
+
+      final Thread thread = new Thread(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            consume();
+         }
+      }, "AsyncExceptionReporter consumer");
+      thread.setDaemon(true);
+      this.consumer = thread;
+      RUNNING.add(this);
+      thread.start();
+   }
+
+   /**
+    * Queues a report of the exception.
+    *
+    * @param handler name of the reporting handler
+    * @param exception caught exception
+    * @return false if the report was dropped because the buffer was full
+    */
+   public boolean report(final String handler, final Throwable exception)
+   {
+      while (true) {
+         final long position = this.tail.get();
+         final int index = (int) (position & this.mask);
+         final long available = this.sequences.get(index) - position;
+
+         if (available == 0) {
+            if (this.tail.compareAndSet(position, position + 1)) {
+               this.slots[index].fill(handler, exception);
+               // publishes the slot to the consumer
+               this.sequences.lazySet(index, position + 1);
+               return true;
+            }
+         }
+         else if (available < 0) {
+            // the slot still holds a report from one lap ago, the buffer is full
+            if (this.policy == FullPolicy.BLOCK) {
+               LockSupport.parkNanos(1000L);
+            }
+            else {
+               if (this.policy == FullPolicy.COUNT_AND_DROP)
+                  this.dropped.incrementAndGet();
+               return false;
+            }
+         }
+         // otherwise another producer claimed the slot first, retry with the new tail
+      }
+   }
+
+   /**
+    * @return reports dropped by the COUNT_AND_DROP policy and not logged yet
+    */
+   public long getDropped()
+   {
+      return this.dropped.get();
+   }
+
+   /**
+    * Stops the consumer once it has drained the reports queued so far, waiting at most 10 seconds for it.
+    */
+   public void shutdown()
+   {
+      RUNNING.remove(this);
+      final Thread thread = this.consumer;
+      this.consumer = null;
+      if (thread == null)
+         return;
+
+      LockSupport.unpark(thread);
+      try {
+         thread.join(SHUTDOWN_TIMEOUT_MILLIS);
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Shuts down every reporter of the application, see {@link #shutdown()}.
+    */
+   public static void shutdownAll()
+   {
+      for (AsyncExceptionReporter reporter : RUNNING) {
+         reporter.shutdown();
+      }
+   }
+
+   private void consume()
+   {
+      final List<ExceptionReport> batch = new ArrayList<ExceptionReport>(this.batchSize);
+      long head = 0;
+      long idleNanos = 1000L;
+      long nextDroppedLog = System.nanoTime();
+
+      while (true) {
+         if (System.nanoTime() - nextDroppedLog >= 0) {
+            this.logDropped();
+            nextDroppedLog = System.nanoTime() + DROPPED_LOG_INTERVAL_NANOS;
+         }
+
+         while (batch.size() < this.batchSize) {
+            final int index = (int) ((head + batch.size()) & this.mask);
+            if (this.sequences.get(index) != head + batch.size() + 1)
+               break;
+            batch.add(this.slots[index]);
+         }
+
+         if (batch.isEmpty()) {
+            if (this.consumer == null) {
+               this.logDropped();
+               return;
+            }
+            LockSupport.parkNanos(idleNanos);
+            idleNanos = Math.min(idleNanos * 2, MAX_IDLE_PARK_NANOS);
+            continue;
+         }
+         idleNanos = 1000L;
+
+         try {
+            this.sink.write(batch);
+         }
+         catch (Exception e) {
+            LOG.log(Level.WARNING, "Could not write " + batch.size() + " exception report(s)", e);
+         }
+
+         // hands the slots back to the producers for their next lap
+         for (int i = 0; i < batch.size(); i++) {
+            final int index = (int) ((head + i) & this.mask);
+            this.slots[index].clear();
+            this.sequences.lazySet(index, head + i + this.mask + 1);
+         }
+         head += batch.size();
+         batch.clear();
+      }
+   }
+
+   private void logDropped()
+   {
+      final long count = this.dropped.getAndSet(0);
+      if (count > 0)
+         LOG.log(Level.WARNING, count + " exception report(s) dropped, the buffer of " + this.slots.length
+                  + " reports was full");
+   }
+}
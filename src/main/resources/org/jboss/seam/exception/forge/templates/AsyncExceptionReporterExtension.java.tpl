@@ -0,0 +1,18 @@
+package ${package};
+
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.spi.BeforeShutdown;
+import javax.enterprise.inject.spi.Extension;
+
+/**
+ * Shuts down the {@link AsyncExceptionReporter}s when the application is undeployed or the server stops, after they
+ * have written the reports still queued. Listed in <code>META-INF/services/javax.enterprise.inject.spi.Extension</code>
+ * so the CDI container notifies it.
+ */
+public class AsyncExceptionReporterExtension implements Extension
+{
+   void shutdown(@Observes final BeforeShutdown event)
+   {
+      AsyncExceptionReporter.shutdownAll();
+   }
+}
@@ -0,0 +1,24 @@
+package ${package};
+
+/**
+ * ${description}
+ */
+public class ${className} extends ${superType}
+{
+   private static final long serialVersionUID = 1L;
+${instance}
+   public ${className}()
+   {
+      super();
+   }
+
+   public ${className}(final String message)
+   {
+      super(message);
+   }
+
+   public ${className}(final String message, final Throwable cause)
+   {
+      super(message, cause);
+   }
+${fillInStackTrace}${instanceGuards}}
@@ -0,0 +1,226 @@
+package ${package};
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Aggregates caught exceptions by {@link ExceptionFingerprint}, the exception type plus its top stack frames, and
+ * logs one line per fingerprint and interval with the occurrence count instead of one record per occurrence. The
+ * first example of a fingerprint is logged with its stack trace. At most <code>maxEntries</code> fingerprints are tracked, the least
+ * recently seen ones are evicted first and counted in the summary. {@link #close()} stops the periodic flush, call it
+ * when the application is undeployed so the flush thread does not keep its class loader.
+ */
+public final class ExceptionAggregator
+{
+   /**
+    * Entries looked at to pick the one to evict, enough to evict one of the least recently seen without a global lock.
+    */
+   private static final int EVICTION_SAMPLES = 8;
+
+   /**
+    * Count of an entry that was removed from the map, recording into it looks the fingerprint up again.
+    */
+   private static final long RETIRED = Long.MIN_VALUE;
+
+   private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory()
+            {
+               @Override
+               public Thread newThread(final Runnable runnable)
+               {
+                  final Thread thread = new Thread(runnable, "ExceptionAggregator flush");
+                  thread.setDaemon(true);
+                  return thread;
+               }
+            });
+
+   private final Logger logger;
+   private final String handler;
+   private final int maxEntries;
+   private final int frames;
+   private final long intervalNanos;
+   private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<Long, Entry>();
+   private final AtomicLong evicted = new AtomicLong();
+   private final Random random = new Random();
+   private final ScheduledFuture<?> flushTask;
+   private volatile long lastFlush = System.nanoTime();
+
+   /**
+    * @param container class declaring the handler, names the logger
+    * @param handler name of the handler method
+    * @param maxEntries maximum number of fingerprints tracked
+    * @param frames number of top stack frames in the fingerprint
+    * @param flushIntervalSeconds seconds between two flushes
+    */
+   public ExceptionAggregator(final Class<?> container, final String handler, final int maxEntries, final int frames,
+            final int flushIntervalSeconds)
+   {
+      this.logger = Logger.getLogger(container.getName());
+      this.handler = handler;
+      this.maxEntries = maxEntries;
+      this.frames = frames;
+      this.intervalNanos = TimeUnit.SECONDS.toNanos(flushIntervalSeconds);
+
+      this.flushTask = FLUSHER.scheduleWithFixedDelay(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            flush();
+         }
+      }, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+   }
+
+   /**
+    * Counts the exception under its fingerprint.
+    */
+   public void record(final Throwable exception)
+   {
+      final long now = System.nanoTime();
+      final Long fingerprint = Long.valueOf(ExceptionFingerprint.of(exception, this.frames));
+
+      while (true) {
+         Entry entry = this.entries.get(fingerprint);
+         if (entry == null) {
+            final Entry created = new Entry(exception, now);
+            entry = this.entries.putIfAbsent(fingerprint, created);
+            if (entry == null) {
+               entry = created;
+               if (this.entries.size() > this.maxEntries)
+                  this.evictLeastRecentlySeen(fingerprint);
+            }
+         }
+
+         final long count = entry.count.get();
+         if (count == RETIRED) {
+            // Removed by a flush or an eviction since the lookup
+            this.entries.remove(fingerprint, entry);
+            continue;
+         }
+         if (entry.count.compareAndSet(count, count + 1)) {
+            entry.lastSeen = now;
+            return;
+         }
+      }
+   }
+
+   /**
+    * Logs the count of every fingerprint seen since the last flush and forgets the fingerprints that were not.
+    */
+   public synchronized void flush()
+   {
+      final long now = System.nanoTime();
+      final long seconds = TimeUnit.NANOSECONDS.toSeconds(now - this.lastFlush);
+      this.lastFlush = now;
+
+      for (Map.Entry<Long, Entry> mapping : this.entries.entrySet()) {
+         final Entry entry = mapping.getValue();
+         final long count = swap(entry.count, 0);
+         if (count == RETIRED)
+            continue;
+         if (count == 0) {
+            // Retired first, so a concurrent record() cannot count into an entry that is no longer in the map
+            if ((now - entry.lastSeen > this.intervalNanos) && entry.count.compareAndSet(0, RETIRED))
+               this.entries.remove(mapping.getKey(), entry);
+            continue;
+         }
+
+         final String message = "[" + this.handler + "] " + count + " occurrence(s) of " + entry.example
+                  + " in the last " + seconds + "s";
+         if (entry.reported) {
+            this.logger.log(Level.WARNING, message);
+         }
+         else {
+            entry.reported = true;
+            this.logger.log(Level.SEVERE, message + ", first example:", entry.example);
+         }
+      }
+
+      final long evictedCount = this.evicted.getAndSet(0);
+      if (evictedCount > 0)
+         this.logger.log(Level.WARNING, "[" + this.handler + "] " + evictedCount
+                  + " occurrence(s) of evicted fingerprints were not reported, consider raising maxEntries above "
+                  + this.maxEntries);
+   }
+
+   /**
+    * Stops the periodic flush and logs what was counted since the last one.
+    */
+   public void close()
+   {
+      this.flushTask.cancel(false);
+      this.flush();
+   }
+
+   /**
+    * Samples entries from a random position, the map iterates in a fixed order and always sampling its first entries
+    * would keep evicting the fingerprints that happen to sort first.
+    */
+   private void evictLeastRecentlySeen(final Long keep)
+   {
+      final int size = this.entries.size();
+      int skip = size > EVICTION_SAMPLES ? this.random.nextInt(size) : 0;
+      Map.Entry<Long, Entry> oldest = null;
+      int sampled = 0;
+      // From the random position to the end, then around from the start
+      for (int pass = 0; (pass < 2) && (sampled < EVICTION_SAMPLES); pass++) {
+         for (Map.Entry<Long, Entry> candidate : this.entries.entrySet()) {
+            if (skip > 0) {
+               skip--;
+               continue;
+            }
+            if (candidate.getKey().equals(keep))
+               continue;
+            if ((oldest == null) || (candidate.getValue().lastSeen - oldest.getValue().lastSeen < 0))
+               oldest = candidate;
+            if (++sampled == EVICTION_SAMPLES)
+               break;
+         }
+      }
+      if (oldest == null)
+         return;
+
+      final long count = swap(oldest.getValue().count, RETIRED);
+      if (count != RETIRED) {
+         this.entries.remove(oldest.getKey(), oldest.getValue());
+         this.evicted.addAndGet(count);
+      }
+   }
+
+   /**
+    * Replaces the count unless the entry is retired.
+    *
+    * @return the previous count, {@link #RETIRED} if the entry was retired and left as it was
+    */
+   private static long swap(final AtomicLong count, final long value)
+   {
+      while (true) {
+         final long current = count.get();
+         if ((current == RETIRED) || count.compareAndSet(current, value))
+            return current;
+      }
+   }
+
+   private static final class Entry
+   {
+      private final Throwable example;
+      private final AtomicLong count = new AtomicLong();
+      private volatile long lastSeen;
+      private volatile boolean reported;
+
+      Entry(final Throwable example, final long now)
+      {
+         this.example = example;
+         this.lastSeen = now;
+      }
+   }
+}
@@ -0,0 +1,49 @@
+package ${package};
+
+/**
+ * Fingerprint of an exception, the same for exceptions of the same type thrown from the same place: a 64 bit hash of
+ * the exception type and the class, method and line of its top stack frames. Each value is folded in with an
+ * exclusive or followed by a multiplication by the 64 bit FNV prime, starting from the FNV offset basis. The values
+ * folded in are the 32 bit <code>String.hashCode()</code> of the names rather than their bytes, so this is not FNV-1a:
+ * names whose hash codes collide give the same fingerprint, which is accepted for grouping exceptions.
+ */
+public final class ExceptionFingerprint
+{
+   private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+   private static final long PRIME = 0x100000001b3L;
+
+   private ExceptionFingerprint()
+   {
+   }
+
+   /**
+    * @param exception exception to fingerprint
+    * @param frames maximum number of top stack frames included
+    */
+   public static long of(final Throwable exception, final int frames)
+   {
+      final StackTraceElement[] stackTrace = exception.getStackTrace();
+      return of(exception.getClass().getName(), stackTrace, Math.min(frames, stackTrace.length));
+   }
+
+   /**
+    * @param type name of the exception type
+    * @param stackTrace stack trace of the exception
+    * @param depth number of top stack frames included, at most the length of the stack trace
+    */
+   public static long of(final String type, final StackTraceElement[] stackTrace, final int depth)
+   {
+      long hash = mix(OFFSET_BASIS, type.hashCode());
+      for (int i = 0; i < depth; i++) {
+         hash = mix(hash, stackTrace[i].getClassName().hashCode());
+         hash = mix(hash, stackTrace[i].getMethodName().hashCode());
+         hash = mix(hash, stackTrace[i].getLineNumber());
+      }
+      return hash;
+   }
+
+   private static long mix(final long hash, final int value)
+   {
+      return (hash ^ value) * PRIME;
+   }
+}
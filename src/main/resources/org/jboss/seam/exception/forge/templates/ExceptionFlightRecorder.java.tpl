@@ -0,0 +1,325 @@
+package ${package};
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Keeps the last caught exceptions in memory for post-mortem debugging, when logging is throttled or off. The ring of
+ * slots is allocated up front as arrays of primitives: a slot holds the time, the thread id, the ids of the exception
+ * type and of its root cause type, and a reference to the exception's message. Type names are interned once into a
+ * table of at most {@link #MAX_TYPES} names, so {@link #record(Throwable)} allocates nothing once a type has been
+ * seen, and never retains the exception or its classes. Writers claim a sequence number with one atomic increment
+ * and take no lock. A slot only moves forward: a writer takes it with a compare-and-set from the older sequence it
+ * holds, so two writers a full ring apart cannot publish out of order. When the slot is still being written by
+ * another thread the exception is dropped and counted instead. A slot being overwritten while the ring is read is
+ * skipped.
+ * <p>
+ * The recorder is published over JMX as <code>${package}:type=ExceptionFlightRecorder,name=&lt;name&gt;</code>,
+ * whose <code>dump</code> operation snapshots the ring. A registration left by a previous deployment is replaced,
+ * and {@link #close()} removes the registration when the application is undeployed.
+ */
+public final class ExceptionFlightRecorder implements ExceptionFlightRecorderMBean
+{
+   /**
+    * Number of distinct exception types named in the dump, the others are reported as type id 0.
+    */
+   public static final int MAX_TYPES = 1024;
+
+   private static final ConcurrentMap<String, Integer> TYPE_IDS = new ConcurrentHashMap<String, Integer>();
+   private static final AtomicReferenceArray<String> TYPE_NAMES = new AtomicReferenceArray<String>(MAX_TYPES);
+   private static final AtomicLong NEXT_TYPE_ID = new AtomicLong(1);
+
+   /**
+    * Causes followed to find the root cause, a bound against cyclic cause chains.
+    */
+   private static final int MAX_CAUSE_DEPTH = 64;
+
+   private final String name;
+   private final int mask;
+   private final AtomicLong next = new AtomicLong();
+   private final AtomicLong dropped = new AtomicLong();
+   private final ObjectName objectName;
+   /**
+    * Sequence number plus one of the event in each slot, 0 while the slot is empty, negated while it is written.
+    */
+   private final AtomicLongArray sequences;
+   private final AtomicLongArray timestamps;
+   private final AtomicLongArray threads;
+   private final AtomicIntegerArray types;
+   private final AtomicIntegerArray causes;
+   private final AtomicReferenceArray<String> messages;
+
+   /**
+    * @param name name of the recorder, usually <code>Container.handler</code>
+    * @param capacity number of exceptions kept, rounded up to a power of two
+    */
+   public ExceptionFlightRecorder(final String name, final int capacity)
+   {
+      int size = 1;
+      while (size < capacity) {
+         size <<= 1;
+      }
+
+      this.name = name;
+      this.mask = size - 1;
+      this.sequences = new AtomicLongArray(size);
+      this.timestamps = new AtomicLongArray(size);
+      this.threads = new AtomicLongArray(size);
+      this.types = new AtomicIntegerArray(size);
+      this.causes = new AtomicIntegerArray(size);
+      this.messages = new AtomicReferenceArray<String>(size);
+
+      ObjectName registered = null;
+      try {
+         final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         final ObjectName objectName = new ObjectName("${package}:type=ExceptionFlightRecorder,name="
+                  + ObjectName.quote(name));
+         // A registration of a previous deployment holds its class loader and its stale ring
+         if (server.isRegistered(objectName))
+            server.unregisterMBean(objectName);
+         server.registerMBean(this, objectName);
+         registered = objectName;
+      }
+      catch (JMException e) {
+         // exceptions are still recorded, only not published
+      }
+      catch (SecurityException e) {
+         // exceptions are still recorded, only not published
+      }
+      this.objectName = registered;
+   }
+
+   /**
+    * Records the exception, overwriting the oldest one once the ring is full.
+    */
+   public void record(final Throwable exception)
+   {
+      Throwable cause = exception;
+      for (int depth = 0; (depth < MAX_CAUSE_DEPTH) && (cause.getCause() != null); depth++) {
+         cause = cause.getCause();
+      }
+
+      final long sequence = this.next.getAndIncrement();
+      final int index = (int) (sequence & this.mask);
+
+      final long held = this.sequences.get(index);
+      if ((held < 0) || (held > sequence) || !this.sequences.compareAndSet(index, held, -(sequence + 1))) {
+         // Still being written by a writer a full ring behind or ahead, or already holding a newer exception
+         this.dropped.incrementAndGet();
+         return;
+      }
+      this.timestamps.lazySet(index, System.currentTimeMillis());
+      this.threads.lazySet(index, Thread.currentThread().getId());
+      this.types.lazySet(index, typeId(exception.getClass().getName()));
+      this.causes.lazySet(index, cause == exception ? 0 : typeId(cause.getClass().getName()));
+      this.messages.lazySet(index, exception.getMessage());
+      this.sequences.set(index, sequence + 1);
+   }
+
+   /**
+    * Removes the JMX registration of the recorder, to be called when the application is undeployed.
+    */
+   public void close()
+   {
+      if (this.objectName == null)
+         return;
+      try {
+         final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         if (server.isRegistered(this.objectName)
+                  && (server.getClassLoaderFor(this.objectName) == ExceptionFlightRecorder.class.getClassLoader()))
+            server.unregisterMBean(this.objectName);
+      }
+      catch (JMException e) {
+         // already unregistered
+      }
+   }
+
+   /**
+    * @return the exceptions held by the ring, oldest first
+    */
+   public List<Event> snapshot()
+   {
+      final long end = this.next.get();
+      final long start = Math.max(0, end - this.mask - 1);
+      final List<Event> events = new ArrayList<Event>((int) (end - start));
+
+      for (long sequence = start; sequence < end; sequence++) {
+         final int index = (int) (sequence & this.mask);
+         if (this.sequences.get(index) != sequence + 1)
+            continue;
+
+         final Event event = new Event(sequence, this.timestamps.get(index), this.threads.get(index),
+                  typeName(this.types.get(index)), typeName(this.causes.get(index)), this.messages.get(index));
+
+         // Skipped if the slot was overwritten while it was read
+         if (this.sequences.get(index) == sequence + 1)
+            events.add(event);
+      }
+      return events;
+   }
+
+   @Override
+   public String dump()
+   {
+      final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+      format.setTimeZone(TimeZone.getTimeZone("UTC"));
+      final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+      final List<Event> events = this.snapshot();
+      final StringBuilder dump = new StringBuilder("[").append(this.name).append("] ").append(events.size())
+               .append(" of ").append(this.getRecorded()).append(" exception(s) recorded, ").append(this.getDropped())
+               .append(" dropped\n");
+      for (Event event : events) {
+         final ThreadInfo thread = threadBean.getThreadInfo(event.getThreadId());
+         dump.append('#').append(event.getSequence()).append(' ')
+                  .append(format.format(new Date(event.getTimestamp())))
+                  .append(" [").append(thread == null ? "thread " + event.getThreadId() : thread.getThreadName())
+                  .append("] ").append(event.getType() == null ? "(type not named)" : event.getType());
+         if (event.getMessage() != null)
+            dump.append(": ").append(event.getMessage());
+         if (event.getRootCause() != null)
+            dump.append(" (root cause ").append(event.getRootCause()).append(')');
+         dump.append('\n');
+      }
+      return dump.toString();
+   }
+
+   @Override
+   public int getCapacity()
+   {
+      return this.mask + 1;
+   }
+
+   @Override
+   public long getRecorded()
+   {
+      return this.next.get();
+   }
+
+   @Override
+   public long getDropped()
+   {
+      return this.dropped.get();
+   }
+
+   @Override
+   public void clear()
+   {
+      for (int i = 0; i <= this.mask; i++) {
+         this.sequences.set(i, 0);
+         this.messages.set(i, null);
+      }
+      this.next.set(0);
+      this.dropped.set(0);
+   }
+
+   /**
+    * @return the id of the type name, 0 once {@link #MAX_TYPES} names are known
+    */
+   private static int typeId(final String type)
+   {
+      final Integer known = TYPE_IDS.get(type);
+      if (known != null)
+         return known.intValue();
+
+      synchronized (TYPE_IDS) {
+         final Integer raced = TYPE_IDS.get(type);
+         if (raced != null)
+            return raced.intValue();
+         if (NEXT_TYPE_ID.get() >= MAX_TYPES)
+            return 0;
+
+         final int id = (int) NEXT_TYPE_ID.getAndIncrement();
+         TYPE_NAMES.set(id, type);
+         TYPE_IDS.put(type, Integer.valueOf(id));
+         return id;
+      }
+   }
+
+   private static String typeName(final int id)
+   {
+      return id == 0 ? null : TYPE_NAMES.get(id);
+   }
+
+   /**
+    * A recorded exception, copied out of the ring.
+    */
+   public static final class Event
+   {
+      private final long sequence;
+      private final long timestamp;
+      private final long threadId;
+      private final String type;
+      private final String rootCause;
+      private final String message;
+
+      Event(final long sequence, final long timestamp, final long threadId, final String type,
+               final String rootCause, final String message)
+      {
+         this.sequence = sequence;
+         this.timestamp = timestamp;
+         this.threadId = threadId;
+         this.type = type;
+         this.rootCause = rootCause;
+         this.message = message;
+      }
+
+      /**
+       * @return number of exceptions recorded before this one
+       */
+      public long getSequence()
+      {
+         return sequence;
+      }
+
+      /**
+       * @return time the exception was recorded, in milliseconds since the epoch
+       */
+      public long getTimestamp()
+      {
+         return timestamp;
+      }
+
+      public long getThreadId()
+      {
+         return threadId;
+      }
+
+      /**
+       * @return name of the exception type, null if the type table was full
+       */
+      public String getType()
+      {
+         return type;
+      }
+
+      /**
+       * @return name of the type of the innermost cause, null if the exception has no cause
+       */
+      public String getRootCause()
+      {
+         return rootCause;
+      }
+
+      public String getMessage()
+      {
+         return message;
+      }
+   }
+}
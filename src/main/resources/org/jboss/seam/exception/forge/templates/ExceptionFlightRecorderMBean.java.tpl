@@ -0,0 +1,29 @@
+package ${package};
+
+/**
+ * Management interface of {@link ExceptionFlightRecorder}, registered on the platform MBean server.
+ */
+public interface ExceptionFlightRecorderMBean
+{
+   /**
+    * @return number of exceptions the ring holds
+    */
+   int getCapacity();
+
+   /**
+    * @return number of exceptions recorded since the recorder was created or cleared, including overwritten ones
+    */
+   long getRecorded();
+
+   /**
+    * @return number of exceptions not kept because their slot was still being written by another thread
+    */
+   long getDropped();
+
+   /**
+    * @return one line per exception held by the ring, oldest first
+    */
+   String dump();
+
+   void clear();
+}
@@ -0,0 +1,43 @@
+package ${package};
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Throughput of the handler chain of {@link ${exceptionType}}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ${className}
+{
+   private HandlerBenchmarkContainer container;
+   private ${exceptionType} exception;
+
+   @Setup
+   public void start()
+   {
+      this.container = HandlerBenchmarkContainer.start();
+      this.exception = HandlerBenchmarkContainer.instantiate(${exceptionType}.class);
+   }
+
+   @TearDown
+   public void stop()
+   {
+      this.container.stop();
+   }
+
+   @Benchmark
+   public boolean fire()
+   {
+      return this.container.fire(this.exception);
+   }
+}
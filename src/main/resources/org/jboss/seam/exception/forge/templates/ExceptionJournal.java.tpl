@@ -0,0 +1,289 @@
+package ${package};
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of caught exceptions. Each exception is written as a compact binary record, its timestamp, type,
+ * fingerprint, thread, message and top stack frames, straight into a memory-mapped segment file: nothing is formatted
+ * and no string is built on the failure path. A new segment is started when the current one is full and only the last
+ * <code>maxSegments</code> segments are kept. Records are in the file as soon as {@link #append(Throwable)} returns
+ * and survive a crash of the JVM; {@link #flush()} forces them to disk. Decode a journal with
+ * <code>ExceptionJournalReader</code>.
+ * <p>
+ * A segment, <code>&lt;name&gt;-&lt;sequence&gt;.journal</code>, starts with a header (magic, version, creation time)
+ * followed by records, each starting with a kind byte written after the rest of the record, so a record cut short by a
+ * crash reads as the end of the segment. Type, thread, class and method names are written once per segment as string
+ * records and referenced by id from the exception records.
+ */
+public final class ExceptionJournal
+{
+   static final int MAGIC = 0x454a524e;
+   static final int VERSION = 1;
+   static final byte END = 0;
+   static final byte STRING = 1;
+   static final byte EXCEPTION = 2;
+   static final String SUFFIX = ".journal";
+   static final int MAX_MESSAGE_CHARS = 1024;
+   static final int MAX_NAME_CHARS = 1024;
+
+   /**
+    * System property replacing the directory given to the constructor.
+    */
+   public static final String DIRECTORY_PROPERTY = "exception.journal.dir";
+
+   private static final Logger LOG = Logger.getLogger(ExceptionJournal.class.getName());
+
+   private final File directory;
+   private final String name;
+   private final int segmentSize;
+   private final int maxSegments;
+   private final int frames;
+   private final Map<String, Integer> strings = new HashMap<String, Integer>();
+   private final int[] frameIds;
+   private MappedByteBuffer buffer;
+   private int committed;
+   private long sequence;
+   private boolean failed;
+
+   /**
+    * @param directory directory of the segment files, replaced by the <code>exception.journal.dir</code> property
+    * @param name name of the journal, prefix of its segment files
+    * @param segmentSize size of a segment file in bytes
+    * @param maxSegments number of segment files kept, the oldest are deleted
+    * @param frames number of top stack frames recorded, at most 127
+    */
+   public ExceptionJournal(final String directory, final String name, final int segmentSize, final int maxSegments,
+            final int frames)
+   {
+      this.directory = new File(System.getProperty(DIRECTORY_PROPERTY, directory));
+      this.name = name;
+      this.segmentSize = segmentSize;
+      this.maxSegments = maxSegments;
+      this.frames = Math.min(frames, Byte.MAX_VALUE);
+      this.frameIds = new int[2 * this.frames];
+
+      final List<File> existing = segments(this.directory, name);
+      if (!existing.isEmpty())
+         this.sequence = sequenceOf(existing.get(existing.size() - 1), name);
+   }
+
+   /**
+    * Writes a record of the exception. Exceptions whose record does not fit in a segment are not recorded; after an
+    * I/O error the journal logs it once and records nothing more.
+    */
+   public synchronized void append(final Throwable exception)
+   {
+      if (this.failed)
+         return;
+
+      try {
+         if (this.buffer == null)
+            this.roll();
+         if (!this.tryWrite(exception)) {
+            this.roll();
+            // A record larger than a segment is not recorded
+            this.tryWrite(exception);
+         }
+      }
+      catch (IOException e) {
+         this.failed = true;
+         LOG.log(Level.SEVERE, "Exception journal [" + this.name + "] in [" + this.directory
+                  + "] failed, exceptions are no longer recorded", e);
+      }
+   }
+
+   /**
+    * Forces the records written so far to disk.
+    */
+   public synchronized void flush()
+   {
+      if (this.buffer != null)
+         this.buffer.force();
+   }
+
+   /**
+    * @return false if the segment is full, the partial record is then cleared
+    */
+   private boolean tryWrite(final Throwable exception)
+   {
+      try {
+         this.write(exception);
+         return true;
+      }
+      catch (BufferOverflowException e) {
+         // Cleared so the next record does not end in front of stale bytes
+         for (int i = this.committed; i < this.buffer.position(); i++) {
+            this.buffer.put(i, END);
+         }
+         this.buffer.position(this.committed);
+         return false;
+      }
+   }
+
+   private void write(final Throwable exception)
+   {
+      final long timestamp = System.currentTimeMillis();
+      final String type = exception.getClass().getName();
+      final StackTraceElement[] stackTrace = exception.getStackTrace();
+      final int depth = Math.min(this.frames, stackTrace.length);
+
+      // Strings first, each is a record of its own and must not be interleaved with the exception record
+      final int typeId = this.stringId(type);
+      final int threadId = this.stringId(Thread.currentThread().getName());
+      for (int i = 0; i < depth; i++) {
+         this.frameIds[2 * i] = this.stringId(stackTrace[i].getClassName());
+         this.frameIds[2 * i + 1] = this.stringId(stackTrace[i].getMethodName());
+      }
+
+      final int start = this.buffer.position();
+      this.buffer.put(END);
+      this.buffer.putLong(timestamp);
+      this.buffer.putInt(typeId);
+      this.buffer.putLong(ExceptionFingerprint.of(type, stackTrace, depth));
+      this.buffer.putInt(threadId);
+      putString(this.buffer, exception.getMessage(), MAX_MESSAGE_CHARS);
+      this.buffer.put((byte) depth);
+      for (int i = 0; i < depth; i++) {
+         this.buffer.putInt(this.frameIds[2 * i]);
+         this.buffer.putInt(this.frameIds[2 * i + 1]);
+         this.buffer.putInt(stackTrace[i].getLineNumber());
+      }
+      this.buffer.put(start, EXCEPTION);
+      this.committed = this.buffer.position();
+   }
+
+   private int stringId(final String value)
+   {
+      final Integer known = this.strings.get(value);
+      if (known != null)
+         return known.intValue();
+
+      final int id = this.strings.size() + 1;
+      final int start = this.buffer.position();
+      this.buffer.put(END);
+      this.buffer.putInt(id);
+      putString(this.buffer, value, MAX_NAME_CHARS);
+      this.buffer.put(start, STRING);
+      this.committed = this.buffer.position();
+      this.strings.put(value, Integer.valueOf(id));
+      return id;
+   }
+
+   /**
+    * Starts a new segment, the string ids start over with it.
+    */
+   private void roll() throws IOException
+   {
+      if (this.buffer != null)
+         this.buffer.force();
+      this.buffer = null;
+      this.strings.clear();
+
+      if (!this.directory.isDirectory() && !this.directory.mkdirs())
+         throw new IOException("Cannot create directory " + this.directory);
+
+      File file;
+      do {
+         this.sequence++;
+         file = new File(this.directory, String.format("%s-%010d%s", this.name, this.sequence, SUFFIX));
+      } while (file.exists());
+      final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+         raf.setLength(this.segmentSize);
+         this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+      }
+      finally {
+         raf.close();
+      }
+      this.buffer.putInt(MAGIC);
+      this.buffer.putInt(VERSION);
+      this.buffer.putLong(System.currentTimeMillis());
+      this.committed = this.buffer.position();
+
+      final List<File> segments = segments(this.directory, this.name);
+      for (int i = 0; i < segments.size() - this.maxSegments; i++) {
+         // Fails while the segment is still mapped on some platforms, it is deleted on a later roll
+         if (!segments.get(i).delete())
+            LOG.warning("Exception journal [" + this.name + "] could not delete old segment [" + segments.get(i)
+                     + "]");
+      }
+   }
+
+   /**
+    * @return the segment files of the journal, oldest first
+    */
+   static List<File> segments(final File directory, final String name)
+   {
+      final List<File> segments = new ArrayList<File>();
+      final File[] files = directory.listFiles();
+      if (files != null) {
+         for (File file : files) {
+            if (sequenceOf(file, name) > 0)
+               segments.add(file);
+         }
+      }
+      Collections.sort(segments);
+      return segments;
+   }
+
+   /**
+    * @return the sequence number of the segment, or 0 if the file is not a segment of the journal
+    */
+   static long sequenceOf(final File file, final String name)
+   {
+      final String fileName = file.getName();
+      if (!fileName.startsWith(name + "-") || !fileName.endsWith(SUFFIX))
+         return 0;
+      try {
+         return Long.parseLong(fileName.substring(name.length() + 1, fileName.length() - SUFFIX.length()));
+      }
+      catch (NumberFormatException e) {
+         return 0;
+      }
+   }
+
+   /**
+    * Writes the length in bytes, -1 for null, and the characters encoded one by one as in modified UTF-8, without an
+    * intermediate byte array.
+    */
+   private static void putString(final ByteBuffer buffer, final String value, final int maxChars)
+   {
+      if (value == null) {
+         buffer.putShort((short) -1);
+         return;
+      }
+
+      final int lengthPosition = buffer.position();
+      buffer.putShort((short) 0);
+      final int length = Math.min(value.length(), maxChars);
+      for (int i = 0; i < length; i++) {
+         final char c = value.charAt(i);
+         if ((c > 0) && (c < 0x80)) {
+            buffer.put((byte) c);
+         }
+         else if (c < 0x800) {
+            buffer.put((byte) (0xc0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3f)));
+         }
+         else {
+            buffer.put((byte) (0xe0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+            buffer.put((byte) (0x80 | (c & 0x3f)));
+         }
+      }
+      buffer.putShort(lengthPosition, (short) (buffer.position() - lengthPosition - 2));
+   }
+}
@@ -0,0 +1,232 @@
+package ${package};
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Decodes the segments written by {@link ExceptionJournal}. Segments can be read while the journal is being written,
+ * the records appended so far are returned. Run it to print a journal:
+ *
+ * <pre>
+ * java ExceptionJournalReader &lt;directory&gt; [journal name]
+ * </pre>
+ *
+ * prints the records of every journal in the directory, or of the given one, oldest first.
+ */
+public final class ExceptionJournalReader
+{
+   private ExceptionJournalReader()
+   {
+   }
+
+   public static void main(final String[] args) throws IOException
+   {
+      if ((args.length < 1) || (args.length > 2)) {
+         System.err.println("Usage: ExceptionJournalReader <directory> [journal name]");
+         System.exit(2);
+      }
+
+      final File directory = new File(args[0]);
+      final List<File> segments = new ArrayList<File>();
+      if (args.length == 2) {
+         segments.addAll(ExceptionJournal.segments(directory, args[1]));
+      }
+      else {
+         final File[] files = directory.listFiles();
+         if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+               if (file.getName().endsWith(ExceptionJournal.SUFFIX))
+                  segments.add(file);
+            }
+         }
+      }
+
+      for (File segment : segments) {
+         System.out.println("== " + segment.getName());
+         for (Record record : read(segment)) {
+            System.out.println(record);
+         }
+      }
+   }
+
+   /**
+    * @param directory directory of the segment files
+    * @param name name of the journal
+    * @return the records of all segments of the journal, oldest first
+    * @throws IOException if a segment cannot be read
+    */
+   public static List<Record> read(final File directory, final String name) throws IOException
+   {
+      final List<Record> records = new ArrayList<Record>();
+      for (File segment : ExceptionJournal.segments(directory, name)) {
+         records.addAll(read(segment));
+      }
+      return records;
+   }
+
+   /**
+    * @param segment segment file
+    * @return the records of the segment, up to the first one that was not completely written
+    * @throws IOException if the file cannot be read or is not a journal segment
+    */
+   public static List<Record> read(final File segment) throws IOException
+   {
+      final ByteBuffer buffer;
+      final RandomAccessFile raf = new RandomAccessFile(segment, "r");
+      try {
+         buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+      }
+      finally {
+         raf.close();
+      }
+
+      if ((buffer.remaining() < 16) || (buffer.getInt() != ExceptionJournal.MAGIC))
+         throw new IOException(segment + " is not an exception journal segment");
+      final int version = buffer.getInt();
+      if (version != ExceptionJournal.VERSION)
+         throw new IOException(segment + " has unsupported version " + version);
+      buffer.getLong();
+
+      final Map<Integer, String> strings = new HashMap<Integer, String>();
+      final List<Record> records = new ArrayList<Record>();
+      try {
+         while (buffer.hasRemaining()) {
+            final byte kind = buffer.get();
+            if (kind == ExceptionJournal.STRING) {
+               final int id = buffer.getInt();
+               strings.put(Integer.valueOf(id), getString(buffer));
+            }
+            else if (kind == ExceptionJournal.EXCEPTION) {
+               final long timestamp = buffer.getLong();
+               final String type = strings.get(Integer.valueOf(buffer.getInt()));
+               final long fingerprint = buffer.getLong();
+               final String thread = strings.get(Integer.valueOf(buffer.getInt()));
+               final String message = getString(buffer);
+               final StackTraceElement[] frames = new StackTraceElement[buffer.get()];
+               for (int i = 0; i < frames.length; i++) {
+                  final String className = strings.get(Integer.valueOf(buffer.getInt()));
+                  final String methodName = strings.get(Integer.valueOf(buffer.getInt()));
+                  frames[i] = new StackTraceElement(className, methodName, null, buffer.getInt());
+               }
+               records.add(new Record(timestamp, type, fingerprint, thread, message, frames));
+            }
+            else
+               break;
+         }
+      }
+      catch (BufferUnderflowException e) {
+         // the segment ends within a record
+      }
+      return records;
+   }
+
+   private static String getString(final ByteBuffer buffer)
+   {
+      final int length = buffer.getShort();
+      if (length < 0)
+         return null;
+
+      final StringBuilder value = new StringBuilder(length);
+      final int end = buffer.position() + length;
+      while (buffer.position() < end) {
+         final int b = buffer.get() & 0xff;
+         if (b < 0x80)
+            value.append((char) b);
+         else if (b < 0xe0)
+            value.append((char) (((b & 0x1f) << 6) | (buffer.get() & 0x3f)));
+         else
+            value.append((char) (((b & 0x0f) << 12) | ((buffer.get() & 0x3f) << 6) | (buffer.get() & 0x3f)));
+      }
+      return value.toString();
+   }
+
+   /**
+    * A decoded exception record.
+    */
+   public static final class Record
+   {
+      private final long timestamp;
+      private final String type;
+      private final long fingerprint;
+      private final String thread;
+      private final String message;
+      private final StackTraceElement[] frames;
+
+      Record(final long timestamp, final String type, final long fingerprint, final String thread,
+               final String message, final StackTraceElement[] frames)
+      {
+         this.timestamp = timestamp;
+         this.type = type;
+         this.fingerprint = fingerprint;
+         this.thread = thread;
+         this.message = message;
+         this.frames = frames;
+      }
+
+      /**
+       * @return milliseconds since the epoch at which the exception was recorded
+       */
+      public long getTimestamp()
+      {
+         return timestamp;
+      }
+
+      public String getType()
+      {
+         return type;
+      }
+
+      /**
+       * @return hash of the type and top frames, equal for exceptions thrown from the same place
+       */
+      public long getFingerprint()
+      {
+         return fingerprint;
+      }
+
+      public String getThread()
+      {
+         return thread;
+      }
+
+      public String getMessage()
+      {
+         return message;
+      }
+
+      public StackTraceElement[] getFrames()
+      {
+         return frames.clone();
+      }
+
+      @Override
+      public String toString()
+      {
+         final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+         format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+         final StringBuilder text = new StringBuilder(format.format(new Date(this.timestamp))).append(" [")
+                  .append(this.thread).append("] ").append(this.type);
+         if (this.message != null)
+            text.append(": ").append(this.message);
+         text.append(" (fingerprint ").append(Long.toHexString(this.fingerprint)).append(')');
+         for (StackTraceElement frame : this.frames) {
+            text.append("\n\tat ").append(frame);
+         }
+         return text.toString();
+      }
+   }
+}
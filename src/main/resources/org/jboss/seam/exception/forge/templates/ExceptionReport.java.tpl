@@ -0,0 +1,67 @@
+package ${package};
+
+/**
+ * Minimal data of a caught exception, copied on the handler thread. Instances are preallocated slots of the
+ * <code>AsyncExceptionReporter</code> ring buffer and are reused once a batch has been written: sinks must copy what
+ * they keep.
+ */
+public final class ExceptionReport
+{
+   private long timestamp;
+   private String handler;
+   private String exceptionType;
+   private String message;
+   private String threadName;
+
+   void fill(final String handler, final Throwable exception)
+   {
+      this.timestamp = System.currentTimeMillis();
+      this.handler = handler;
+      this.exceptionType = exception.getClass().getName();
+      this.message = exception.getMessage();
+      this.threadName = Thread.currentThread().getName();
+   }
+
+   void clear()
+   {
+      this.handler = null;
+      this.exceptionType = null;
+      this.message = null;
+      this.threadName = null;
+   }
+
+   /**
+    * @return time the exception was caught, in milliseconds since the epoch
+    */
+   public long getTimestamp()
+   {
+      return timestamp;
+   }
+
+   public String getHandler()
+   {
+      return handler;
+   }
+
+   public String getExceptionType()
+   {
+      return exceptionType;
+   }
+
+   public String getMessage()
+   {
+      return message;
+   }
+
+   public String getThreadName()
+   {
+      return threadName;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "[" + handler + "] " + exceptionType + ": " + message + " (thread " + threadName + ", at " + timestamp
+               + ")";
+   }
+}
@@ -0,0 +1,18 @@
+package ${package};
+
+import java.util.List;
+
+/**
+ * Destination of the exception reports drained by an <code>AsyncExceptionReporter</code>, such as a database table.
+ * Called from the single consumer thread of the reporter.
+ */
+public interface ExceptionReportSink
+{
+   /**
+    * Writes a batch of reports. The reports are reused after this method returns, copy whatever must be kept.
+    *
+    * @param batch reports in the order they were caught
+    * @throws Exception if the batch could not be written, it is logged and dropped
+    */
+   void write(List<ExceptionReport> batch) throws Exception;
+}
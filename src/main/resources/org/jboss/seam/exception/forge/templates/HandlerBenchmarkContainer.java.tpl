@@ -0,0 +1,83 @@
+package ${package};
+
+import java.lang.reflect.Constructor;
+
+import javax.enterprise.inject.spi.BeanManager;
+
+import org.jboss.solder.exception.control.ExceptionToCatch;
+import org.jboss.weld.environment.se.Weld;
+import org.jboss.weld.environment.se.WeldContainer;
+
+/**
+ * CDI container booted by the generated handler benchmarks. Exceptions are fired through Seam Catch the way the
+ * application fires them, so every benchmark measures the complete handler chain of its exception type.
+ */
+public final class HandlerBenchmarkContainer
+{
+   private final Weld weld;
+   private final BeanManager beanManager;
+
+   private HandlerBenchmarkContainer(final Weld weld, final WeldContainer container)
+   {
+      this.weld = weld;
+      this.beanManager = container.getBeanManager();
+   }
+
+   /**
+    * Boots a Weld SE container with the project's beans, including its Exception Handler containers.
+    */
+   public static HandlerBenchmarkContainer start()
+   {
+      final Weld weld = new Weld();
+      return new HandlerBenchmarkContainer(weld, weld.initialize());
+   }
+
+   /**
+    * Fires the exception through Seam Catch.
+    *
+    * @return true if a handler marked the exception handled
+    */
+   public boolean fire(final Throwable exception)
+   {
+      final ExceptionToCatch event = new ExceptionToCatch(exception);
+      try {
+         this.beanManager.fireEvent(event);
+      }
+      catch (RuntimeException rethrown) {
+         // A handler rethrew the exception, which is part of the measured chain
+         return false;
+      }
+      return event.isHandled();
+   }
+
+   public void stop()
+   {
+      this.weld.shutdown();
+   }
+
+   /**
+    * Creates an instance of the exception type through its (String), () or (String, Throwable) constructor.
+    */
+   public static <T extends Throwable> T instantiate(final Class<T> type)
+   {
+      try {
+         for (Constructor<?> constructor : type.getConstructors()) {
+            final Class<?>[] parameters = constructor.getParameterTypes();
+            if ((parameters.length == 1) && (parameters[0] == String.class))
+               return type.cast(constructor.newInstance("Benchmark " + type.getSimpleName()));
+         }
+         for (Constructor<?> constructor : type.getConstructors()) {
+            final Class<?>[] parameters = constructor.getParameterTypes();
+            if (parameters.length == 0)
+               return type.cast(constructor.newInstance());
+            if ((parameters.length == 2) && (parameters[0] == String.class) && (parameters[1] == Throwable.class))
+               return type.cast(constructor.newInstance("Benchmark " + type.getSimpleName(), null));
+         }
+      }
+      catch (Exception e) {
+         throw new IllegalStateException("Could not create an instance of " + type.getName(), e);
+      }
+      throw new IllegalStateException(type.getName()
+               + " has no (String), () or (String, Throwable) constructor, edit its benchmark to create one");
+   }
+}
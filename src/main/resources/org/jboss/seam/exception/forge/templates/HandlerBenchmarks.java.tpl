@@ -0,0 +1,28 @@
+package ${package};
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the generated handler benchmarks, reporting throughput and, through the GC profiler, the allocation rate of
+ * each handler chain. An optional argument restricts the run to the benchmarks matching that regular expression.
+ */
+public final class HandlerBenchmarks
+{
+   private HandlerBenchmarks()
+   {
+   }
+
+   public static void main(final String[] args) throws RunnerException
+   {
+      final Options options = new OptionsBuilder()
+               .include(args.length > 0 ? args[0] : HandlerBenchmarks.class.getPackage().getName() + ".*Benchmark")
+               .addProfiler(GCProfiler.class)
+               .forks(1)
+               .build();
+      new Runner(options).run();
+   }
+}
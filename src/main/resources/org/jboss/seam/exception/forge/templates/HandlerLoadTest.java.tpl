@@ -0,0 +1,170 @@
+package ${package};
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exception storm against the project's handler chains. Boots the CDI container, then fires the exception types below
+ * through Seam Catch from several threads at a target rate and prints the percentiles of the handling latency of each
+ * type. Events are fired on a fixed schedule and their latency is measured from the time they were due, so a slow
+ * handler chain shows up in the latencies instead of silently lowering the rate. Settings are read from system
+ * properties: <code>load.threads</code>, <code>load.rate</code> (events per second, all threads together),
+ * <code>load.duration</code> and <code>load.warmup</code> (seconds) and <code>load.virtual</code> (use virtual threads
+ * when the JVM has them).
+ */
+public final class ${className}
+{
+   private static final Class<?>[] EXCEPTION_TYPES = { ${exceptionTypes} };
+   private static final long SPIN_NANOS = calibrateSpin();
+
+   private ${className}()
+   {
+   }
+
+   public static void main(final String[] args) throws Exception
+   {
+      final int threads = Integer.getInteger("load.threads", ${threads});
+      final int rate = Integer.getInteger("load.rate", ${rate});
+      final int duration = Integer.getInteger("load.duration", ${duration});
+      final int warmup = Integer.getInteger("load.warmup", ${warmup});
+      final boolean virtual = Boolean.parseBoolean(System.getProperty("load.virtual", "true"));
+
+      final HandlerBenchmarkContainer container = HandlerBenchmarkContainer.start();
+      try {
+         if (warmup > 0) {
+            System.out.println("Warming up for " + warmup + " s");
+            run(container, threads, rate, warmup, virtual, null);
+         }
+
+         final LatencyHistogram[] histograms = new LatencyHistogram[EXCEPTION_TYPES.length];
+         for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+         }
+
+         System.out.println("Firing " + rate + " exceptions/s from " + threads + " thread(s) for " + duration + " s");
+         final long start = System.nanoTime();
+         final long fired = run(container, threads, rate, duration, virtual, histograms);
+         final double seconds = (System.nanoTime() - start) / 1e9;
+
+         System.out.println(String.format(Locale.ROOT, "%d exceptions in %.1f s (%.0f/s)", fired, seconds, fired
+                  / seconds));
+         System.out.println(String.format(Locale.ROOT, "%-50s %10s %10s %10s %10s %10s %10s %10s", "exception type",
+                  "count", "p50 us", "p90 us", "p99 us", "p99.9 us", "p99.99 us", "max us"));
+         for (int i = 0; i < EXCEPTION_TYPES.length; i++) {
+            final LatencyHistogram histogram = histograms[i];
+            System.out.println(String.format(Locale.ROOT, "%-50s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f",
+                     EXCEPTION_TYPES[i].getName(), histogram.getCount(), histogram.getPercentile(50) / 1e3,
+                     histogram.getPercentile(90) / 1e3, histogram.getPercentile(99) / 1e3,
+                     histogram.getPercentile(99.9) / 1e3, histogram.getPercentile(99.99) / 1e3,
+                     histogram.getMax() / 1e3));
+         }
+      }
+      finally {
+         container.stop();
+      }
+   }
+
+   /**
+    * @return number of exceptions fired
+    */
+   private static long run(final HandlerBenchmarkContainer container, final int threads, final int rate,
+            final int seconds, final boolean virtual, final LatencyHistogram[] histograms) throws InterruptedException
+   {
+      final ExecutorService executor = newExecutor(threads, virtual);
+      final CountDownLatch done = new CountDownLatch(threads);
+      final AtomicLong fired = new AtomicLong();
+      // Each thread fires every interval, offset from the others so the events are evenly spread
+      final long interval = TimeUnit.SECONDS.toNanos(1) * threads / Math.max(1, rate);
+      final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+      final long end = start + TimeUnit.SECONDS.toNanos(seconds);
+
+      for (int t = 0; t < threads; t++) {
+         final long offset = interval * t / threads;
+         executor.execute(new Runnable()
+         {
+            @Override
+            public void run()
+            {
+               try {
+                  final Throwable[] exceptions = new Throwable[EXCEPTION_TYPES.length];
+                  for (int i = 0; i < exceptions.length; i++) {
+                     exceptions[i] = HandlerBenchmarkContainer.instantiate(EXCEPTION_TYPES[i].asSubclass(
+                              Throwable.class));
+                  }
+
+                  long due = start + offset;
+                  for (long n = 0; due < end; n++, due += interval) {
+                     // Sleeps overshoot, the last stretch is spun so the overshoot does not add to the latencies
+                     long wait = due - System.nanoTime();
+                     while (wait > 0) {
+                        if (wait > SPIN_NANOS)
+                           TimeUnit.NANOSECONDS.sleep(Math.min(wait - SPIN_NANOS, TimeUnit.MILLISECONDS.toNanos(1)));
+                        else
+                           Thread.yield();
+                        wait = due - System.nanoTime();
+                     }
+
+                     final int type = (int) (n % exceptions.length);
+                     container.fire(exceptions[type]);
+                     if (histograms != null)
+                        histograms[type].record(System.nanoTime() - due);
+                     fired.incrementAndGet();
+                  }
+               }
+               catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+               }
+               finally {
+                  done.countDown();
+               }
+            }
+         });
+      }
+
+      done.await();
+      executor.shutdown();
+      return fired.get();
+   }
+
+   /**
+    * @return how long before an event is due sleeping stops and spinning starts, twice the measured sleep overshoot
+    */
+   private static long calibrateSpin()
+   {
+      long overshoot = 0;
+      try {
+         for (int i = 0; i < 20; i++) {
+            final long start = System.nanoTime();
+            TimeUnit.MICROSECONDS.sleep(100);
+            overshoot = Math.max(overshoot, System.nanoTime() - start - TimeUnit.MICROSECONDS.toNanos(100));
+         }
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      return Math.min(2 * overshoot, TimeUnit.MILLISECONDS.toNanos(5));
+   }
+
+   /**
+    * Uses a virtual thread per task on JVMs that have them, looked up reflectively so the harness still compiles and
+    * runs on older JVMs.
+    */
+   private static ExecutorService newExecutor(final int threads, final boolean virtual)
+   {
+      if (virtual) {
+         try {
+            final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+         }
+         catch (Exception e) {
+            // no virtual threads on this JVM
+         }
+      }
+      return Executors.newFixedThreadPool(threads);
+   }
+}
@@ -0,0 +1,149 @@
+package ${package};
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Invocation counts and latencies of the instrumented exception handlers. Recording is lock-free: counts use
+ * {@link StripedCounter} cells and latencies a {@link LatencyHistogram} per handler, so request threads do not contend
+ * with each other. The project has one registry, published over JMX as <code>${package}:type=HandlerMetrics</code>. A
+ * registration left by a previous deployment is replaced, and {@link #unregister()} removes the registration when the
+ * application is undeployed, so the server does not keep this class loader.
+ */
+public final class HandlerMetrics implements HandlerMetricsMBean
+{
+   private static final ConcurrentMap<String, Metrics> METRICS = new ConcurrentHashMap<String, Metrics>();
+
+   private static final HandlerMetrics INSTANCE = new HandlerMetrics();
+
+   private static final String OBJECT_NAME = "${package}:type=HandlerMetrics";
+
+   static {
+      try {
+         final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         final ObjectName name = new ObjectName(OBJECT_NAME);
+         // A registration of a previous deployment holds its class loader and its stale counts
+         if (server.isRegistered(name))
+            server.unregisterMBean(name);
+         server.registerMBean(INSTANCE, name);
+      }
+      catch (JMException e) {
+         // metrics are still recorded, only not published
+      }
+      catch (SecurityException e) {
+         // metrics are still recorded, only not published
+      }
+   }
+
+   private HandlerMetrics()
+   {
+   }
+
+   /**
+    * Records one invocation of the handler.
+    *
+    * @param handler handler name, <code>Container#method</code>
+    * @param nanos time the handler took
+    */
+   public static void record(final String handler, final long nanos)
+   {
+      Metrics metrics = METRICS.get(handler);
+      if (metrics == null) {
+         final Metrics created = new Metrics();
+         metrics = METRICS.putIfAbsent(handler, created);
+         if (metrics == null)
+            metrics = created;
+      }
+      metrics.invocations.increment();
+      metrics.latencies.record(nanos);
+   }
+
+   public static HandlerMetricsMBean getInstance()
+   {
+      return INSTANCE;
+   }
+
+   /**
+    * Removes the JMX registration of this registry, to be called when the application is undeployed.
+    */
+   public static void unregister()
+   {
+      try {
+         final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         final ObjectName name = new ObjectName(OBJECT_NAME);
+         if (server.isRegistered(name) && server.getClassLoaderFor(name) == HandlerMetrics.class.getClassLoader())
+            server.unregisterMBean(name);
+      }
+      catch (JMException e) {
+         // already unregistered
+      }
+      catch (SecurityException e) {
+         // never registered
+      }
+   }
+
+   @Override
+   public String[] getHandlers()
+   {
+      return new TreeMap<String, Metrics>(METRICS).keySet().toArray(new String[0]);
+   }
+
+   @Override
+   public String getSummary()
+   {
+      final StringBuilder summary = new StringBuilder();
+      for (Map.Entry<String, Metrics> entry : new TreeMap<String, Metrics>(METRICS).entrySet()) {
+         final LatencyHistogram latencies = entry.getValue().latencies;
+         summary.append(entry.getKey())
+                  .append(" count=").append(entry.getValue().invocations.sum())
+                  .append(" p50=").append(latencies.getPercentile(50)).append("ns")
+                  .append(" p99=").append(latencies.getPercentile(99)).append("ns")
+                  .append(" p99.9=").append(latencies.getPercentile(99.9)).append("ns")
+                  .append(" max=").append(latencies.getMax()).append("ns\n");
+      }
+      return summary.toString();
+   }
+
+   @Override
+   public long getInvocationCount(final String handler)
+   {
+      final Metrics metrics = METRICS.get(handler);
+      return metrics == null ? 0 : metrics.invocations.sum();
+   }
+
+   @Override
+   public long getLatencyPercentileNanos(final String handler, final double percentile)
+   {
+      final Metrics metrics = METRICS.get(handler);
+      return metrics == null ? 0 : metrics.latencies.getPercentile(percentile);
+   }
+
+   @Override
+   public long getMaxLatencyNanos(final String handler)
+   {
+      final Metrics metrics = METRICS.get(handler);
+      return metrics == null ? 0 : metrics.latencies.getMax();
+   }
+
+   @Override
+   public void reset()
+   {
+      for (Metrics metrics : METRICS.values()) {
+         metrics.invocations.reset();
+         metrics.latencies.reset();
+      }
+   }
+
+   private static final class Metrics
+   {
+      private final StripedCounter invocations = new StripedCounter();
+      private final LatencyHistogram latencies = new LatencyHistogram();
+   }
+}
@@ -0,0 +1,25 @@
+package ${package};
+
+/**
+ * Management interface of {@link HandlerMetrics}, registered on the platform MBean server.
+ */
+public interface HandlerMetricsMBean
+{
+   /**
+    * @return names of the handlers that recorded at least one invocation
+    */
+   String[] getHandlers();
+
+   /**
+    * @return one line per handler with its invocation count and latency percentiles
+    */
+   String getSummary();
+
+   long getInvocationCount(String handler);
+
+   long getLatencyPercentileNanos(String handler, double percentile);
+
+   long getMaxLatencyNanos(String handler);
+
+   void reset();
+}
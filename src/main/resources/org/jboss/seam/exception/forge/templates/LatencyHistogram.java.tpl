@@ -0,0 +1,98 @@
+package ${package};
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of latencies in nanoseconds. Every power of two is split into 8 linear sub-buckets,
+ * so recorded values are kept with a relative error below 12.5% in a fixed 4 KB of counters. Recording is a single
+ * atomic increment and never allocates.
+ */
+public final class LatencyHistogram
+{
+   private static final int SUB_BUCKET_BITS = 3;
+   private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+   private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+   private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+   private final AtomicLong max = new AtomicLong();
+
+   public void record(final long nanos)
+   {
+      final long value = nanos < 0 ? 0 : nanos;
+      this.counts.incrementAndGet(bucketOf(value));
+
+      long currentMax = this.max.get();
+      while ((value > currentMax) && !this.max.compareAndSet(currentMax, value)) {
+         currentMax = this.max.get();
+      }
+   }
+
+   public long getCount()
+   {
+      long count = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         count += this.counts.get(i);
+      }
+      return count;
+   }
+
+   public long getMax()
+   {
+      return this.max.get();
+   }
+
+   /**
+    * @param percentile percentile between 0 and 100
+    * @return upper bound, in nanoseconds, of the bucket holding the percentile, 0 if nothing was recorded
+    */
+   public long getPercentile(final double percentile)
+   {
+      final long[] snapshot = new long[BUCKETS];
+      long total = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         snapshot[i] = this.counts.get(i);
+         total += snapshot[i];
+      }
+      if (total == 0)
+         return 0;
+
+      final long rank = Math.max(1, (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         seen += snapshot[i];
+         if (seen >= rank)
+            return Math.min(upperBoundOf(i), this.max.get());
+      }
+      return this.max.get();
+   }
+
+   public void reset()
+   {
+      for (int i = 0; i < BUCKETS; i++) {
+         this.counts.set(i, 0);
+      }
+      this.max.set(0);
+   }
+
+   private static int bucketOf(final long value)
+   {
+      if (value < SUB_BUCKETS)
+         return (int) value;
+
+      final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+      final int shift = magnitude - SUB_BUCKET_BITS;
+      final int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+      return (shift + 1) * SUB_BUCKETS + subBucket;
+   }
+
+   private static long upperBoundOf(final int bucket)
+   {
+      if (bucket < SUB_BUCKETS)
+         return bucket;
+
+      final int shift = bucket / SUB_BUCKETS - 1;
+      final long subBucket = bucket % SUB_BUCKETS;
+      return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+   }
+}
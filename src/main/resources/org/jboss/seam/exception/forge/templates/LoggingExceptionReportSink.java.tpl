@@ -0,0 +1,22 @@
+package ${package};
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Default sink of the asynchronous handlers, logs every report. Replace it with a sink persisting the reports where
+ * they are needed.
+ */
+public class LoggingExceptionReportSink implements ExceptionReportSink
+{
+   private static final Logger LOG = Logger.getLogger(LoggingExceptionReportSink.class.getName());
+
+   @Override
+   public void write(final List<ExceptionReport> batch)
+   {
+      for (ExceptionReport report : batch) {
+         LOG.log(Level.SEVERE, report.toString());
+      }
+   }
+}
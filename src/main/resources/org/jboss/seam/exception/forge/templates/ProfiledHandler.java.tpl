@@ -0,0 +1,21 @@
+package ${package};
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import javax.interceptor.InterceptorBinding;
+
+/**
+ * Records the invocation count and latency of the exception handlers of the annotated container, or of the annotated
+ * handler method, in {@link HandlerMetrics}. See {@link ProfiledHandlerInterceptor}.
+ */
+@Inherited
+@InterceptorBinding
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.TYPE, ElementType.METHOD })
+public @interface ProfiledHandler
+{
+}
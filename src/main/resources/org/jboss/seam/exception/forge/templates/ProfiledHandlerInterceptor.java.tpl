@@ -0,0 +1,62 @@
+package ${package};
+
+import java.io.Serializable;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.Interceptor;
+import javax.interceptor.InvocationContext;
+
+import org.jboss.solder.exception.control.Handles;
+
+import ${metricsPackage}.HandlerMetrics;
+
+/**
+ * Times the exception handler methods of the containers annotated with {@link ProfiledHandler} and records them in
+ * {@link HandlerMetrics}, published over JMX. The handler name of a method is computed once, so timing an invocation
+ * allocates nothing; methods without a <code>@Handles</code> parameter are passed through untimed.
+ */
+@ProfiledHandler
+@Interceptor
+public class ProfiledHandlerInterceptor implements Serializable
+{
+   private static final long serialVersionUID = 1L;
+
+   private static final ConcurrentMap<Method, String> NAMES = new ConcurrentHashMap<Method, String>();
+
+   @AroundInvoke
+   public Object profile(final InvocationContext context) throws Exception
+   {
+      final String handler = handlerName(context.getMethod());
+      if (handler.length() == 0)
+         return context.proceed();
+
+      final long start = System.nanoTime();
+      try {
+         return context.proceed();
+      }
+      finally {
+         HandlerMetrics.record(handler, System.nanoTime() - start);
+      }
+   }
+
+   private static String handlerName(final Method method)
+   {
+      String name = NAMES.get(method);
+      if (name == null) {
+         // The empty name marks the methods that are not handlers
+         name = "";
+         for (Annotation[] annotations : method.getParameterAnnotations()) {
+            for (Annotation annotation : annotations) {
+               if (annotation.annotationType() == Handles.class)
+                  name = method.getDeclaringClass().getName() + "#" + method.getName();
+            }
+         }
+         NAMES.putIfAbsent(method, name);
+      }
+      return name;
+   }
+}
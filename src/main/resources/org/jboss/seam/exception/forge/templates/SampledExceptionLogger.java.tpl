@@ -0,0 +1,182 @@
+package ${package};
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rate limited exception logging for exception storms. Each exception type has a lock-free token bucket allowing a
+ * burst of <code>sampleSize</code> log records per interval; occurrences beyond that are only counted, and the count is
+ * logged in a single summary line once per interval. A periodic flush logs the counts left when the occurrences stop.
+ * The generated <code>SampledExceptionLoggerExtension</code> calls {@link #closeAll()} when the application is
+ * undeployed, so the suppressed counts are logged and the flush thread does not keep the class loader.
+ */
+public final class SampledExceptionLogger
+{
+   private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory()
+            {
+               @Override
+               public Thread newThread(final Runnable runnable)
+               {
+                  final Thread thread = new Thread(runnable, "SampledExceptionLogger flush");
+                  thread.setDaemon(true);
+                  return thread;
+               }
+            });
+
+   private static final Set<SampledExceptionLogger> OPEN = Collections
+            .newSetFromMap(new ConcurrentHashMap<SampledExceptionLogger, Boolean>());
+
+   private final Logger logger;
+   private final String handler;
+   private final long intervalNanos;
+   private final long emissionNanos;
+   private final long toleranceNanos;
+   private final ConcurrentMap<Class<?>, Bucket> buckets = new ConcurrentHashMap<Class<?>, Bucket>();
+   private final ScheduledFuture<?> flushTask;
+
+   /**
+    * @param container class declaring the handler, names the logger
+    * @param handler name of the handler method
+    * @param sampleSize number of occurrences of an exception type logged per interval
+    * @param intervalSeconds length of the interval
+    */
+   public SampledExceptionLogger(final Class<?> container, final String handler, final int sampleSize,
+            final int intervalSeconds)
+   {
+      this.logger = Logger.getLogger(container.getName());
+      this.handler = handler;
+      this.intervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+      this.emissionNanos = this.intervalNanos / sampleSize;
+      this.toleranceNanos = this.intervalNanos - this.emissionNanos;
+
+      this.flushTask = FLUSHER.scheduleWithFixedDelay(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            flush(false);
+         }
+      }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+      OPEN.add(this);
+   }
+
+   /**
+    * Logs the exception if its type has a token left, counts it otherwise.
+    *
+    * @return true if the exception was logged
+    */
+   public boolean log(final Throwable exception)
+   {
+      final Bucket bucket = this.bucketOf(exception.getClass());
+      final long now = System.nanoTime();
+
+      final boolean permitted = bucket.tryAcquire(now);
+      if (permitted)
+         this.logger.log(Level.SEVERE, "[" + this.handler + "] " + exception, exception);
+      else
+         bucket.suppressed.incrementAndGet();
+
+      bucket.summarize(now, exception.getClass(), false);
+      return permitted;
+   }
+
+   /**
+    * Stops the periodic flush and logs the occurrences suppressed since the last summary.
+    */
+   public void close()
+   {
+      if (!OPEN.remove(this))
+         return;
+      this.flushTask.cancel(false);
+      this.flush(true);
+   }
+
+   /**
+    * Closes every logger of the application, see {@link #close()}, and stops the flush thread.
+    */
+   public static void closeAll()
+   {
+      for (SampledExceptionLogger logger : OPEN) {
+         logger.close();
+      }
+      FLUSHER.shutdown();
+   }
+
+   /**
+    * @param all if the summary is logged for every exception type, not only those whose interval is over
+    */
+   private void flush(final boolean all)
+   {
+      final long now = System.nanoTime();
+      for (Map.Entry<Class<?>, Bucket> entry : this.buckets.entrySet()) {
+         entry.getValue().summarize(now, entry.getKey(), all);
+      }
+   }
+
+   private Bucket bucketOf(final Class<?> type)
+   {
+      Bucket bucket = this.buckets.get(type);
+      if (bucket == null) {
+         final Bucket created = new Bucket(System.nanoTime());
+         bucket = this.buckets.putIfAbsent(type, created);
+         if (bucket == null)
+            bucket = created;
+      }
+      return bucket;
+   }
+
+   private final class Bucket
+   {
+      /**
+       * Theoretical arrival time of the next record (generic cell rate algorithm), a single CAS per attempt.
+       */
+      private final AtomicLong nextArrival;
+      private final AtomicLong suppressed = new AtomicLong();
+      private final AtomicLong lastSummary;
+
+      Bucket(final long now)
+      {
+         this.nextArrival = new AtomicLong(now);
+         this.lastSummary = new AtomicLong(now);
+      }
+
+      boolean tryAcquire(final long now)
+      {
+         while (true) {
+            final long arrival = this.nextArrival.get();
+            final long start = arrival - now > 0 ? arrival : now;
+            if (start - now > toleranceNanos)
+               return false;
+            if (this.nextArrival.compareAndSet(arrival, start + emissionNanos))
+               return true;
+         }
+      }
+
+      /**
+       * @param force if the summary is logged before the interval is over
+       */
+      void summarize(final long now, final Class<?> type, final boolean force)
+      {
+         final long last = this.lastSummary.get();
+         if ((!force && (now - last < intervalNanos)) || !this.lastSummary.compareAndSet(last, now))
+            return;
+
+         final long count = this.suppressed.getAndSet(0);
+         if (count > 0)
+            logger.log(Level.WARNING, "[" + handler + "] suppressed " + count + " occurrence(s) of " + type.getName()
+                     + " in the last " + TimeUnit.NANOSECONDS.toSeconds(now - last) + "s");
+      }
+   }
+}
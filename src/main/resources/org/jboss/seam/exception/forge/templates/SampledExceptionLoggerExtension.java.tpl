@@ -0,0 +1,18 @@
+package ${package};
+
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.spi.BeforeShutdown;
+import javax.enterprise.inject.spi.Extension;
+
+/**
+ * Closes the {@link SampledExceptionLogger}s when the application is undeployed or the server stops, after they have
+ * logged the occurrences they suppressed. Listed in <code>META-INF/services/javax.enterprise.inject.spi.Extension</code>
+ * so the CDI container notifies it.
+ */
+public class SampledExceptionLoggerExtension implements Extension
+{
+   void shutdown(@Observes final BeforeShutdown event)
+   {
+      SampledExceptionLogger.closeAll();
+   }
+}
@@ -0,0 +1,56 @@
+package ${package};
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spreading its increments over cells picked by thread, in the spirit of
+ * <code>java.util.concurrent.atomic.LongAdder</code>, so threads recording at the same time rarely contend on the same
+ * cache line. Reads sum the cells and are not atomic with respect to concurrent increments.
+ */
+public final class StripedCounter
+{
+   /**
+    * Longs between two cells, keeps every cell on its own 128 byte cache line pair.
+    */
+   private static final int PADDING = 16;
+
+   private static final int CELLS;
+
+   static {
+      int cells = 1;
+      while (cells < Runtime.getRuntime().availableProcessors() * 2) {
+         cells <<= 1;
+      }
+      CELLS = cells;
+   }
+
+   private final AtomicLongArray cells = new AtomicLongArray(CELLS * PADDING);
+
+   public void increment()
+   {
+      add(1);
+   }
+
+   public void add(final long delta)
+   {
+      final long id = Thread.currentThread().getId();
+      final int cell = (int) ((id ^ (id >>> 16)) * 0x9E3779B9L >>> 16) & (CELLS - 1);
+      this.cells.getAndAdd(cell * PADDING, delta);
+   }
+
+   public long sum()
+   {
+      long sum = 0;
+      for (int i = 0; i < CELLS; i++) {
+         sum += this.cells.get(i * PADDING);
+      }
+      return sum;
+   }
+
+   public void reset()
+   {
+      for (int i = 0; i < CELLS; i++) {
+         this.cells.set(i * PADDING, 0);
+      }
+   }
+}
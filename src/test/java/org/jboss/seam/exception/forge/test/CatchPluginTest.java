@@ -16,15 +16,27 @@
  */
 package org.jboss.seam.exception.forge.test;
 
+import java.io.File;
+import java.util.Scanner;
+
+import junit.framework.AssertionFailedError;
+
 import org.jboss.arquillian.api.Deployment;
+import org.jboss.forge.parser.JavaParser;
+import org.jboss.forge.parser.java.JavaClass;
 import org.jboss.forge.project.Project;
+import org.jboss.forge.project.dependencies.DependencyBuilder;
+import org.jboss.forge.project.facets.DependencyFacet;
+import org.jboss.forge.project.facets.JavaSourceFacet;
 import org.jboss.forge.resources.java.JavaResource;
+import org.jboss.forge.spec.javaee.CDIFacet;
 import org.jboss.forge.test.AbstractShellTest;
 import org.jboss.forge.test.SingletonAbstractShellTest;
 import org.jboss.seam.exception.forge.CatchFacet;
 import org.jboss.seam.exception.forge.CatchPlugin;
 import org.jboss.shrinkwrap.api.spec.JavaArchive;
 import org.jboss.solder.exception.control.HandlesExceptions;
+import org.jboss.solder.exception.control.TraversalMode;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -73,6 +85,228 @@ public class CatchPluginTest extends AbstractShellTest
       Assert.assertEquals("example", this.getShell().getCurrentResource().getParent().getParent().getName());
       Assert.assertEquals("com", this.getShell().getCurrentResource().getParent().getParent().getParent().getName());
    }
+
+   @Test
+   public void assertLightweightExceptionAndHandlerAreCreated() throws Exception
+   {
+      initializeJavaProject();
+
+      this.queueInputLines("");
+      this.getShell().execute("seam-catch setup");
+      this.getShell().execute(
+               "seam-catch create-handler-container --named TestContainer --package com.example.exceptionHandler");
+
+      this.getShell().execute(
+               "seam-catch create-exception --named RetryException --package com.example.exceptions --lightweight true"
+                        + " --singleton true --handler-container com.example.exceptionHandler.TestContainer");
+
+      final JavaSourceFacet java = this.getProject().getFacet(JavaSourceFacet.class);
+      final JavaClass exception = (JavaClass) java.getJavaResource("com.example.exceptions.RetryException")
+               .getJavaSource();
+      Assert.assertTrue(exception.toString().contains("public synchronized Throwable fillInStackTrace()"));
+      Assert.assertTrue(exception.toString().contains("public static final RetryException INSTANCE"));
+      Assert.assertTrue(exception.toString().contains("public synchronized Throwable initCause("));
+      Assert.assertTrue(exception.toString().contains("public void setStackTrace("));
+      Assert.assertFalse(exception.hasSyntaxErrors());
+
+      final JavaClass container = (JavaClass) java.getJavaResource("com.example.exceptionHandler.TestContainer")
+               .getJavaSource();
+      Assert.assertTrue(container.hasImport("com.example.exceptions.RetryException"));
+      Assert.assertTrue(container.getMethods().get(0).toString().contains("CaughtException<RetryException>"));
+   }
+
+   @Test
+   public void assertConsolidateMergesTheContainersOfAPackage() throws Exception
+   {
+      initializeJavaProject();
+
+      this.queueInputLines("");
+      this.getShell().execute("seam-catch setup");
+      this.getShell().execute(
+               "seam-catch create-handler-container --named FirstContainer --package com.example.exceptionHandler");
+      this.getShell().execute("handler create --method-name firstHandler --exception-type java.lang.Throwable");
+      this.getShell().execute(
+               "seam-catch create-handler-container --named SecondContainer --package com.example.exceptionHandler");
+      this.getShell().execute(
+               "handler create --method-name secondHandler --exception-type java.lang.IllegalStateException"
+                        + " --breadthFirst true");
+
+      this.getShell().execute("seam-catch consolidate --merge true");
+
+      final JavaSourceFacet java = this.getProject().getFacet(JavaSourceFacet.class);
+      Assert.assertFalse(java.getJavaResource("com.example.exceptionHandler.SecondContainer").exists());
+
+      final JavaClass container = (JavaClass) java.getJavaResource("com.example.exceptionHandler.FirstContainer")
+               .getJavaSource();
+      Assert.assertTrue(container.toString().contains("firstHandler("));
+      Assert.assertTrue(container.toString().contains("secondHandler("));
+      Assert.assertTrue(container.toString().contains("@Handles(during=TraversalMode.BREADTH_FIRST)"));
+      Assert.assertTrue(container.hasImport(TraversalMode.class));
+      Assert.assertFalse(container.hasSyntaxErrors());
+   }
+
+   @Test
+   public void assertConsolidateKeepsContainersReferringToThemselves() throws Exception
+   {
+      initializeJavaProject();
+
+      this.queueInputLines("");
+      this.getShell().execute("seam-catch setup");
+      this.getShell().execute(
+               "seam-catch create-handler-container --named FirstContainer --package com.example.exceptionHandler");
+      this.getShell().execute("handler create --method-name firstHandler --exception-type java.lang.Throwable");
+      this.getShell().execute("handler create --method-name otherHandler --exception-type java.lang.Exception");
+      this.getShell().execute(
+               "seam-catch create-handler-container --named SecondContainer --package com.example.exceptionHandler");
+      this.getShell().execute(
+               "handler create --method-name aggregatedHandler --exception-type java.lang.IllegalStateException"
+                        + " --template aggregate");
+
+      this.getShell().execute("seam-catch consolidate --merge true");
+
+      final JavaSourceFacet java = this.getProject().getFacet(JavaSourceFacet.class);
+      Assert.assertTrue(java.getJavaResource("com.example.exceptionHandler.SecondContainer").exists());
+      Assert.assertFalse(java.getJavaResource("com.example.exceptionHandler.FirstContainer").getJavaSource()
+               .toString().contains("aggregatedHandler("));
+   }
+
+   @Test
+   public void assertConsolidateKeepsContainersReferredToByOtherSources() throws Exception
+   {
+      initializeJavaProject();
+
+      this.queueInputLines("");
+      this.getShell().execute("seam-catch setup");
+      this.getShell().execute(
+               "seam-catch create-handler-container --named FirstContainer --package com.example.exceptionHandler");
+      this.getShell().execute("handler create --method-name firstHandler --exception-type java.lang.Throwable");
+      this.getShell().execute("handler create --method-name otherHandler --exception-type java.lang.Exception");
+      this.getShell().execute(
+               "seam-catch create-handler-container --named SecondContainer --package com.example.exceptionHandler");
+      this.getShell().execute(
+               "handler create --method-name secondHandler --exception-type java.lang.IllegalStateException");
+
+      final JavaSourceFacet java = this.getProject().getFacet(JavaSourceFacet.class);
+      java.saveJavaSource(JavaParser.parse("package com.example.service;\n\n"
+               + "import javax.inject.Inject;\nimport com.example.exceptionHandler.SecondContainer;\n\n"
+               + "public class Service\n{\n   @Inject\n   private SecondContainer container;\n}\n"));
+
+      this.getShell().execute("seam-catch consolidate --merge true");
+
+      Assert.assertTrue(java.getJavaResource("com.example.exceptionHandler.SecondContainer").exists());
+      Assert.assertFalse(java.getJavaResource("com.example.exceptionHandler.FirstContainer").getJavaSource()
+               .toString().contains("secondHandler("));
+   }
+
+   @Test
+   public void assertConsolidateKeepsTheCommentsOfTheMembers() throws Exception
+   {
+      initializeJavaProject();
+
+      this.queueInputLines("");
+      this.getShell().execute("seam-catch setup");
+      this.getShell().execute(
+               "seam-catch create-handler-container --named FirstContainer --package com.example.exceptionHandler");
+      this.getShell().execute("handler create --method-name firstHandler --exception-type java.lang.Throwable");
+      this.getShell().execute("handler create --method-name otherHandler --exception-type java.lang.Exception");
+
+      final JavaSourceFacet java = this.getProject().getFacet(JavaSourceFacet.class);
+      java.saveJavaSource(JavaParser.parse("package com.example.exceptionHandler;\n\n"
+               + "import org.jboss.solder.exception.control.CaughtException;\n"
+               + "import org.jboss.solder.exception.control.Handles;\n"
+               + "import org.jboss.solder.exception.control.HandlesExceptions;\n\n"
+               + "@HandlesExceptions\npublic class SecondContainer\n{\n"
+               + "   // Retried by the caller, only logged here\n"
+               + "   public void secondHandler(@Handles CaughtException<IllegalStateException> caught)\n   {\n"
+               + "      /* nothing else to do */\n      caught.handled();\n   }\n}\n"));
+
+      this.getShell().execute("seam-catch consolidate --merge true");
+
+      Assert.assertFalse(java.getJavaResource("com.example.exceptionHandler.SecondContainer").exists());
+      final String merged = java.getJavaResource("com.example.exceptionHandler.FirstContainer").getJavaSource()
+               .toString();
+      Assert.assertTrue(merged.contains("secondHandler("));
+      Assert.assertTrue(merged.contains("// Retried by the caller, only logged here"));
+      Assert.assertTrue(merged.contains("/* nothing else to do */"));
+   }
+
+   @Test
+   public void assertEnableProfilingBindsTheInterceptor() throws Exception
+   {
+      initializeJavaProject();
+
+      this.queueInputLines("");
+      this.getShell().execute("seam-catch setup");
+      this.getShell().execute(
+               "seam-catch create-handler-container --named TestContainer --package com.example.exceptionHandler");
+      this.getShell().execute("handler create --method-name throwableHandler --exception-type java.lang.Throwable");
+
+      this.getShell().execute("seam-catch enable-profiling --package com.example.profiling");
+
+      final JavaSourceFacet java = this.getProject().getFacet(JavaSourceFacet.class);
+      Assert.assertTrue(java.getJavaResource("com.example.profiling.ProfiledHandlerInterceptor").exists());
+      // The registry of the project, shared with the handlers created with --metrics
+      Assert.assertTrue(java.getJavaResource(java.getBasePackage() + ".metrics.HandlerMetrics").exists());
+      Assert.assertFalse(java.getJavaResource("com.example.profiling.HandlerMetrics").exists());
+
+      final JavaClass container = (JavaClass) java.getJavaResource("com.example.exceptionHandler.TestContainer")
+               .getJavaSource();
+      Assert.assertTrue(container.hasAnnotation("com.example.profiling.ProfiledHandler"));
+      Assert.assertTrue(container.toString().contains("throwableHandler("));
+
+      final File beansXml = this.getProject().getFacet(CDIFacet.class).getConfigFile().getUnderlyingResourceObject();
+      final Scanner scanner = new Scanner(beansXml, "UTF-8");
+      try {
+         Assert.assertTrue(scanner.useDelimiter("\\A").next()
+                  .contains("<class>com.example.profiling.ProfiledHandlerInterceptor</class>"));
+      }
+      finally {
+         scanner.close();
+      }
+   }
+
+   @Test
+   public void assertCreateBenchmarksCoversEveryHandledType() throws Exception
+   {
+      initializeJavaProject();
+
+      this.queueInputLines("");
+      this.getShell().execute("seam-catch setup");
+
+      // An exception type of a dependency, its jar is in the local repository while the tests run
+      final File junitJar = new File(AssertionFailedError.class.getProtectionDomain().getCodeSource().getLocation()
+               .toURI());
+      final DependencyFacet dependencies = this.getProject().getFacet(DependencyFacet.class);
+      dependencies.addDependency(DependencyBuilder.create("junit:junit:" + junitJar.getParentFile().getName()));
+
+      this.getShell().execute(
+               "seam-catch create-handler-container --named TestContainer --package com.example.exceptionHandler");
+      this.getShell().execute(
+               "handler create --method-name stateHandler --exception-type java.lang.IllegalStateException");
+      this.getShell().execute(
+               "handler create --method-name assertionHandler --exception-type junit.framework.AssertionFailedError");
+
+      this.getShell().execute("seam-catch create-benchmarks --package com.example.benchmark");
+
+      final JavaSourceFacet java = this.getProject().getFacet(JavaSourceFacet.class);
+      Assert.assertTrue(java.getTestJavaResource("com.example.benchmark.IllegalStateExceptionHandlerBenchmark")
+               .exists());
+      Assert.assertTrue(java.getTestJavaResource("com.example.benchmark.AssertionFailedErrorHandlerBenchmark")
+               .exists());
+      int benchmarks = 0;
+      for (String name : new File(java.getTestSourceFolder().getUnderlyingResourceObject(), "com/example/benchmark")
+               .list()) {
+         if (name.endsWith("HandlerBenchmark.java"))
+            benchmarks++;
+      }
+      Assert.assertEquals(2, benchmarks);
+
+      Assert.assertTrue(dependencies.hasDependency(DependencyBuilder.create("org.openjdk.jmh:jmh-core")));
+      Assert.assertTrue(dependencies.hasDependency(DependencyBuilder
+               .create("org.openjdk.jmh:jmh-generator-annprocess")));
+      Assert.assertTrue(dependencies.hasDependency(DependencyBuilder.create("org.jboss.weld.se:weld-se-core")));
+   }
+
    // TODO: Figure out how to get this to work
    /*@Test
    public void assertHandlerContainerCreatesSuccessfullyWithoutPackageParameter() throws FileNotFoundException {
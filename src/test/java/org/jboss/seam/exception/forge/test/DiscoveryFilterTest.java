@@ -0,0 +1,137 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.jboss.seam.exception.forge.DiscoveryFilter;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DiscoveryFilterTest
+{
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   @Test
+   public void assertPackagesTheContainersImportAreKept() throws Exception
+   {
+      final File root = temp.newFolder("discovery");
+      write(root, "com/example/handlers/Handlers.java", "package com.example.handlers;\n"
+               + "import com.example.service.Mailer;\n@HandlesExceptions public class Handlers {}");
+      write(root, "com/example/service/Mailer.java", "package com.example.service;\n"
+               + "import com.example.util.Strings.Joiner;\npublic class Mailer {}");
+      write(root, "com/example/util/Strings.java", "package com.example.util;\npublic class Strings {}");
+      write(root, "com/example/web/Page.java", "package com.example.web;\n@Named public class Page {}");
+      write(root, "com/example/web/admin/Console.java", "package com.example.web.admin;\npublic class Console {}");
+
+      final DiscoveryFilter.Result result = new DiscoveryFilter(root).compute(
+               Collections.singleton("com.example.handlers"), Collections.<String> emptyList());
+
+      Assert.assertEquals(Arrays.asList("com.example.handlers", "com.example.service", "com.example.util"),
+               Arrays.asList(result.getKeptPackages().toArray()));
+      Assert.assertEquals(Arrays.asList("com.example.web.**"), result.getExcludes());
+      Assert.assertEquals(5, result.getClasses());
+      Assert.assertEquals(2, result.getExcludedClasses());
+      Assert.assertEquals(Arrays.asList("com.example.web.Page"), result.getBeanCandidates());
+
+      final DiscoveryFilter.Result kept = new DiscoveryFilter(root).compute(
+               Collections.singleton("com.example.handlers"), Collections.singleton("com.example.web"));
+      Assert.assertTrue(kept.getExcludes().isEmpty());
+   }
+
+   @Test
+   public void assertImplementationsAndQualifiedReferencesAreKept() throws Exception
+   {
+      final File root = temp.newFolder("implementations");
+      write(root, "com/example/handlers/Handlers.java", "package com.example.handlers;\n"
+               + "import com.example.service.Mailer;\n@HandlesExceptions public class Handlers {\n"
+               + "   @Inject Mailer mailer;\n   @Inject com.example.audit.Auditor auditor;\n}");
+      write(root, "com/example/service/Mailer.java", "package com.example.service;\npublic interface Mailer {}");
+      write(root, "com/example/service/impl/SmtpMailer.java", "package com.example.service.impl;\n"
+               + "import com.example.service.Mailer;\n"
+               + "public class SmtpMailer extends Base<Map<String, String>> implements Mailer, Closeable {}");
+      write(root, "com/example/service/impl/Base.java", "package com.example.service.impl;\npublic class Base<T> {}");
+      write(root, "com/example/audit/Auditor.java", "package com.example.audit;\npublic class Auditor {}");
+      write(root, "com/example/audit/db/DbAuditor.java", "package com.example.audit.db;\n"
+               + "import com.example.audit.*;\npublic class DbAuditor extends Auditor {}");
+      write(root, "com/example/web/Page.java", "package com.example.web;\n"
+               + "import java.util.AbstractList;\npublic abstract class Page extends AbstractList<String> {}");
+
+      final DiscoveryFilter.Result result = new DiscoveryFilter(root).compute(
+               Collections.singleton("com.example.handlers"), Collections.<String> emptyList());
+
+      Assert.assertEquals(Arrays.asList("com.example.audit", "com.example.audit.db", "com.example.handlers",
+               "com.example.service", "com.example.service.impl"), Arrays.asList(result.getKeptPackages().toArray()));
+      Assert.assertEquals(Arrays.asList("com.example.web.**"), result.getExcludes());
+   }
+
+   @Test
+   public void assertFiltersReplaceThePreviousOnes() throws Exception
+   {
+      final String beansXml = "<beans xmlns=\"http://java.sun.com/xml/ns/javaee\">\n</beans>\n";
+
+      final String first = DiscoveryFilter.apply(beansXml, Arrays.asList("com.example.web.**"));
+      Assert.assertTrue(first.contains("xmlns:weld=\"http://jboss.org/schema/weld/beans\""));
+      Assert.assertTrue(first.contains("<weld:exclude name=\"com.example.web.**\"/>"));
+
+      final String second = DiscoveryFilter.apply(first, Arrays.asList("com.example.batch.**"));
+      Assert.assertFalse(second.contains("com.example.web.**"));
+      Assert.assertTrue(second.contains("<weld:exclude name=\"com.example.batch.**\"/>"));
+      Assert.assertEquals(second.indexOf("xmlns:weld"), second.lastIndexOf("xmlns:weld"));
+
+      Assert.assertTrue(DiscoveryFilter.apply("<beans/>", Arrays.asList("a.b.**")).trim().endsWith("</beans>"));
+   }
+
+   @Test
+   public void assertScanElementsOfTheUserAreKept() throws Exception
+   {
+      final String beansXml = "<beans xmlns=\"http://java.sun.com/xml/ns/javaee\"\n"
+               + "       xmlns:w=\"http://jboss.org/schema/weld/beans\">\n"
+               + "   <w:scan>\n      <w:exclude name=\"com.example.legacy.**\"/>\n   </w:scan>\n</beans>\n";
+
+      final String first = DiscoveryFilter.apply(beansXml, Arrays.asList("com.example.web.**"));
+      Assert.assertFalse(first.contains("xmlns:weld"));
+      Assert.assertTrue(first.contains("<w:exclude name=\"com.example.legacy.**\"/>"));
+      Assert.assertTrue(first.contains("<w:exclude name=\"com.example.web.**\"/>"));
+
+      final String second = DiscoveryFilter.apply(first, Arrays.asList("com.example.batch.**"));
+      Assert.assertTrue(second.contains("<w:exclude name=\"com.example.legacy.**\"/>"));
+      Assert.assertFalse(second.contains("com.example.web.**"));
+      Assert.assertTrue(second.contains("<w:exclude name=\"com.example.batch.**\"/>"));
+      Assert.assertEquals(2, second.split("<w:scan>", -1).length - 1);
+   }
+
+   private static void write(final File root, final String path, final String content) throws IOException
+   {
+      final File file = new File(root, path);
+      file.getParentFile().mkdirs();
+      final FileWriter writer = new FileWriter(file);
+      try {
+         writer.write(content);
+      }
+      finally {
+         writer.close();
+      }
+   }
+}
@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jboss.forge.parser.java.JavaClass;
+import org.jboss.seam.exception.forge.DispatchTableGenerator;
+import org.jboss.seam.exception.forge.ExceptionHierarchy;
+import org.jboss.seam.exception.forge.HandlerChain;
+import org.jboss.seam.exception.forge.HandlerDescriptor;
+import org.jboss.solder.exception.control.Precedence;
+import org.jboss.solder.exception.control.TraversalMode;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DispatchTableGeneratorTest
+{
+   private static final ExceptionHierarchy HIERARCHY = new ExceptionHierarchy(createSuperclasses());
+
+   private final Map<String, List<HandlerDescriptor>> byType = new TreeMap<String, List<HandlerDescriptor>>();
+
+   @Before
+   public void createHandlers()
+   {
+      add("throwableAudit", Throwable.class, Precedence.DEFAULT, TraversalMode.BREADTH_FIRST);
+      add("exceptionLow", Exception.class, Precedence.LOW, TraversalMode.DEPTH_FIRST);
+      add("exceptionHigh", Exception.class, Precedence.HIGH, TraversalMode.DEPTH_FIRST);
+      add("runtimeException", RuntimeException.class, Precedence.DEFAULT, TraversalMode.DEPTH_FIRST);
+   }
+
+   @Test
+   public void assertChainIsOrderedByTraversalThenPrecedence()
+   {
+      final HandlerChain chain = HandlerChain.of(RuntimeException.class.getName(), byType, HIERARCHY);
+
+      Assert.assertEquals(1, chain.getBreadthFirst().size());
+      Assert.assertEquals("throwableAudit", chain.getHandlers().get(0).getMethodName());
+      Assert.assertEquals("runtimeException", chain.getHandlers().get(1).getMethodName());
+      Assert.assertEquals("exceptionHigh", chain.getHandlers().get(2).getMethodName());
+      Assert.assertEquals("exceptionLow", chain.getHandlers().get(3).getMethodName());
+   }
+
+   @Test
+   public void assertGeneratedTableIsValid()
+   {
+      final JavaClass table = new DispatchTableGenerator(byType, HIERARCHY).generate(
+               "com.example", "HandlerDispatchTable");
+
+      Assert.assertFalse(table.hasSyntaxErrors());
+      Assert.assertTrue(table.toString().contains("public List<String> handlersFor("));
+      Assert.assertTrue(table.toString().contains("com.example.Container#exceptionHigh"));
+      // Counted for the type's closest handled superclass, like the chain, and never copied on dispatch
+      Assert.assertTrue(table.toString().contains("public int breadthFirstCount(final Class<? extends Throwable>"));
+      Assert.assertTrue(table.toString().contains("BREADTH_FIRST_COUNTS.get(handledTypeOf(type))"));
+      Assert.assertFalse(table.toString().contains("clone()"));
+   }
+
+   @Test
+   public void assertNestedTypesAreKeyedByCanonicalName()
+   {
+      byType.put("com.example.Outer$Inner", new ArrayList<HandlerDescriptor>());
+      byType.get("com.example.Outer$Inner").add(new HandlerDescriptor("com.example.Container", "inner",
+               "com.example.Outer$Inner", Precedence.DEFAULT, TraversalMode.DEPTH_FIRST));
+
+      final HandlerChain chain = HandlerChain.of("com.example.Outer$Inner", byType, HIERARCHY);
+      Assert.assertEquals("inner", chain.getHandlers().get(1).getMethodName());
+      Assert.assertEquals("runtimeException", chain.getHandlers().get(2).getMethodName());
+
+      final JavaClass table = new DispatchTableGenerator(byType, HIERARCHY).generate("com.example",
+               "HandlerDispatchTable");
+      Assert.assertTrue(table.toString().contains("\"com.example.Outer.Inner\""));
+      Assert.assertTrue(table.toString().contains("getCanonicalName()"));
+   }
+
+   @Test
+   public void assertObjectIsNotThrowable()
+   {
+      Assert.assertFalse(HIERARCHY.isThrowable(Object.class.getName()));
+      Assert.assertFalse(HIERARCHY.isThrowable("com.example.Unknown"));
+      Assert.assertTrue(HIERARCHY.isThrowable(RuntimeException.class.getName()));
+   }
+
+   private static Map<String, String> createSuperclasses()
+   {
+      final Map<String, String> superclasses = new HashMap<String, String>();
+      superclasses.put(Throwable.class.getName(), null);
+      superclasses.put(Exception.class.getName(), Throwable.class.getName());
+      superclasses.put(RuntimeException.class.getName(), Exception.class.getName());
+      superclasses.put("com.example.Outer.Inner", RuntimeException.class.getName());
+      return superclasses;
+   }
+
+   private void add(final String method, final Class<? extends Throwable> type, final int precedence,
+            final TraversalMode mode)
+   {
+      if (!byType.containsKey(type.getName()))
+         byType.put(type.getName(), new ArrayList<HandlerDescriptor>());
+      byType.get(type.getName()).add(new HandlerDescriptor("com.example.Container", method, type.getName(),
+               precedence, mode));
+   }
+}
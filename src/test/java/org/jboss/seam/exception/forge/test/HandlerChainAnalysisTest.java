@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jboss.seam.exception.forge.ExceptionHierarchy;
+import org.jboss.seam.exception.forge.HandlerChainAnalysis;
+import org.jboss.seam.exception.forge.HandlerChainAnalysis.Finding;
+import org.jboss.seam.exception.forge.HandlerDescriptor;
+import org.jboss.seam.exception.forge.HandlerScanner;
+import org.jboss.solder.exception.control.Precedence;
+import org.jboss.solder.exception.control.TraversalMode;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HandlerChainAnalysisTest
+{
+   private final Map<String, List<HandlerDescriptor>> byType = new TreeMap<String, List<HandlerDescriptor>>();
+
+   @Test
+   public void assertChainCostsAndFindingsAreReported()
+   {
+      add("handleAll", "java.lang.Throwable", Precedence.DEFAULT, TraversalMode.BREADTH_FIRST, true);
+      add("runtimeOne", "java.lang.RuntimeException", Precedence.DEFAULT, TraversalMode.DEPTH_FIRST, false);
+      add("runtimeTwo", "java.lang.RuntimeException", Precedence.DEFAULT, TraversalMode.DEPTH_FIRST, false);
+      add("typo", "com.example.Missing", Precedence.DEFAULT, TraversalMode.DEPTH_FIRST, false);
+
+      final HandlerChainAnalysis analysis = new HandlerChainAnalysis(byType, hierarchy(),
+               Collections.<String> emptyList());
+
+      final HandlerChainAnalysis.Row longest = analysis.getRows(HandlerChainAnalysis.SortOrder.CHAIN).get(0);
+      Assert.assertEquals("java.lang.RuntimeException", longest.getExceptionType());
+      Assert.assertEquals(1, longest.getBreadthFirst());
+      Assert.assertEquals(2, longest.getDepthFirst());
+      Assert.assertEquals(1, analysis.getRowsExceeding(2).size());
+
+      Assert.assertEquals(2, count(analysis, Finding.Kind.SHADOWED));
+      Assert.assertEquals(2, count(analysis, Finding.Kind.SHARED_PRECEDENCE));
+      Assert.assertEquals(1, count(analysis, Finding.Kind.UNREACHABLE));
+      Assert.assertTrue(analysis.toJson(HandlerChainAnalysis.SortOrder.TYPE).contains("\"kind\": \"UNREACHABLE\""));
+
+      final String text = analysis.toText(HandlerChainAnalysis.SortOrder.CHAIN);
+      Assert.assertTrue(text.startsWith("    3  (1 breadth first, 2 depth first)  java.lang.RuntimeException\n"));
+      Assert.assertTrue(text.contains("UNREACHABLE "));
+      Assert.assertFalse(text.contains("kind,exceptionType"));
+   }
+
+   @Test
+   public void assertViolationsOfTheMaximumChainAreReported()
+   {
+      add("handleAll", "java.lang.Throwable", Precedence.DEFAULT, TraversalMode.BREADTH_FIRST, true);
+      add("runtimeOne", "java.lang.RuntimeException", Precedence.DEFAULT, TraversalMode.DEPTH_FIRST, false);
+      add("runtimeTwo", "java.lang.RuntimeException", Precedence.DEFAULT, TraversalMode.DEPTH_FIRST, false);
+
+      final HandlerChainAnalysis analysis = new HandlerChainAnalysis(byType, hierarchy(),
+               Collections.<String> emptyList());
+
+      final String json = analysis.toJson(HandlerChainAnalysis.SortOrder.TYPE, 2);
+      Assert.assertTrue(json.contains("\"maxChain\": 2"));
+      Assert.assertTrue(json.contains("\"violations\": [\n    {\"exceptionType\": \"java.lang.RuntimeException\""));
+      Assert.assertFalse(analysis.toJson(HandlerChainAnalysis.SortOrder.TYPE).contains("violations"));
+
+      Assert.assertTrue(analysis.toCsv(HandlerChainAnalysis.SortOrder.TYPE, 2).contains(
+               "violation,java.lang.RuntimeException,,1,2,3,max-chain 2\n"));
+      Assert.assertFalse(analysis.toCsv(HandlerChainAnalysis.SortOrder.TYPE, 3).contains("violation,"));
+      Assert.assertTrue(analysis.toText(HandlerChainAnalysis.SortOrder.TYPE, 2).contains(
+               "VIOLATION [java.lang.RuntimeException] notifies 3 handlers, more than the maximum of 2\n"));
+   }
+
+   @Test
+   public void assertCauseChainIsReportedAsOneRow()
+   {
+      add("runtime", "java.lang.RuntimeException", Precedence.DEFAULT, TraversalMode.DEPTH_FIRST, false);
+      add("illegalState", "java.lang.IllegalStateException", Precedence.DEFAULT, TraversalMode.DEPTH_FIRST, false);
+
+      final HandlerChainAnalysis analysis = new HandlerChainAnalysis(byType, hierarchy(),
+               Arrays.asList("java.lang.RuntimeException", "java.lang.IllegalStateException"));
+
+      Assert.assertEquals(3, analysis.getRows(HandlerChainAnalysis.SortOrder.CHAIN).get(0).getChainLength());
+   }
+
+   @Test
+   public void assertDependencyTypesReachTheHandlersOfTheirSuperclasses()
+   {
+      add("runtime", "java.lang.RuntimeException", Precedence.DEFAULT, TraversalMode.DEPTH_FIRST, false);
+      add("persistence", "javax.persistence.PersistenceException", Precedence.DEFAULT, TraversalMode.DEPTH_FIRST,
+               false);
+
+      final HandlerChainAnalysis analysis = new HandlerChainAnalysis(byType, hierarchy(),
+               Collections.<String> emptyList());
+
+      Assert.assertEquals(0, count(analysis, Finding.Kind.UNREACHABLE));
+      final HandlerChainAnalysis.Row longest = analysis.getRows(HandlerChainAnalysis.SortOrder.CHAIN).get(0);
+      Assert.assertEquals("javax.persistence.PersistenceException", longest.getExceptionType());
+      Assert.assertEquals(2, longest.getChainLength());
+   }
+
+   @Test
+   public void assertOnlyUnconditionalCallsAreTerminal()
+   {
+      Assert.assertTrue(HandlerScanner.isTerminal("caughtException.handled();"));
+      Assert.assertFalse(HandlerScanner.isTerminal("if (debug) caughtException.handled();"));
+      Assert.assertFalse(HandlerScanner.isTerminal("log.error(caughtException.getException());"));
+   }
+
+   /**
+    * Superclasses as indexed from the JDK and a persistence API jar.
+    */
+   private static ExceptionHierarchy hierarchy()
+   {
+      final Map<String, String> superclasses = new HashMap<String, String>();
+      superclasses.put("java.lang.Throwable", null);
+      superclasses.put("java.lang.Exception", "java.lang.Throwable");
+      superclasses.put("java.lang.RuntimeException", "java.lang.Exception");
+      superclasses.put("java.lang.IllegalStateException", "java.lang.RuntimeException");
+      superclasses.put("javax.persistence.PersistenceException", "java.lang.RuntimeException");
+      return new ExceptionHierarchy(superclasses);
+   }
+
+   private int count(final HandlerChainAnalysis analysis, final Finding.Kind kind)
+   {
+      int count = 0;
+      for (Finding finding : analysis.getFindings()) {
+         if (finding.getKind() == kind)
+            count++;
+      }
+      return count;
+   }
+
+   private void add(final String method, final String type, final int precedence, final TraversalMode mode,
+            final boolean terminal)
+   {
+      if (!byType.containsKey(type))
+         byType.put(type, new ArrayList<HandlerDescriptor>());
+      byType.get(type).add(new HandlerDescriptor("com.example.Container", method, type, precedence, mode, terminal));
+   }
+}
@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.forge.parser.JavaParser;
+import org.jboss.forge.parser.java.JavaClass;
+import org.jboss.seam.exception.forge.HandlerContainerEditor;
+import org.jboss.seam.exception.forge.HandlerMethods;
+import org.jboss.seam.exception.forge.HandlerSpec;
+import org.jboss.seam.exception.forge.ParsedSourceCache;
+import org.jboss.solder.exception.control.Precedence;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HandlerContainerEditorTest
+{
+   private static final String CONTAINER = "/*\n"
+            + " * This class is part of the example.\n"
+            + " */\n"
+            + "package com.example;\n"
+            + "\n"
+            + "import org.jboss.solder.exception.control.CaughtException;\n"
+            + "import org.jboss.solder.exception.control.Handles;\n"
+            + "import org.jboss.solder.exception.control.HandlesExceptions;\n"
+            + "\n"
+            + "@HandlesExceptions\n"
+            + "public class Container\n"
+            + "{\n"
+            + "   public void throwableHandler(@Handles CaughtException<Throwable> e)\n"
+            + "   {\n"
+            + "   }\n"
+            + "}\n";
+
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   private File file;
+
+   @Before
+   public void createContainer() throws IOException
+   {
+      file = temp.newFile("Container.java");
+      write(CONTAINER);
+   }
+
+   private void write(final String content) throws IOException
+   {
+      final FileWriter writer = new FileWriter(file);
+      try {
+         writer.write(content);
+      }
+      finally {
+         writer.close();
+      }
+   }
+
+   @Test
+   public void assertHandlersAreAddedToTheContainer() throws Exception
+   {
+      final HandlerContainerEditor editor = new HandlerContainerEditor();
+
+      final HandlerContainerEditor.Container container = editor.open(file);
+      Assert.assertTrue(container.isHandlerContainer());
+      Assert.assertEquals("com.example.Container", container.getQualifiedName());
+      Assert.assertTrue(container.hasMethod("throwableHandler"));
+
+      add(editor, container, new HandlerSpec("runtimeHandler", "java.lang.RuntimeException", false,
+               Precedence.DEFAULT));
+      // Needs new imports
+      add(editor, container, new HandlerSpec("creationHandler", "javax.enterprise.inject.CreationException", true,
+               Precedence.HIGH));
+
+      Assert.assertSame(container, editor.open(file));
+      Assert.assertTrue(container.hasMethod("creationHandler"));
+
+      final JavaClass result = (JavaClass) JavaParser.parse(file);
+      Assert.assertFalse(result.hasSyntaxErrors());
+      Assert.assertEquals(3, result.getMethods().size());
+      Assert.assertTrue(result.hasImport("javax.enterprise.inject.CreationException"));
+      Assert.assertTrue(result.hasImport("org.jboss.solder.exception.control.TraversalMode"));
+      Assert.assertEquals("com.example", result.getPackage());
+   }
+
+   @Test
+   public void assertSameSizeEditsAreNoticed() throws Exception
+   {
+      final HandlerContainerEditor editor = new HandlerContainerEditor();
+      final HandlerContainerEditor.Container container = editor.open(file);
+      final long lastModified = file.lastModified();
+
+      // Same size and modification time, only the content tells the edit apart
+      write(CONTAINER.replace("throwableHandler", "throwableCatcher"));
+      file.setLastModified(lastModified);
+
+      final HandlerContainerEditor.Container reopened = editor.open(file);
+      Assert.assertNotSame(container, reopened);
+      Assert.assertTrue(reopened.hasMethod("throwableCatcher"));
+      Assert.assertFalse(reopened.hasMethod("throwableHandler"));
+   }
+
+   @Test
+   public void assertContainersFollowTheSourceCache() throws Exception
+   {
+      final ParsedSourceCache sources = new ParsedSourceCache(1, Long.MAX_VALUE);
+      final HandlerContainerEditor editor = new HandlerContainerEditor(sources);
+      final HandlerContainerEditor.Container container = editor.open(file);
+      Assert.assertSame(container, editor.open(file));
+
+      // Evicting the model from the cache releases the container as well
+      final File other = temp.newFile("Other.java");
+      final FileWriter writer = new FileWriter(other);
+      try {
+         writer.write(CONTAINER.replace("class Container", "class Other"));
+      }
+      finally {
+         writer.close();
+      }
+      sources.get(other);
+      Assert.assertNotSame(container, editor.open(file));
+
+      final HandlerContainerEditor.Container reopened = editor.open(file);
+      sources.invalidate(file);
+      Assert.assertNotSame(reopened, editor.open(file));
+   }
+
+   private void add(final HandlerContainerEditor editor, final HandlerContainerEditor.Container container,
+            final HandlerSpec spec) throws IOException
+   {
+      final JavaClass fragment = container.newFragment();
+      final Map<String, String> imports = container.getImports();
+      final Set<String> requiredImports = new LinkedHashSet<String>();
+      HandlerMethods.addHandler(fragment, spec, imports, requiredImports);
+      editor.append(container, fragment, requiredImports);
+   }
+}
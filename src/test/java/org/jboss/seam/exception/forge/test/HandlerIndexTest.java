@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.seam.exception.forge.HandlerDescriptor;
+import org.jboss.seam.exception.forge.HandlerIndex;
+import org.jboss.solder.exception.control.Precedence;
+import org.jboss.solder.exception.control.TraversalMode;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HandlerIndexTest
+{
+   private static final String CONTAINER = "package com.example;\n"
+            + "import javax.persistence.PersistenceException;\n"
+            + "import org.jboss.solder.exception.control.CaughtException;\n"
+            + "import org.jboss.solder.exception.control.Handles;\n"
+            + "import org.jboss.solder.exception.control.HandlesExceptions;\n"
+            + "import org.jboss.solder.exception.control.Precedence;\n"
+            + "import org.jboss.solder.exception.control.TraversalMode;\n"
+            + "@HandlesExceptions\n"
+            + "public class Container {\n"
+            + "   public void throwableHandler(@Handles(during = TraversalMode.BREADTH_FIRST) CaughtException<Throwable> e) {}\n"
+            + "   public void persistenceHandler(@Handles(precedence = Precedence.HIGH) CaughtException<PersistenceException> e) {}\n"
+            + "   public void localHandler(@Handles CaughtException<LocalException> e) {}\n"
+            + "}\n";
+
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   private File root;
+
+   @Before
+   public void createRoot() throws IOException
+   {
+      root = temp.newFolder("index");
+      new File(root, "src/com/example").mkdirs();
+   }
+
+   @Test
+   public void assertHandlersAreIndexedByExceptionType() throws Exception
+   {
+      write("src/com/example/Container.java", CONTAINER);
+      write("src/com/example/Other.java", "package com.example; public class Other {}");
+
+      final HandlerIndex index = new HandlerIndex(new File(root, "handlers.idx"));
+      index.refresh(Collections.singletonList(new File(root, "src")));
+
+      final Map<String, List<HandlerDescriptor>> byType = index.byExceptionType();
+      Assert.assertEquals(3, byType.size());
+
+      final HandlerDescriptor throwable = byType.get("java.lang.Throwable").get(0);
+      Assert.assertEquals("com.example.Container", throwable.getContainer());
+      Assert.assertEquals(TraversalMode.BREADTH_FIRST, throwable.getTraversalMode());
+
+      final HandlerDescriptor persistence = byType.get("javax.persistence.PersistenceException").get(0);
+      Assert.assertEquals(Precedence.HIGH, persistence.getPrecedence());
+      Assert.assertEquals(TraversalMode.DEPTH_FIRST, persistence.getTraversalMode());
+
+      Assert.assertTrue(byType.containsKey("com.example.LocalException"));
+   }
+
+   @Test
+   public void assertPersistedIndexOnlyReparsesChangedFiles() throws Exception
+   {
+      write("src/com/example/Container.java", CONTAINER);
+      write("src/com/example/Other.java", "package com.example; public class Other {}");
+
+      final HandlerIndex index = new HandlerIndex(new File(root, "handlers.idx"));
+      Assert.assertEquals(2, index.refresh(Collections.singletonList(new File(root, "src"))).getReparsed());
+      index.save();
+
+      final HandlerIndex reloaded = new HandlerIndex(new File(root, "handlers.idx"));
+      reloaded.load();
+      Assert.assertEquals(0, reloaded.refresh(Collections.singletonList(new File(root, "src"))).getReparsed());
+      Assert.assertEquals(3, reloaded.getHandlers().size());
+
+      new File(root, "src/com/example/Container.java").delete();
+      final HandlerIndex.RefreshResult result = reloaded.refresh(Collections.singletonList(new File(root, "src")));
+      Assert.assertEquals(1, result.getRemoved());
+      Assert.assertTrue(reloaded.getHandlers().isEmpty());
+   }
+
+   private void write(final String path, final String content) throws IOException
+   {
+      final FileWriter writer = new FileWriter(new File(root, path));
+      writer.write(content);
+      writer.close();
+   }
+}
@@ -17,12 +17,17 @@
 package org.jboss.seam.exception.forge.test;
 
 import java.util.List;
+import java.util.Scanner;
 
 import javax.enterprise.inject.CreationException;
 
 import org.jboss.arquillian.api.Deployment;
 import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.forge.parser.java.JavaClass;
 import org.jboss.forge.parser.java.Parameter;
+import org.jboss.forge.project.facets.JavaSourceFacet;
+import org.jboss.forge.project.facets.ResourceFacet;
+import org.jboss.forge.resources.FileResource;
 import org.jboss.forge.resources.java.JavaMethodResource;
 import org.jboss.forge.resources.java.JavaResource;
 import org.jboss.forge.test.SingletonAbstractShellTest;
@@ -148,4 +153,173 @@ public class HandlerPluginTest extends SingletonAbstractShellTest
       Assert.assertTrue(
                ((JavaResource) this.getShell().getCurrentResource()).getJavaSource().hasImport(CreationException.class));
    }
+
+   @Test
+   public void assertBatchCreationAddsAllHandlers() throws Exception
+   {
+      final FileResource<?> specFile = (FileResource<?>) this.getProject().getProjectRoot().getChild("handlers.txt");
+      specFile.setContents("# method-name exception-type breadthFirst precedence\n"
+               + "throwableHandler java.lang.Throwable\n"
+               + "creationExceptionHandler javax.enterprise.inject.CreationException true LOW\n"
+               + "stringHandler java.lang.String\n");
+
+      this.getShell().execute("handler create-batch --from " + specFile.getFullyQualifiedName());
+
+      final JavaResource container = (JavaResource) this.getShell().getCurrentResource();
+      Assert.assertTrue(container.getChild("throwableHandler").exists());
+      Assert.assertTrue(container.getChild("creationExceptionHandler").exists());
+      Assert.assertFalse(container.getJavaSource().toString().contains("stringHandler"));
+
+      List<Parameter> params = ((JavaMethodResource) container.getChild("creationExceptionHandler"))
+               .getUnderlyingResourceObject().getParameters();
+      Assert.assertTrue(params.get(0).toString()
+               .contains("@Handles(during=TraversalMode.BREADTH_FIRST,precedence=Precedence.LOW)"));
+      Assert.assertTrue(container.getJavaSource().hasImport(CreationException.class));
+      Assert.assertFalse(container.getJavaSource().hasSyntaxErrors());
+   }
+
+   @Test
+   public void assertHierarchyCreationAddsOneHandlerPerSubtype() throws Exception
+   {
+      this.getShell().execute(
+               "seam-catch create-exception --named ServiceException --package com.example.exceptions");
+      this.getShell().execute("seam-catch create-exception --named PaymentException --package com.example.exceptions"
+               + " --extends com.example.exceptions.ServiceException");
+      this.getShell().execute("seam-catch create-exception --named RefundException --package com.example.exceptions"
+               + " --extends com.example.exceptions.PaymentException");
+
+      final JavaSourceFacet java = this.getProject().getFacet(JavaSourceFacet.class);
+      final JavaResource container = java.getJavaResource("com.example.exceptionHandler.TestContainer");
+      this.getShell().execute("pick-up " + container.getFullyQualifiedName());
+      this.getShell().execute("handler create-for-hierarchy --base com.example.exceptions.ServiceException");
+
+      Assert.assertTrue(container.getChild("handlePaymentException").exists());
+      Assert.assertTrue(container.getChild("handleRefundException").exists());
+      Assert.assertEquals(2, ((JavaClass) container.getJavaSource()).getMethods().size());
+      Assert.assertTrue(container.getJavaSource().hasImport("com.example.exceptions.RefundException"));
+      Assert.assertFalse(container.getJavaSource().hasSyntaxErrors());
+
+      // Running it again only adds the types the container does not handle yet
+      this.getShell().execute(
+               "handler create-for-hierarchy --base com.example.exceptions.ServiceException --include-base true");
+      Assert.assertTrue(container.getChild("handleServiceException").exists());
+      Assert.assertEquals(3, ((JavaClass) container.getJavaSource()).getMethods().size());
+   }
+
+   @Test
+   public void assertMetricsOptionInstrumentsTheHandler() throws Exception
+   {
+      this.getShell().execute(
+               "handler create --method-name timedHandler --exception-type java.lang.IllegalStateException --metrics true");
+
+      final JavaResource container = (JavaResource) this.getShell().getCurrentResource();
+      final String body = ((JavaMethodResource) container.getChild("timedHandler")).getUnderlyingResourceObject()
+               .getBody();
+      Assert.assertTrue(body
+               .contains("HandlerMetrics.record(\"com.example.exceptionHandler.TestContainer#timedHandler\""));
+
+      final JavaSourceFacet java = this.getProject().getFacet(JavaSourceFacet.class);
+      final String metricsPackage = java.getBasePackage() + ".metrics";
+      Assert.assertTrue(java.getJavaResource(metricsPackage + ".HandlerMetrics").exists());
+      Assert.assertTrue(java.getJavaResource(metricsPackage + ".LatencyHistogram").exists());
+      Assert.assertTrue(container.getJavaSource().hasImport(metricsPackage + ".HandlerMetrics"));
+      Assert.assertFalse(container.getJavaSource().hasSyntaxErrors());
+   }
+
+   @Test
+   public void assertSampledLogTemplateGeneratesTheLogger() throws Exception
+   {
+      this.getShell().execute(
+               "handler create --method-name sampledHandler --exception-type java.lang.IllegalStateException --template sampled-log --sample-size 5");
+
+      final JavaResource container = (JavaResource) this.getShell().getCurrentResource();
+      final String body = ((JavaMethodResource) container.getChild("sampledHandler")).getUnderlyingResourceObject()
+               .getBody();
+      Assert.assertTrue(body.contains("sampledHandlerLog.log(caughtException.getException())"));
+
+      final JavaSourceFacet java = this.getProject().getFacet(JavaSourceFacet.class);
+      Assert.assertTrue(java.getJavaResource("com.example.exceptionHandler.SampledExceptionLogger").exists());
+      Assert.assertTrue(java.getJavaResource("com.example.exceptionHandler.SampledExceptionLoggerExtension").exists());
+
+      // Closed with the application, the periodic flush does not outlive it
+      final FileResource<?> services = this.getProject().getFacet(ResourceFacet.class)
+               .getResource("META-INF/services/javax.enterprise.inject.spi.Extension");
+      final Scanner scanner = new Scanner(services.getUnderlyingResourceObject(), "UTF-8");
+      try {
+         Assert.assertEquals("com.example.exceptionHandler.SampledExceptionLoggerExtension", scanner.nextLine());
+      }
+      finally {
+         scanner.close();
+      }
+      Assert.assertFalse(container.getJavaSource().hasSyntaxErrors());
+   }
+
+   @Test
+   public void assertAsyncOptionQueuesTheReport() throws Exception
+   {
+      this.getShell().execute(
+               "handler create --method-name asyncHandler --exception-type java.lang.IllegalStateException --async true --when-full block");
+
+      final JavaResource container = (JavaResource) this.getShell().getCurrentResource();
+      final String body = ((JavaMethodResource) container.getChild("asyncHandler")).getUnderlyingResourceObject()
+               .getBody();
+      Assert.assertTrue(body.contains("asyncHandlerReporter.report(\"TestContainer#asyncHandler\""));
+      Assert.assertTrue(container.getJavaSource().toString().contains("AsyncExceptionReporter.FullPolicy.BLOCK"));
+
+      final JavaSourceFacet java = this.getProject().getFacet(JavaSourceFacet.class);
+      Assert.assertTrue(java.getJavaResource("com.example.exceptionHandler.AsyncExceptionReporter").exists());
+      Assert.assertTrue(java.getJavaResource("com.example.exceptionHandler.LoggingExceptionReportSink").exists());
+      Assert.assertTrue(java.getJavaResource("com.example.exceptionHandler.AsyncExceptionReporterExtension").exists());
+
+      final FileResource<?> services = this.getProject().getFacet(ResourceFacet.class)
+               .getResource("META-INF/services/javax.enterprise.inject.spi.Extension");
+      Assert.assertTrue(services.exists());
+      final Scanner scanner = new Scanner(services.getUnderlyingResourceObject(), "UTF-8");
+      try {
+         Assert.assertEquals("com.example.exceptionHandler.AsyncExceptionReporterExtension", scanner.nextLine());
+      }
+      finally {
+         scanner.close();
+      }
+      Assert.assertFalse(container.getJavaSource().hasSyntaxErrors());
+   }
+
+   @Test
+   public void assertJournalTemplateAppendsToTheJournal() throws Exception
+   {
+      this.getShell().execute(
+               "handler create --method-name journalHandler --exception-type java.lang.IllegalStateException --template journal --segment-size 8");
+
+      final JavaResource container = (JavaResource) this.getShell().getCurrentResource();
+      final String body = ((JavaMethodResource) container.getChild("journalHandler")).getUnderlyingResourceObject()
+               .getBody();
+      Assert.assertTrue(body.contains("journalHandlerJournal.append(caughtException.getException())"));
+      Assert.assertTrue(container.getJavaSource().toString().contains("\"TestContainer.journalHandler\""));
+      Assert.assertTrue(container.getJavaSource().toString().contains("8388608"));
+
+      final JavaSourceFacet java = this.getProject().getFacet(JavaSourceFacet.class);
+      Assert.assertTrue(java.getJavaResource("com.example.exceptionHandler.ExceptionJournal").exists());
+      Assert.assertTrue(java.getJavaResource("com.example.exceptionHandler.ExceptionJournalReader").exists());
+      Assert.assertTrue(java.getJavaResource("com.example.exceptionHandler.ExceptionFingerprint").exists());
+      Assert.assertFalse(container.getJavaSource().hasSyntaxErrors());
+   }
+
+   @Test
+   public void assertFlightRecorderTemplateRecordsIntoTheRing() throws Exception
+   {
+      this.getShell().execute(
+               "handler create --method-name recordedHandler --exception-type java.lang.IllegalStateException --template flight-recorder --capacity 256");
+
+      final JavaResource container = (JavaResource) this.getShell().getCurrentResource();
+      final String body = ((JavaMethodResource) container.getChild("recordedHandler")).getUnderlyingResourceObject()
+               .getBody();
+      Assert.assertTrue(body.contains("recordedHandlerRecorder.record(caughtException.getException())"));
+      Assert.assertTrue(container.getJavaSource().toString().contains("\"TestContainer.recordedHandler\""));
+      Assert.assertTrue(container.getJavaSource().toString().contains("256"));
+
+      final JavaSourceFacet java = this.getProject().getFacet(JavaSourceFacet.class);
+      Assert.assertTrue(java.getJavaResource("com.example.exceptionHandler.ExceptionFlightRecorder").exists());
+      Assert.assertTrue(java.getJavaResource("com.example.exceptionHandler.ExceptionFlightRecorderMBean").exists());
+      Assert.assertFalse(container.getJavaSource().hasSyntaxErrors());
+   }
 }
@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.seam.exception.forge.HandlerChainAnalysis;
+import org.jboss.seam.exception.forge.HandlerIndex;
+import org.jboss.seam.exception.forge.HandlerValidator;
+import org.jboss.seam.exception.forge.ParsedSourceCache;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HandlerValidatorTest
+{
+   private static final String IMPORTS = "package com.example;\n"
+            + "import org.jboss.solder.exception.control.CaughtException;\n"
+            + "import org.jboss.solder.exception.control.Handles;\n"
+            + "import org.jboss.solder.exception.control.HandlesExceptions;\n";
+
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   @Test
+   public void assertProblemsOfTheChangedContainerAreReported() throws Exception
+   {
+      final File root = temp.newFolder("validate");
+      write(new File(root, "com/example/FirstHandlers.java"), IMPORTS
+               + "@HandlesExceptions public class FirstHandlers {\n"
+               + "   public void onState(@Handles CaughtException<IllegalStateException> e) {}\n"
+               + "}");
+      final File second = write(new File(root, "com/example/SecondHandlers.java"), IMPORTS
+               + "@HandlesExceptions public class SecondHandlers {\n"
+               + "   public void onState(@Handles CaughtException<IllegalStateException> e) {}\n"
+               + "   public void onMissing(@Handles CaughtException<MissingException> e) {}\n"
+               + "   public void onMissing(@Handles CaughtException<RuntimeException> e, String unused) {}\n"
+               + "}");
+
+      final ParsedSourceCache sources = new ParsedSourceCache();
+      final List<File> roots = Collections.singletonList(root);
+      final HandlerIndex index = new HandlerIndex(temp.newFile("validate.idx"), sources);
+      index.refresh(roots);
+
+      final List<HandlerChainAnalysis.Finding> findings = new HandlerValidator(roots, sources).validate(
+               Collections.singletonList(second), index);
+
+      final List<String> kinds = new ArrayList<String>();
+      for (HandlerChainAnalysis.Finding finding : findings) {
+         kinds.add(finding.getKind() + " " + finding.getHandler());
+      }
+      Assert.assertTrue(kinds.toString(), kinds.contains("DUPLICATE_NAME com.example.SecondHandlers#onMissing"));
+      Assert.assertTrue(kinds.toString(), kinds.contains("MISSING_IMPORT com.example.SecondHandlers#onMissing"));
+      Assert.assertTrue(kinds.toString(), kinds.contains("SHARED_PRECEDENCE com.example.SecondHandlers#onState"));
+      // Only the handlers of the changed file are reported
+      Assert.assertFalse(kinds.toString(), kinds.contains("SHARED_PRECEDENCE com.example.FirstHandlers#onState"));
+      Assert.assertEquals(2, index.byFile().size());
+   }
+
+   private static File write(final File file, final String content) throws IOException
+   {
+      file.getParentFile().mkdirs();
+      final FileWriter writer = new FileWriter(file);
+      try {
+         writer.write(content);
+      }
+      finally {
+         writer.close();
+      }
+      return file;
+   }
+}
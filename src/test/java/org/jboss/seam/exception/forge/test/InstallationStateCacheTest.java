@@ -0,0 +1,101 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.jboss.seam.exception.forge.InstallationStateCache;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InstallationStateCacheTest
+{
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   @Test
+   public void assertTheStateIsForgottenWhenThePomChanges() throws Exception
+   {
+      final File root = temp.newFolder("installed");
+      final File pom = write(new File(root, "pom.xml"), "<project/>");
+
+      final String stamp = InstallationStateCache.stampOf(root);
+      Assert.assertNull(InstallationStateCache.get(root, stamp));
+      InstallationStateCache.put(root, stamp, true);
+      Assert.assertEquals(Boolean.TRUE, InstallationStateCache.get(root, InstallationStateCache.stampOf(root)));
+
+      write(pom, "<project><dependencies/></project>");
+      Assert.assertNull(InstallationStateCache.get(root, InstallationStateCache.stampOf(root)));
+   }
+
+   @Test
+   public void assertTheStateIsForgottenWhenBeansXmlIsRemoved() throws Exception
+   {
+      final File root = temp.newFolder("installed");
+      write(new File(root, "pom.xml"), "<project/>");
+      final File beansXml = write(new File(root, "src/main/resources/META-INF/beans.xml"), "<beans/>");
+
+      InstallationStateCache.put(root, InstallationStateCache.stampOf(root), true);
+      beansXml.delete();
+      Assert.assertNull(InstallationStateCache.get(root, InstallationStateCache.stampOf(root)));
+   }
+
+   @Test
+   public void assertTheStateIsForgottenWhenAParentPomChanges() throws Exception
+   {
+      final File root = temp.newFolder("installed");
+      final File parent = write(new File(root, "pom.xml"), "<project/>");
+      final File module = new File(root, "module");
+      write(new File(module, "pom.xml"), "<project><parent><artifactId>parent</artifactId></parent></project>");
+
+      InstallationStateCache.put(module, InstallationStateCache.stampOf(module), true);
+      Assert.assertEquals(Boolean.TRUE, InstallationStateCache.get(module, InstallationStateCache.stampOf(module)));
+
+      write(parent, "<project><dependencies/></project>");
+      Assert.assertNull(InstallationStateCache.get(module, InstallationStateCache.stampOf(module)));
+   }
+
+   @Test
+   public void assertInvalidateForgetsTheState() throws Exception
+   {
+      final File root = temp.newFolder("installed");
+      write(new File(root, "pom.xml"), "<project/>");
+
+      final String stamp = InstallationStateCache.stampOf(root);
+      InstallationStateCache.put(root, stamp, false);
+      Assert.assertEquals(Boolean.FALSE, InstallationStateCache.get(root, stamp));
+      InstallationStateCache.invalidate(root);
+      Assert.assertNull(InstallationStateCache.get(root, stamp));
+   }
+
+   private static File write(final File file, final String content) throws IOException
+   {
+      file.getParentFile().mkdirs();
+      final FileWriter writer = new FileWriter(file);
+      try {
+         writer.write(content);
+      }
+      finally {
+         writer.close();
+      }
+      return file;
+   }
+}
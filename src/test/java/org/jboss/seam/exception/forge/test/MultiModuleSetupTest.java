@@ -0,0 +1,155 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.jboss.forge.project.dependencies.DependencyBuilder;
+import org.jboss.seam.exception.forge.MultiModuleSetup;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MultiModuleSetupTest
+{
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   private File root;
+
+   @Before
+   public void createBuild() throws IOException
+   {
+      root = temp.newFolder("build");
+
+      write("pom.xml", pom("parent", "pom", "<modules><module>core</module><module>web</module></modules>"));
+      write("core/pom.xml", pom("core", "jar", "<dependencies><dependency><groupId>org.jboss.solder</groupId>"
+               + "<artifactId>solder</artifactId><version>3.0.0.Final</version></dependency></dependencies>"));
+      write("web/pom.xml", pom("web", "war", ""));
+   }
+
+   @Test
+   public void assertEveryModuleIsSetUp() throws Exception
+   {
+      final MultiModuleSetup setup = new MultiModuleSetup(DependencyBuilder.create("org.jboss.solder:solder:3.1.0.Final"),
+               true);
+
+      final List<File> modules = setup.findModules(root);
+      Assert.assertEquals(3, modules.size());
+
+      final List<MultiModuleSetup.ModuleResult> results = setup.apply(modules);
+      for (MultiModuleSetup.ModuleResult result : results) {
+         Assert.assertNull(result.getError());
+      }
+
+      Assert.assertTrue(read("pom.xml").getDependencies().isEmpty());
+      Assert.assertEquals(1, read("pom.xml").getRepositories().size());
+      Assert.assertEquals("3.1.0.Final", read("core/pom.xml").getDependencies().get(0).getVersion());
+      Assert.assertEquals(1, read("web/pom.xml").getDependencies().size());
+      Assert.assertTrue(new File(root, "core/src/main/resources/META-INF/beans.xml").isFile());
+      Assert.assertTrue(new File(root, "web/src/main/webapp/WEB-INF/beans.xml").isFile());
+
+      // a second run changes nothing
+      Assert.assertEquals("[dependency already present]", setup.applyTo(new File(root, "web")).getChanges()
+               .toString());
+   }
+
+   @Test
+   public void assertPomsKeepTheirFormattingAndProfileModulesAreFound() throws Exception
+   {
+      write("pom.xml", pom("parent", "pom", "\n   <!-- modules of the build -->\n   <modules><module>core</module>"
+               + "<module>web</module></modules>\n   <profiles><profile><id>extra</id>"
+               + "<modules><module>extra</module></modules></profile></profiles>\n"));
+      write("extra/pom.xml", pom("extra", "jar", "\n   <!-- Solder goes here -->\n   <dependencies>\n"
+               + "   </dependencies>\n"));
+      final MultiModuleSetup setup = new MultiModuleSetup(
+               DependencyBuilder.create("org.jboss.solder:solder:3.1.0.Final"), false);
+
+      final List<File> modules = setup.findModules(root);
+      Assert.assertEquals(4, modules.size());
+      Assert.assertEquals("extra", modules.get(3).getName());
+
+      for (MultiModuleSetup.ModuleResult result : setup.apply(modules)) {
+         Assert.assertNull(result.getError());
+      }
+      Assert.assertTrue(text("pom.xml").contains("<!-- modules of the build -->"));
+      Assert.assertTrue(text("extra/pom.xml").contains("<!-- Solder goes here -->"));
+      Assert.assertEquals("3.1.0.Final", read("extra/pom.xml").getDependencies().get(0).getVersion());
+      Assert.assertEquals(1, read("extra/pom.xml").getRepositories().size());
+      // not replaced without the user's consent
+      Assert.assertEquals("3.0.0.Final", read("core/pom.xml").getDependencies().get(0).getVersion());
+   }
+
+   private static String pom(final String artifactId, final String packaging, final String content)
+   {
+      return "<project><modelVersion>4.0.0</modelVersion><groupId>com.example</groupId><artifactId>" + artifactId
+               + "</artifactId><version>1.0</version><packaging>" + packaging + "</packaging>" + content
+               + "</project>";
+   }
+
+   private Model read(final String path) throws Exception
+   {
+      final FileReader reader = new FileReader(new File(root, path));
+      try {
+         return new MavenXpp3Reader().read(reader);
+      }
+      finally {
+         reader.close();
+      }
+   }
+
+   private String text(final String path) throws IOException
+   {
+      final InputStream in = new FileInputStream(new File(root, path));
+      try {
+         final ByteArrayOutputStream content = new ByteArrayOutputStream();
+         final byte[] buffer = new byte[4096];
+         int read;
+         while ((read = in.read(buffer)) != -1) {
+            content.write(buffer, 0, read);
+         }
+         return content.toString("UTF-8");
+      }
+      finally {
+         in.close();
+      }
+   }
+
+   private void write(final String path, final String content) throws IOException
+   {
+      final File file = new File(root, path);
+      file.getParentFile().mkdirs();
+      final FileWriter writer = new FileWriter(file);
+      try {
+         writer.write(content);
+      }
+      finally {
+         writer.close();
+      }
+   }
+}
@@ -0,0 +1,84 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.jboss.forge.parser.java.JavaSource;
+import org.jboss.seam.exception.forge.ParsedSourceCache;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParsedSourceCacheTest
+{
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   @Test
+   public void assertUnchangedSourcesAreParsedOnce() throws Exception
+   {
+      final File file = write(temp.newFile("One.java"), "package com.example; public class One {}");
+      final ParsedSourceCache cache = new ParsedSourceCache();
+
+      final JavaSource<?> first = cache.get(file);
+      Assert.assertSame(first, cache.get(file));
+      Assert.assertEquals(1, cache.getHits());
+
+      write(file, "package com.example; public class One { private int changed; }");
+      Assert.assertNotSame(first, cache.get(file));
+   }
+
+   @Test
+   public void assertLeastRecentlyUsedSourcesAreEvicted() throws Exception
+   {
+      final ParsedSourceCache cache = new ParsedSourceCache(2, Long.MAX_VALUE);
+      final File one = write(temp.newFile("One.java"), "public class One {}");
+      final File two = write(temp.newFile("Two.java"), "public class Two {}");
+      final File three = write(temp.newFile("Three.java"), "public class Three {}");
+
+      final JavaSource<?> first = cache.get(one);
+      cache.get(two);
+      cache.get(one);
+      cache.get(three);
+
+      Assert.assertEquals(2, cache.size());
+      Assert.assertSame(first, cache.get(one));
+      Assert.assertEquals(2, cache.getHits());
+
+      final ParsedSourceCache bounded = new ParsedSourceCache(10, one.length() + two.length());
+      bounded.get(one);
+      bounded.get(two);
+      bounded.get(three);
+      Assert.assertTrue(bounded.size() < 3);
+   }
+
+   private static File write(final File file, final String content) throws IOException
+   {
+      final FileWriter writer = new FileWriter(file);
+      try {
+         writer.write(content);
+      }
+      finally {
+         writer.close();
+      }
+      return file;
+   }
+}
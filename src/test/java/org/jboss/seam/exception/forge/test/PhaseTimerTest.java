@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge.test;
+
+import java.io.File;
+import java.util.Scanner;
+
+import org.jboss.seam.exception.forge.CommandTiming;
+import org.jboss.seam.exception.forge.PhaseTimer;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PhaseTimerTest
+{
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   @Test
+   public void assertPhasesAddUpToTheTotal() throws Exception
+   {
+      final PhaseTimer timer = new PhaseTimer("handler create");
+      timer.add("facet check", 1000000);
+      timer.lap("source parse");
+      Thread.sleep(20);
+      timer.skip();
+      timer.add("source parse", 2000000);
+
+      Assert.assertEquals(2, timer.getPhases().size());
+      Assert.assertTrue(timer.getPhases().get("source parse") >= 2000000);
+      Assert.assertTrue(timer.getTotal() < 15000000);
+      Assert.assertEquals(timer.getPhases().get("facet check") + timer.getPhases().get("source parse"),
+               timer.getTotal());
+   }
+
+   @Test
+   public void assertJsonDumpHasOneLinePerCommand() throws Exception
+   {
+      final File dump = new File(temp.getRoot(), "timing.jsonl");
+
+      final PhaseTimer timer = new PhaseTimer("handler create");
+      timer.add("facet check", 1500000);
+      CommandTiming.append(dump, timer);
+      CommandTiming.append(dump, timer);
+
+      final String content = read(dump);
+      Assert.assertEquals(2, content.split("\n").length);
+      Assert.assertTrue(content.startsWith("{\"timestamp\":" + timer.getTimestamp()
+               + ",\"command\":\"handler create\",\"total_ms\":1.500,\"phases\":{\"facet check\":1.500}}\n"));
+   }
+
+   @Test
+   public void assertCsvDumpHasOneHeaderAndOneLinePerPhase() throws Exception
+   {
+      final File dump = new File(temp.getRoot(), "timing.csv");
+
+      final PhaseTimer timer = new PhaseTimer("handler create");
+      timer.add("facet check", 1000000);
+      timer.add("source parse", 250000);
+      CommandTiming.append(dump, timer);
+      CommandTiming.append(dump, timer);
+
+      final String[] lines = read(dump).split("\n");
+      Assert.assertEquals(7, lines.length);
+      Assert.assertEquals(PhaseTimer.CSV_HEADER, lines[0]);
+      Assert.assertEquals(timer.getTimestamp() + ",\"handler create\",\"source parse\",0.250", lines[2]);
+      Assert.assertEquals(timer.getTimestamp() + ",\"handler create\",\"total\",1.250", lines[3]);
+   }
+
+   @Test
+   public void assertDumpIsWrittenWhenTimingIsNotPrinted() throws Exception
+   {
+      final File dump = new File(temp.getRoot(), "timing.jsonl");
+
+      final CommandTiming timing = new CommandTiming();
+      timing.setDump(dump);
+      final PhaseTimer timer = timing.start("handler create");
+      // Nothing is printed, so no writer is needed
+      timing.finish(timer, false, null);
+
+      Assert.assertEquals(1, read(dump).split("\n").length);
+   }
+
+   private static String read(final File file) throws Exception
+   {
+      final Scanner scanner = new Scanner(file, "UTF-8").useDelimiter("\\A");
+      try {
+         return scanner.hasNext() ? scanner.next() : "";
+      }
+      finally {
+         scanner.close();
+      }
+   }
+}
@@ -0,0 +1,133 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.forge.project.dependencies.Dependency;
+import org.jboss.forge.project.dependencies.DependencyBuilder;
+import org.jboss.seam.exception.forge.SolderVersionResolver;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SolderVersionResolverTest
+{
+   private static final Dependency SOLDER = DependencyBuilder.create("org.jboss.solder:solder");
+
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   private File root;
+
+   @Before
+   public void createRoot() throws IOException
+   {
+      root = temp.newFolder("resolver");
+   }
+
+   @Test
+   public void assertOfflineResolutionReadsLocalRepository() throws Exception
+   {
+      final File artifactDir = new File(root, "repository/org/jboss/solder/solder");
+      createVersion(artifactDir, "3.0.0.Final");
+      createVersion(artifactDir, "3.1.0.Beta1");
+      createVersion(artifactDir, "3.1.0-SNAPSHOT");
+
+      final SolderVersionResolver resolver = new SolderVersionResolver(new File(root, "cache.properties"),
+               new File(root, "repository"), Long.MAX_VALUE);
+
+      final List<Dependency> versions = resolver.resolve(null, SOLDER);
+
+      Assert.assertEquals(3, versions.size());
+      Assert.assertEquals("3.0.0.Final", versions.get(0).getVersion());
+      Assert.assertEquals("3.1.0.Beta1", versions.get(2).getVersion());
+   }
+
+   @Test
+   public void assertWarmCacheIsUsedAndExpires() throws Exception
+   {
+      final SolderVersionResolver resolver = new SolderVersionResolver(new File(root, "cache.properties"),
+               new File(root, "missing"), 60000);
+
+      resolver.writeCache(Arrays.asList("3.0.0.Final", "3.1.0.Final"));
+      Assert.assertEquals(Arrays.asList("3.0.0.Final", "3.1.0.Final"), resolver.readCache(false));
+
+      final SolderVersionResolver expired = new SolderVersionResolver(new File(root, "cache.properties"),
+               new File(root, "missing"), -1);
+      Assert.assertTrue(expired.readCache(false).isEmpty());
+      Assert.assertEquals(2, expired.resolve(null, SOLDER).size());
+   }
+
+   @Test
+   public void assertOfflineResolutionIsCached() throws Exception
+   {
+      createVersion(new File(root, "repository/org/jboss/solder/solder"), "3.0.0.Final");
+      final SolderVersionResolver resolver = new SolderVersionResolver(new File(root, "cache.properties"),
+               new File(root, "repository"), 60000);
+
+      Assert.assertTrue(resolver.readCache(false).isEmpty());
+      Assert.assertEquals(1, resolver.resolve(null, SOLDER).size());
+      Assert.assertEquals(Arrays.asList("3.0.0.Final"), resolver.readCache(false));
+   }
+
+   @Test
+   public void assertMissingSegmentsCountAsZero() throws Exception
+   {
+      final File artifactDir = new File(root, "repository/org/jboss/solder/solder");
+      createVersion(artifactDir, "3.1.1");
+      createVersion(artifactDir, "3.1");
+      createVersion(artifactDir, "3.1.0.Beta1");
+      createVersion(artifactDir, "3.0.9");
+
+      final SolderVersionResolver resolver = new SolderVersionResolver(new File(root, "cache.properties"),
+               new File(root, "repository"), 60000);
+
+      Assert.assertEquals(Arrays.asList("3.0.9", "3.1.0.Beta1", "3.1", "3.1.1"), resolver.readLocalRepository(SOLDER));
+   }
+
+   @Test
+   public void assertQualifierNumbersAreComparedAsNumbers() throws Exception
+   {
+      final File artifactDir = new File(root, "repository/org/jboss/solder/solder");
+      createVersion(artifactDir, "3.1.0.Beta10");
+      createVersion(artifactDir, "3.1.0.Final");
+      createVersion(artifactDir, "3.1.0.Beta2");
+      createVersion(artifactDir, "3.1.0.CR1");
+
+      final SolderVersionResolver resolver = new SolderVersionResolver(new File(root, "cache.properties"),
+               new File(root, "repository"), 60000);
+
+      Assert.assertEquals(Arrays.asList("3.1.0.Beta2", "3.1.0.Beta10", "3.1.0.CR1", "3.1.0.Final"),
+               resolver.readLocalRepository(SOLDER));
+   }
+
+   private void createVersion(final File artifactDir, final String version) throws IOException
+   {
+      final File versionDir = new File(artifactDir, version);
+      versionDir.mkdirs();
+      final FileWriter writer = new FileWriter(new File(versionDir, "solder-" + version + ".pom"));
+      writer.write("<project/>");
+      writer.close();
+   }
+}
@@ -0,0 +1,88 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge.test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.forge.parser.java.JavaSource;
+import org.jboss.seam.exception.forge.SourceTemplates;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SourceTemplatesTest
+{
+   private static final String[] SUPPORT_TEMPLATES = { "HandlerBenchmarkContainer", "HandlerBenchmarks",
+            "StripedCounter", "LatencyHistogram", "HandlerMetricsMBean", "HandlerMetrics", "SampledExceptionLogger",
+            "SampledExceptionLoggerExtension", "ExceptionFingerprint", "ExceptionAggregator", "ExceptionReport", "ExceptionReportSink",
+            "LoggingExceptionReportSink", "AsyncExceptionReporter", "AsyncExceptionReporterExtension", "ProfiledHandler",
+            "ExceptionJournal", "ExceptionJournalReader", "ExceptionFlightRecorderMBean", "ExceptionFlightRecorder" };
+
+   @Test
+   public void assertSupportTemplatesParse()
+   {
+      for (String template : SUPPORT_TEMPLATES) {
+         final JavaSource<?> generated = SourceTemplates.load(template, "com.example");
+         Assert.assertEquals(template, generated.getName());
+         Assert.assertEquals("com.example", generated.getPackage());
+         Assert.assertFalse(template + " has syntax errors", generated.hasSyntaxErrors());
+      }
+   }
+
+   @Test
+   public void assertPlaceholdersAreReplaced()
+   {
+      final Map<String, String> values = new HashMap<String, String>();
+      values.put("className", "IllegalStateExceptionHandlerBenchmark");
+      values.put("exceptionType", "java.lang.IllegalStateException");
+
+      final JavaSource<?> benchmark = SourceTemplates.load("ExceptionHandlerBenchmark", "com.example", values);
+
+      Assert.assertEquals("IllegalStateExceptionHandlerBenchmark", benchmark.getName());
+      Assert.assertFalse(benchmark.toString().contains("${"));
+      Assert.assertFalse(benchmark.hasSyntaxErrors());
+   }
+
+   @Test
+   public void assertInterceptorRecordsToTheRegistryOfTheProject()
+   {
+      final JavaSource<?> interceptor = SourceTemplates.load("ProfiledHandlerInterceptor", "com.example.profiling",
+               Collections.singletonMap("metricsPackage", "com.example.metrics"));
+
+      Assert.assertTrue(interceptor.hasImport("com.example.metrics.HandlerMetrics"));
+      Assert.assertFalse(interceptor.hasSyntaxErrors());
+   }
+
+   @Test
+   public void assertLoadTestPlaceholdersAreReplaced()
+   {
+      final Map<String, String> values = new HashMap<String, String>();
+      values.put("className", "HandlerLoadTest");
+      values.put("exceptionTypes", "java.lang.IllegalStateException.class, java.io.IOException.class");
+      values.put("threads", "8");
+      values.put("rate", "1000");
+      values.put("duration", "30");
+      values.put("warmup", "10");
+
+      final JavaSource<?> harness = SourceTemplates.load("HandlerLoadTest", "com.example", values);
+
+      Assert.assertEquals("HandlerLoadTest", harness.getName());
+      Assert.assertFalse(harness.toString().contains("${"));
+      Assert.assertFalse(harness.hasSyntaxErrors());
+   }
+}
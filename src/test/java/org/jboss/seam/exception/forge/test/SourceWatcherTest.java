@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+
+import org.jboss.seam.exception.forge.SourceWatcher;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SourceWatcherTest
+{
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   @Test
+   public void assertABurstOfChangesIsOneBatch() throws Exception
+   {
+      final File root = temp.newFolder("watch");
+      final File changed = write(new File(root, "com/example/Changed.java"), "class Changed {}");
+      final File deleted = write(new File(root, "com/example/Deleted.java"), "class Deleted {}");
+
+      final SourceWatcher watcher = new SourceWatcher(Collections.singletonList(root));
+      Assert.assertTrue(watcher.poll().isEmpty());
+
+      final Thread burst = new Thread()
+      {
+         @Override
+         public void run()
+         {
+            try {
+               for (int i = 0; i < 5; i++) {
+                  write(new File(root, "com/example/Added" + i + ".java"), "class Added" + i + " {}");
+                  Thread.sleep(20);
+               }
+               write(changed, "class Changed { int size; }");
+               deleted.delete();
+            }
+            catch (Exception e) {
+               throw new IllegalStateException(e);
+            }
+         }
+      };
+      burst.start();
+
+      final Set<File> batch = watcher.awaitBatch(10, 200, System.currentTimeMillis() + 10000);
+      burst.join();
+      Assert.assertEquals(7, batch.size());
+      Assert.assertTrue(batch.contains(new File(changed.getAbsolutePath())));
+      Assert.assertTrue(batch.contains(new File(deleted.getAbsolutePath())));
+      Assert.assertTrue(watcher.poll().isEmpty());
+   }
+
+   @Test
+   public void assertUnchangedDirectoriesAreNotListedAgain() throws Exception
+   {
+      final File root = temp.newFolder("listing");
+      final File edited = write(new File(root, "com/example/Edited.java"), "class Edited {}");
+      final File directory = edited.getParentFile();
+      final long old = System.currentTimeMillis() - 60000;
+      directory.setLastModified(old);
+
+      final SourceWatcher watcher = new SourceWatcher(Collections.singletonList(root));
+
+      // An in-place edit leaves the directory alone, the known files are still checked
+      write(edited, "class Edited { int size; }");
+      directory.setLastModified(old);
+      Assert.assertEquals(Collections.singleton(new File(edited.getAbsolutePath())), watcher.poll());
+
+      final File added = write(new File(directory, "Added.java"), "class Added {}");
+      Assert.assertEquals(Collections.singleton(new File(added.getAbsolutePath())), watcher.poll());
+
+      Assert.assertTrue(edited.delete());
+      Assert.assertEquals(Collections.singleton(new File(edited.getAbsolutePath())), watcher.poll());
+      Assert.assertTrue(watcher.poll().isEmpty());
+   }
+
+   private static File write(final File file, final String content) throws IOException
+   {
+      file.getParentFile().mkdirs();
+      final FileWriter writer = new FileWriter(file);
+      try {
+         writer.write(content);
+      }
+      finally {
+         writer.close();
+      }
+      return file;
+   }
+}
@@ -0,0 +1,259 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.seam.exception.forge.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.jboss.seam.exception.forge.JarSuperclassReader;
+import org.jboss.seam.exception.forge.ThrowableIndex;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ThrowableIndexTest
+{
+   @Rule
+   public TemporaryFolder temp = new TemporaryFolder();
+
+   @Test
+   public void assertJarSuperclassesAreRead() throws Exception
+   {
+      final File jar = jar(Exception.class, RuntimeException.class, IndexedException.class, NotAnException.class);
+
+      final Map<String, String> superclasses = JarSuperclassReader.readSuperclasses(jar);
+      Assert.assertEquals("java/lang/Throwable", superclasses.get("java/lang/Exception"));
+      Assert.assertEquals("java/lang/RuntimeException",
+               superclasses.get("org/jboss/seam/exception/forge/test/ThrowableIndexTest$IndexedException"));
+      Assert.assertFalse(superclasses
+               .containsKey("org/jboss/seam/exception/forge/test/ThrowableIndexTest$NotAnException"));
+      Assert.assertEquals(JarSuperclassReader.checksum(jar), JarSuperclassReader.checksum(jar));
+   }
+
+   @Test
+   public void assertJdkModulesAreRead() throws Exception
+   {
+      // A .jmod is a zip behind a 4 byte header, its classes are under classes/
+      final File module = temp.newFile("java.base.jmod");
+      final FileOutputStream header = new FileOutputStream(module);
+      header.write(new byte[] { 'J', 'M', 1, 0 });
+      write(new ZipOutputStream(header), "classes/", Exception.class, IndexedException.class);
+
+      final Map<String, String> superclasses = JarSuperclassReader.readSuperclasses(module);
+      Assert.assertEquals("java/lang/Throwable", superclasses.get("java/lang/Exception"));
+      Assert.assertEquals("java/lang/RuntimeException",
+               superclasses.get("org/jboss/seam/exception/forge/test/ThrowableIndexTest$IndexedException"));
+      Assert.assertNotNull(JarSuperclassReader.checksum(module));
+   }
+
+   @Test
+   public void assertTypesAreLookedUpOnce() throws Exception
+   {
+      final File jar = jar(Exception.class, RuntimeException.class, IndexedException.class, NotAnException.class);
+      final List<File> jars = Arrays.asList(jar);
+      final List<File> sourceRoots = Collections.singletonList(temp.newFolder("sources"));
+      final ThrowableIndex index = new ThrowableIndex(temp.newFolder("cache"));
+
+      final String indexed = IndexedException.class.getCanonicalName();
+      final String notAnException = NotAnException.class.getCanonicalName();
+      Assert.assertEquals(Boolean.TRUE, index.isThrowable(jars, sourceRoots, indexed));
+      Assert.assertEquals(Boolean.FALSE, index.isThrowable(jars, sourceRoots, notAnException));
+      Assert.assertNull(index.isThrowable(jars, sourceRoots, "com.example.Missing"));
+
+      // Types of the JDK are known without indexing it
+      Assert.assertEquals(Boolean.TRUE, index.isThrowable(jars, sourceRoots, "IllegalStateException"));
+      Assert.assertEquals(Boolean.FALSE, index.isThrowable(jars, sourceRoots, "java.util.ArrayList"));
+
+      // Lookups in the jars are remembered for the class path
+      Assert.assertTrue(jar.delete());
+      Assert.assertEquals(Boolean.FALSE, index.isThrowable(jars, sourceRoots, notAnException));
+   }
+
+   @Test
+   public void assertThrowablesOfJarsAndSourcesAreIndexed() throws Exception
+   {
+      final File jar = jar(Exception.class, RuntimeException.class, IndexedException.class, NotAnException.class);
+      final File sources = temp.newFolder("sources");
+      write(new File(sources, "com/example/AppException.java"),
+               "package com.example;\npublic class AppException extends RuntimeException {}");
+      write(new File(sources, "com/example/Plain.java"), "package com.example;\npublic class Plain {}");
+
+      final File cache = temp.newFolder("cache");
+      final SortedSet<String> throwables = new ThrowableIndex(cache).getThrowables(Arrays.asList(jar),
+               Arrays.asList(sources));
+      Assert.assertTrue(throwables.contains("java.lang.RuntimeException"));
+      Assert.assertTrue(throwables.contains(IndexedException.class.getCanonicalName()));
+      Assert.assertTrue(throwables.contains("com.example.AppException"));
+      Assert.assertFalse(throwables.contains(NotAnException.class.getCanonicalName()));
+      Assert.assertFalse(throwables.contains("com.example.Plain"));
+
+      // A fresh index of the same class path is read from the cache directory
+      Assert.assertEquals(throwables, new ThrowableIndex(cache).getThrowables(Arrays.asList(jar),
+               Arrays.asList(sources)));
+      Assert.assertEquals(1, cache.list(new FilenameFilter()
+      {
+         @Override
+         public boolean accept(final File dir, final String name)
+         {
+            return name.startsWith("classpath-");
+         }
+      }).length);
+   }
+
+   @Test
+   public void assertSubtypesOfAHierarchyAreFound() throws Exception
+   {
+      final File jar = jar(Exception.class, RuntimeException.class, IndexedException.class, NotAnException.class);
+      final File sources = temp.newFolder("sources");
+      write(new File(sources, "com/example/AppException.java"),
+               "package com.example;\npublic class AppException extends RuntimeException {}");
+      write(new File(sources, "com/example/sub/SubAppException.java"),
+               "package com.example.sub;\nimport com.example.AppException;\n"
+                        + "public class SubAppException extends AppException {}");
+
+      final ThrowableIndex index = new ThrowableIndex(temp.newFolder("cache"));
+      final SortedSet<String> subtypes = index.getSubtypes(Arrays.asList(jar), Arrays.asList(sources),
+               "RuntimeException");
+      Assert.assertEquals(3, subtypes.size());
+      Assert.assertTrue(subtypes.contains(IndexedException.class.getCanonicalName()));
+      Assert.assertTrue(subtypes.contains("com.example.AppException"));
+      Assert.assertTrue(subtypes.contains("com.example.sub.SubAppException"));
+
+      Assert.assertEquals(Collections.singleton("com.example.sub.SubAppException"), index.getSubtypes(
+               Arrays.asList(jar), Arrays.asList(sources), "com.example.AppException"));
+   }
+
+   @Test
+   public void assertSubtypesThatCannotBeReferencedAreSkipped() throws Exception
+   {
+      final File jar = jar(Exception.class, RuntimeException.class, IndexedException.class, HiddenException.class,
+               PackageException.class, HiddenOuter.class, HiddenOuter.NestedException.class);
+      final Set<String> hidden = new HashSet<String>();
+      JarSuperclassReader.readSuperclasses(jar, hidden);
+      Assert.assertTrue(hidden.contains("org/jboss/seam/exception/forge/test/ThrowableIndexTest$HiddenException"));
+      Assert.assertTrue(hidden.contains("org/jboss/seam/exception/forge/test/ThrowableIndexTest$PackageException"));
+      Assert.assertTrue(hidden
+               .contains("org/jboss/seam/exception/forge/test/ThrowableIndexTest$HiddenOuter$NestedException"));
+      Assert.assertFalse(hidden.contains("org/jboss/seam/exception/forge/test/ThrowableIndexTest$IndexedException"));
+
+      final File sources = temp.newFolder("sources");
+      write(new File(sources, "com/example/LocalException.java"),
+               "package com.example;\n/** Not public. */\nclass LocalException extends RuntimeException {}");
+      write(new File(sources, "com/example/sub/SubLocalException.java"),
+               "package com.example.sub;\n@SuppressWarnings(\"serial\")\n"
+                        + "public class SubLocalException extends com.example.LocalException {}");
+
+      final File cache = temp.newFolder("cache");
+      final List<File> jars = Arrays.asList(jar);
+      final List<File> sourceRoots = Arrays.asList(sources);
+      final Set<String> expected = new HashSet<String>(Arrays.asList(IndexedException.class.getCanonicalName(),
+               "com.example.sub.SubLocalException"));
+      Assert.assertEquals(expected, new HashSet<String>(new ThrowableIndex(cache).getSubtypes(jars, sourceRoots,
+               "RuntimeException")));
+
+      // The hidden types survive the cache files
+      Assert.assertEquals(expected, new HashSet<String>(new ThrowableIndex(cache).getSubtypes(jars, sourceRoots,
+               "RuntimeException")));
+   }
+
+   private File jar(final Class<?>... classes) throws IOException
+   {
+      final File jar = temp.newFile("throwables.jar");
+      write(new ZipOutputStream(new FileOutputStream(jar)), "", classes);
+      return jar;
+   }
+
+   private static void write(final ZipOutputStream out, final String prefix, final Class<?>... classes)
+            throws IOException
+   {
+      try {
+         for (Class<?> type : classes) {
+            final String name = type.getName().replace('.', '/') + ".class";
+            out.putNextEntry(new ZipEntry(prefix + name));
+            final InputStream in = type.getResourceAsStream("/" + name);
+            try {
+               final byte[] buffer = new byte[4096];
+               int read;
+               while ((read = in.read(buffer)) != -1) {
+                  out.write(buffer, 0, read);
+               }
+            }
+            finally {
+               in.close();
+            }
+            out.closeEntry();
+         }
+      }
+      finally {
+         out.close();
+      }
+   }
+
+   private static void write(final File file, final String content) throws IOException
+   {
+      file.getParentFile().mkdirs();
+      final FileWriter writer = new FileWriter(file);
+      try {
+         writer.write(content);
+      }
+      finally {
+         writer.close();
+      }
+   }
+
+   public static class IndexedException extends RuntimeException
+   {
+      private static final long serialVersionUID = 1L;
+   }
+
+   public static class NotAnException
+   {
+   }
+
+   @SuppressWarnings("unused")
+   private static class HiddenException extends RuntimeException
+   {
+      private static final long serialVersionUID = 1L;
+   }
+
+   static class PackageException extends RuntimeException
+   {
+      private static final long serialVersionUID = 1L;
+   }
+
+   private static class HiddenOuter
+   {
+      public static class NestedException extends RuntimeException
+      {
+         private static final long serialVersionUID = 1L;
+      }
+   }
+}